@@ -0,0 +1,69 @@
+package com.uzproc.backend.config;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.cache.CacheManager;
+import org.springframework.cache.annotation.CachingConfigurer;
+import org.springframework.cache.annotation.EnableCaching;
+import org.springframework.cache.caffeine.CaffeineCacheManager;
+import org.springframework.cache.interceptor.KeyGenerator;
+import org.springframework.cache.interceptor.SimpleKey;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import java.time.Duration;
+import java.util.List;
+
+/**
+ * Кэш ответов справочных и дашбордных эндпоинтов (Caffeine: TTL + ограничение по числу записей).
+ * <p>
+ * Данные меняются в основном импортом и пересчётом статусов — тогда все кэши сбрасывает
+ * {@link DictionaryCacheInvalidator}; TTL ограничивает устаревание после ручных правок.
+ * Статистика включена: попадания/промахи/вытеснения доступны в /actuator/metrics (cache.gets, cache.evictions).
+ */
+@Configuration
+@EnableCaching
+public class CacheConfig implements CachingConfigurer {
+
+    /** Значения выпадающих фильтров (уникальные закупщики, инициаторы, компании и т.п.). */
+    public static final String FILTER_VALUES = "filterValues";
+    /** Списки годов для фильтров. */
+    public static final String FILTER_YEARS = "filterYears";
+    /** Агрегаты и детализации вкладок «Обзора», не вошедшие в витрину KPI. */
+    public static final String OVERVIEW = "overviewDashboards";
+
+    public static final String[] ALL_CACHES = { FILTER_VALUES, FILTER_YEARS, OVERVIEW };
+
+    @Bean
+    public CacheManager cacheManager(
+            @Value("${app.cache.dictionary.ttl-minutes:30}") long dictionaryTtlMinutes,
+            @Value("${app.cache.dictionary.max-size:200}") long dictionaryMaxSize,
+            @Value("${app.cache.overview.ttl-minutes:10}") long overviewTtlMinutes,
+            @Value("${app.cache.overview.max-size:500}") long overviewMaxSize) {
+        CaffeineCacheManager manager = new CaffeineCacheManager();
+        // Только перечисленные ниже кэши: опечатка в имени в @Cacheable должна падать, а не создавать неограниченный кэш
+        manager.setCacheNames(List.of());
+        manager.registerCustomCache(FILTER_VALUES, build(dictionaryTtlMinutes, dictionaryMaxSize));
+        manager.registerCustomCache(FILTER_YEARS, build(dictionaryTtlMinutes, dictionaryMaxSize));
+        manager.registerCustomCache(OVERVIEW, build(overviewTtlMinutes, overviewMaxSize));
+        return manager;
+    }
+
+    private static Cache<Object, Object> build(long ttlMinutes, long maxSize) {
+        return Caffeine.newBuilder()
+            .expireAfterWrite(Duration.ofMinutes(ttlMinutes))
+            .maximumSize(maxSize)
+            .recordStats()
+            .build();
+    }
+
+    /**
+     * Ключ — класс, метод и аргументы: методы без параметров из разных сервисов делят один кэш без коллизий.
+     */
+    @Bean
+    @Override
+    public KeyGenerator keyGenerator() {
+        return (target, method, params) -> new SimpleKey(target.getClass().getSimpleName(), method.getName(), new SimpleKey(params));
+    }
+}
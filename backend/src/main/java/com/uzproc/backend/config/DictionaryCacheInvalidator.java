@@ -0,0 +1,37 @@
+package com.uzproc.backend.config;
+
+import com.uzproc.backend.event.DataChangedEvent;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.cache.Cache;
+import org.springframework.cache.CacheManager;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.event.TransactionalEventListener;
+
+/**
+ * Сбрасывает кэши {@link CacheConfig} при массовом изменении данных: после каждого этапа стартового импорта
+ * (загрузчики Excel, пересчёт статусов), загрузки alldocuments, исключения из KPI, отзыва CSI.
+ * Внутри транзакции — после коммита, чтобы следующий запрос не закэшировал данные до изменения.
+ */
+@Component
+public class DictionaryCacheInvalidator {
+
+    private static final Logger logger = LoggerFactory.getLogger(DictionaryCacheInvalidator.class);
+
+    private final CacheManager cacheManager;
+
+    public DictionaryCacheInvalidator(CacheManager cacheManager) {
+        this.cacheManager = cacheManager;
+    }
+
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onDataChanged(DataChangedEvent event) {
+        for (String name : CacheConfig.ALL_CACHES) {
+            Cache cache = cacheManager.getCache(name);
+            if (cache != null) {
+                cache.invalidate();
+            }
+        }
+        logger.debug("Dictionary caches cleared after data change ({})", event.source());
+    }
+}
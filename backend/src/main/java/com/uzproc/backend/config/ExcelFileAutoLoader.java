@@ -2,6 +2,7 @@ package com.uzproc.backend.config;
 
 import com.uzproc.backend.service.contract.ContractApprovalExcelLoadService;
 import com.uzproc.backend.service.excel.EntityExcelLoadService;
+import com.uzproc.backend.service.excel.ExcelImportJobService;
 import com.uzproc.backend.service.excel.ReportExcelLoadService;
 import com.uzproc.backend.service.arrival.ArrivalExcelLoadService;
 import com.uzproc.backend.service.payment.PaymentExcelLoadService;
@@ -9,26 +10,29 @@ import com.uzproc.backend.service.purchaseplan.PurchasePlanExcelLoadService;
 import com.uzproc.backend.service.supplier.SupplierExcelLoadService;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
-import org.springframework.boot.CommandLineRunner;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
-import org.springframework.core.annotation.Order;
 
 import java.io.File;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.locks.ReentrantLock;
 
 @Configuration
 public class ExcelFileAutoLoader {
 
     private static final Logger logger = LoggerFactory.getLogger(ExcelFileAutoLoader.class);
 
+    /**
+     * Заявки, закупки, договоры и пользователи — основа для большинства остальных этапов.
+     * Каждый файл разбирается под блокировкой загрузок alldocuments, общей с загрузками через API.
+     */
     @Bean
-    @Order(0) // Запускаем первым, до StatusUpdateRunner (Order = 1000)
-    public CommandLineRunner autoLoadExcelFile(EntityExcelLoadService excelLoadService) {
-        return args -> {
+    public StartupImportStage alldocumentsStage(EntityExcelLoadService excelLoadService, ExcelImportJobService excelImportJobService) {
+        return new StartupImportStage(StartupImportStage.ALLDOCUMENTS, Set.of(), Set.of(StartupImportStage.RESOURCE_USERS, StartupImportStage.RESOURCE_CFO, StartupImportStage.RESOURCE_SUPPLIERS), () -> {
             try {
                 Path alldocumentsPath = null;
                 
@@ -97,8 +101,10 @@ public class ExcelFileAutoLoader {
                 logger.info("Starting automatic Excel file processing...");
                 
                 int totalLoaded = 0;
+                ReentrantLock importLock = excelImportJobService.entityLock(ExcelImportJobService.ENTITY_ALLDOCUMENTS);
                 for (File excelFile : excelFiles) {
                     String fileName = excelFile.getName();
+                    importLock.lock();
                     try {
                         logger.info("=== START processing file: {} (alldocuments, size: {} bytes) ===", fileName, excelFile.length());
                         // Используем оптимизированный метод, который открывает файл один раз
@@ -114,6 +120,8 @@ public class ExcelFileAutoLoader {
                         logger.info("=== END processing file: {} (alldocuments), loaded {} records ===", fileName, loadedCount);
                     } catch (Exception e) {
                         logger.error("=== END processing file: {} (alldocuments), ERROR: {} ===", fileName, e.getMessage(), e);
+                    } finally {
+                        importLock.unlock();
                     }
                 }
                 
@@ -121,13 +129,13 @@ public class ExcelFileAutoLoader {
             } catch (Exception e) {
                 logger.error("Error during automatic Excel file processing", e);
             }
-        };
+        });
     }
 
+    /** Согласования договоров: связь по contract.inner_id, поэтому после alldocuments. */
     @Bean
-    @Order(25) // После alldocuments (0), до suppliers (50)
-    public CommandLineRunner autoLoadApprovalsFile(ContractApprovalExcelLoadService contractApprovalExcelLoadService) {
-        return args -> {
+    public StartupImportStage approvalsStage(ContractApprovalExcelLoadService contractApprovalExcelLoadService) {
+        return new StartupImportStage(StartupImportStage.APPROVALS, Set.of(StartupImportStage.ALLDOCUMENTS), Set.of(StartupImportStage.RESOURCE_USERS), () -> {
             try {
                 Path approvalsPath = null;
                 Path dockerPath = Paths.get("/app/approvals");
@@ -185,13 +193,16 @@ public class ExcelFileAutoLoader {
             } catch (Exception e) {
                 logger.error("Error during automatic contract approvals file processing", e);
             }
-        };
+        });
     }
 
+    /**
+     * Поставщики по коду — независимы от остальных файлов. Справочник поставщиков — общий ресурс с загрузчиками,
+     * создающими поставщиков по ИНН: одновременная загрузка могла бы создать двух поставщиков с одним ИНН.
+     */
     @Bean
-    @Order(50) // После alldocuments (0), до report (100)
-    public CommandLineRunner autoLoadSuppliersFile(SupplierExcelLoadService supplierExcelLoadService) {
-        return args -> {
+    public StartupImportStage suppliersStage(SupplierExcelLoadService supplierExcelLoadService) {
+        return new StartupImportStage(StartupImportStage.SUPPLIERS, Set.of(), Set.of(StartupImportStage.RESOURCE_SUPPLIERS), () -> {
             try {
                 Path suppliersPath = null;
                 Path dockerPath = Paths.get("/app/suppliers");
@@ -249,13 +260,13 @@ public class ExcelFileAutoLoader {
             } catch (Exception e) {
                 logger.error("Error during automatic suppliers file processing", e);
             }
-        };
+        });
     }
 
+    /** Согласования заявок и закупок: нужны заявки и закупки из alldocuments. */
     @Bean
-    @Order(100) // Запускаем после загрузки основных данных, но до обновления статусов (Order = 1000)
-    public CommandLineRunner autoLoadReportFile(ReportExcelLoadService reportExcelLoadService) {
-        return args -> {
+    public StartupImportStage reportStage(ReportExcelLoadService reportExcelLoadService) {
+        return new StartupImportStage(StartupImportStage.REPORT, Set.of(StartupImportStage.ALLDOCUMENTS), Set.of(), () -> {
             try {
                 Path reportPath = null;
                 
@@ -326,9 +337,14 @@ public class ExcelFileAutoLoader {
                     String fileName = excelFile.getName();
                     try {
                         logger.info("=== START processing file: {} (report) ===", fileName);
-                        int loadedCount = reportExcelLoadService.loadFromExcel(excelFile);
+                        ReportExcelLoadService.ReportLoadResult result = reportExcelLoadService.loadFromExcel(excelFile);
+                        int loadedCount = result.processed();
                         totalLoaded += loadedCount;
-                        logger.info("Loaded {} records from report file {}", loadedCount, fileName);
+                        logger.info("Loaded {} records from report file {} (request approvals: {} inserted, {} updated, " +
+                                "{} unchanged; purchase approvals: {} inserted, {} updated, {} unchanged)", loadedCount, fileName,
+                            result.requestApprovals().inserted(), result.requestApprovals().updated(),
+                            result.requestApprovals().unchanged(), result.purchaseApprovals().inserted(),
+                            result.purchaseApprovals().updated(), result.purchaseApprovals().unchanged());
                         logger.info("=== END processing file: {} (report), loaded {} records ===", fileName, loadedCount);
                     } catch (Exception e) {
                         logger.error("=== END processing file: {} (report), ERROR: {} ===", fileName, e.getMessage(), e);
@@ -339,13 +355,13 @@ public class ExcelFileAutoLoader {
             } catch (Exception e) {
                 logger.error("Error during automatic report file processing", e);
             }
-        };
+        });
     }
 
+    /** План закупок: закупщики ищутся среди пользователей из alldocuments. */
     @Bean
-    @Order(200) // Запускаем после загрузки отчётов, но до обновления статусов (Order = 1000)
-    public CommandLineRunner autoLoadPurchasePlanFile(PurchasePlanExcelLoadService purchasePlanExcelLoadService) {
-        return args -> {
+    public StartupImportStage purchasePlanStage(PurchasePlanExcelLoadService purchasePlanExcelLoadService) {
+        return new StartupImportStage(StartupImportStage.PURCHASE_PLAN, Set.of(StartupImportStage.ALLDOCUMENTS), Set.of(StartupImportStage.RESOURCE_CFO), () -> {
             try {
                 Path planPath = null;
                 
@@ -429,13 +445,13 @@ public class ExcelFileAutoLoader {
             } catch (Exception e) {
                 logger.error("Error during automatic purchase plan file processing", e);
             }
-        };
+        });
     }
 
+    /** Оплаты: связь с заявками/договорами и поставщиками, поэтому после alldocuments и suppliers. */
     @Bean
-    @Order(300) // После плана закупок, до обновления статусов (Order = 1000)
-    public CommandLineRunner autoLoadPaymentsFile(PaymentExcelLoadService paymentExcelLoadService) {
-        return args -> {
+    public StartupImportStage paymentsStage(PaymentExcelLoadService paymentExcelLoadService) {
+        return new StartupImportStage(StartupImportStage.PAYMENTS, Set.of(StartupImportStage.ALLDOCUMENTS, StartupImportStage.SUPPLIERS), Set.of(StartupImportStage.RESOURCE_USERS, StartupImportStage.RESOURCE_CFO, StartupImportStage.RESOURCE_SUPPLIERS), () -> {
             try {
                 logger.info("=== Starting automatic payments file processing ===");
                 Path paymentsPath = null;
@@ -497,13 +513,16 @@ public class ExcelFileAutoLoader {
             } catch (Exception e) {
                 logger.error("Error during automatic payments file processing", e);
             }
-        };
+        });
     }
 
+    /**
+     * Поступления не ссылаются на документы alldocuments, но создают поставщиков и пользователей.
+     * Идут после справочника поставщиков, чтобы находить поставщика по коду, а не создавать его по ИНН.
+     */
     @Bean
-    @Order(350) // После payments (300), до обновления статусов (Order = 1000)
-    public CommandLineRunner autoLoadArrivalsFile(ArrivalExcelLoadService arrivalExcelLoadService) {
-        return args -> {
+    public StartupImportStage arrivalsStage(ArrivalExcelLoadService arrivalExcelLoadService) {
+        return new StartupImportStage(StartupImportStage.ARRIVALS, Set.of(StartupImportStage.SUPPLIERS), Set.of(StartupImportStage.RESOURCE_USERS, StartupImportStage.RESOURCE_SUPPLIERS), () -> {
             try {
                 logger.info("=== Starting automatic arrivals file processing ===");
                 Path arrivalsPath = null;
@@ -562,7 +581,7 @@ public class ExcelFileAutoLoader {
             } catch (Exception e) {
                 logger.error("Error during automatic arrivals file processing", e);
             }
-        };
+        });
     }
 }
 
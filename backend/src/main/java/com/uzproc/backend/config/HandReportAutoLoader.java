@@ -3,19 +3,18 @@ package com.uzproc.backend.config;
 import com.uzproc.backend.service.handreport.HandReportExcelLoadService;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
-import org.springframework.boot.CommandLineRunner;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
-import org.springframework.core.annotation.Order;
 
 import java.io.File;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.util.Set;
 
 /**
  * Авто-загрузка ручного отчёта по договорам из папки upload/handreport при старте приложения.
- * Выполняется после загрузки alldocuments (@Order 0), чтобы договоры/спецификации уже были в БД.
+ * Этап стартового импорта ({@link StartupImportPipeline}) после alldocuments, чтобы договоры/спецификации уже были в БД.
  */
 @Configuration
 public class HandReportAutoLoader {
@@ -23,9 +22,8 @@ public class HandReportAutoLoader {
     private static final Logger logger = LoggerFactory.getLogger(HandReportAutoLoader.class);
 
     @Bean
-    @Order(150)
-    public CommandLineRunner autoLoadHandReport(HandReportExcelLoadService handReportService) {
-        return args -> {
+    public StartupImportStage handReportStage(HandReportExcelLoadService handReportService) {
+        return new StartupImportStage(StartupImportStage.HAND_REPORT, Set.of(StartupImportStage.ALLDOCUMENTS), Set.of(), () -> {
             try {
                 Path folder = resolveHandReportFolder();
                 if (folder == null) {
@@ -50,7 +48,7 @@ public class HandReportAutoLoader {
             } catch (Exception e) {
                 logger.error("Error during handreport auto-processing", e);
             }
-        };
+        });
     }
 
     /** Находит папку handreport: сначала Docker (/app/handreport), затем относительно корня проекта. */
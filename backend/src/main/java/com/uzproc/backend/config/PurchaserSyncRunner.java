@@ -0,0 +1,34 @@
+package com.uzproc.backend.config;
+
+import com.uzproc.backend.service.purchaseplan.PurchasePlanPurchaserSyncService;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import java.util.Set;
+
+/**
+ * Сверка закупщика позиций плана с заявками при запуске приложения
+ * ({@link PurchasePlanPurchaserSyncService#syncAllLinked()}, один проход).
+ * Изменения закупщика переносятся в позиции по событиям; сверка догоняет позиции, разошедшиеся с заявкой
+ * до их появления или пропущенные из-за остановки процесса. Обновляются только строки, где закупщик отличается.
+ * Этап стартового импорта ({@link StartupImportPipeline}): после alldocuments и плана закупок.
+ */
+@Configuration
+public class PurchaserSyncRunner {
+
+    private static final Logger logger = LoggerFactory.getLogger(PurchaserSyncRunner.class);
+
+    @Bean
+    public StartupImportStage purchaserSyncStage(PurchasePlanPurchaserSyncService purchaserSyncService) {
+        return new StartupImportStage(StartupImportStage.PURCHASER_SYNC,
+                Set.of(StartupImportStage.ALLDOCUMENTS, StartupImportStage.PURCHASE_PLAN), Set.of(), () -> {
+            try {
+                purchaserSyncService.syncAllLinked();
+            } catch (Exception e) {
+                logger.error("Purchaser reconciliation on startup failed", e);
+            }
+        });
+    }
+}
@@ -48,6 +48,8 @@ public class SecurityConfig {
                     // Actuator: наружу открыт только health (без деталей, см. application.yml).
                     // Остальные endpoint'ы — только ADMIN (T3 fix)
                     .requestMatchers("/actuator/health").permitAll()
+                    // Пробы liveness/readiness (readiness ждёт стартовый импорт) — тоже без деталей
+                    .requestMatchers("/actuator/health/liveness", "/actuator/health/readiness").permitAll()
                     .requestMatchers("/actuator/**").hasRole("ADMIN")
                     // --- Публичные данные: ТОЛЬКО чтение и только то, что нужно публичным
                     // страницам. Раньше широкие "/**" открывали анонимам и мутации, и
@@ -71,6 +73,10 @@ public class SecurityConfig {
                     .requestMatchers(HttpMethod.POST, "/specification-feedback/form/**").permitAll()
                     // Управление пользователями — только ADMIN
                     .requestMatchers("/users/**").hasRole("ADMIN")
+                    // Полный пересчёт статусов по всей базе — только ADMIN
+                    .requestMatchers("/statuses/**").hasRole("ADMIN")
+                    // Сверка закупщика позиций плана с заявками — только ADMIN
+                    .requestMatchers(HttpMethod.POST, "/purchase-plan-items/sync-purchasers").hasRole("ADMIN")
                     // Всё остальное (включая мутации плана, версии плана, change-password,
                     // CSI-список/статистику, загрузку медиа) — только аутентифицированные
                     .anyRequest().authenticated()
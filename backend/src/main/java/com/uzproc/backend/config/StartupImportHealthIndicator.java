@@ -0,0 +1,49 @@
+package com.uzproc.backend.config;
+
+import org.springframework.boot.actuate.health.Health;
+import org.springframework.boot.actuate.health.HealthIndicator;
+import org.springframework.stereotype.Component;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Health-индикатор "startupImport": OUT_OF_SERVICE, пока {@link StartupImportPipeline} не завершён.
+ * Включён в группу readiness (см. application.yml), поэтому трафик на экземпляр идёт только после
+ * стартового импорта. В деталях (для авторизованных) — статус и тайминги каждого этапа.
+ */
+@Component
+public class StartupImportHealthIndicator implements HealthIndicator {
+
+    private final StartupImportPipeline pipeline;
+
+    public StartupImportHealthIndicator(StartupImportPipeline pipeline) {
+        this.pipeline = pipeline;
+    }
+
+    @Override
+    public Health health() {
+        Map<String, Object> stages = new LinkedHashMap<>();
+        for (StartupImportPipeline.StageTiming timing : pipeline.getStageTimings()) {
+            Map<String, Object> details = new LinkedHashMap<>();
+            details.put("status", timing.status());
+            details.put("waitMs", timing.waitMs());
+            details.put("durationMs", timing.durationMs());
+            if (timing.startedAt() != null) {
+                details.put("startedAt", timing.startedAt().toString());
+            }
+            if (timing.error() != null) {
+                details.put("error", timing.error());
+            }
+            stages.put(timing.name(), details);
+        }
+        Health.Builder builder = pipeline.isFinished() ? Health.up() : Health.outOfService();
+        if (pipeline.getStartedAt() != null) {
+            builder.withDetail("startedAt", pipeline.getStartedAt().toString());
+        }
+        if (pipeline.isFinished()) {
+            builder.withDetail("totalMs", pipeline.getTotalMs());
+        }
+        return builder.withDetail("stages", stages).build();
+    }
+}
@@ -0,0 +1,224 @@
+package com.uzproc.backend.config;
+
+import com.uzproc.backend.event.DataChangedEvent;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.CommandLineRunner;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.core.annotation.Order;
+import org.springframework.stereotype.Component;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Стартовый импорт (alldocuments, согласования, поставщики, отчёты, план, оплаты, поступления,
+ * поставки, статусы) как граф этапов вместо цепочки CommandLineRunner с @Order.
+ * <p>
+ * Этапы ({@link StartupImportStage}) выполняются на ограниченном пуле, как только завершились их
+ * зависимости; независимые (например, поставщики и поступления относительно alldocuments) идут параллельно.
+ * Этапы с общим справочником ({@link StartupImportStage#sharedResources()}) взаимно исключаются.
+ * Запуск асинхронный: HTTP-порт открывается сразу, а готовность (readiness) сообщает
+ * {@link StartupImportHealthIndicator} — OUT_OF_SERVICE, пока граф не отработал целиком.
+ * После каждого этапа публикуется промежуточный {@link DataChangedEvent}, по завершении графа — итоговый.
+ */
+@Component
+@Order(0)
+public class StartupImportPipeline implements CommandLineRunner, DisposableBean {
+
+    private static final Logger logger = LoggerFactory.getLogger(StartupImportPipeline.class);
+
+    public enum StageStatus { PENDING, WAITING, RUNNING, COMPLETED, FAILED }
+
+    /**
+     * Состояние этапа для health-деталей и итогового лога.
+     *
+     * @param waitMs     время от готовности зависимостей до захвата общих справочников
+     * @param durationMs время выполнения самого этапа
+     */
+    public record StageTiming(String name, StageStatus status, Instant startedAt, long waitMs, long durationMs, String error) {
+    }
+
+    private final Map<String, StartupImportStage> stages;
+    private final boolean enabled;
+    private final int parallelism;
+    private final ApplicationEventPublisher eventPublisher;
+
+    private final Map<String, StageTiming> timings = new ConcurrentHashMap<>();
+    private final Map<String, ReentrantLock> resourceLocks = new ConcurrentHashMap<>();
+    private volatile ExecutorService executor;
+    private volatile boolean finished = false;
+    private volatile Instant startedAt;
+    private volatile long totalMs;
+
+    public StartupImportPipeline(
+            List<StartupImportStage> stageBeans,
+            ApplicationEventPublisher eventPublisher,
+            @Value("${app.startup-import.enabled:true}") boolean enabled,
+            @Value("${app.startup-import.parallelism:3}") int parallelism) {
+        this.enabled = enabled;
+        this.parallelism = Math.max(1, parallelism);
+        this.eventPublisher = eventPublisher;
+        this.stages = orderTopologically(stageBeans);
+        for (StartupImportStage stage : stages.values()) {
+            timings.put(stage.name(), new StageTiming(stage.name(), StageStatus.PENDING, null, 0, 0, null));
+        }
+    }
+
+    @Override
+    public void run(String... args) {
+        if (!enabled || stages.isEmpty()) {
+            logger.info("Startup import pipeline disabled or has no stages; skipping");
+            finished = true;
+            return;
+        }
+        startedAt = Instant.now();
+        long start = System.currentTimeMillis();
+        AtomicInteger threadCounter = new AtomicInteger();
+        executor = Executors.newFixedThreadPool(parallelism, r -> {
+            Thread thread = new Thread(r, "startup-import-" + threadCounter.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        logger.info("=== Startup import pipeline started: {} stages, parallelism {} ===", stages.size(), parallelism);
+
+        Map<String, CompletableFuture<Void>> futures = new LinkedHashMap<>();
+        for (StartupImportStage stage : stages.values()) {
+            CompletableFuture<?>[] dependencies = stage.dependsOn().stream()
+                .map(futures::get)
+                .toArray(CompletableFuture[]::new);
+            futures.put(stage.name(), CompletableFuture.allOf(dependencies)
+                .thenRunAsync(() -> runStage(stage), executor));
+        }
+
+        CompletableFuture.allOf(futures.values().toArray(CompletableFuture[]::new))
+            .whenComplete((ignored, error) -> {
+                totalMs = System.currentTimeMillis() - start;
+                finished = true;
+                executor.shutdown();
+                logSummary();
+                eventPublisher.publishEvent(new DataChangedEvent(DataChangedEvent.SOURCE_STARTUP_IMPORT));
+            });
+    }
+
+    private void runStage(StartupImportStage stage) {
+        long readyAt = System.currentTimeMillis();
+        timings.put(stage.name(), new StageTiming(stage.name(), StageStatus.WAITING, null, 0, 0, null));
+        List<ReentrantLock> locks = new ArrayList<>();
+        // Захват в алфавитном порядке ресурсов исключает взаимную блокировку этапов
+        for (String resource : new TreeSet<>(stage.sharedResources())) {
+            ReentrantLock lock = resourceLocks.computeIfAbsent(resource, r -> new ReentrantLock());
+            lock.lock();
+            locks.add(lock);
+        }
+        long begin = System.currentTimeMillis();
+        Instant stageStartedAt = Instant.now();
+        timings.put(stage.name(), new StageTiming(stage.name(), StageStatus.RUNNING, stageStartedAt, begin - readyAt, 0, null));
+        logger.info("Startup import stage '{}' started (waited {} ms for shared resources {})",
+            stage.name(), begin - readyAt, stage.sharedResources());
+        try {
+            stage.action().run();
+            long duration = System.currentTimeMillis() - begin;
+            timings.put(stage.name(), new StageTiming(stage.name(), StageStatus.COMPLETED, stageStartedAt, begin - readyAt, duration, null));
+            logger.info("Startup import stage '{}' completed in {} ms", stage.name(), duration);
+            eventPublisher.publishEvent(new DataChangedEvent(stage.name(), true));
+        } catch (Exception e) {
+            long duration = System.currentTimeMillis() - begin;
+            timings.put(stage.name(), new StageTiming(stage.name(), StageStatus.FAILED, stageStartedAt, begin - readyAt, duration, e.getMessage()));
+            logger.error("Startup import stage '{}' failed after {} ms", stage.name(), duration, e);
+        } finally {
+            for (int i = locks.size() - 1; i >= 0; i--) {
+                locks.get(i).unlock();
+            }
+        }
+    }
+
+    private void logSummary() {
+        StringBuilder summary = new StringBuilder();
+        for (String name : stages.keySet()) {
+            StageTiming timing = timings.get(name);
+            summary.append(String.format("%n  %-20s %-9s wait=%6d ms  run=%8d ms", name, timing.status(), timing.waitMs(), timing.durationMs()));
+        }
+        logger.info("=== Startup import pipeline finished in {} ms ==={}", totalMs, summary);
+    }
+
+    /**
+     * Проверяет граф (неизвестные зависимости, циклы, дубли имён) и возвращает этапы в топологическом порядке.
+     */
+    private static Map<String, StartupImportStage> orderTopologically(List<StartupImportStage> stageBeans) {
+        Map<String, StartupImportStage> byName = new LinkedHashMap<>();
+        for (StartupImportStage stage : stageBeans) {
+            if (byName.put(stage.name(), stage) != null) {
+                throw new IllegalStateException("Duplicate startup import stage: " + stage.name());
+            }
+        }
+        Map<String, StartupImportStage> ordered = new LinkedHashMap<>();
+        Set<String> visiting = new HashSet<>();
+        for (StartupImportStage stage : byName.values()) {
+            visit(stage, byName, ordered, visiting);
+        }
+        return ordered;
+    }
+
+    private static void visit(StartupImportStage stage, Map<String, StartupImportStage> byName,
+                              Map<String, StartupImportStage> ordered, Set<String> visiting) {
+        if (ordered.containsKey(stage.name())) {
+            return;
+        }
+        if (!visiting.add(stage.name())) {
+            throw new IllegalStateException("Cycle in startup import stages at: " + stage.name());
+        }
+        for (String dependency : stage.dependsOn()) {
+            StartupImportStage dependencyStage = byName.get(dependency);
+            if (dependencyStage == null) {
+                throw new IllegalStateException("Startup import stage '" + stage.name() + "' depends on unknown stage '" + dependency + "'");
+            }
+            visit(dependencyStage, byName, ordered, visiting);
+        }
+        visiting.remove(stage.name());
+        ordered.put(stage.name(), stage);
+    }
+
+    public boolean isFinished() {
+        return finished;
+    }
+
+    public Instant getStartedAt() {
+        return startedAt;
+    }
+
+    public long getTotalMs() {
+        return totalMs;
+    }
+
+    /** Состояние этапов в топологическом порядке. */
+    public List<StageTiming> getStageTimings() {
+        List<StageTiming> result = new ArrayList<>(stages.size());
+        for (String name : stages.keySet()) {
+            result.add(timings.get(name));
+        }
+        return Collections.unmodifiableList(result);
+    }
+
+    @Override
+    public void destroy() {
+        if (executor != null) {
+            executor.shutdownNow();
+        }
+    }
+}
@@ -0,0 +1,40 @@
+package com.uzproc.backend.config;
+
+import java.util.Set;
+
+/**
+ * Этап стартового импорта для {@link StartupImportPipeline}.
+ *
+ * @param name            уникальное имя этапа (используется в зависимостях, логах и health-деталях)
+ * @param dependsOn       этапы, которые должны завершиться до запуска этого (данные, которые этап читает)
+ * @param sharedResources справочники, которые этап создаёт по ходу загрузки (find-or-create). Этапы с общим
+ *                        ресурсом не выполняются одновременно: иначе оба могут не найти запись и создать дубль
+ *                        (или упасть на уникальном индексе users.username / cfo.name)
+ * @param action          сама загрузка; исключение фиксируется как FAILED, зависимые этапы всё равно выполняются
+ */
+public record StartupImportStage(String name, Set<String> dependsOn, Set<String> sharedResources, Action action) {
+
+    public static final String ALLDOCUMENTS = "alldocuments";
+    public static final String APPROVALS = "approvals";
+    public static final String SUPPLIERS = "suppliers";
+    public static final String REPORT = "report";
+    public static final String HAND_REPORT = "handreport";
+    public static final String PURCHASE_PLAN = "plan";
+    public static final String PAYMENTS = "payments";
+    public static final String ARRIVALS = "arrivals";
+    public static final String DELIVERY_DISTRIBUTE = "delivery-distribute";
+    public static final String PURCHASER_SYNC = "purchaser-sync";
+    public static final String STATUS_UPDATE = "status-update";
+
+    /** Справочник пользователей (создаются по ФИО/email). */
+    public static final String RESOURCE_USERS = "users";
+    /** Справочник ЦФО (создаются по имени). */
+    public static final String RESOURCE_CFO = "cfo";
+    /** Поставщики, создаваемые по ИНН/наименованию. */
+    public static final String RESOURCE_SUPPLIERS = "suppliers";
+
+    @FunctionalInterface
+    public interface Action {
+        void run() throws Exception;
+    }
+}
@@ -1,87 +1,49 @@
 package com.uzproc.backend.config;
 
-import com.uzproc.backend.service.contract.ContractStatusUpdateService;
-import com.uzproc.backend.service.purchaserequest.PurchaseRequestStatusUpdateService;
-import com.uzproc.backend.service.purchase.PurchaseStatusUpdateService;
+import com.uzproc.backend.service.status.StatusRecalculationService;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
-import org.springframework.boot.CommandLineRunner;
-import org.springframework.core.annotation.Order;
-import org.springframework.stereotype.Component;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import java.util.Set;
 
 /**
- * Компонент для автоматического обновления статусов при запуске приложения
- * Запускается после всех парсингов Excel (если они есть) или просто при старте
+ * Автоматическое обновление статусов при запуске приложения.
+ * Последний этап стартового импорта ({@link StartupImportPipeline}): выполняется после всех парсингов
+ * Excel, от которых зависят статусы (alldocuments, согласования, отчёт, план, оплаты), или просто при старте.
+ * Пересчитываются только сущности, сохранённые загрузчиками (и зависящие от них заявки), включая оставшиеся
+ * в status_dirty_keys от прерванного прошлого запуска;
+ * полный проход — по app.status-update.full-on-startup или через POST /statuses/recalculate-all.
  */
-@Component
-@Order(1000) // Высокий порядок, чтобы запускаться после всех парсингов
-public class StatusUpdateRunner implements CommandLineRunner {
+@Configuration
+public class StatusUpdateRunner {
 
     private static final Logger logger = LoggerFactory.getLogger(StatusUpdateRunner.class);
 
-    private final PurchaseStatusUpdateService purchaseStatusUpdateService;
-    private final ContractStatusUpdateService contractStatusUpdateService;
-    private final PurchaseRequestStatusUpdateService purchaseRequestStatusUpdateService;
-
-    public StatusUpdateRunner(
-            PurchaseStatusUpdateService purchaseStatusUpdateService,
-            ContractStatusUpdateService contractStatusUpdateService,
-            PurchaseRequestStatusUpdateService purchaseRequestStatusUpdateService) {
-        this.purchaseStatusUpdateService = purchaseStatusUpdateService;
-        this.contractStatusUpdateService = contractStatusUpdateService;
-        this.purchaseRequestStatusUpdateService = purchaseRequestStatusUpdateService;
+    @Bean
+    public StartupImportStage statusUpdateStage(
+            StatusRecalculationService statusRecalculationService,
+            @Value("${app.status-update.full-on-startup:false}") boolean fullOnStartup) {
+        return new StartupImportStage(StartupImportStage.STATUS_UPDATE,
+                Set.of(StartupImportStage.ALLDOCUMENTS, StartupImportStage.APPROVALS, StartupImportStage.REPORT,
+                        StartupImportStage.PURCHASE_PLAN, StartupImportStage.PAYMENTS),
+                Set.of(),
+                () -> updateStatuses(statusRecalculationService, fullOnStartup));
     }
 
-    @Override
-    public void run(String... args) throws Exception {
-        logger.info("=== Starting automatic status update services ===");
-        
+    private void updateStatuses(StatusRecalculationService statusRecalculationService, boolean fullOnStartup) {
+        logger.info("=== Starting automatic status update (full: {}) ===", fullOnStartup);
         try {
-            // Обновляем статусы в правильном порядке:
-            // 1. Сначала статусы закупок
-            // 2. Затем статусы договоров
-            // 3. Затем статусы заявок (которые зависят от статусов закупок и договоров)
-            
-            if (purchaseStatusUpdateService != null) {
-                logger.info("=== Starting status update for all purchases ===");
-                try {
-                    purchaseStatusUpdateService.updateAllStatuses();
-                    logger.info("=== Purchase status update completed successfully ===");
-                } catch (Exception e) {
-                    logger.error("=== ERROR during purchase status update: {} ===", e.getMessage(), e);
-                }
-            } else {
-                logger.warn("=== purchaseStatusUpdateService is NULL, skipping purchase status update ===");
-            }
-            
-            if (contractStatusUpdateService != null) {
-                logger.info("Starting status update for all contracts");
-                try {
-                    contractStatusUpdateService.updateAllStatuses();
-                    logger.info("Contract status update completed successfully");
-                } catch (Exception e) {
-                    logger.error("Error during contract status update: {}", e.getMessage(), e);
-                }
+            if (fullOnStartup) {
+                statusRecalculationService.recalculateAll();
             } else {
-                logger.warn("contractStatusUpdateService is NULL, skipping contract status update");
+                statusRecalculationService.recalculateDirty();
             }
-            
-            if (purchaseRequestStatusUpdateService != null) {
-                logger.info("Starting status update for all purchase requests");
-                try {
-                    purchaseRequestStatusUpdateService.updateAllStatuses();
-                    logger.info("Purchase request status update completed successfully");
-                } catch (Exception e) {
-                    logger.error("Error during purchase request status update: {}", e.getMessage(), e);
-                }
-            } else {
-                logger.warn("purchaseRequestStatusUpdateService is NULL, skipping purchase request status update");
-            }
-            
-            logger.info("=== Automatic status update services completed ===");
+            logger.info("=== Automatic status update completed ===");
         } catch (Exception e) {
-            logger.error("=== ERROR during automatic status update services: {} ===", e.getMessage(), e);
+            logger.error("=== ERROR during automatic status update: {} ===", e.getMessage(), e);
         }
     }
 }
-
@@ -1,6 +1,8 @@
 package com.uzproc.backend.controller.contract;
 
+import com.uzproc.backend.dto.common.KeysetPageDto;
 import com.uzproc.backend.dto.contract.ContractDto;
+import com.uzproc.backend.dto.contract.ContractListItemDto;
 import com.uzproc.backend.dto.contract.ContractSummaryItemDto;
 import com.uzproc.backend.service.contract.ContractService;
 import com.uzproc.backend.service.contract.ContractStatusUpdateService;
@@ -69,6 +71,53 @@ public class ContractController {
         return ResponseEntity.ok(contracts);
     }
 
+    /**
+     * Лёгкий список договоров с keyset-пагинацией: те же фильтры, что у GET /contracts (кроме attentionTab),
+     * порядок по id. Следующая страница запрашивается с cursor = nextCursor предыдущей.
+     */
+    @GetMapping("/keyset")
+    public ResponseEntity<KeysetPageDto<ContractListItemDto>> getContractsKeyset(
+            @RequestParam(required = false) String cursor,
+            @RequestParam(defaultValue = "50") int size,
+            @RequestParam(required = false) String sortDir,
+            @RequestParam(required = false) Integer year,
+            @RequestParam(required = false) String innerId,
+            @RequestParam(required = false) List<String> cfo,
+            @RequestParam(required = false) String name,
+            @RequestParam(required = false) String documentForm,
+            @RequestParam(required = false) String costType,
+            @RequestParam(required = false) String contractType,
+            @RequestParam(required = false) String purchaseRequestInnerId,
+            @RequestParam(required = false) Boolean inWorkTab,
+            @RequestParam(required = false) Boolean signedTab,
+            @RequestParam(required = false) Boolean hiddenTab,
+            @RequestParam(required = false) Boolean isTypicalForm,
+            @RequestParam(required = false) Boolean notCoordinatedTab,
+            @RequestParam(required = false) String customerOrganization,
+            @RequestParam(required = false) String preparedByName,
+            @RequestParam(required = false) String status,
+            @RequestParam(required = false) String supplier,
+            @RequestParam(required = false) String paymentTerms,
+            @RequestParam(required = false, defaultValue = "") String segment,
+            @RequestParam(required = false) Boolean exclude1p,
+            @RequestParam(required = false) Integer contractCreationMonth,
+            @RequestParam(required = false) Integer contractCreationYear,
+            @RequestParam(required = false) Integer plannedDeliveryEndMonth,
+            @RequestParam(required = false) Integer plannedDeliveryEndYear,
+            @RequestParam(required = false) Integer registrationMonth,
+            @RequestParam(required = false) Integer registrationYear) {
+        try {
+            return ResponseEntity.ok(contractService.findKeyset(
+                    cursor, size, sortDir, year, innerId, cfo, name, documentForm, costType, contractType,
+                    inWorkTab, signedTab, hiddenTab, purchaseRequestInnerId, isTypicalForm, notCoordinatedTab,
+                    customerOrganization, preparedByName, status, supplier, paymentTerms, segment, exclude1p,
+                    contractCreationMonth, contractCreationYear, plannedDeliveryEndMonth, plannedDeliveryEndYear,
+                    registrationMonth, registrationYear));
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().build();
+        }
+    }
+
     /**
      * Счётчики вкладок (all/in-work/not-coordinated/signed/hidden) одним запросом.
      * Заменяет 5 вызовов /contracts?size=1 с фронтенда (без обогащения дат).
@@ -1,7 +1,11 @@
 package com.uzproc.backend.controller.invoice;
 
 import com.uzproc.backend.dto.invoice.InvoiceDto;
+import com.uzproc.backend.service.file.FileDownloadService;
 import com.uzproc.backend.service.invoice.InvoiceService;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import org.springframework.http.CacheControl;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
 import org.springframework.web.multipart.MultipartFile;
@@ -14,17 +18,21 @@ import java.time.LocalDateTime;
 import java.time.format.DateTimeFormatter;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.TimeUnit;
 
 @RestController
 @RequestMapping("/invoices")
 public class InvoiceController {
 
     private final InvoiceService invoiceService;
+    private final FileDownloadService fileDownloadService;
 
     private static final String UPLOAD_DIR = "uploads/invoices";
+    private static final CacheControl FILE_CACHE_CONTROL = CacheControl.maxAge(365, TimeUnit.DAYS).cachePrivate().immutable();
 
-    public InvoiceController(InvoiceService invoiceService) {
+    public InvoiceController(InvoiceService invoiceService, FileDownloadService fileDownloadService) {
         this.invoiceService = invoiceService;
+        this.fileDownloadService = fileDownloadService;
     }
 
     @GetMapping("/by-contract/{contractId}")
@@ -60,17 +68,18 @@ public class InvoiceController {
         return ResponseEntity.ok(Map.of("fileUrl", fileUrl));
     }
 
+    /**
+     * Отдаёт загруженный файл счёта. Имена файлов уникальны (с отметкой времени), поэтому ответ кэшируется надолго.
+     */
     @GetMapping("/files/{fileName}")
-    public ResponseEntity<byte[]> getFile(@PathVariable String fileName) throws IOException {
-        Path filePath = Paths.get(UPLOAD_DIR, fileName);
-        if (!Files.exists(filePath)) {
-            return ResponseEntity.notFound().build();
+    public void getFile(@PathVariable String fileName, HttpServletRequest request, HttpServletResponse response) throws IOException {
+        Path uploadPath = Paths.get(UPLOAD_DIR).toAbsolutePath().normalize();
+        Path filePath = uploadPath.resolve(fileName).normalize();
+        if (!filePath.startsWith(uploadPath)) {
+            response.sendError(HttpServletResponse.SC_NOT_FOUND);
+            return;
         }
-        byte[] content = Files.readAllBytes(filePath);
-        return ResponseEntity.ok()
-                .header("Content-Type", "application/pdf")
-                .header("Content-Disposition", "inline; filename=\"" + fileName + "\"")
-                .body(content);
+        fileDownloadService.serve(filePath, "application/pdf", fileName, FILE_CACHE_CONTROL, request, response);
     }
 
     @DeleteMapping("/{id}")
@@ -26,6 +26,7 @@ import com.uzproc.backend.service.contract.ContractService;
 import com.uzproc.backend.service.contract.ContractSlaDashboardService;
 import com.uzproc.backend.service.overview.ApprovalPresentationService;
 import com.uzproc.backend.service.overview.KpiSettingsService;
+import com.uzproc.backend.service.overview.OverviewKpiStoreService;
 import com.uzproc.backend.service.overview.OverviewService;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -37,6 +38,7 @@ import org.springframework.http.HttpHeaders;
 import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
 import com.uzproc.backend.dto.overview.KpiSavingsResponseDto;
 import com.uzproc.backend.dto.overview.OverviewSavingsResponseDto;
@@ -62,19 +64,22 @@ public class OverviewController {
     private final ContractService contractService;
     private final ContractSlaDashboardService contractSlaDashboardService;
     private final KpiSettingsService kpiSettingsService;
+    private final OverviewKpiStoreService overviewKpiStoreService;
 
     public OverviewController(OverviewService overviewService,
                               ApprovalPresentationService approvalPresentationService,
                               ContractApprovalService contractApprovalService,
                               ContractService contractService,
                               ContractSlaDashboardService contractSlaDashboardService,
-                              KpiSettingsService kpiSettingsService) {
+                              KpiSettingsService kpiSettingsService,
+                              OverviewKpiStoreService overviewKpiStoreService) {
         this.overviewService = overviewService;
         this.approvalPresentationService = approvalPresentationService;
         this.contractApprovalService = contractApprovalService;
         this.contractService = contractService;
         this.contractSlaDashboardService = contractSlaDashboardService;
         this.kpiSettingsService = kpiSettingsService;
+        this.overviewKpiStoreService = overviewKpiStoreService;
     }
 
     /**
@@ -84,7 +89,7 @@ public class OverviewController {
     public ResponseEntity<OverviewSavingsResponseDto> getSavingsData(
             @RequestParam Integer year) {
         logger.debug("Overview Savings request for year {}", year);
-        OverviewSavingsResponseDto data = overviewService.getSavingsData(year);
+        OverviewSavingsResponseDto data = overviewKpiStoreService.getSavingsData(year);
         return ResponseEntity.ok(data);
     }
 
@@ -96,7 +101,7 @@ public class OverviewController {
             @RequestParam int year,
             @RequestParam int month) {
         logger.debug("KPI savings request for year={}, month={}", year, month);
-        KpiSavingsResponseDto data = overviewService.getKpiSavingsData(year, month);
+        KpiSavingsResponseDto data = overviewKpiStoreService.getKpiSavingsData(year, month);
         return ResponseEntity.ok(data);
     }
 
@@ -108,7 +113,7 @@ public class OverviewController {
             @RequestParam int year,
             @RequestParam int month) {
         logger.debug("KPI SLA request for year={}, month={}", year, month);
-        KpiSlaResponseDto data = overviewService.getKpiSlaData(year, month);
+        KpiSlaResponseDto data = overviewKpiStoreService.getKpiSlaData(year, month);
         return ResponseEntity.ok(data);
     }
 
@@ -120,7 +125,7 @@ public class OverviewController {
             @RequestParam int year,
             @RequestParam int month) {
         logger.debug("KPI CSI request for year={}, month={}", year, month);
-        KpiCsiResponseDto data = overviewService.getKpiCsiData(year, month);
+        KpiCsiResponseDto data = overviewKpiStoreService.getKpiCsiData(year, month);
         return ResponseEntity.ok(data);
     }
 
@@ -132,7 +137,7 @@ public class OverviewController {
             @RequestParam int year,
             @RequestParam int quarter) {
         logger.debug("KPI2 savings request for year={}, quarter={}", year, quarter);
-        return ResponseEntity.ok(overviewService.getKpiSavingsDataForQuarter(year, quarter));
+        return ResponseEntity.ok(overviewKpiStoreService.getKpiSavingsDataForQuarter(year, quarter));
     }
 
     /**
@@ -143,7 +148,7 @@ public class OverviewController {
             @RequestParam int year,
             @RequestParam int quarter) {
         logger.debug("KPI2 SLA request for year={}, quarter={}", year, quarter);
-        return ResponseEntity.ok(overviewService.getKpiSlaDataForQuarter(year, quarter));
+        return ResponseEntity.ok(overviewKpiStoreService.getKpiSlaDataForQuarter(year, quarter));
     }
 
     /**
@@ -154,7 +159,7 @@ public class OverviewController {
             @RequestParam int year,
             @RequestParam int quarter) {
         logger.debug("KPI2 CSI request for year={}, quarter={}", year, quarter);
-        return ResponseEntity.ok(overviewService.getKpiCsiDataForQuarter(year, quarter));
+        return ResponseEntity.ok(overviewKpiStoreService.getKpiCsiDataForQuarter(year, quarter));
     }
 
     /**
@@ -243,7 +248,7 @@ public class OverviewController {
             @RequestParam Integer year,
             @RequestParam(required = false) String purchaser) {
         logger.debug("Overview SLA request for year {}, purchaser={}", year, purchaser);
-        OverviewSlaResponseDto data = overviewService.getSlaData(year, purchaser);
+        OverviewSlaResponseDto data = overviewKpiStoreService.getSlaData(year, purchaser);
         return ResponseEntity.ok(data);
     }
 
@@ -300,7 +305,7 @@ public class OverviewController {
     @GetMapping("/ek")
     public ResponseEntity<OverviewEkChartResponseDto> getEkChartData(@RequestParam int year) {
         logger.debug("Overview EK request for year {}", year);
-        OverviewEkChartResponseDto result = overviewService.getEkChartData(year);
+        OverviewEkChartResponseDto result = overviewKpiStoreService.getEkChartData(year);
         return ResponseEntity.ok()
                 .header("X-Ek-Year-Type", result.getYearType())
                 .body(result);
@@ -500,17 +505,17 @@ public class OverviewController {
     }
 
     /**
-     * Выгрузка дашборда «Закупки по ЦФО» в Excel.
+     * Выгрузка дашборда «Закупки по ЦФО» в Excel: файл пишется в ответ по мере формирования.
      */
     @GetMapping("/purchases-by-cfo/export")
-    public ResponseEntity<byte[]> exportPurchasesByCfo(
+    public ResponseEntity<StreamingResponseBody> exportPurchasesByCfo(
             @RequestParam(required = false) List<String> cfo,
             @RequestParam(required = false) List<Integer> year) {
         logger.debug("Overview purchases-by-cfo export (cfo={}, year={})", cfo, year);
-        byte[] data = overviewService.exportPurchasesByCfoToExcel(cfo, year);
         HttpHeaders headers = new HttpHeaders();
         headers.setContentType(MediaType.parseMediaType("application/vnd.openxmlformats-officedocument.spreadsheetml.sheet"));
         headers.setContentDisposition(ContentDisposition.attachment().filename("purchases-by-cfo.xlsx").build());
-        return ResponseEntity.ok().headers(headers).body(data);
+        StreamingResponseBody body = out -> overviewService.exportPurchasesByCfoToExcel(cfo, year, out);
+        return ResponseEntity.ok().headers(headers).body(body);
     }
 }
@@ -1,6 +1,8 @@
 package com.uzproc.backend.controller.purchase;
 
+import com.uzproc.backend.dto.common.KeysetPageDto;
 import com.uzproc.backend.dto.purchase.PurchaseDto;
+import com.uzproc.backend.dto.purchase.PurchaseListItemDto;
 import com.uzproc.backend.service.purchase.CompetitiveSheetService;
 import com.uzproc.backend.service.purchase.PurchaseService;
 import org.springframework.data.domain.Page;
@@ -60,6 +62,40 @@ public class PurchaseController {
         return ResponseEntity.ok(purchases);
     }
 
+    /**
+     * Лёгкий список закупок с keyset-пагинацией: те же фильтры, что у GET /purchases, порядок по id.
+     * Следующая страница запрашивается с cursor = nextCursor предыдущей.
+     */
+    @GetMapping("/keyset")
+    public ResponseEntity<KeysetPageDto<PurchaseListItemDto>> getPurchasesKeyset(
+            @RequestParam(required = false) String cursor,
+            @RequestParam(defaultValue = "50") int size,
+            @RequestParam(required = false) String sortDir,
+            @RequestParam(required = false) Integer year,
+            @RequestParam(required = false) Integer month,
+            @RequestParam(required = false) String innerId,
+            @RequestParam(required = false) Long purchaseNumber,
+            @RequestParam(required = false) List<String> cfo,
+            @RequestParam(required = false) String purchaseInitiator,
+            @RequestParam(required = false) String name,
+            @RequestParam(required = false) String costType,
+            @RequestParam(required = false) String contractType,
+            @RequestParam(required = false) Long purchaseRequestId,
+            @RequestParam(required = false) List<String> purchaser,
+            @RequestParam(required = false) List<String> status,
+            @RequestParam(required = false) java.math.BigDecimal budgetAmount,
+            @RequestParam(required = false) String budgetAmountOperator,
+            @RequestParam(required = false) String purchaseMethod) {
+        try {
+            return ResponseEntity.ok(purchaseService.findKeyset(
+                    cursor, size, sortDir, year, month, innerId, purchaseNumber, cfo, purchaseInitiator,
+                    name, costType, contractType, purchaseRequestId, purchaser, status,
+                    budgetAmount, budgetAmountOperator, purchaseMethod));
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().build();
+        }
+    }
+
     @GetMapping("/{id}")
     public ResponseEntity<PurchaseDto> getPurchaseById(@PathVariable Long id) {
         PurchaseDto purchase = purchaseService.findById(id);
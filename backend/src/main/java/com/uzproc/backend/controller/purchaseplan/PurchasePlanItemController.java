@@ -6,6 +6,7 @@ import com.uzproc.backend.dto.purchaseplan.UniqueFilterValuesDto;
 import com.uzproc.backend.entity.purchaseplan.PurchasePlanItemStatus;
 import com.uzproc.backend.service.purchaseplan.PurchasePlanItemChangeService;
 import com.uzproc.backend.service.purchaseplan.PurchasePlanItemService;
+import com.uzproc.backend.service.purchaseplan.PurchasePlanPurchaserSyncService;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.data.domain.Page;
@@ -25,10 +26,13 @@ public class PurchasePlanItemController {
     
     private final PurchasePlanItemService purchasePlanItemService;
     private final PurchasePlanItemChangeService purchasePlanItemChangeService;
+    private final PurchasePlanPurchaserSyncService purchasePlanPurchaserSyncService;
 
-    public PurchasePlanItemController(PurchasePlanItemService purchasePlanItemService, PurchasePlanItemChangeService purchasePlanItemChangeService) {
+    public PurchasePlanItemController(PurchasePlanItemService purchasePlanItemService, PurchasePlanItemChangeService purchasePlanItemChangeService,
+                                      PurchasePlanPurchaserSyncService purchasePlanPurchaserSyncService) {
         this.purchasePlanItemService = purchasePlanItemService;
         this.purchasePlanItemChangeService = purchasePlanItemChangeService;
+        this.purchasePlanPurchaserSyncService = purchasePlanPurchaserSyncService;
     }
 
     @GetMapping
@@ -461,6 +465,20 @@ public class PurchasePlanItemController {
             return ResponseEntity.status(500).body("Ошибка сервера: " + e.getMessage());
         }
     }
+
+    /**
+     * Сверка закупщика во всех позициях плана, связанных с заявками (доступ только ADMIN, см. SecurityConfig).
+     */
+    @PostMapping("/sync-purchasers")
+    public ResponseEntity<?> syncPurchasers() {
+        try {
+            int updated = purchasePlanPurchaserSyncService.syncAllLinked();
+            return ResponseEntity.ok(Map.of("updated", updated));
+        } catch (Exception e) {
+            logger.error("Error syncing purchasers of purchase plan items", e);
+            return ResponseEntity.status(500).body("Ошибка сервера: " + e.getMessage());
+        }
+    }
 }
 
 
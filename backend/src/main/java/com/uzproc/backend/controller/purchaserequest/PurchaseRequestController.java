@@ -1,8 +1,10 @@
 package com.uzproc.backend.controller.purchaserequest;
 
+import com.uzproc.backend.dto.common.KeysetPageDto;
 import com.uzproc.backend.dto.purchaserequest.PurchaseRequestChangeDto;
 import com.uzproc.backend.dto.purchaserequest.PurchaseRequestCommentDto;
 import com.uzproc.backend.dto.purchaserequest.PurchaseRequestDto;
+import com.uzproc.backend.dto.purchaserequest.PurchaseRequestListItemDto;
 import com.uzproc.backend.dto.purchaserequest.PurchaseRequestUniqueValuesDto;
 import com.uzproc.backend.dto.purchaserequest.PurchaserStatsDto;
 import com.uzproc.backend.dto.purchaserequest.PurchaserSummaryItemDto;
@@ -10,7 +12,8 @@ import com.uzproc.backend.service.purchaserequest.PurchaseRequestChangeService;
 import com.uzproc.backend.entity.purchaserequest.PurchaseRequestCommentType;
 import com.uzproc.backend.service.purchaserequest.PurchaseRequestCommentService;
 import com.uzproc.backend.service.purchaserequest.PurchaseRequestService;
-import com.uzproc.backend.service.excel.EntityExcelLoadService;
+import com.uzproc.backend.service.excel.ExcelImportJob;
+import com.uzproc.backend.service.excel.ExcelImportJobService;
 import com.uzproc.backend.service.user.UserService;
 import com.uzproc.backend.entity.user.User;
 import org.slf4j.Logger;
@@ -23,6 +26,7 @@ import org.springframework.web.multipart.MultipartFile;
 
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.RejectedExecutionException;
 
 @RestController
 @RequestMapping("/purchase-requests")
@@ -30,19 +34,19 @@ public class PurchaseRequestController {
 
     private static final Logger logger = LoggerFactory.getLogger(PurchaseRequestController.class);
     private final PurchaseRequestService purchaseRequestService;
-    private final EntityExcelLoadService excelLoadService;
+    private final ExcelImportJobService excelImportJobService;
     private final PurchaseRequestCommentService purchaseRequestCommentService;
     private final PurchaseRequestChangeService purchaseRequestChangeService;
     private final UserService userService;
 
     public PurchaseRequestController(
             PurchaseRequestService purchaseRequestService,
-            EntityExcelLoadService excelLoadService,
+            ExcelImportJobService excelImportJobService,
             PurchaseRequestCommentService purchaseRequestCommentService,
             PurchaseRequestChangeService purchaseRequestChangeService,
             UserService userService) {
         this.purchaseRequestService = purchaseRequestService;
-        this.excelLoadService = excelLoadService;
+        this.excelImportJobService = excelImportJobService;
         this.purchaseRequestCommentService = purchaseRequestCommentService;
         this.purchaseRequestChangeService = purchaseRequestChangeService;
         this.userService = userService;
@@ -155,6 +159,47 @@ public class PurchaseRequestController {
         return ResponseEntity.ok(purchaseRequests);
     }
 
+    /**
+     * Лёгкий список заявок с keyset-пагинацией: те же фильтры, что у GET /purchase-requests, порядок по id.
+     * Следующая страница запрашивается с cursor = nextCursor предыдущей; время страницы не зависит от глубины.
+     */
+    @GetMapping("/keyset")
+    public ResponseEntity<KeysetPageDto<PurchaseRequestListItemDto>> getPurchaseRequestsKeyset(
+            @RequestParam(required = false) String cursor,
+            @RequestParam(defaultValue = "50") int size,
+            @RequestParam(required = false) String sortDir,
+            @RequestParam(required = false) Integer year,
+            @RequestParam(required = false) Integer month,
+            @RequestParam(required = false) Long idPurchaseRequest,
+            @RequestParam(required = false) List<String> cfo,
+            @RequestParam(required = false) String purchaseRequestInitiator,
+            @RequestParam(required = false) List<String> purchaser,
+            @RequestParam(required = false) String name,
+            @RequestParam(required = false) String costType,
+            @RequestParam(required = false) String contractType,
+            @RequestParam(required = false) Boolean isPlanned,
+            @RequestParam(required = false) Boolean hasLinkedPlanItem,
+            @RequestParam(required = false) String complexity,
+            @RequestParam(required = false) Boolean requiresPurchase,
+            @RequestParam(required = false) List<String> statusGroup,
+            @RequestParam(required = false, defaultValue = "false") Boolean excludePendingStatuses,
+            @RequestParam(required = false) java.math.BigDecimal budgetAmount,
+            @RequestParam(required = false) String budgetAmountOperator,
+            @RequestParam(required = false) Boolean excludeFromInWork,
+            @RequestParam(required = false) Integer approvalAssignmentYear,
+            @RequestParam(required = false) Integer approvalAssignmentMonth) {
+        try {
+            return ResponseEntity.ok(purchaseRequestService.findKeyset(
+                    cursor, size, sortDir, year, month, idPurchaseRequest, cfo, purchaseRequestInitiator, purchaser,
+                    name, costType, contractType, isPlanned, hasLinkedPlanItem, complexity, requiresPurchase, statusGroup,
+                    excludePendingStatuses, budgetAmount, budgetAmountOperator, excludeFromInWork,
+                    approvalAssignmentYear, approvalAssignmentMonth));
+        } catch (IllegalArgumentException e) {
+            logger.warn("Invalid keyset cursor for purchase requests: {}", e.getMessage());
+            return ResponseEntity.badRequest().build();
+        }
+    }
+
     /**
      * Сводка по закупщикам для заявок «в работе» (без загрузки полных записей).
      * Используется блоком «Сводка по закупщикам» на странице заявок.
@@ -308,29 +353,43 @@ public class PurchaseRequestController {
         return ResponseEntity.ok(purchaseRequests);
     }
 
+    /**
+     * Ставит загрузку выгрузки alldocuments в очередь и сразу возвращает id задачи (202 Accepted).
+     * Ход загрузки — GET /upload-from-excel/jobs/{jobId}.
+     */
     @PostMapping("/upload-from-excel")
     public ResponseEntity<Map<String, Object>> uploadFromExcel(@RequestParam("file") MultipartFile file) {
         logger.info("Received file upload request: filename={}, size={}, contentType={}", 
             file.getOriginalFilename(), file.getSize(), file.getContentType());
         
-        Map<String, Object> response = excelLoadService.uploadFromExcel(file);
-        
-        boolean success = (Boolean) response.getOrDefault("success", false);
-        logger.info("File upload result: success={}, message={}, loadedCount={}", 
-            success, response.get("message"), response.get("loadedCount"));
-        
-        if (success) {
-            return ResponseEntity.ok(response);
-        } else {
-            // Проверяем, была ли это ошибка валидации (400) или серверная ошибка (500)
-            String message = (String) response.get("message");
-            if (message != null && (message.contains("не предоставлен") || message.contains("формате Excel"))) {
-                return ResponseEntity.badRequest().body(response);
-            }
-            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).body(response);
+        try {
+            ExcelImportJob job = excelImportJobService.submitAlldocumentsUpload(file);
+            return ResponseEntity.status(HttpStatus.ACCEPTED).body(excelImportJobService.toStatus(job));
+        } catch (IllegalArgumentException e) {
+            logger.warn("Validation error uploading Excel file: {}", e.getMessage());
+            return ResponseEntity.badRequest().body(Map.of("success", false, "message", e.getMessage()));
+        } catch (RejectedExecutionException e) {
+            logger.warn("Excel import queue is full, rejecting upload {}", file.getOriginalFilename());
+            return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE)
+                .body(Map.of("success", false, "message", "Очередь загрузок заполнена, повторите попытку позже"));
+        } catch (Exception e) {
+            logger.error("Error uploading Excel file", e);
+            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR)
+                .body(Map.of("success", false, "message", "Ошибка при загрузке файла: " + e.getMessage()));
         }
     }
 
+    /**
+     * Статус задачи загрузки: QUEUED/RUNNING/COMPLETED/FAILED, обработанные строки, созданные/обновлённые,
+     * ошибки, ETA; после завершения в result — итог загрузки.
+     */
+    @GetMapping("/upload-from-excel/jobs/{jobId}")
+    public ResponseEntity<Map<String, Object>> getUploadJobStatus(@PathVariable String jobId) {
+        return excelImportJobService.findJob(jobId)
+            .map(job -> ResponseEntity.ok(excelImportJobService.toStatus(job)))
+            .orElse(ResponseEntity.notFound().build());
+    }
+
     @PatchMapping("/{idPurchaseRequest}/exclude-from-in-work")
     public ResponseEntity<?> updateExcludeFromInWork(
             @PathVariable Long idPurchaseRequest,
@@ -0,0 +1,52 @@
+package com.uzproc.backend.controller.status;
+
+import com.uzproc.backend.service.status.StatusRecalculationService;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RestController;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Административный пересчёт статусов закупок, договоров и заявок (доступ только ADMIN, см. SecurityConfig).
+ */
+@RestController
+@RequestMapping("/statuses")
+public class StatusRecalculationController {
+
+    private final StatusRecalculationService statusRecalculationService;
+
+    public StatusRecalculationController(StatusRecalculationService statusRecalculationService) {
+        this.statusRecalculationService = statusRecalculationService;
+    }
+
+    /**
+     * Полный проход по всей базе.
+     */
+    @PostMapping("/recalculate-all")
+    public ResponseEntity<Map<String, Object>> recalculateAll() {
+        Map<String, Object> response = new HashMap<>();
+        try {
+            long startTime = System.currentTimeMillis();
+            statusRecalculationService.recalculateAll();
+            response.put("success", true);
+            response.put("message", "Статусы всех закупок, договоров и заявок обновлены");
+            response.put("timeMs", System.currentTimeMillis() - startTime);
+            return ResponseEntity.ok(response);
+        } catch (Exception e) {
+            response.put("success", false);
+            response.put("message", "Ошибка при обновлении статусов: " + e.getMessage());
+            return ResponseEntity.status(500).body(response);
+        }
+    }
+
+    /**
+     * Пересчёт только накопленных после импортов сущностей (то же, что выполняется по окончании загрузки).
+     */
+    @PostMapping("/recalculate-dirty")
+    public ResponseEntity<StatusRecalculationService.RecalculationResult> recalculateDirty() {
+        return ResponseEntity.ok(statusRecalculationService.recalculateDirty());
+    }
+}
@@ -1,15 +1,17 @@
 package com.uzproc.backend.controller.training;
 
 import com.uzproc.backend.entity.training.TrainingMedia;
+import com.uzproc.backend.service.file.FileDownloadService;
 import com.uzproc.backend.service.training.TrainingMediaService;
-import org.springframework.core.io.Resource;
-import org.springframework.http.HttpHeaders;
-import org.springframework.http.MediaType;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import org.springframework.http.CacheControl;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
 import org.springframework.web.multipart.MultipartFile;
 
 import java.io.IOException;
+import java.nio.file.Path;
 import java.util.List;
 import java.util.Map;
 import java.util.stream.Collectors;
@@ -19,9 +21,11 @@ import java.util.stream.Collectors;
 public class TrainingMediaController {
 
     private final TrainingMediaService service;
+    private final FileDownloadService fileDownloadService;
 
-    public TrainingMediaController(TrainingMediaService service) {
+    public TrainingMediaController(TrainingMediaService service, FileDownloadService fileDownloadService) {
         this.service = service;
+        this.fileDownloadService = fileDownloadService;
     }
 
     /**
@@ -68,23 +72,23 @@ public class TrainingMediaController {
 
     /**
      * GET /api/training/media/{slideId}/{type}
-     * Отдаёт файл (audio или video) для слайда.
+     * Отдаёт файл (audio или video) для слайда. Поддерживает Range — перемотка видео догружает только нужный фрагмент.
+     * Файл слайда может быть заменён по тому же адресу, поэтому кэш всегда перепроверяется по ETag (304 без тела).
      */
     @GetMapping("/{slideId}/{type}")
-    public ResponseEntity<Resource> getFile(
+    public void getFile(
             @PathVariable Integer slideId,
-            @PathVariable String type) throws IOException {
+            @PathVariable String type,
+            HttpServletRequest request,
+            HttpServletResponse response) throws IOException {
 
-        Resource resource = service.getFile(slideId, type);
+        Path file = service.getFile(slideId, type);
 
         String contentType = "application/octet-stream";
         if (type.equals("audio")) contentType = "audio/mpeg";
         else if (type.equals("video")) contentType = "video/mp4";
 
-        return ResponseEntity.ok()
-                .contentType(MediaType.parseMediaType(contentType))
-                .header(HttpHeaders.ACCEPT_RANGES, "bytes")
-                .body(resource);
+        fileDownloadService.serve(file, contentType, null, CacheControl.noCache().cachePrivate(), request, response);
     }
 
     /**
@@ -0,0 +1,12 @@
+package com.uzproc.backend.dto.common;
+
+import java.util.List;
+
+/**
+ * Страница keyset-пагинации: записи и непрозрачный токен продолжения.
+ *
+ * @param items      записи страницы
+ * @param nextCursor токен для следующей страницы (параметр cursor); null — записей больше нет
+ */
+public record KeysetPageDto<T>(List<T> items, String nextCursor) {
+}
@@ -0,0 +1,34 @@
+package com.uzproc.backend.dto.contract;
+
+import com.uzproc.backend.entity.contract.ContractStatus;
+import com.uzproc.backend.entity.contract.CustomerOrganization;
+
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+import java.util.List;
+
+/**
+ * Строка лёгкого списка договоров (keyset): колонки договора и поля, посчитанные батчем для всей страницы.
+ *
+ * @param preparedBy ФИО подготовившего (фамилия и имя, как в ContractDto)
+ * @param suppliers  наименования контрагентов
+ */
+public record ContractListItemDto(
+        Long id,
+        String innerId,
+        LocalDateTime contractCreationDate,
+        String name,
+        String title,
+        String cfo,
+        String documentForm,
+        BigDecimal budgetAmount,
+        String currency,
+        ContractStatus status,
+        CustomerOrganization customerOrganization,
+        Long purchaseRequestId,
+        LocalDateTime registrationDate,
+        Boolean isTypicalForm,
+        String preparedBy,
+        List<String> suppliers
+) {
+}
@@ -1,5 +1,8 @@
 package com.uzproc.backend.dto.overview;
 
+import com.fasterxml.jackson.annotation.JsonCreator;
+import com.fasterxml.jackson.annotation.JsonProperty;
+
 import java.util.List;
 
 /**
@@ -19,8 +22,11 @@ public class OverviewEkChartResponseDto {
         this(yearType, rows, null, false);
     }
 
-    public OverviewEkChartResponseDto(String yearType, List<OverviewEkChartRowDto> rows,
-                                     String baseCurrency, boolean amountsInBaseCurrency) {
+    @JsonCreator
+    public OverviewEkChartResponseDto(@JsonProperty("yearType") String yearType,
+                                     @JsonProperty("rows") List<OverviewEkChartRowDto> rows,
+                                     @JsonProperty("baseCurrency") String baseCurrency,
+                                     @JsonProperty("amountsInBaseCurrency") boolean amountsInBaseCurrency) {
         this.yearType = yearType;
         this.rows = rows != null ? rows : List.of();
         this.baseCurrency = baseCurrency;
@@ -0,0 +1,31 @@
+package com.uzproc.backend.dto.purchase;
+
+import com.uzproc.backend.entity.purchase.PurchaseStatus;
+
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+import java.util.List;
+
+/**
+ * Строка лёгкого списка закупок (keyset): колонки закупки и поля, посчитанные батчем для всей страницы.
+ *
+ * @param contractInnerIds внутренние номера связанных договоров (purchase_contracts)
+ */
+public record PurchaseListItemDto(
+        Long id,
+        Long purchaseNumber,
+        LocalDateTime purchaseCreationDate,
+        String innerId,
+        String name,
+        String title,
+        String cfo,
+        String purchaseMethod,
+        String purchaseInitiator,
+        BigDecimal budgetAmount,
+        String currency,
+        PurchaseStatus status,
+        BigDecimal savings,
+        Long purchaseRequestId,
+        List<String> contractInnerIds
+) {
+}
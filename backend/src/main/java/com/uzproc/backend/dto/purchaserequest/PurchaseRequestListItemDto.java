@@ -0,0 +1,37 @@
+package com.uzproc.backend.dto.purchaserequest;
+
+import com.uzproc.backend.entity.purchaserequest.PurchaseRequestStatus;
+
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+
+/**
+ * Строка лёгкого списка заявок (keyset): колонки заявки и поля, посчитанные батчем для всей страницы.
+ *
+ * @param approvalAssignmentDate дата назначения на утверждение (MIN по этапам «Утверждение заявки на ЗП»)
+ * @param commentCount           количество комментариев
+ */
+public record PurchaseRequestListItemDto(
+        Long id,
+        Long idPurchaseRequest,
+        LocalDateTime purchaseRequestCreationDate,
+        String innerId,
+        String name,
+        String title,
+        String cfo,
+        String purchaseRequestInitiator,
+        String purchaser,
+        BigDecimal budgetAmount,
+        String currency,
+        String costType,
+        String contractType,
+        Boolean isPlanned,
+        Boolean requiresPurchase,
+        PurchaseRequestStatus status,
+        String statusGroup,
+        String complexity,
+        Boolean excludeFromInWork,
+        LocalDateTime approvalAssignmentDate,
+        long commentCount
+) {
+}
@@ -15,7 +15,8 @@ import java.time.LocalDateTime;
 public class Arrival {
 
     @Id
-    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "arrivals_id_seq")
+    @SequenceGenerator(name = "arrivals_id_seq", sequenceName = "arrivals_id_seq", allocationSize = 50)
     private Long id;
 
     @Column(name = "date")
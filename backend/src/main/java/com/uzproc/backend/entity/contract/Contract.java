@@ -19,7 +19,8 @@ import java.util.UUID;
 public class Contract {
 
     @Id
-    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "contracts_id_seq")
+    @SequenceGenerator(name = "contracts_id_seq", sequenceName = "contracts_id_seq", allocationSize = 50)
     private Long id;
 
     @Column(name = "guid", unique = true, nullable = true, updatable = false)
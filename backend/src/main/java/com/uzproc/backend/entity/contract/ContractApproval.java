@@ -20,7 +20,8 @@ import java.util.UUID;
 public class ContractApproval {
 
     @Id
-    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "contract_approvals_id_seq")
+    @SequenceGenerator(name = "contract_approvals_id_seq", sequenceName = "contract_approvals_id_seq", allocationSize = 50)
     private Long id;
 
     @Column(name = "contract_id", nullable = false)
@@ -17,7 +17,8 @@ import java.util.UUID;
 public class Purchase {
 
     @Id
-    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "purchases_id_seq")
+    @SequenceGenerator(name = "purchases_id_seq", sequenceName = "purchases_id_seq", allocationSize = 50)
     private Long id;
 
     @Column(name = "guid", unique = true, nullable = true, updatable = false)
@@ -16,7 +16,8 @@ import java.util.UUID;
 public class PurchasePlanItemVersion {
 
     @Id
-    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "purchase_plan_item_versions_id_seq")
+    @SequenceGenerator(name = "purchase_plan_item_versions_id_seq", sequenceName = "purchase_plan_item_versions_id_seq", allocationSize = 50)
     private Long id;
 
     @ManyToOne(fetch = FetchType.LAZY)
@@ -26,6 +27,11 @@ public class PurchasePlanItemVersion {
     @Column(name = "purchase_plan_item_id")
     private Long purchasePlanItemId;
 
+    // id позиции плана, по которому строки разных версий сопоставляются при восстановлении дельт;
+    // в отличие от purchase_plan_item_id не обнуляется при удалении позиции
+    @Column(name = "item_key", nullable = false)
+    private Long itemKey;
+
     @Column(name = "guid")
     private UUID guid;
 
@@ -111,6 +117,10 @@ public class PurchasePlanItemVersion {
     @Column(name = "is_strategic_product")
     private Boolean isStrategicProduct;
 
+    // Позиция удалена из плана после предыдущей версии (строка-надгробие дельты)
+    @Column(name = "is_deleted", nullable = false)
+    private Boolean isDeleted = false;
+
     @CreationTimestamp
     @Column(name = "created_at", nullable = false, updatable = false)
     private LocalDateTime createdAt;
@@ -359,6 +369,22 @@ public class PurchasePlanItemVersion {
         this.isStrategicProduct = isStrategicProduct;
     }
 
+    public Long getItemKey() {
+        return itemKey;
+    }
+
+    public void setItemKey(Long itemKey) {
+        this.itemKey = itemKey;
+    }
+
+    public Boolean getIsDeleted() {
+        return isDeleted;
+    }
+
+    public void setIsDeleted(Boolean isDeleted) {
+        this.isDeleted = isDeleted;
+    }
+
     public LocalDateTime getCreatedAt() {
         return createdAt;
     }
@@ -4,8 +4,6 @@ import jakarta.persistence.*;
 import org.hibernate.annotations.CreationTimestamp;
 
 import java.time.LocalDateTime;
-import java.util.ArrayList;
-import java.util.List;
 
 @Entity
 @Table(name = "purchase_plan_versions")
@@ -37,8 +35,13 @@ public class PurchasePlanVersion {
     @Column(name = "created_at", nullable = false, updatable = false)
     private LocalDateTime createdAt;
 
-    @OneToMany(mappedBy = "version", cascade = CascadeType.ALL, fetch = FetchType.LAZY)
-    private List<PurchasePlanItemVersion> items = new ArrayList<>();
+    // Версия хранит полный снимок строк плана; иначе — только строки, изменившиеся с предыдущей версии
+    @Column(name = "is_full_snapshot", nullable = false)
+    private Boolean isFullSnapshot = false;
+
+    // Количество позиций в восстановленной (полной) версии
+    @Column(name = "items_count", nullable = false)
+    private Integer itemsCount = 0;
 
     public PurchasePlanVersion() {
     }
@@ -108,12 +111,20 @@ public class PurchasePlanVersion {
         this.createdAt = createdAt;
     }
 
-    public List<PurchasePlanItemVersion> getItems() {
-        return items;
+    public Boolean getIsFullSnapshot() {
+        return isFullSnapshot;
+    }
+
+    public void setIsFullSnapshot(Boolean isFullSnapshot) {
+        this.isFullSnapshot = isFullSnapshot;
+    }
+
+    public Integer getItemsCount() {
+        return itemsCount;
     }
 
-    public void setItems(List<PurchasePlanItemVersion> items) {
-        this.items = items;
+    public void setItemsCount(Integer itemsCount) {
+        this.itemsCount = itemsCount;
     }
 
     public Boolean getIsStrategicProduct() {
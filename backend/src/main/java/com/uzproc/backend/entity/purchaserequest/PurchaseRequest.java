@@ -16,7 +16,8 @@ import java.util.UUID;
 public class PurchaseRequest {
 
     @Id
-    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "purchase_requests_id_seq")
+    @SequenceGenerator(name = "purchase_requests_id_seq", sequenceName = "purchase_requests_id_seq", allocationSize = 50)
     private Long id;
 
     @Column(name = "guid", unique = true, nullable = true, updatable = false)
@@ -17,7 +17,8 @@ import java.time.LocalDateTime;
 public class PurchaseRequestApproval {
 
     @Id
-    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "purchase_request_approvals_id_seq")
+    @SequenceGenerator(name = "purchase_request_approvals_id_seq", sequenceName = "purchase_request_approvals_id_seq", allocationSize = 50)
     private Long id;
 
     @Column(name = "id_purchase_request", nullable = false)
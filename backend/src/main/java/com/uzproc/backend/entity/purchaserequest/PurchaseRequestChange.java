@@ -12,7 +12,8 @@ import java.util.UUID;
 public class PurchaseRequestChange {
 
     @Id
-    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "purchase_request_changes_id_seq")
+    @SequenceGenerator(name = "purchase_request_changes_id_seq", sequenceName = "purchase_request_changes_id_seq", allocationSize = 50)
     private Long id;
 
     @Column(name = "purchase_request_id", nullable = false)
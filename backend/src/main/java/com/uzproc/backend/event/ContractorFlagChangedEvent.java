@@ -0,0 +1,11 @@
+package com.uzproc.backend.event;
+
+/**
+ * У пользователя изменился признак договорника (users.is_contractor).
+ * По событию {@link com.uzproc.backend.service.contract.ContractSlaFactService} пересчитывает строки витрины SLA
+ * договоров, подготовленных этим пользователем: в витрину попадают только документы договорников.
+ *
+ * @param userId id пользователя
+ */
+public record ContractorFlagChangedEvent(Long userId) {
+}
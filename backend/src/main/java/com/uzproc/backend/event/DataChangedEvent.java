@@ -0,0 +1,24 @@
+package com.uzproc.backend.event;
+
+/**
+ * Данные заявок/закупок/договоров изменились массово (импорт Excel, пересчёт статусов, стартовый импорт)
+ * или изменилось то, что влияет на агрегаты дашбордов (исключение из KPI, отзыв CSI).
+ * Слушатели обновляют производные данные (витрина KPI «Обзора», кэши справочных эндпоинтов).
+ *
+ * @param source       источник изменения для логов: alldocuments, startup-import, kpi-exclusion, csi-feedback,
+ *                     имя этапа стартового импорта, ...
+ * @param intermediate промежуточное событие серии (этап стартового импорта): дешёвые кэши сбрасываются сразу,
+ *                     дорогие пересчёты ждут итогового события
+ */
+public record DataChangedEvent(String source, boolean intermediate) {
+
+    public static final String SOURCE_ALLDOCUMENTS = "alldocuments";
+    public static final String SOURCE_STARTUP_IMPORT = "startup-import";
+    public static final String SOURCE_STATUS_UPDATE = "status-update";
+    public static final String SOURCE_KPI_EXCLUSION = "kpi-exclusion";
+    public static final String SOURCE_CSI_FEEDBACK = "csi-feedback";
+
+    public DataChangedEvent(String source) {
+        this(source, false);
+    }
+}
@@ -0,0 +1,18 @@
+package com.uzproc.backend.event;
+
+import java.util.Set;
+
+/**
+ * Загрузчик Excel сохранил (создал или изменил) заявки, закупки или договоры с указанными ключами.
+ * Ключи сохраняются в {@link com.uzproc.backend.service.status.StatusDirtySet} и определяют, чьи статусы
+ * пересчитывать после импорта, вместо полного прохода по всей базе.
+ * Публикуется после записи в БД: внутри транзакции ключи записываются в ней же, перед фиксацией.
+ *
+ * @param type тип сущности
+ * @param ids  ключи: для заявок — id_purchase_request, для закупок — purchase_request_id
+ *             (ключ {@link com.uzproc.backend.service.purchase.PurchaseStatusUpdateService}), для договоров — id
+ */
+public record EntityIdsChangedEvent(EntityType type, Set<Long> ids) {
+
+    public enum EntityType { PURCHASE_REQUEST, PURCHASE, CONTRACT }
+}
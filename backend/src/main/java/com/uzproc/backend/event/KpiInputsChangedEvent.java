@@ -0,0 +1,14 @@
+package com.uzproc.backend.event;
+
+import java.util.Set;
+
+/**
+ * Пользователь изменил в интерфейсе поле заявки или её закупки, от которого зависят дашборды «Обзора»
+ * (скрытие из работы, плановый SLA, исключение из KPI, тип экономии). По событию
+ * {@link com.uzproc.backend.service.overview.OverviewFactService} пересчитывает строки витрины этих заявок
+ * после фиксации транзакции. Смену закупщика передаёт {@link PurchaserChangedEvent}.
+ *
+ * @param purchaseRequestIds id_purchase_request заявок
+ */
+public record KpiInputsChangedEvent(Set<Long> purchaseRequestIds) {
+}
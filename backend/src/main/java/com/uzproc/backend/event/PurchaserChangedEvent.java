@@ -0,0 +1,14 @@
+package com.uzproc.backend.event;
+
+import java.util.Set;
+
+/**
+ * У заявок изменился закупщик (правка в интерфейсе или импорт Excel).
+ * По событию {@link com.uzproc.backend.service.purchaseplan.PurchasePlanPurchaserSyncService} переносит закупщика
+ * в связанные позиции плана одним UPDATE. Публикуется внутри транзакции записи заявок: обработчик
+ * выполняется после её фиксации, поэтому видит уже сохранённого закупщика.
+ *
+ * @param purchaseRequestIds id_purchase_request заявок
+ */
+public record PurchaserChangedEvent(Set<Long> purchaseRequestIds) {
+}
@@ -0,0 +1,29 @@
+package com.uzproc.backend.repository.contract;
+
+import com.uzproc.backend.entity.contract.ContractStatus;
+import com.uzproc.backend.entity.contract.CustomerOrganization;
+
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+
+/**
+ * Плоская проекция договора для keyset-списка: колонки contracts, имя ЦФО и ФИО подготовившего.
+ */
+public interface ContractListRow {
+    Long getId();
+    String getInnerId();
+    LocalDateTime getContractCreationDate();
+    String getName();
+    String getTitle();
+    String getCfo();
+    String getDocumentForm();
+    BigDecimal getBudgetAmount();
+    String getCurrency();
+    ContractStatus getStatus();
+    CustomerOrganization getCustomerOrganization();
+    Long getPurchaseRequestId();
+    LocalDateTime getRegistrationDate();
+    Boolean getIsTypicalForm();
+    String getPreparedBySurname();
+    String getPreparedByName();
+}
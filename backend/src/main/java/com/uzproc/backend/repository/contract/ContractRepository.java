@@ -8,6 +8,7 @@ import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
+import java.util.Collection;
 import java.util.List;
 import java.util.Optional;
 import java.util.UUID;
@@ -49,6 +50,8 @@ public interface ContractRepository extends JpaRepository<Contract, Long>, JpaSp
     Optional<Contract> findByGuid(UUID guid);
     boolean existsByGuid(UUID guid);
     Optional<Contract> findByInnerId(String innerId);
+    /** Пакетная выборка по внутренним номерам — предзагрузка карты идентичности импорта alldocuments. */
+    List<Contract> findByInnerIdIn(Collection<String> innerIds);
 
     /**
      * Пересчитывает дату регистрации (registration_date) для всех договоров:
@@ -64,6 +67,19 @@ public interface ContractRepository extends JpaRepository<Contract, Long>, JpaSp
            nativeQuery = true)
     int recomputeAllRegistrationDates();
 
+    /**
+     * То же, что {@link #recomputeAllRegistrationDates()}, только для указанных договоров
+     * (инкрементальный пересчёт после импорта).
+     */
+    @Modifying
+    @org.springframework.transaction.annotation.Transactional
+    @Query(value = "UPDATE contracts c SET registration_date = (" +
+                   "SELECT MAX(a.completion_date) FROM contract_approvals a " +
+                   "WHERE a.contract_id = c.id AND LOWER(a.stage) LIKE 'регистрация%' AND a.completion_date IS NOT NULL) " +
+                   "WHERE c.id IN (:ids)",
+           nativeQuery = true)
+    int recomputeRegistrationDates(@Param("ids") Collection<Long> ids);
+
     /**
      * Лёгкая projection-выборка (inner_id, id) по всем договорам с непустым inner_id.
      * Используется для предзагрузки кэша inner_id → id при импорте согласований договоров,
@@ -126,5 +142,18 @@ public interface ContractRepository extends JpaRepository<Contract, Long>, JpaSp
 
     @Query("SELECT DISTINCT c FROM Contract c LEFT JOIN FETCH c.suppliers WHERE c.purchaseRequestId IN :ids")
     List<Contract> findWithSuppliersByPurchaseRequestIdIn(@Param("ids") List<Long> ids);
-}
 
+    /** Строки keyset-списка договоров по id страницы (порядок — в вызывающем коде). */
+    @Query("SELECT c.id AS id, c.innerId AS innerId, c.contractCreationDate AS contractCreationDate, c.name AS name, " +
+           "c.title AS title, cf.name AS cfo, c.documentForm AS documentForm, c.budgetAmount AS budgetAmount, " +
+           "c.currency AS currency, c.status AS status, c.customerOrganization AS customerOrganization, " +
+           "c.purchaseRequestId AS purchaseRequestId, c.registrationDate AS registrationDate, " +
+           "c.isTypicalForm AS isTypicalForm, u.surname AS preparedBySurname, u.name AS preparedByName " +
+           "FROM Contract c LEFT JOIN c.cfo cf LEFT JOIN c.preparedBy u WHERE c.id IN :ids")
+    List<ContractListRow> findListRowsByIdIn(@Param("ids") Collection<Long> ids);
+
+    /** Пары (contract_id, наименование контрагента) для страницы договоров. */
+    @Query(value = "SELECT cs.contract_id, s.name FROM contract_suppliers cs JOIN suppliers s ON s.id = cs.supplier_id " +
+                   "WHERE cs.contract_id IN (:ids) ORDER BY cs.contract_id, s.name", nativeQuery = true)
+    List<Object[]> findSupplierNamesByContractIdIn(@Param("ids") Collection<Long> ids);
+}
@@ -46,6 +46,19 @@ public interface DeliveryRepository extends JpaRepository<Delivery, Long>, JpaSp
             "JOIN d.paymentSchemeRef sr WHERE sr.label IN :labels")
     List<Delivery> findAutoCloseCandidatesBySchemeLabels(@Param("labels") Collection<String> labels);
 
+    /**
+     * Пары (id поставки, id договора) всех поставок, упорядоченные по договору: по ним сверка поставок
+     * режет работу на порции так, чтобы поставки одного договора попадали в одну порцию.
+     * У поставок без договора второй элемент — null.
+     */
+    @Query("SELECT d.id, c.id FROM Delivery d LEFT JOIN d.contract c ORDER BY c.id, d.id")
+    List<Object[]> findIdsWithContractIds();
+
+    /** Поставки по id с предзагрузкой оплат и схемы оплаты — одним запросом на порцию. */
+    @Query("SELECT DISTINCT d FROM Delivery d LEFT JOIN FETCH d.payments LEFT JOIN FETCH d.paymentSchemeRef " +
+            "WHERE d.id IN :ids")
+    List<Delivery> findWithPaymentsByIdIn(@Param("ids") Collection<Long> ids);
+
     /** Уникальные непустые значения «Статуса из отчёта» — для выпадающего фильтра. */
     @Query("SELECT DISTINCT d.reportStatus FROM Delivery d " +
             "WHERE d.reportStatus IS NOT NULL AND TRIM(d.reportStatus) <> '' " +
@@ -0,0 +1,13 @@
+package com.uzproc.backend.repository.excel;
+
+import com.uzproc.backend.entity.excel.ImportFileFingerprint;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.stereotype.Repository;
+
+import java.util.Optional;
+
+@Repository
+public interface ImportFileFingerprintRepository extends JpaRepository<ImportFileFingerprint, Long> {
+
+    Optional<ImportFileFingerprint> findBySourceAndFileName(String source, String fileName);
+}
@@ -31,4 +31,7 @@ public interface PaymentRepository extends JpaRepository<Payment, Long>, JpaSpec
 
     /** Все оплаты, привязанные к указанному договору */
     java.util.List<Payment> findByContractId(Long contractId);
+
+    /** Оплаты нескольких договоров одним запросом — для сверки поставок по порциям договоров */
+    java.util.List<Payment> findByContractIdIn(java.util.Collection<Long> contractIds);
 }
@@ -0,0 +1,26 @@
+package com.uzproc.backend.repository.purchase;
+
+import com.uzproc.backend.entity.purchase.PurchaseStatus;
+
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+
+/**
+ * Плоская проекция закупки для keyset-списка: только колонки purchases и имя ЦФО.
+ */
+public interface PurchaseListRow {
+    Long getId();
+    Long getPurchaseNumber();
+    LocalDateTime getPurchaseCreationDate();
+    String getInnerId();
+    String getName();
+    String getTitle();
+    String getCfo();
+    String getPurchaseMethod();
+    String getPurchaseInitiator();
+    BigDecimal getBudgetAmount();
+    String getCurrency();
+    PurchaseStatus getStatus();
+    BigDecimal getSavings();
+    Long getPurchaseRequestId();
+}
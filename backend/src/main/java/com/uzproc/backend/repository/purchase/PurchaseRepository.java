@@ -11,6 +11,7 @@ import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
 import java.time.LocalDateTime;
+import java.util.Collection;
 import java.util.List;
 import java.util.Optional;
 import java.util.UUID;
@@ -26,6 +27,8 @@ public interface PurchaseRepository extends JpaRepository<Purchase, Long>, JpaSp
     Optional<Purchase> findByPurchaseNumber(Long purchaseNumber);
     boolean existsByPurchaseNumber(Long purchaseNumber);
     Optional<Purchase> findByInnerId(String innerId);
+    /** Пакетная выборка по внутренним номерам — предзагрузка карты идентичности импорта alldocuments. */
+    List<Purchase> findByInnerIdIn(Collection<String> innerIds);
     boolean existsByInnerId(String innerId);
     Page<Purchase> findByPurchaseCreationDateBetween(LocalDateTime start, LocalDateTime end, Pageable pageable);
     List<Purchase> findByPurchaseRequestId(Long purchaseRequestId);
@@ -48,9 +51,17 @@ public interface PurchaseRepository extends JpaRepository<Purchase, Long>, JpaSp
     List<Object[]> countByMonthForPeriodAndStatus(@Param("status") PurchaseStatus status,
                                                   @Param("start") LocalDateTime start,
                                                   @Param("end") LocalDateTime end);
-}
-
-
-
 
+    /** Строки keyset-списка закупок по id страницы (порядок — в вызывающем коде). */
+    @Query("SELECT p.id AS id, p.purchaseNumber AS purchaseNumber, p.purchaseCreationDate AS purchaseCreationDate, " +
+           "p.innerId AS innerId, p.name AS name, p.title AS title, c.name AS cfo, p.purchaseMethod AS purchaseMethod, " +
+           "p.purchaseInitiator AS purchaseInitiator, p.budgetAmount AS budgetAmount, p.currency AS currency, " +
+           "p.status AS status, p.savings AS savings, p.purchaseRequestId AS purchaseRequestId " +
+           "FROM Purchase p LEFT JOIN p.cfo c WHERE p.id IN :ids")
+    List<PurchaseListRow> findListRowsByIdIn(@Param("ids") Collection<Long> ids);
 
+    /** Пары (purchase_id, contract_inner_id) для страницы закупок. */
+    @Query(value = "SELECT purchase_id, contract_inner_id FROM purchase_contracts " +
+                   "WHERE purchase_id IN (:ids) ORDER BY purchase_id, contract_inner_id", nativeQuery = true)
+    List<Object[]> findContractInnerIdsByPurchaseIdIn(@Param("ids") Collection<Long> ids);
+}
@@ -26,10 +26,6 @@ public interface PurchasePlanItemRepository extends JpaRepository<PurchasePlanIt
     // Поиск всех записей по году
     List<PurchasePlanItem> findByYear(Integer year);
     
-    // Поиск всех записей по году с загрузкой purchaser (для создания версий)
-    @org.springframework.data.jpa.repository.Query("SELECT p FROM PurchasePlanItem p LEFT JOIN FETCH p.purchaser WHERE p.year = :year")
-    List<PurchasePlanItem> findByYearWithPurchaser(@org.springframework.data.repository.query.Param("year") Integer year);
-    
     // Поиск всех уникальных годов
     @org.springframework.data.jpa.repository.Query("SELECT DISTINCT p.year FROM PurchasePlanItem p WHERE p.year IS NOT NULL ORDER BY p.year DESC")
     List<Integer> findDistinctYears();
@@ -44,18 +40,6 @@ public interface PurchasePlanItemRepository extends JpaRepository<PurchasePlanIt
     @org.springframework.data.jpa.repository.Query(value = "SELECT purchaser_id FROM purchase_plan_items WHERE id = :id", nativeQuery = true)
     Long findPurchaserIdById(@org.springframework.data.repository.query.Param("id") Long id);
     
-    // Обновление purchaser_id напрямую через SQL (минуя кэш Hibernate)
-    // UPDATE только если purchaser_id отличается от нового значения
-    @org.springframework.data.jpa.repository.Modifying
-    @org.springframework.data.jpa.repository.Query(value = "UPDATE purchase_plan_items SET purchaser_id = :purchaserId WHERE id = :id AND (purchaser_id IS NULL OR purchaser_id != :purchaserId)", nativeQuery = true)
-    int updatePurchaserIdById(@org.springframework.data.repository.query.Param("id") Long id, @org.springframework.data.repository.query.Param("purchaserId") Long purchaserId);
-    
-    // Очистка purchaser_id (SET NULL) напрямую через SQL (минуя кэш Hibernate)
-    // UPDATE только если purchaser_id сейчас не null
-    @org.springframework.data.jpa.repository.Modifying
-    @org.springframework.data.jpa.repository.Query(value = "UPDATE purchase_plan_items SET purchaser_id = NULL WHERE id = :id AND purchaser_id IS NOT NULL", nativeQuery = true)
-    int clearPurchaserIdById(@org.springframework.data.repository.query.Param("id") Long id);
-
     @Query("SELECT DISTINCT p.company FROM PurchasePlanItem p WHERE p.company IS NOT NULL ORDER BY p.company")
     List<Company> findDistinctCompany();
 
@@ -0,0 +1,30 @@
+package com.uzproc.backend.repository.purchaserequest;
+
+import com.uzproc.backend.entity.purchaserequest.PurchaseRequestStatus;
+
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+
+/**
+ * Плоская проекция заявки для keyset-списка: только колонки purchase_requests и имя ЦФО.
+ */
+public interface PurchaseRequestListRow {
+    Long getId();
+    Long getIdPurchaseRequest();
+    LocalDateTime getPurchaseRequestCreationDate();
+    String getInnerId();
+    String getName();
+    String getTitle();
+    String getCfo();
+    String getPurchaseRequestInitiator();
+    String getPurchaser();
+    BigDecimal getBudgetAmount();
+    String getCurrency();
+    String getCostType();
+    String getContractType();
+    Boolean getIsPlanned();
+    Boolean getRequiresPurchase();
+    PurchaseRequestStatus getStatus();
+    String getComplexity();
+    Boolean getExcludeFromInWork();
+}
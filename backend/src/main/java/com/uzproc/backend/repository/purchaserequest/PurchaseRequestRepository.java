@@ -37,18 +37,6 @@ public interface PurchaseRequestRepository extends JpaRepository<PurchaseRequest
     Page<PurchaseRequest> findByPurchaseRequestCreationDateBetween(LocalDateTime start, LocalDateTime end, Pageable pageable);
     Optional<PurchaseRequest> findByCsiToken(String csiToken);
 
-    /**
-     * Поиск заявок для публичного трекера статуса: по номеру заявки, предмету или ФИО инициатора.
-     * Регистронезависимо, ограничение количества через Pageable.
-     */
-    @Query("SELECT pr FROM PurchaseRequest pr WHERE " +
-           "LOWER(COALESCE(pr.purchaseRequestSubject, '')) LIKE LOWER(CONCAT('%', :q, '%')) " +
-           "OR LOWER(COALESCE(pr.name, '')) LIKE LOWER(CONCAT('%', :q, '%')) " +
-           "OR LOWER(COALESCE(pr.purchaseRequestInitiator, '')) LIKE LOWER(CONCAT('%', :q, '%')) " +
-           "OR CAST(pr.idPurchaseRequest AS string) LIKE CONCAT('%', :q, '%') " +
-           "ORDER BY pr.idPurchaseRequest DESC")
-    List<PurchaseRequest> searchForTracker(@org.springframework.data.repository.query.Param("q") String q, Pageable pageable);
-
     @Query("SELECT DISTINCT pr.status FROM PurchaseRequest pr WHERE pr.idPurchaseRequest IN (SELECT p.purchaseRequestId FROM PurchasePlanItem p WHERE p.purchaseRequestId IS NOT NULL) AND pr.status IS NOT NULL")
     List<PurchaseRequestStatus> findDistinctStatusLinkedFromPlan();
 
@@ -103,5 +91,15 @@ public interface PurchaseRequestRepository extends JpaRepository<PurchaseRequest
            "WHERE pr.purchaseRequestCreationDate IS NOT NULL AND (pr.status IS NULL OR pr.status NOT IN :pending) AND (pr.requiresPurchase IS NULL OR pr.requiresPurchase = false) " +
            "GROUP BY CAST(EXTRACT(YEAR FROM pr.purchaseRequestCreationDate) AS integer)")
     List<Object[]> countOrdersByCreationYear(@org.springframework.data.repository.query.Param("pending") Collection<PurchaseRequestStatus> pending);
-}
 
+    /** Строки keyset-списка заявок по id страницы (порядок — в вызывающем коде). */
+    @Query("SELECT pr.id AS id, pr.idPurchaseRequest AS idPurchaseRequest, " +
+           "pr.purchaseRequestCreationDate AS purchaseRequestCreationDate, pr.innerId AS innerId, pr.name AS name, " +
+           "pr.title AS title, c.name AS cfo, pr.purchaseRequestInitiator AS purchaseRequestInitiator, " +
+           "pr.purchaser AS purchaser, pr.budgetAmount AS budgetAmount, pr.currency AS currency, " +
+           "pr.costType AS costType, pr.contractType AS contractType, pr.isPlanned AS isPlanned, " +
+           "pr.requiresPurchase AS requiresPurchase, pr.status AS status, pr.complexity AS complexity, " +
+           "pr.excludeFromInWork AS excludeFromInWork " +
+           "FROM PurchaseRequest pr LEFT JOIN pr.cfo c WHERE pr.id IN :ids")
+    List<PurchaseRequestListRow> findListRowsByIdIn(@org.springframework.data.repository.query.Param("ids") Collection<Long> ids);
+}
@@ -23,6 +23,8 @@ public interface UserRepository extends JpaRepository<User, Long>, JpaSpecificat
     List<User> findByEmailIn(Collection<String> emails);
     boolean existsByUsername(String username);
     Optional<User> findBySurnameAndName(String surname, String name);
+    /** Первый по id пользователь с данным ФИО (ФИО не уникально). */
+    Optional<User> findFirstBySurnameAndNameOrderByIdAsc(String surname, String name);
 
     /**
      * Нечёткий поиск пользователя по частичному совпадению ФИО (для fuzzy-match при импорте плана).
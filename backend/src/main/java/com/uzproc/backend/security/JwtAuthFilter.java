@@ -30,9 +30,11 @@ public class JwtAuthFilter extends OncePerRequestFilter {
                                     FilterChain filterChain) throws ServletException, IOException {
         String token = extractTokenFromCookie(request);
 
-        if (token != null && jwtService.validateToken(token)) {
-            String email = jwtService.extractEmail(token);
-            String role = jwtService.extractRole(token);
+        // Подпись проверяется один раз за запрос (или берётся из кэша проверенных токенов)
+        JwtService.VerifiedToken verified = token != null ? jwtService.verify(token).orElse(null) : null;
+        if (verified != null) {
+            String email = verified.email();
+            String role = verified.role();
 
             if (email != null && SecurityContextHolder.getContext().getAuthentication() == null) {
                 String authority = "ROLE_" + (role != null ? role.toUpperCase() : "USER");
@@ -1,6 +1,10 @@
 package com.uzproc.backend.security;
 
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.Expiry;
 import io.jsonwebtoken.Claims;
+import io.jsonwebtoken.JwtParser;
 import io.jsonwebtoken.Jwts;
 import io.jsonwebtoken.security.Keys;
 import org.springframework.beans.factory.annotation.Value;
@@ -8,7 +12,11 @@ import org.springframework.stereotype.Service;
 
 import javax.crypto.SecretKey;
 import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Base64;
 import java.util.Date;
+import java.util.Optional;
 
 @Service
 public class JwtService {
@@ -19,6 +27,45 @@ public class JwtService {
     @Value("${security.jwt.expiration:86400}")
     private long expiration;
 
+    /**
+     * Проверенные токены: SHA-256 токена → данные из claims. Запись живёт до exp токена,
+     * поэтому параллельные запросы страницы (дашборды) не проверяют подпись одного и того же токена заново.
+     * Отозвать выданный токен до exp в приложении нельзя, так что кэш не меняет семантику проверки.
+     * Невалидные токены не кэшируются.
+     */
+    private final Cache<String, VerifiedToken> verifiedTokens;
+    private volatile JwtParser parser;
+
+    /**
+     * Данные проверенного токена.
+     *
+     * @param expiresAtMillis момент exp (мс с эпохи)
+     */
+    public record VerifiedToken(String email, String role, Long userId, long expiresAtMillis) {
+    }
+
+    public JwtService(@Value("${security.jwt.claims-cache.max-size:10000}") long claimsCacheMaxSize) {
+        this.verifiedTokens = Caffeine.newBuilder()
+                .maximumSize(claimsCacheMaxSize)
+                .expireAfter(new Expiry<String, VerifiedToken>() {
+                    @Override
+                    public long expireAfterCreate(String key, VerifiedToken token, long currentTime) {
+                        return Math.max(0, token.expiresAtMillis() - System.currentTimeMillis()) * 1_000_000L;
+                    }
+
+                    @Override
+                    public long expireAfterUpdate(String key, VerifiedToken token, long currentTime, long currentDuration) {
+                        return expireAfterCreate(key, token, currentTime);
+                    }
+
+                    @Override
+                    public long expireAfterRead(String key, VerifiedToken token, long currentTime, long currentDuration) {
+                        return currentDuration;
+                    }
+                })
+                .build();
+    }
+
     private SecretKey getSigningKey() {
         byte[] keyBytes = secret.getBytes(StandardCharsets.UTF_8);
         // Если ключ меньше 32 байт — дополняем нулями (не должно происходить в production)
@@ -49,13 +96,35 @@ public class JwtService {
                 .compact();
     }
 
-    public boolean validateToken(String token) {
+    /**
+     * Проверяет подпись и срок токена (один разбор на запрос, повторно — из кэша до exp).
+     *
+     * @return данные токена или empty, если токен невалиден или истёк
+     */
+    public Optional<VerifiedToken> verify(String token) {
+        String digest = digest(token);
+        VerifiedToken cached = verifiedTokens.getIfPresent(digest);
+        if (cached != null && cached.expiresAtMillis() > System.currentTimeMillis()) {
+            return Optional.of(cached);
+        }
+        Claims claims;
         try {
-            extractAllClaims(token);
-            return true;
+            claims = extractAllClaims(token);
         } catch (Exception e) {
-            return false;
+            return Optional.empty();
         }
+        Date exp = claims.getExpiration();
+        VerifiedToken verified = new VerifiedToken(
+                claims.getSubject(),
+                claims.get("role", String.class),
+                toLong(claims.get("userId")),
+                exp != null ? exp.getTime() : System.currentTimeMillis() + expiration * 1000L);
+        verifiedTokens.put(digest, verified);
+        return Optional.of(verified);
+    }
+
+    public boolean validateToken(String token) {
+        return verify(token).isPresent();
     }
 
     public String extractEmail(String token) {
@@ -67,7 +136,10 @@ public class JwtService {
     }
 
     public Long extractUserId(String token) {
-        Object userIdObj = extractAllClaims(token).get("userId");
+        return toLong(extractAllClaims(token).get("userId"));
+    }
+
+    private static Long toLong(Object userIdObj) {
         if (userIdObj instanceof Integer) {
             return ((Integer) userIdObj).longValue();
         }
@@ -78,10 +150,29 @@ public class JwtService {
     }
 
     private Claims extractAllClaims(String token) {
-        return Jwts.parser()
-                .verifyWith(getSigningKey())
-                .build()
+        return getParser()
                 .parseSignedClaims(token)
                 .getPayload();
     }
+
+    /** Парсер неизменяем и потокобезопасен: ключ и парсер строятся один раз. */
+    private JwtParser getParser() {
+        JwtParser result = parser;
+        if (result == null) {
+            result = Jwts.parser()
+                    .verifyWith(getSigningKey())
+                    .build();
+            parser = result;
+        }
+        return result;
+    }
+
+    private static String digest(String token) {
+        try {
+            byte[] hash = MessageDigest.getInstance("SHA-256").digest(token.getBytes(StandardCharsets.UTF_8));
+            return Base64.getEncoder().encodeToString(hash);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 is not available", e);
+        }
+    }
 }
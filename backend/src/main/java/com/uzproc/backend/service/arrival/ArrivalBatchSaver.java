@@ -2,15 +2,9 @@ package com.uzproc.backend.service.arrival;
 
 import com.uzproc.backend.entity.arrival.Arrival;
 import com.uzproc.backend.entity.arrival.ArrivalCurrency;
-import com.uzproc.backend.entity.supplier.Supplier;
-import com.uzproc.backend.entity.user.User;
 import com.uzproc.backend.repository.arrival.ArrivalRepository;
-import com.uzproc.backend.repository.supplier.SupplierRepository;
-import com.uzproc.backend.repository.user.UserRepository;
 import jakarta.persistence.EntityManager;
 import jakarta.persistence.PersistenceContext;
-import org.slf4j.Logger;
-import org.slf4j.LoggerFactory;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Propagation;
 import org.springframework.transaction.annotation.Transactional;
@@ -21,25 +15,19 @@ import java.util.Optional;
 /**
  * Сохраняет батч arrival-строк в отдельной транзакции.
  * Если батч падает — остальные батчи продолжают обрабатываться.
+ * Поставщик и ответственный приходят в строке уже разрешёнными и сохранёнными
+ * ({@link com.uzproc.backend.service.excel.ImportReferenceData}) — обращений к справочникам здесь нет.
  */
 @Service
 public class ArrivalBatchSaver {
 
-    private static final Logger logger = LoggerFactory.getLogger(ArrivalBatchSaver.class);
-
     private final ArrivalRepository arrivalRepository;
-    private final SupplierRepository supplierRepository;
-    private final UserRepository userRepository;
 
     @PersistenceContext
     private EntityManager entityManager;
 
-    public ArrivalBatchSaver(ArrivalRepository arrivalRepository,
-                             SupplierRepository supplierRepository,
-                             UserRepository userRepository) {
+    public ArrivalBatchSaver(ArrivalRepository arrivalRepository) {
         this.arrivalRepository = arrivalRepository;
-        this.supplierRepository = supplierRepository;
-        this.userRepository = userRepository;
     }
 
     /**
@@ -97,15 +85,12 @@ public class ArrivalBatchSaver {
         }
         if (data.comment != null) arrival.setComment(data.comment);
 
-        // Поставщик по ИНН
-        if (data.inn != null && !data.inn.isEmpty()) {
-            arrival.setSupplier(findOrCreateSupplier(data.inn));
+        // Поставщик по ИНН и ответственный (без id — справочную запись сохранить не удалось)
+        if (data.supplier != null && data.supplier.getId() != null) {
+            arrival.setSupplier(data.supplier);
         }
-
-        // Ответственный
-        if (data.responsible != null && !data.responsible.isEmpty()) {
-            User user = findOrCreateUser(data.responsible);
-            if (user != null) arrival.setResponsible(user);
+        if (data.responsibleUser != null && data.responsibleUser.getId() != null) {
+            arrival.setResponsible(data.responsibleUser);
         }
 
         // Дедупликация по номеру
@@ -124,29 +109,6 @@ public class ArrivalBatchSaver {
         }
     }
 
-    /**
-     * Находит существующего поставщика или создаёт нового.
-     * Ищем сначала по ИНН, затем по {@code code} — у поставщика на колонке {@code code}
-     * висит УНИКАЛЬНЫЙ индекс (idx_suppliers_code), а новый поставщик создаётся с {@code code = inn}.
-     * Раньше поиск шёл только по {@code inn}: если поставщик с таким {@code code} уже существовал,
-     * но с другим/пустым {@code inn}, вставлялся дубликат {@code code} → duplicate key,
-     * что портило весь батч. Поиск по {@code code} устраняет причину в корне.
-     */
-    private Supplier findOrCreateSupplier(String inn) {
-        Supplier supplier = supplierRepository.findFirstByInn(inn).orElse(null);
-        if (supplier == null) {
-            supplier = supplierRepository.findByCode(inn).orElse(null);
-        }
-        if (supplier == null) {
-            supplier = new Supplier(inn); // code = inn
-            supplier.setInn(inn);
-            supplier.setName(inn);
-            supplier = supplierRepository.save(supplier);
-            logger.debug("Created supplier with INN/code={}", inn);
-        }
-        return supplier;
-    }
-
     private boolean updateArrivalFields(Arrival existing, Arrival newData) {
         boolean updated = false;
         if (newData.getDate() != null && !newData.getDate().equals(existing.getDate())) {
@@ -187,70 +149,4 @@ public class ArrivalBatchSaver {
         }
         return updated;
     }
-
-    private User findOrCreateUser(String value) {
-        try {
-            String surname = null;
-            String name = null;
-            String department = null;
-            String position = null;
-
-            int openBracketIndex = value.indexOf('(');
-            int closeBracketIndex = value.indexOf(')');
-
-            if (openBracketIndex > 0 && closeBracketIndex > openBracketIndex) {
-                String namePart = value.substring(0, openBracketIndex).trim();
-                String departmentPart = value.substring(openBracketIndex + 1, closeBracketIndex).trim();
-                String[] nameParts = namePart.split("\\s+", 2);
-                if (nameParts.length >= 1) surname = nameParts[0].trim();
-                if (nameParts.length >= 2) name = nameParts[1].trim();
-                String[] deptParts = departmentPart.split(",", 2);
-                if (deptParts.length >= 1) department = deptParts[0].trim();
-                if (deptParts.length >= 2) position = deptParts[1].trim();
-            } else {
-                String[] nameParts = value.split("\\s+", 2);
-                if (nameParts.length >= 1) surname = nameParts[0].trim();
-                if (nameParts.length >= 2) name = nameParts[1].trim();
-            }
-
-            String username = (surname != null ? surname : "") + (name != null ? "_" + name : "");
-            if (username.isEmpty() || username.equals("_")) {
-                username = "user_" + System.currentTimeMillis();
-            }
-
-            User existingUser = null;
-            if (surname != null && name != null) {
-                existingUser = userRepository.findBySurnameAndName(surname, name).orElse(null);
-            }
-            if (existingUser == null) {
-                existingUser = userRepository.findByUsername(username).orElse(null);
-            }
-
-            if (existingUser != null) {
-                boolean userUpdated = false;
-                if (department != null && !department.equals(existingUser.getDepartment())) {
-                    existingUser.setDepartment(department); userUpdated = true;
-                }
-                if (position != null && !position.equals(existingUser.getPosition())) {
-                    existingUser.setPosition(position); userUpdated = true;
-                }
-                if (userUpdated) userRepository.save(existingUser);
-                return existingUser;
-            }
-
-            User newUser = new User();
-            newUser.setUsername(username);
-            newUser.setPassword("");
-            newUser.setSurname(surname);
-            newUser.setName(name);
-            newUser.setDepartment(department);
-            newUser.setPosition(position);
-            newUser = userRepository.save(newUser);
-            logger.debug("Created user for arrival responsible: {} {}", surname, name);
-            return newUser;
-        } catch (Exception e) {
-            logger.warn("Error parsing responsible '{}': {}", value, e.getMessage());
-            return null;
-        }
-    }
 }
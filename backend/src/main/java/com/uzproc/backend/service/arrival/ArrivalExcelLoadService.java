@@ -1,15 +1,16 @@
 package com.uzproc.backend.service.arrival;
 
-import org.apache.poi.hssf.usermodel.HSSFWorkbook;
+import com.uzproc.backend.service.excel.ImportPerson;
+import com.uzproc.backend.service.excel.ImportReferenceData;
+import com.uzproc.backend.service.excel.ImportReferenceDataService;
+import com.uzproc.backend.service.excel.StreamingSheetReader;
 import org.apache.poi.ss.usermodel.*;
-import org.apache.poi.xssf.usermodel.XSSFWorkbook;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.stereotype.Service;
 
 import java.math.BigDecimal;
 import java.io.File;
-import java.io.FileInputStream;
 import java.io.IOException;
 import java.time.Instant;
 import java.time.LocalDate;
@@ -51,10 +52,12 @@ public class ArrivalExcelLoadService {
     };
 
     private final ArrivalBatchSaver batchSaver;
+    private final ImportReferenceDataService referenceDataService;
     private final DataFormatter dataFormatter = new DataFormatter();
 
-    public ArrivalExcelLoadService(ArrivalBatchSaver batchSaver) {
+    public ArrivalExcelLoadService(ArrivalBatchSaver batchSaver, ImportReferenceDataService referenceDataService) {
         this.batchSaver = batchSaver;
+        this.referenceDataService = referenceDataService;
     }
 
     /**
@@ -62,37 +65,18 @@ public class ArrivalExcelLoadService {
      * Каждый батч — отдельная транзакция (REQUIRES_NEW).
      */
     public int loadArrivalsFromExcel(File excelFile) throws IOException {
-        Workbook workbook;
-        try (FileInputStream fis = new FileInputStream(excelFile)) {
-            if (excelFile.getName().endsWith(".xlsx")) {
-                workbook = new XSSFWorkbook(fis);
-            } else {
-                workbook = new HSSFWorkbook(fis);
-            }
-        }
-
-        try {
-            Sheet sheet = workbook.getSheetAt(0);
-            Map<String, Integer> columnIndexMap = null;
-            int headerRowIndex = -1;
-
-            for (int i = 0; i < Math.min(10, sheet.getLastRowNum() + 1); i++) {
-                Row row = sheet.getRow(i);
-                if (row == null) continue;
+        try (StreamingSheetReader reader = StreamingSheetReader.open(excelFile);
+             StreamingSheetReader.SheetCursor sheet = reader.openSheet(0)) {
+            Row headerRow = sheet.findHeaderRow(10, row -> {
                 Map<String, Integer> tempMap = buildColumnIndexMap(row);
-                Integer numberIdx = findColumnIndex(tempMap, NUMBER_COLUMN);
-                Integer dateIdx = findColumnIndex(tempMap, DATE_COLUMN);
-                if (numberIdx != null || dateIdx != null) {
-                    headerRowIndex = i;
-                    columnIndexMap = tempMap;
-                    break;
-                }
-            }
+                return findColumnIndex(tempMap, NUMBER_COLUMN) != null || findColumnIndex(tempMap, DATE_COLUMN) != null;
+            });
 
-            if (columnIndexMap == null) {
+            if (headerRow == null) {
                 logger.warn("Arrivals: header row not found in file {} (checked first 10 rows)", excelFile.getName());
                 return 0;
             }
+            Map<String, Integer> columnIndexMap = buildColumnIndexMap(headerRow);
 
             Integer dateColumnIndex = findColumnIndex(columnIndexMap, DATE_COLUMN);
             Integer numberColumnIndex = findColumnIndex(columnIndexMap, NUMBER_COLUMN);
@@ -113,19 +97,15 @@ public class ArrivalExcelLoadService {
                     warehouseColumnIndex, operationTypeColumnIndex, departmentColumnIndex, incomingDateColumnIndex,
                     incomingNumberColumnIndex, amountColumnIndex, currencyColumnIndex, commentColumnIndex, responsibleColumnIndex);
 
-            Iterator<Row> rowIterator = sheet.iterator();
-            for (int i = 0; i <= headerRowIndex && rowIterator.hasNext(); i++) {
-                rowIterator.next();
-            }
-
+            ImportReferenceData referenceData = referenceDataService.open();
             int loadedCount = 0;
             int skippedNoNumber = 0;
             int batchNumber = 0;
             Set<String> numbersSeen = new HashSet<>();
             List<ArrivalRowData> batch = new ArrayList<>(BATCH_SIZE);
 
-            while (rowIterator.hasNext()) {
-                Row row = rowIterator.next();
+            while (sheet.hasNext()) {
+                Row row = sheet.next();
                 if (isRowEmpty(row)) continue;
                 try {
                     ArrivalRowData data = parseRow(row, dateColumnIndex, numberColumnIndex, innColumnIndex,
@@ -148,7 +128,7 @@ public class ArrivalExcelLoadService {
 
                     if (batch.size() >= BATCH_SIZE) {
                         batchNumber++;
-                        loadedCount += flushBatch(batch);
+                        loadedCount += flushBatch(batch, referenceData);
                         logger.debug("Arrivals: batch {} saved ({} rows so far)", batchNumber, loadedCount);
                     }
                 } catch (Exception e) {
@@ -159,15 +139,13 @@ public class ArrivalExcelLoadService {
             // Последний неполный батч
             if (!batch.isEmpty()) {
                 batchNumber++;
-                loadedCount += flushBatch(batch);
+                loadedCount += flushBatch(batch, referenceData);
                 logger.debug("Arrivals: final batch {} saved ({} rows total)", batchNumber, loadedCount);
             }
 
-            logger.info("Loaded {} arrivals from file {} in {} batches (batch size={}, skipped without number: {})",
-                    loadedCount, excelFile.getName(), batchNumber, BATCH_SIZE, skippedNoNumber);
+            logger.info("Loaded {} arrivals from file {} in {} batches (batch size={}, skipped without number: {}; reference data: {})",
+                    loadedCount, excelFile.getName(), batchNumber, BATCH_SIZE, skippedNoNumber, referenceData.describe());
             return loadedCount;
-        } finally {
-            workbook.close();
         }
     }
 
@@ -177,10 +155,12 @@ public class ArrivalExcelLoadService {
      * Быстрый путь — {@link ArrivalBatchSaver#saveBatch}; если он упал (например, из-за
      * одной проблемной строки, испортившей сессию), батч сохраняется построчно через
      * {@link ArrivalBatchSaver#saveRowIsolated} — теряется только плохая строка, а не весь батч.
+     * Поставщики и ответственные батча разрешаются заранее, недостающие создаются одним пакетом.
      */
-    private int flushBatch(List<ArrivalRowData> batch) {
+    private int flushBatch(List<ArrivalRowData> batch, ImportReferenceData referenceData) {
         if (batch.isEmpty()) return 0;
         try {
+            resolveReferences(batch, referenceData);
             return batchSaver.saveBatch(batch);
         } catch (Exception e) {
             logger.warn("Arrivals: batch save failed ({}), retrying row-by-row for {} rows",
@@ -199,6 +179,18 @@ public class ArrivalExcelLoadService {
         }
     }
 
+    private void resolveReferences(List<ArrivalRowData> batch, ImportReferenceData referenceData) {
+        for (ArrivalRowData data : batch) {
+            if (data.inn != null && !data.inn.isEmpty()) {
+                data.supplier = referenceData.resolveSupplier(data.inn, null);
+            }
+            if (data.responsible != null && !data.responsible.isEmpty()) {
+                data.responsibleUser = referenceData.resolveUser(ImportPerson.parse(data.responsible));
+            }
+        }
+        referenceData.flushPending();
+    }
+
     private ArrivalRowData parseRow(Row row, Integer dateIdx, Integer numberIdx, Integer innIdx,
                                      Integer invoiceIdx, Integer warehouseIdx, Integer operationTypeIdx,
                                      Integer departmentIdx, Integer incomingDateIdx, Integer incomingNumberIdx,
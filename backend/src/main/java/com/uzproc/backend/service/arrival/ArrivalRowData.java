@@ -1,5 +1,8 @@
 package com.uzproc.backend.service.arrival;
 
+import com.uzproc.backend.entity.supplier.Supplier;
+import com.uzproc.backend.entity.user.User;
+
 import java.math.BigDecimal;
 import java.time.LocalDate;
 
@@ -20,4 +23,8 @@ public class ArrivalRowData {
     public String currency;
     public String comment;
     public String responsible;
+
+    // Справочные записи, разрешённые загрузчиком до сохранения батча (см. ImportReferenceData)
+    public Supplier supplier;
+    public User responsibleUser;
 }
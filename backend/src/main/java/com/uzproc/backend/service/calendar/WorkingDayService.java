@@ -8,72 +8,102 @@ import org.springframework.transaction.annotation.Transactional;
 import java.time.DayOfWeek;
 import java.time.LocalDate;
 import java.time.LocalDateTime;
-import java.util.HashSet;
+import java.util.Arrays;
 import java.util.List;
-import java.util.Map;
-import java.util.Set;
-import java.util.concurrent.ConcurrentHashMap;
-import java.util.stream.Collectors;
-import java.util.stream.Stream;
 
 /**
  * Рабочие дни: пн–пт, минус даты из таблицы {@code holidays}.
+ * <p>
+ * Подсчёт за O(log n) без перебора дней: число будних дней в диапазоне считается по формуле,
+ * праздники — двоичным поиском в отсортированном массиве праздников, выпадающих на будни
+ * (праздник в субботу/воскресенье рабочий день не отнимает). Индекс неизменяемый и строится
+ * одним запросом; {@link #clearHolidayCache()} собирает новый и подменяет ссылку целиком.
  */
 @Service
 @Transactional(readOnly = true)
 public class WorkingDayService {
 
+    /** Сдвиг epochDay так, чтобы остаток от деления на 7 был 0 у понедельника (1970-01-01 — четверг). */
+    private static final long MONDAY_SHIFT = 3;
+
     private final HolidayRepository holidayRepository;
-    private final Map<Integer, Set<LocalDate>> holidaysByYear = new ConcurrentHashMap<>();
+    private volatile HolidayIndex holidayIndex;
 
     public WorkingDayService(HolidayRepository holidayRepository) {
         this.holidayRepository = holidayRepository;
     }
 
-    /** Сброс кэша по годам (после ручного изменения праздников в БД без перезапуска). */
-    public void clearHolidayCache() {
-        holidaysByYear.clear();
-    }
-
-    private Set<LocalDate> holidaysForYear(int year) {
-        return holidaysByYear.computeIfAbsent(year, this::loadHolidaysForYear);
+    /**
+     * Неизменяемый индекс праздников.
+     *
+     * @param weekdayHolidays epochDay праздников, приходящихся на пн–пт, по возрастанию без повторов
+     */
+    private record HolidayIndex(long[] weekdayHolidays) {
+
+        boolean contains(long epochDay) {
+            return Arrays.binarySearch(weekdayHolidays, epochDay) >= 0;
+        }
+
+        /** Число праздников-будней с epochDay &lt; {@code epochDay}. */
+        int countBefore(long epochDay) {
+            int lo = 0;
+            int hi = weekdayHolidays.length;
+            while (lo < hi) {
+                int mid = (lo + hi) >>> 1;
+                if (weekdayHolidays[mid] < epochDay) {
+                    lo = mid + 1;
+                } else {
+                    hi = mid;
+                }
+            }
+            return lo;
+        }
     }
 
-    private Set<LocalDate> loadHolidaysForYear(int year) {
-        LocalDate from = LocalDate.of(year, 1, 1);
-        LocalDate to = LocalDate.of(year, 12, 31);
-        List<Holiday> list = holidayRepository.findByCalendarDateBetween(from, to);
-        return list.stream().map(Holiday::getCalendarDate).collect(Collectors.toCollection(HashSet::new));
+    /** Пересборка индекса праздников (после ручного изменения праздников в БД без перезапуска). */
+    public void clearHolidayCache() {
+        holidayIndex = loadHolidayIndex();
     }
 
-    private Set<LocalDate> holidaysOverlapping(LocalDate from, LocalDate to) {
-        if (from == null || to == null) {
-            return Set.of();
-        }
-        LocalDate a = from;
-        LocalDate b = to;
-        if (a.isAfter(b)) {
-            LocalDate t = a;
-            a = b;
-            b = t;
-        }
-        Set<LocalDate> out = new HashSet<>();
-        for (int y = a.getYear(); y <= b.getYear(); y++) {
-            for (LocalDate d : holidaysForYear(y)) {
-                if (!d.isBefore(a) && !d.isAfter(b)) {
-                    out.add(d);
+    private HolidayIndex holidayIndex() {
+        HolidayIndex index = holidayIndex;
+        if (index == null) {
+            synchronized (this) {
+                index = holidayIndex;
+                if (index == null) {
+                    index = loadHolidayIndex();
+                    holidayIndex = index;
                 }
             }
         }
-        return out;
+        return index;
     }
 
-    public boolean isWorkingDay(LocalDate date) {
+    private HolidayIndex loadHolidayIndex() {
+        List<Holiday> list = holidayRepository.findAll();
+        long[] days = list.stream()
+            .map(Holiday::getCalendarDate)
+            .filter(d -> d != null && !isWeekend(d))
+            .mapToLong(LocalDate::toEpochDay)
+            .sorted()
+            .distinct()
+            .toArray();
+        return new HolidayIndex(days);
+    }
+
+    private static boolean isWeekend(LocalDate date) {
         DayOfWeek dow = date.getDayOfWeek();
-        if (dow == DayOfWeek.SATURDAY || dow == DayOfWeek.SUNDAY) {
-            return false;
-        }
-        return !holidaysForYear(date.getYear()).contains(date);
+        return dow == DayOfWeek.SATURDAY || dow == DayOfWeek.SUNDAY;
+    }
+
+    /** Число будних дней (пн–пт) с epochDay &lt; {@code epochDay}, отсчитанное от фиксированного понедельника. */
+    private static long weekdaysBefore(long epochDay) {
+        long shifted = epochDay + MONDAY_SHIFT;
+        return 5 * Math.floorDiv(shifted, 7) + Math.min(Math.floorMod(shifted, 7), 5);
+    }
+
+    public boolean isWorkingDay(LocalDate date) {
+        return !isWeekend(date) && !holidayIndex().contains(date.toEpochDay());
     }
 
     /**
@@ -83,22 +113,11 @@ public class WorkingDayService {
         if (start == null || end == null || start.isAfter(end)) {
             return 0;
         }
-        Set<LocalDate> holidays = holidaysOverlapping(start, end);
-        long n = 0;
-        for (LocalDate d = start; !d.isAfter(end); d = d.plusDays(1)) {
-            if (isWorkingDay(d, holidays)) {
-                n++;
-            }
-        }
-        return n;
-    }
-
-    private static boolean isWorkingDay(LocalDate d, Set<LocalDate> holidays) {
-        DayOfWeek dow = d.getDayOfWeek();
-        if (dow == DayOfWeek.SATURDAY || dow == DayOfWeek.SUNDAY) {
-            return false;
-        }
-        return !holidays.contains(d);
+        long from = start.toEpochDay();
+        long toExclusive = end.toEpochDay() + 1;
+        HolidayIndex index = holidayIndex();
+        long weekdays = weekdaysBefore(toExclusive) - weekdaysBefore(from);
+        return weekdays - (index.countBefore(toExclusive) - index.countBefore(from));
     }
 
     /**
@@ -144,22 +163,12 @@ public class WorkingDayService {
         if (assignmentDate == null) {
             return 0;
         }
-        LocalDate assignDay = assignmentDate.toLocalDate();
-        LocalDate start = assignDay.plusDays(1);
+        LocalDate start = assignmentDate.toLocalDate().plusDays(1);
         LocalDate end = completionDate != null ? completionDate.toLocalDate() : LocalDate.now();
-        LocalDate rangeLo = Stream.of(assignDay, start, end).min(LocalDate::compareTo).orElse(assignDay);
-        LocalDate rangeHi = Stream.of(assignDay, start, end).max(LocalDate::compareTo).orElse(end);
-        Set<LocalDate> holidays = holidaysOverlapping(rangeLo, rangeHi);
         if (start.isAfter(end)) {
-            return isWorkingDay(end, holidays) ? 1 : 0;
-        }
-        long n = 0;
-        for (LocalDate d = start; !d.isAfter(end); d = d.plusDays(1)) {
-            if (isWorkingDay(d, holidays)) {
-                n++;
-            }
+            return isWorkingDay(end) ? 1 : 0;
         }
-        return n;
+        return countWorkingDaysInclusive(start, end);
     }
 
     /**
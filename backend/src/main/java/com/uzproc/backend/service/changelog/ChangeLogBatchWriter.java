@@ -0,0 +1,227 @@
+package com.uzproc.backend.service.changelog;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.sql.Types;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+/**
+ * Отложенная пакетная запись истории изменений (purchase_request_changes, purchase_plan_item_changes).
+ * <p>
+ * Вместо INSERT на каждое изменённое поле записи копятся и пишутся JDBC-пакетами:
+ * <ul>
+ *     <li>внутри транзакции — буфер привязан к ней и сбрасывается в beforeCommit на том же соединении,
+ *     поэтому история фиксируется (или откатывается) атомарно с самими данными;</li>
+ *     <li>без транзакции, но в открытой {@link #openScope() области} (импорт Excel идёт без общей транзакции) —
+ *     буфер потока, сбрасывается каждые {@value #BATCH_SIZE} записей, по {@link #flushScope()} и при закрытии;</li>
+ *     <li>иначе запись пишется сразу в собственной транзакции.</li>
+ * </ul>
+ * Пакетная вставка идёт мимо Hibernate (без сущностей в контексте), id берётся из DEFAULT nextval колонки:
+ * у purchase_request_changes последовательность с шагом 50, общая с пуловым генератором {@code PurchaseRequestChange}
+ * (V157), — каждая строка забирает верхнее значение собственного блока и не пересекается с блоками Hibernate;
+ * у purchase_plan_item_changes — обычный BIGSERIAL.
+ */
+@Component
+public class ChangeLogBatchWriter {
+
+    private static final Logger logger = LoggerFactory.getLogger(ChangeLogBatchWriter.class);
+
+    static final int BATCH_SIZE = 500;
+    /** Ограничение колонок value_before/value_after. */
+    private static final int MAX_VALUE_LENGTH = 1000;
+
+    /** Таблица истории изменений. */
+    public enum Target {
+        PURCHASE_REQUEST(
+            "INSERT INTO purchase_request_changes (purchase_request_id, guid, field_name, value_before, value_after, " +
+            "change_date, change_source, changed_by_display_name) VALUES (?, ?, ?, ?, ?, ?, ?, ?)"),
+        PURCHASE_PLAN_ITEM(
+            "INSERT INTO purchase_plan_item_changes (purchase_plan_item_id, guid, field_name, value_before, value_after, " +
+            "change_date) VALUES (?, ?, ?, ?, ?, ?)");
+
+        private final String insertSql;
+
+        Target(String insertSql) {
+            this.insertSql = insertSql;
+        }
+    }
+
+    /**
+     * Изменение одного поля. changeSource/changedByDisplayName пишутся только в историю заявок.
+     */
+    public record PendingChange(Long entityId, UUID guid, String fieldName, String valueBefore, String valueAfter,
+                                LocalDateTime changeDate, String changeSource, String changedByDisplayName) {
+    }
+
+    private final JdbcTemplate jdbcTemplate;
+    private final TransactionTemplate transactionTemplate;
+    private final ThreadLocal<Buffer> scopeBuffer = new ThreadLocal<>();
+
+    public ChangeLogBatchWriter(JdbcTemplate jdbcTemplate, PlatformTransactionManager transactionManager) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+    }
+
+    /**
+     * Ставит изменение в очередь записи (см. описание класса).
+     */
+    public void enqueue(Target target, PendingChange change) {
+        if (TransactionSynchronizationManager.isActualTransactionActive()
+                && TransactionSynchronizationManager.isSynchronizationActive()) {
+            transactionBuffer().add(target, change);
+            return;
+        }
+        Buffer buffer = scopeBuffer.get();
+        if (buffer != null) {
+            buffer.add(target, change);
+            if (buffer.size() >= BATCH_SIZE) {
+                flushDetached(buffer);
+            }
+            return;
+        }
+        Buffer single = new Buffer();
+        single.add(target, change);
+        flushDetached(single);
+    }
+
+    /**
+     * Открывает область буферизации для текущего потока вне транзакции (например, на время импорта Excel).
+     * Вложенный вызов возвращает пустую область: буфер сбрасывает внешняя.
+     */
+    public Scope openScope() {
+        if (scopeBuffer.get() != null) {
+            return () -> { };
+        }
+        scopeBuffer.set(new Buffer());
+        return () -> {
+            try {
+                flushScope();
+            } finally {
+                scopeBuffer.remove();
+            }
+        };
+    }
+
+    /**
+     * Сбрасывает буфер области текущего потока (вызывается после сохранения очередного пакета сущностей,
+     * чтобы история не отставала от данных).
+     */
+    public void flushScope() {
+        Buffer buffer = scopeBuffer.get();
+        if (buffer != null && buffer.size() > 0) {
+            flushDetached(buffer);
+        }
+    }
+
+    @FunctionalInterface
+    public interface Scope extends AutoCloseable {
+        @Override
+        void close();
+    }
+
+    private Buffer transactionBuffer() {
+        for (TransactionSynchronization synchronization : TransactionSynchronizationManager.getSynchronizations()) {
+            if (synchronization instanceof TransactionFlush flush) {
+                return flush.buffer;
+            }
+        }
+        TransactionFlush flush = new TransactionFlush();
+        TransactionSynchronizationManager.registerSynchronization(flush);
+        return flush.buffer;
+    }
+
+    private void flushDetached(Buffer buffer) {
+        try {
+            transactionTemplate.executeWithoutResult(status -> write(buffer));
+        } catch (Exception e) {
+            // Как и раньше при save по одной записи: сбой истории не прерывает импорт
+            logger.error("Error writing {} buffered change log entries: {}", buffer.size(), e.getMessage(), e);
+        }
+        buffer.clear();
+    }
+
+    private void write(Buffer buffer) {
+        for (Map.Entry<Target, List<PendingChange>> entry : buffer.byTarget.entrySet()) {
+            List<PendingChange> changes = entry.getValue();
+            if (changes.isEmpty()) {
+                continue;
+            }
+            Target target = entry.getKey();
+            jdbcTemplate.batchUpdate(target.insertSql, changes, BATCH_SIZE, (ps, change) -> bind(ps, target, change));
+            logger.debug("Wrote {} change log entries to {}", changes.size(), target);
+        }
+    }
+
+    private static void bind(PreparedStatement ps, Target target, PendingChange change) throws SQLException {
+        ps.setLong(1, change.entityId());
+        ps.setObject(2, change.guid(), Types.OTHER);
+        ps.setString(3, change.fieldName());
+        ps.setString(4, truncate(change.valueBefore()));
+        ps.setString(5, truncate(change.valueAfter()));
+        ps.setTimestamp(6, Timestamp.valueOf(change.changeDate()));
+        if (target == Target.PURCHASE_REQUEST) {
+            ps.setString(7, change.changeSource());
+            ps.setString(8, change.changedByDisplayName());
+        }
+    }
+
+    private static String truncate(String value) {
+        return value != null && value.length() > MAX_VALUE_LENGTH ? value.substring(0, MAX_VALUE_LENGTH) : value;
+    }
+
+    /** Буфер записей по таблицам. */
+    private static final class Buffer {
+        private final Map<Target, List<PendingChange>> byTarget = new EnumMap<>(Target.class);
+        private int size;
+
+        void add(Target target, PendingChange change) {
+            byTarget.computeIfAbsent(target, t -> new ArrayList<>()).add(change);
+            size++;
+        }
+
+        int size() {
+            return size;
+        }
+
+        void clear() {
+            byTarget.clear();
+            size = 0;
+        }
+    }
+
+    /**
+     * Буфер транзакции: синхронизации приостанавливаются вместе с транзакцией (REQUIRES_NEW),
+     * поэтому вложенная транзакция получает собственный буфер.
+     */
+    private final class TransactionFlush implements TransactionSynchronization {
+        private final Buffer buffer = new Buffer();
+
+        @Override
+        public void beforeCommit(boolean readOnly) {
+            if (buffer.size() > 0) {
+                write(buffer);
+                buffer.clear();
+            }
+        }
+
+        @Override
+        public void afterCompletion(int status) {
+            buffer.clear();
+        }
+    }
+}
@@ -1,17 +1,21 @@
 package com.uzproc.backend.service.contract;
 
 import com.uzproc.backend.entity.Cfo;
-import com.uzproc.backend.repository.CfoRepository;
+import com.uzproc.backend.entity.user.User;
+import com.uzproc.backend.event.EntityIdsChangedEvent;
 import com.uzproc.backend.repository.contract.ContractRepository;
-import org.apache.poi.hssf.usermodel.HSSFWorkbook;
+import com.uzproc.backend.service.excel.ApprovalMergeService;
+import com.uzproc.backend.service.excel.ImportPerson;
+import com.uzproc.backend.service.excel.ImportReferenceData;
+import com.uzproc.backend.service.excel.ImportReferenceDataService;
+import com.uzproc.backend.service.excel.StreamingSheetReader;
 import org.apache.poi.ss.usermodel.*;
-import org.apache.poi.xssf.usermodel.XSSFWorkbook;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.context.ApplicationEventPublisher;
 import org.springframework.stereotype.Service;
 
 import java.io.File;
-import java.io.FileInputStream;
 import java.io.IOException;
 import java.time.Instant;
 import java.time.LocalDate;
@@ -73,17 +77,20 @@ public class ContractApprovalExcelLoadService {
     };
 
     private final ContractRepository contractRepository;
-    private final CfoRepository cfoRepository;
+    private final ImportReferenceDataService referenceDataService;
     private final ContractApprovalBatchSaver batchSaver;
+    private final ApplicationEventPublisher eventPublisher;
     private final DataFormatter dataFormatter = new DataFormatter();
 
     public ContractApprovalExcelLoadService(
             ContractRepository contractRepository,
-            CfoRepository cfoRepository,
-            ContractApprovalBatchSaver batchSaver) {
+            ImportReferenceDataService referenceDataService,
+            ContractApprovalBatchSaver batchSaver,
+            ApplicationEventPublisher eventPublisher) {
         this.contractRepository = contractRepository;
-        this.cfoRepository = cfoRepository;
+        this.referenceDataService = referenceDataService;
         this.batchSaver = batchSaver;
+        this.eventPublisher = eventPublisher;
     }
 
     /**
@@ -94,53 +101,35 @@ public class ContractApprovalExcelLoadService {
      * прогресс коммитится по ходу, сбой одного батча не откатывает весь импорт.
      */
     public int loadContractApprovalsFromExcel(File excelFile) throws IOException {
-        Workbook workbook;
-        try (FileInputStream fis = new FileInputStream(excelFile)) {
-            if (excelFile.getName().endsWith(".xlsx")) {
-                workbook = new XSSFWorkbook(fis);
-            } else {
-                workbook = new HSSFWorkbook(fis);
-            }
-        }
-
         List<ContractApprovalRowData> rows;
+        ImportReferenceData referenceData;
         int skippedNoContract;
         int skippedNotContractType;
-        try {
-            Sheet sheet = workbook.getSheetAt(0);
+        try (StreamingSheetReader reader = StreamingSheetReader.open(excelFile);
+             StreamingSheetReader.SheetCursor sheet = reader.openSheet(0)) {
 
             // --- Поиск строки заголовка ---
-            Row headerRow = null;
-            int headerRowIndex = -1;
-            Map<String, Integer> columnIndexMap = null;
             final String[] requiredHeaderColumns = { INNER_ID_COLUMN, DOCUMENT_TYPE_COLUMN, STAGE_COLUMN, ROLE_COLUMN };
             final int headerSearchRows = 20;
 
-            for (int i = 0; i < Math.min(headerSearchRows, sheet.getLastRowNum() + 1); i++) {
-                Row row = sheet.getRow(i);
-                if (row == null) continue;
+            Row headerRow = sheet.findHeaderRow(headerSearchRows, row -> {
                 Map<String, Integer> tempMap = buildColumnIndexMap(row);
-                boolean allRequired = true;
                 for (String col : requiredHeaderColumns) {
                     if (findColumnIndex(tempMap, col) == null) {
-                        allRequired = false;
-                        break;
+                        return false;
                     }
                 }
-                if (allRequired) {
-                    headerRow = row;
-                    headerRowIndex = i;
-                    columnIndexMap = tempMap;
-                    logger.debug("Contract approvals: header row found at 0-based index {} (row {} in Excel)", i, i + 1);
-                    break;
-                }
-            }
+                return true;
+            });
 
-            if (columnIndexMap == null) {
+            if (headerRow == null) {
                 logger.warn("Contract approvals: header row not found in file {} (checked first {} rows, required columns: {})",
                         excelFile.getName(), headerSearchRows, Arrays.toString(requiredHeaderColumns));
                 return 0;
             }
+            logger.debug("Contract approvals: header row found at 0-based index {} (row {} in Excel)",
+                    headerRow.getRowNum(), headerRow.getRowNum() + 1);
+            Map<String, Integer> columnIndexMap = buildColumnIndexMap(headerRow);
 
             Integer documentTypeColumnIndex = findColumnIndex(columnIndexMap, DOCUMENT_TYPE_COLUMN);
             Integer innerIdColumnIndex = findColumnIndex(columnIndexMap, INNER_ID_COLUMN);
@@ -173,20 +162,15 @@ public class ContractApprovalExcelLoadService {
 
             // --- Предзагрузка справочников в память (устранение N+1) ---
             Map<String, Long> contractIdByInnerId = loadContractCache();
-            Map<String, Long> cfoIdByName = loadCfoCache();
-            logger.info("Contract approvals: caches loaded — contracts: {}, cfo: {}", contractIdByInnerId.size(), cfoIdByName.size());
+            referenceData = referenceDataService.open();
+            logger.info("Contract approvals: caches loaded — contracts: {}", contractIdByInnerId.size());
 
             // --- Парсинг всех строк в DTO (без обращений к БД) ---
-            Iterator<Row> rowIterator = sheet.iterator();
-            for (int i = 0; i <= headerRowIndex && rowIterator.hasNext(); i++) {
-                rowIterator.next();
-            }
-
             rows = new ArrayList<>();
             skippedNoContract = 0;
             skippedNotContractType = 0;
-            while (rowIterator.hasNext()) {
-                Row row = rowIterator.next();
+            while (sheet.hasNext()) {
+                Row row = sheet.next();
                 if (isRowEmpty(row)) continue;
 
                 String docType = getCellValueAsString(row.getCell(documentTypeColumnIndex));
@@ -207,7 +191,7 @@ public class ContractApprovalExcelLoadService {
                     continue;
                 }
 
-                ContractApprovalRowData data = parseContractApprovalRow(row, contractId, cfoIdByName,
+                ContractApprovalRowData data = parseContractApprovalRow(row, contractId, referenceData,
                         guidColumnIndex, cfoColumnIndex, documentFormColumnIndex,
                         stageColumnIndex, roleColumnIndex, executorFullNameColumnIndex, executorEmailColumnIndex,
                         assignmentDateColumnIndex, plannedCompletionDateColumnIndex, completionDateColumnIndex,
@@ -216,21 +200,22 @@ public class ContractApprovalExcelLoadService {
                     rows.add(data);
                 }
             }
-        } finally {
-            workbook.close();
         }
 
         logger.info("Contract approvals: parsed {} rows from file {} (skipped not contract type: {}, no contract: {})",
                 rows.size(), excelFile.getName(), skippedNotContractType, skippedNoContract);
 
         // --- Фаза 1: резолв/создание исполнителей батчами, проставление executorId ---
-        resolveExecutors(rows);
+        resolveExecutors(rows, referenceData);
 
         // --- Фаза 2: upsert согласований батчами ---
-        int loadedCount = saveApprovalsInBatches(rows);
+        ApprovalMergeService.MergeResult merged = saveApprovalsInBatches(rows);
+        int loadedCount = merged.total();
 
-        logger.info("Loaded {} contract approvals from file {} (rows: {}, skipped not contract type: {}, no contract: {})",
-                loadedCount, excelFile.getName(), rows.size(), skippedNotContractType, skippedNoContract);
+        logger.info("Loaded {} contract approvals from file {} (inserted: {}, updated: {}, unchanged: {}; rows: {}, " +
+                "skipped not contract type: {}, no contract: {})",
+                loadedCount, excelFile.getName(), merged.inserted(), merged.updated(), merged.unchanged(),
+                rows.size(), skippedNotContractType, skippedNoContract);
         return loadedCount;
     }
 
@@ -249,50 +234,42 @@ public class ContractApprovalExcelLoadService {
         return map;
     }
 
-    private Map<String, Long> loadCfoCache() {
-        List<Cfo> all = cfoRepository.findAll();
-        Map<String, Long> map = new HashMap<>(all.size() * 2);
-        for (Cfo cfo : all) {
-            if (cfo.getName() != null && cfo.getId() != null) {
-                map.put(cfo.getName().toLowerCase().trim(), cfo.getId());
-            }
-        }
-        return map;
-    }
-
     // ============================ Фаза 1: пользователи ============================
 
     /**
-     * Собирает уникальных исполнителей и резолвит/создаёт их батчами (REQUIRES_NEW),
-     * затем проставляет executorId в строки. Кэш наполняется только закоммиченными id,
-     * поэтому сбой батча не оставляет ссылок на несуществующих пользователей.
+     * Собирает уникальных исполнителей, разрешает их по справочнику импорта ({@link ImportReferenceData}:
+     * ФИО в любом порядке, затем email) и проставляет executorId в строки. Новые пользователи и изменения
+     * существующих записываются пакетами по BATCH_SIZE персон; пользователь, которого сохранить не удалось,
+     * остаётся без id — строка согласования сохраняется без исполнителя.
      */
-    private void resolveExecutors(List<ContractApprovalRowData> rows) {
-        // Уникальные персоны: key → {key, fullName, email}
-        LinkedHashMap<String, String[]> distinct = new LinkedHashMap<>();
+    private void resolveExecutors(List<ContractApprovalRowData> rows, ImportReferenceData referenceData) {
+        // Уникальные персоны: key → пользователь
+        LinkedHashMap<String, User> distinct = new LinkedHashMap<>();
         for (ContractApprovalRowData row : rows) {
             String key = row.executorKey();
             if (key != null && !distinct.containsKey(key)) {
-                distinct.put(key, new String[]{ key, row.executorFullName, row.executorEmail });
+                distinct.put(key, referenceData.resolveUserLenient(
+                        ImportPerson.ofFullName(row.executorFullName, row.executorEmail)));
+                if (referenceData.pendingCount() >= BATCH_SIZE) {
+                    referenceData.flushPending();
+                }
             }
         }
+        referenceData.flushPending();
         if (distinct.isEmpty()) {
             return;
         }
 
-        Map<String, Long> userIdCache = new HashMap<>(distinct.size() * 2);
-        List<String[]> batch = new ArrayList<>(BATCH_SIZE);
         int resolved = 0;
-        for (String[] person : distinct.values()) {
-            batch.add(person);
-            if (batch.size() >= BATCH_SIZE) {
-                resolved += flushUserBatch(batch, userIdCache);
+        Map<String, Long> userIdCache = new HashMap<>(distinct.size() * 2);
+        for (Map.Entry<String, User> e : distinct.entrySet()) {
+            if (e.getValue() != null && e.getValue().getId() != null) {
+                userIdCache.put(e.getKey(), e.getValue().getId());
+                resolved++;
             }
         }
-        if (!batch.isEmpty()) {
-            resolved += flushUserBatch(batch, userIdCache);
-        }
-        logger.info("Contract approvals: resolved {} distinct executors", resolved);
+        logger.info("Contract approvals: resolved {} distinct executors (reference data: {})",
+                resolved, referenceData.describe());
 
         // Проставляем executorId по кэшу
         for (ContractApprovalRowData row : rows) {
@@ -303,75 +280,49 @@ public class ContractApprovalExcelLoadService {
         }
     }
 
-    /**
-     * Сохраняет батч персон; в глобальный кэш кладёт ТОЛЬКО закоммиченные id.
-     * При сбое быстрого пути — построчный fallback (теряется только плохая персона).
-     */
-    private int flushUserBatch(List<String[]> batch, Map<String, Long> userIdCache) {
-        if (batch.isEmpty()) return 0;
-        try {
-            Map<String, Long> committed = batchSaver.resolveUsersBatch(batch);
-            userIdCache.putAll(committed);
-            return committed.size();
-        } catch (Exception e) {
-            logger.warn("Contract approvals: user batch resolve failed ({}), retrying row-by-row for {} persons",
-                    e.getMessage(), batch.size());
-            int saved = 0;
-            for (String[] person : batch) {
-                try {
-                    Long id = batchSaver.resolveUserIsolated(person[1], person[2]);
-                    if (id != null) {
-                        userIdCache.put(person[0], id);
-                        saved++;
-                    }
-                } catch (Exception ex) {
-                    logger.warn("Contract approvals: skipping executor '{}': {}", person[1], ex.getMessage());
-                }
-            }
-            return saved;
-        } finally {
-            batch.clear();
-        }
-    }
-
     // ============================ Фаза 2: согласования ============================
 
-    private int saveApprovalsInBatches(List<ContractApprovalRowData> rows) {
-        int loadedCount = 0;
+    private ApprovalMergeService.MergeResult saveApprovalsInBatches(List<ContractApprovalRowData> rows) {
+        ApprovalMergeService.MergeResult merged = ApprovalMergeService.MergeResult.EMPTY;
         int batchNumber = 0;
         List<ContractApprovalRowData> batch = new ArrayList<>(BATCH_SIZE);
         for (ContractApprovalRowData row : rows) {
             batch.add(row);
             if (batch.size() >= BATCH_SIZE) {
                 batchNumber++;
-                loadedCount += flushApprovalBatch(batch);
-                logger.debug("Contract approvals: batch {} saved ({} rows so far)", batchNumber, loadedCount);
+                merged = merged.plus(flushApprovalBatch(batch));
+                logger.debug("Contract approvals: batch {} saved ({} rows so far)", batchNumber, merged.total());
             }
         }
         if (!batch.isEmpty()) {
             batchNumber++;
-            loadedCount += flushApprovalBatch(batch);
-            logger.debug("Contract approvals: final batch {} saved ({} rows total)", batchNumber, loadedCount);
+            merged = merged.plus(flushApprovalBatch(batch));
+            logger.debug("Contract approvals: final batch {} saved ({} rows total)", batchNumber, merged.total());
         }
-        return loadedCount;
+        return merged;
     }
 
     /**
      * Быстрый путь — {@link ContractApprovalBatchSaver#saveApprovalsBatch}; при сбое (например,
      * одна строка испортила сессию) батч повторяется построчно через saveApprovalRowIsolated —
      * теряется только плохая строка, а не весь батч. Список ВСЕГДА очищается в finally.
+     * Договоры батча помечаются для пересчёта (дата регистрации) после импорта.
      */
-    private int flushApprovalBatch(List<ContractApprovalRowData> batch) {
-        if (batch.isEmpty()) return 0;
+    private ApprovalMergeService.MergeResult flushApprovalBatch(List<ContractApprovalRowData> batch) {
+        if (batch.isEmpty()) return ApprovalMergeService.MergeResult.EMPTY;
+        Set<Long> contractIds = new HashSet<>();
+        for (ContractApprovalRowData data : batch) {
+            contractIds.add(data.contractId);
+        }
         try {
             return batchSaver.saveApprovalsBatch(batch);
         } catch (Exception e) {
             logger.warn("Contract approvals: batch save failed ({}), retrying row-by-row for {} rows",
                     e.getMessage(), batch.size());
-            int saved = 0;
+            ApprovalMergeService.MergeResult saved = ApprovalMergeService.MergeResult.EMPTY;
             for (ContractApprovalRowData data : batch) {
                 try {
-                    saved += batchSaver.saveApprovalRowIsolated(data);
+                    saved = saved.plus(batchSaver.saveApprovalRowIsolated(data));
                 } catch (Exception ex) {
                     logger.warn("Contract approvals: skipping row {}: {}", data.excelRowNum, ex.getMessage());
                 }
@@ -379,12 +330,13 @@ public class ContractApprovalExcelLoadService {
             return saved;
         } finally {
             batch.clear();
+            eventPublisher.publishEvent(new EntityIdsChangedEvent(EntityIdsChangedEvent.EntityType.CONTRACT, contractIds));
         }
     }
 
     // ============================ Парсинг строки ============================
 
-    private ContractApprovalRowData parseContractApprovalRow(Row row, Long contractId, Map<String, Long> cfoIdByName,
+    private ContractApprovalRowData parseContractApprovalRow(Row row, Long contractId, ImportReferenceData referenceData,
             Integer guidColumnIndex, Integer cfoColumnIndex, Integer documentFormColumnIndex,
             Integer stageColumnIndex, Integer roleColumnIndex, Integer executorFullNameColumnIndex, Integer executorEmailColumnIndex,
             Integer assignmentDateColumnIndex, Integer plannedCompletionDateColumnIndex, Integer completionDateColumnIndex,
@@ -419,7 +371,7 @@ public class ContractApprovalExcelLoadService {
         if (cfoColumnIndex != null) {
             String cfoStr = getCellValueAsString(row.getCell(cfoColumnIndex));
             if (cfoStr != null && !cfoStr.trim().isEmpty()) {
-                a.cfoId = cfoIdByName.get(cfoStr.toLowerCase().trim());
+                a.cfoId = referenceData.findCfo(cfoStr).map(Cfo::getId).orElse(null);
             }
         }
 
@@ -1,5 +1,6 @@
 package com.uzproc.backend.service.contract;
 
+import com.uzproc.backend.config.CacheConfig;
 import com.uzproc.backend.dto.contract.ContractApprovalDto;
 import com.uzproc.backend.dto.contract.ContractRemarkDashboardEntryDto;
 import com.uzproc.backend.dto.contract.ContractRemarkDto;
@@ -12,6 +13,7 @@ import com.uzproc.backend.repository.contract.ContractApprovalRepository;
 import com.uzproc.backend.repository.user.UserRepository;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.PageRequest;
+import org.springframework.cache.annotation.Cacheable;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
@@ -170,6 +172,7 @@ public class ContractApprovalService {
     /**
      * Дашборд замечаний: категории с количеством, фильтр по дате создания.
      */
+    @Cacheable(CacheConfig.OVERVIEW)
     public ContractRemarksDashboardResponseDto getRemarksDashboard(LocalDate dateFrom, LocalDate dateTo) {
         List<ContractApproval> remarks = loadRemarksForDashboard(dateFrom, dateTo);
 
@@ -196,6 +199,7 @@ public class ContractApprovalService {
     /**
      * Замечания по конкретной категории с фильтром по дате создания.
      */
+    @Cacheable(CacheConfig.OVERVIEW)
     public List<ContractRemarkDashboardEntryDto> getRemarksByCategory(String category, LocalDate dateFrom, LocalDate dateTo) {
         List<ContractApproval> remarks = loadRemarksForDashboard(dateFrom, dateTo);
 
@@ -1,12 +1,15 @@
 package com.uzproc.backend.service.contract;
 
+import com.uzproc.backend.config.CacheConfig;
 import com.uzproc.backend.dto.contract.ContractApprovalDurationByMonthResponseDto;
 import com.uzproc.backend.dto.contract.ContractApprovalDurationByMonthMarketResponseDto;
 import com.uzproc.backend.dto.contract.ContractApprovalsDashboardResponseDto;
 import com.uzproc.backend.dto.contract.ContractApprovalsDashboardRowDto;
 import com.uzproc.backend.dto.contract.ContractDocumentCountByPersonMonthResponseDto;
 import com.uzproc.backend.dto.contract.ContractDocumentCountByPersonRowDto;
+import com.uzproc.backend.dto.common.KeysetPageDto;
 import com.uzproc.backend.dto.contract.ContractDto;
+import com.uzproc.backend.dto.contract.ContractListItemDto;
 import com.uzproc.backend.dto.contract.ContractSummaryItemDto;
 import com.uzproc.backend.dto.supplier.SupplierDto;
 import com.uzproc.backend.entity.contract.Contract;
@@ -14,11 +17,13 @@ import com.uzproc.backend.entity.contract.ContractStatus;
 import com.uzproc.backend.entity.supplier.Supplier;
 import com.uzproc.backend.entity.purchase.PurchaseApproval;
 import com.uzproc.backend.repository.contract.ContractApprovalRepository;
+import com.uzproc.backend.repository.contract.ContractListRow;
 import com.uzproc.backend.repository.contract.ContractRepository;
 import com.uzproc.backend.repository.purchase.PurchaseApprovalRepository;
 import com.uzproc.backend.repository.purchaserequest.PurchaseRequestApprovalRepository;
 import com.uzproc.backend.repository.purchaserequest.PurchaseRequestRepository;
 import com.uzproc.backend.service.calendar.WorkingDayService;
+import com.uzproc.backend.service.keyset.KeysetPaginationService;
 import jakarta.persistence.EntityManager;
 import jakarta.persistence.PersistenceContext;
 import jakarta.persistence.Query;
@@ -30,6 +35,7 @@ import org.springframework.data.domain.PageRequest;
 import org.springframework.data.domain.Pageable;
 import org.springframework.data.domain.Sort;
 import org.springframework.data.jpa.domain.Specification;
+import org.springframework.cache.annotation.Cacheable;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
@@ -56,19 +62,22 @@ public class ContractService {
     private final PurchaseRequestRepository purchaseRequestRepository;
     private final PurchaseRequestApprovalRepository purchaseRequestApprovalRepository;
     private final WorkingDayService workingDayService;
+    private final KeysetPaginationService keysetPaginationService;
 
     public ContractService(ContractRepository contractRepository,
                            PurchaseApprovalRepository purchaseApprovalRepository,
                            ContractApprovalRepository contractApprovalRepository,
                            PurchaseRequestRepository purchaseRequestRepository,
                            PurchaseRequestApprovalRepository purchaseRequestApprovalRepository,
-                           WorkingDayService workingDayService) {
+                           WorkingDayService workingDayService,
+                           KeysetPaginationService keysetPaginationService) {
         this.contractRepository = contractRepository;
         this.purchaseApprovalRepository = purchaseApprovalRepository;
         this.contractApprovalRepository = contractApprovalRepository;
         this.purchaseRequestRepository = purchaseRequestRepository;
         this.purchaseRequestApprovalRepository = purchaseRequestApprovalRepository;
         this.workingDayService = workingDayService;
+        this.keysetPaginationService = keysetPaginationService;
     }
 
     public Page<ContractDto> findAll(
@@ -146,6 +155,85 @@ public class ContractService {
         return new org.springframework.data.domain.PageImpl<>(dtos, pageable, contracts.getTotalElements());
     }
 
+    /**
+     * Лёгкий список договоров с keyset-пагинацией по id: те же фильтры, что у {@link #findAll}, но без OFFSET,
+     * COUNT(*) и обогащения трэка. Строки — плоская проекция колонок; контрагенты — одним запросом на страницу.
+     * Вкладка «Требует внимания» здесь не поддерживается: её отбор идёт по расчётным полям обогащения.
+     *
+     * @param cursor  токен из предыдущей страницы (nextCursor); null — первая страница
+     * @param sortDir направление по id для первой страницы (asc/desc, по умолчанию desc — новые сверху)
+     * @throws IllegalArgumentException если токен повреждён
+     */
+    @Transactional(readOnly = true)
+    public KeysetPageDto<ContractListItemDto> findKeyset(
+            String cursor,
+            int size,
+            String sortDir,
+            Integer year,
+            String innerId,
+            List<String> cfo,
+            String name,
+            String documentForm,
+            String costType,
+            String contractType,
+            Boolean inWorkTab,
+            Boolean signedTab,
+            Boolean hiddenTab,
+            String purchaseRequestInnerId,
+            Boolean isTypicalForm,
+            Boolean notCoordinatedTab,
+            String customerOrganization,
+            String preparedByName,
+            String status,
+            String supplier,
+            String paymentTerms,
+            String segment,
+            Boolean exclude1p,
+            Integer contractCreationMonth,
+            Integer contractCreationYear,
+            Integer plannedDeliveryEndMonth,
+            Integer plannedDeliveryEndYear,
+            Integer registrationMonth,
+            Integer registrationYear) {
+
+        KeysetPaginationService.Position position = KeysetPaginationService.position(cursor, sortDir);
+        Specification<Contract> spec = buildSpecification(
+                year, innerId, cfo, name, documentForm, costType, contractType, null, inWorkTab, signedTab, hiddenTab, purchaseRequestInnerId, isTypicalForm, notCoordinatedTab, customerOrganization, preparedByName, status, supplier, paymentTerms, segment, exclude1p,
+                contractCreationMonth, contractCreationYear, plannedDeliveryEndMonth, plannedDeliveryEndYear, registrationMonth, registrationYear);
+        KeysetPaginationService.IdPage idPage = keysetPaginationService.findIds(Contract.class, spec, position, size);
+        if (idPage.ids().isEmpty()) {
+            return new KeysetPageDto<>(List.of(), null);
+        }
+
+        Map<Long, ContractListRow> rowsById = new HashMap<>();
+        for (ContractListRow row : contractRepository.findListRowsByIdIn(idPage.ids())) {
+            rowsById.put(row.getId(), row);
+        }
+        Map<Long, List<String>> suppliersById = new HashMap<>();
+        for (Object[] row : contractRepository.findSupplierNamesByContractIdIn(idPage.ids())) {
+            suppliersById.computeIfAbsent(((Number) row[0]).longValue(), k -> new ArrayList<>()).add((String) row[1]);
+        }
+
+        List<ContractListItemDto> items = new ArrayList<>(idPage.ids().size());
+        for (Long id : idPage.ids()) {
+            ContractListRow r = rowsById.get(id);
+            if (r == null) {
+                continue;
+            }
+            String preparedBy = null;
+            if (r.getPreparedBySurname() != null || r.getPreparedByName() != null) {
+                preparedBy = ((r.getPreparedBySurname() != null ? r.getPreparedBySurname() : "") + " " +
+                              (r.getPreparedByName() != null ? r.getPreparedByName() : "")).trim();
+            }
+            items.add(new ContractListItemDto(
+                    r.getId(), r.getInnerId(), r.getContractCreationDate(), r.getName(), r.getTitle(), r.getCfo(),
+                    r.getDocumentForm(), r.getBudgetAmount(), r.getCurrency(), r.getStatus(), r.getCustomerOrganization(),
+                    r.getPurchaseRequestId(), r.getRegistrationDate(), r.getIsTypicalForm(), preparedBy,
+                    suppliersById.getOrDefault(id, List.of())));
+        }
+        return new KeysetPageDto<>(items, KeysetPaginationService.token(idPage.next()));
+    }
+
     /**
      * Обогащает договоры расчётными полями трэка: даты этапов, рабочие дни подготовки/согласования/подписания
      * и отклонение от дедлайна подготовки. Все зависимости берутся batch-запросами по переданному списку.
@@ -608,6 +696,7 @@ public class ContractService {
      * (excludeFromInWork = false/null). Это объединение того, что показывается
      * на вкладках «В работе», «Не согласованы», «Подписаны» страницы «Договоры».
      */
+    @Cacheable(CacheConfig.OVERVIEW)
     public ContractDocumentCountByPersonMonthResponseDto getDocumentCountByPersonMonth(int year, String segment) {
         String segmentWhere = buildSegmentWhere(segment);
         String sql =
@@ -673,6 +762,7 @@ public class ContractService {
      * Средний срок согласования = MIN(assignment_date) → MAX(completion_date) среди не-технических этапов
      * (исключаются «синхронизация», «принятие на хранение», «регистрация»). Если согласований нет — null.
      */
+    @Cacheable(CacheConfig.OVERVIEW)
     public ContractApprovalsDashboardResponseDto getApprovalsDashboard(int year, String preparedByName) {
         boolean hasPreparedByFilter = preparedByName != null && !preparedByName.trim().isEmpty();
         String preparedByFilter = hasPreparedByFilter
@@ -785,6 +875,7 @@ public class ContractService {
      * Договоры группируются по месяцу даты создания (contract_creation_date) за указанный год.
      * Множество договоров и расчёт срока совпадают с дашбордом «Согласования договорных документов».
      */
+    @Cacheable(CacheConfig.OVERVIEW)
     public ContractApprovalDurationByMonthResponseDto getApprovalDurationByMonth(int year, String preparedByName) {
         boolean hasPreparedByFilter = preparedByName != null && !preparedByName.trim().isEmpty();
         String preparedByFilter = hasPreparedByFilter
@@ -876,6 +967,7 @@ public class ContractService {
      * и «Спецификации» (Спецификация). Множество договоров и расчёт срока совпадают
      * с {@link #getApprovalDurationByMonth} (договоры SIGNED, договорник, по месяцу создания).
      */
+    @Cacheable(CacheConfig.OVERVIEW)
     public ContractApprovalDurationByMonthMarketResponseDto getApprovalDurationByMonthMarket(int year) {
         String sql =
             "WITH per_contract AS ( " +
@@ -1019,16 +1111,19 @@ public class ContractService {
      * Получить список уникальных годов из дат создания договоров
      * @return список годов в порядке убывания
      */
+    @Cacheable(CacheConfig.FILTER_YEARS)
     public List<Integer> getDistinctYears() {
         return contractRepository.findDistinctYears();
     }
 
     /** Формы документа для выпадающего фильтра таблицы договоров. */
+    @Cacheable(CacheConfig.FILTER_VALUES)
     public List<String> getDistinctDocumentForms() {
         return contractRepository.findDistinctDocumentForms();
     }
 
     /** ФИО исполнителей, представленных в договорах, — для выпадающего фильтра таблицы договоров. */
+    @Cacheable(CacheConfig.FILTER_VALUES)
     public List<String> getDistinctPreparedByNames() {
         return contractRepository.findDistinctPreparedByNames();
     }
@@ -1,28 +1,27 @@
 package com.uzproc.backend.service.contract;
 
-import com.uzproc.backend.dto.contract.ContractDto;
+import com.uzproc.backend.config.CacheConfig;
 import com.uzproc.backend.dto.contract.ContractSlaByPreparerDto;
 import com.uzproc.backend.dto.contract.ContractSlaMonthDto;
 import com.uzproc.backend.dto.contract.ContractSlaResponseDto;
 import com.uzproc.backend.dto.contract.ContractSlaRowDto;
-import com.uzproc.backend.entity.contract.Contract;
-import com.uzproc.backend.entity.contract.ContractStatus;
 import com.uzproc.backend.entity.contract.CustomerOrganization;
-import com.uzproc.backend.repository.contract.ContractApprovalRepository;
-import com.uzproc.backend.repository.contract.ContractRepository;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.cache.annotation.Cacheable;
+import org.springframework.jdbc.core.JdbcTemplate;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Timestamp;
 import java.time.LocalDate;
 import java.time.LocalDateTime;
 import java.util.ArrayList;
 import java.util.Comparator;
 import java.util.EnumSet;
-import java.util.LinkedHashMap;
 import java.util.List;
-import java.util.Map;
 import java.util.Set;
 import java.util.stream.Collectors;
 
@@ -35,6 +34,9 @@ import java.util.stream.Collectors;
  *
  * <p>В расчёт попадают только документы, подготовленные договорником
  * (preparedBy.isContractor = true), — как на вкладке «Подписаны» таблицы договоров.
+ *
+ * <p>Строки предрасчитаны в витрине contract_sla_facts ({@link ContractSlaFactService}); дашборд читает её
+ * агрегатными запросами по индексу (год, месяц) / (год, подготовивший) и список документов выбранного месяца.
  */
 @Service
 @Transactional(readOnly = true)
@@ -42,24 +44,21 @@ public class ContractSlaDashboardService {
 
     private static final Logger logger = LoggerFactory.getLogger(ContractSlaDashboardService.class);
 
-    private static final String SPECIFICATION_FORM = "Спецификация";
-    private static final String NOT_ASSIGNED = "Не назначен";
     /** ЦФО, который исключает переключатель «без 1P» (как в таблице договоров). */
     private static final String CFO_1P = "M - Commerce 1Р";
-    /** Размер порции договоров для обогащения (batch-запросы IN (...) не должны разрастаться). */
-    private static final int ENRICH_CHUNK_SIZE = 500;
 
-    private final ContractRepository contractRepository;
-    private final ContractApprovalRepository contractApprovalRepository;
-    private final ContractService contractService;
+    private static final String ROW_COLUMNS =
+        "contract_id, inner_id, name, document_form, is_typical_form, cfo, prepared_by, " +
+        "purchase_request_system_id, purchase_request_inner_id, signing_date, " +
+        "preparation_working_days, planned_preparation_sla_days, preparation_sla_delta, " +
+        "approval_working_days, planned_approval_sla_days, approval_sla_delta, " +
+        "signing_working_days, planned_signing_sla_days, signing_sla_delta, " +
+        "total_working_days, total_planned_sla_days, sla_violated";
+
+    private final JdbcTemplate jdbcTemplate;
 
-    public ContractSlaDashboardService(
-            ContractRepository contractRepository,
-            ContractApprovalRepository contractApprovalRepository,
-            ContractService contractService) {
-        this.contractRepository = contractRepository;
-        this.contractApprovalRepository = contractApprovalRepository;
-        this.contractService = contractService;
+    public ContractSlaDashboardService(JdbcTemplate jdbcTemplate) {
+        this.jdbcTemplate = jdbcTemplate;
     }
 
     /**
@@ -71,57 +70,55 @@ public class ContractSlaDashboardService {
      * @param month      месяц (1–12) для списков документов; null — текущий месяц (для прошлых лет декабрь)
      * @param organizations организации заказчика (имена enum {@link CustomerOrganization}); пусто — без фильтра
      */
+    @Cacheable(CacheConfig.OVERVIEW)
     public ContractSlaResponseDto getContractSlaData(
             int year, String preparedBy, boolean exclude1p, Integer month, List<String> organizations) {
         Set<CustomerOrganization> organizationFilter = parseOrganizations(organizations);
-        LocalDateTime from = LocalDateTime.of(year, 1, 1, 0, 0);
-        LocalDateTime to = from.plusYears(1);
-
-        List<Long> candidateIds = contractApprovalRepository.findContractIdsSignedBetween(from, to);
         String preparerFilter = (preparedBy != null && !preparedBy.trim().isEmpty()) ? preparedBy.trim() : null;
-        String excludeCfoName = exclude1p ? CFO_1P : null;
 
-        // Обогащение идёт чанками: за год подписываются тысячи документов, а enrichContracts
-        // тянет зависимости batch-запросами IN (...) по переданному списку.
-        List<ContractSlaRowDto> rows = new ArrayList<>();
-        for (int start = 0; start < candidateIds.size(); start += ENRICH_CHUNK_SIZE) {
-            List<Long> chunk = candidateIds.subList(start, Math.min(start + ENRICH_CHUNK_SIZE, candidateIds.size()));
-            // Только подписанные документы, подготовленные договорником, — как на вкладке «Подписаны» таблицы договоров
-            List<Contract> signedChunk = excludeCfoName != null
-                    ? contractRepository.findByIdsAndStatusPreparedByContractorExcludingCfo(
-                        chunk, ContractStatus.SIGNED, excludeCfoName)
-                    : contractRepository.findByIdsAndStatusPreparedByContractor(chunk, ContractStatus.SIGNED);
-            if (!organizationFilter.isEmpty()) {
-                // Фильтр по организации до обогащения: поле уже есть в сущности, лишние документы не обогащаем
-                signedChunk = signedChunk.stream()
-                        .filter(c -> c.getCustomerOrganization() != null
-                                && organizationFilter.contains(c.getCustomerOrganization()))
-                        .collect(Collectors.toList());
-            }
-            if (signedChunk.isEmpty()) continue;
-            contractService.enrichContracts(signedChunk).stream()
-                    .map(this::toSlaRow)
-                    .filter(java.util.Objects::nonNull)
-                    .filter(r -> r.signingDate().getYear() == year)
-                    .filter(r -> preparerFilter == null || preparerFilter.equalsIgnoreCase(preparerName(r.preparedBy())))
-                    .forEach(rows::add);
+        // Общие условия: год подписания (и, как раньше, год подписания по согласованиям), подготовивший, ЦФО, организация
+        StringBuilder where = new StringBuilder(
+            " FROM contract_sla_facts WHERE signing_year = ? AND approvals_signed_at >= ? AND approvals_signed_at < ?");
+        List<Object> args = new ArrayList<>();
+        LocalDateTime from = LocalDateTime.of(year, 1, 1, 0, 0);
+        args.add(year);
+        args.add(Timestamp.valueOf(from));
+        args.add(Timestamp.valueOf(from.plusYears(1)));
+        if (preparerFilter != null) {
+            where.append(" AND lower(preparer_key) = lower(?)");
+            args.add(preparerFilter);
         }
-        rows.sort(Comparator.comparing(ContractSlaRowDto::signingDate).reversed());
+        if (exclude1p) {
+            where.append(" AND (cfo IS NULL OR cfo <> ?)");
+            args.add(CFO_1P);
+        }
+        if (!organizationFilter.isEmpty()) {
+            where.append(" AND customer_organization IN (")
+                 .append(organizationFilter.stream().map(o -> "?").collect(Collectors.joining(", ")))
+                 .append(")");
+            organizationFilter.forEach(o -> args.add(o.name()));
+        }
+        Object[] params = args.toArray();
+
+        List<ContractSlaMonthDto> byMonth = buildSlaByMonth(where.toString(), params);
+        List<ContractSlaByPreparerDto> byPreparer = buildSlaByPreparer(where.toString(), params);
 
         // Месяц для списков документов: выбранный на диаграмме либо текущий
         int selectedMonth = (month != null && month >= 1 && month <= 12) ? month : resolveCurrentMonth(year);
-        List<ContractSlaRowDto> currentMonthRows = rows.stream()
-                .filter(r -> r.signingDate().getMonthValue() == selectedMonth)
-                .collect(Collectors.toList());
+        List<Object> monthArgs = new ArrayList<>(args);
+        monthArgs.add(selectedMonth);
+        List<ContractSlaRowDto> currentMonthRows = jdbcTemplate.query(
+            "SELECT " + ROW_COLUMNS + where + " AND signing_month = ? ORDER BY signing_date DESC",
+            (rs, rowNum) -> toRow(rs), monthArgs.toArray());
 
-        int totalSigned = rows.size();
-        int metSla = (int) rows.stream().filter(r -> !r.slaViolated()).count();
+        int totalSigned = byMonth.stream().mapToInt(ContractSlaMonthDto::totalSigned).sum();
+        int metSla = byMonth.stream().mapToInt(ContractSlaMonthDto::metSla).sum();
 
         ContractSlaResponseDto response = new ContractSlaResponseDto(
                 year,
                 selectedMonth,
-                buildSlaByMonth(rows),
-                buildSlaByPreparer(rows),
+                byMonth,
+                byPreparer,
                 totalSigned,
                 metSla,
                 totalSigned > 0 ? (metSla * 100.0 / totalSigned) : null,
@@ -157,108 +154,65 @@ public class ContractSlaDashboardService {
         return today.getYear() == year ? today.getMonthValue() : 12;
     }
 
-    /** Строка дашборда из обогащённого DTO договора; null — если дату подписания определить не удалось. */
-    private ContractSlaRowDto toSlaRow(ContractDto dto) {
-        boolean isSpecification = SPECIFICATION_FORM.equals(dto.getDocumentForm());
-        LocalDateTime signingDate = isSpecification ? dto.getSynchronizationDate() : dto.getRegistrationDate();
-        if (signingDate == null) {
-            return null;
-        }
-
-        boolean violated = isOverdue(dto.getSlaDelta())
-                || isOverdue(dto.getApprovalSlaDelta())
-                || isOverdue(dto.getSigningSlaDelta());
-
-        Integer totalFactual = sumStages(
-                dto.getPlannedSlaDays() != null ? dto.getPreparationWorkingDays() : null,
-                dto.getPlannedApprovalSlaDays() != null ? dto.getApprovalWorkingDays() : null,
-                dto.getPlannedSigningSlaDays() != null ? dto.getSigningWorkingDays() : null);
-        Integer totalPlanned = sumStages(
-                dto.getPreparationWorkingDays() != null ? dto.getPlannedSlaDays() : null,
-                dto.getApprovalWorkingDays() != null ? dto.getPlannedApprovalSlaDays() : null,
-                dto.getSigningWorkingDays() != null ? dto.getPlannedSigningSlaDays() : null);
-
-        return new ContractSlaRowDto(
-                dto.getId(),
-                dto.getInnerId(),
-                dto.getName(),
-                dto.getDocumentForm(),
-                dto.getIsTypicalForm(),
-                dto.getCfo(),
-                dto.getPreparedBy(),
-                dto.getPurchaseRequestSystemId(),
-                dto.getPurchaseRequestInnerId(),
-                signingDate,
-                dto.getPreparationWorkingDays(),
-                dto.getPlannedSlaDays(),
-                dto.getSlaDelta(),
-                dto.getApprovalWorkingDays(),
-                dto.getPlannedApprovalSlaDays(),
-                dto.getApprovalSlaDelta(),
-                dto.getSigningWorkingDays(),
-                dto.getPlannedSigningSlaDays(),
-                dto.getSigningSlaDelta(),
-                totalFactual,
-                totalPlanned,
-                violated);
-    }
-
-    private static boolean isOverdue(Integer delta) {
-        return delta != null && delta < 0;
-    }
-
-    /** Сумма значений по этапам; null — если ни одного значения нет. */
-    private static Integer sumStages(Integer... values) {
-        int sum = 0;
-        boolean any = false;
-        for (Integer value : values) {
-            if (value != null) {
-                sum += value;
-                any = true;
-            }
-        }
-        return any ? sum : null;
-    }
-
     /** Выполнение SLA по месяцам подписания (все 12 месяцев года). */
-    private List<ContractSlaMonthDto> buildSlaByMonth(List<ContractSlaRowDto> rows) {
+    private List<ContractSlaMonthDto> buildSlaByMonth(String where, Object[] params) {
+        int[][] counts = new int[13][2];
+        jdbcTemplate.query(
+            "SELECT signing_month, COUNT(*), COUNT(*) FILTER (WHERE NOT sla_violated)" + where + " GROUP BY signing_month",
+            rs -> {
+                int m = rs.getInt(1);
+                counts[m][0] = rs.getInt(2);
+                counts[m][1] = rs.getInt(3);
+            }, params);
         List<ContractSlaMonthDto> result = new ArrayList<>(12);
         for (int month = 1; month <= 12; month++) {
-            final int m = month;
-            List<ContractSlaRowDto> monthRows = rows.stream()
-                    .filter(r -> r.signingDate().getMonthValue() == m)
-                    .collect(Collectors.toList());
-            int total = monthRows.size();
-            int met = (int) monthRows.stream().filter(r -> !r.slaViolated()).count();
+            int total = counts[month][0];
+            int met = counts[month][1];
             result.add(new ContractSlaMonthDto(month, total, met, total > 0 ? (met * 100.0 / total) : null));
         }
         return result;
     }
 
     /** Выполнение SLA за год по договорным специалистам; «Не назначен» — последним. */
-    private List<ContractSlaByPreparerDto> buildSlaByPreparer(List<ContractSlaRowDto> rows) {
-        Map<String, int[]> byPreparer = new LinkedHashMap<>();
-        for (ContractSlaRowDto row : rows) {
-            int[] counts = byPreparer.computeIfAbsent(preparerName(row.preparedBy()), k -> new int[2]);
-            counts[0]++;
-            if (!row.slaViolated()) counts[1]++;
-        }
-        List<ContractSlaByPreparerDto> result = byPreparer.entrySet().stream()
-                .map(e -> {
-                    int total = e.getValue()[0];
-                    int met = e.getValue()[1];
-                    return new ContractSlaByPreparerDto(e.getKey(), total, met, total > 0 ? (met * 100.0 / total) : null);
-                })
-                .collect(Collectors.toCollection(ArrayList::new));
+    private List<ContractSlaByPreparerDto> buildSlaByPreparer(String where, Object[] params) {
+        List<ContractSlaByPreparerDto> result = new ArrayList<>(jdbcTemplate.query(
+            "SELECT preparer_key, COUNT(*), COUNT(*) FILTER (WHERE NOT sla_violated)" + where + " GROUP BY preparer_key",
+            (rs, rowNum) -> {
+                int total = rs.getInt(2);
+                int met = rs.getInt(3);
+                return new ContractSlaByPreparerDto(rs.getString(1), total, met, total > 0 ? (met * 100.0 / total) : null);
+            }, params));
         result.sort(Comparator.comparing(ContractSlaByPreparerDto::preparedBy, (a, b) -> {
-            if (NOT_ASSIGNED.equals(a)) return 1;
-            if (NOT_ASSIGNED.equals(b)) return -1;
+            if (ContractSlaFactService.NOT_ASSIGNED.equals(a)) return 1;
+            if (ContractSlaFactService.NOT_ASSIGNED.equals(b)) return -1;
             return a.compareTo(b);
         }));
         return result;
     }
 
-    private static String preparerName(String preparedBy) {
-        return (preparedBy == null || preparedBy.trim().isEmpty()) ? NOT_ASSIGNED : preparedBy.trim();
+    private static ContractSlaRowDto toRow(ResultSet rs) throws SQLException {
+        return new ContractSlaRowDto(
+                rs.getLong("contract_id"),
+                rs.getString("inner_id"),
+                rs.getString("name"),
+                rs.getString("document_form"),
+                rs.getObject("is_typical_form", Boolean.class),
+                rs.getString("cfo"),
+                rs.getString("prepared_by"),
+                rs.getObject("purchase_request_system_id", Long.class),
+                rs.getObject("purchase_request_inner_id", Long.class),
+                rs.getTimestamp("signing_date").toLocalDateTime(),
+                rs.getObject("preparation_working_days", Integer.class),
+                rs.getObject("planned_preparation_sla_days", Integer.class),
+                rs.getObject("preparation_sla_delta", Integer.class),
+                rs.getObject("approval_working_days", Integer.class),
+                rs.getObject("planned_approval_sla_days", Integer.class),
+                rs.getObject("approval_sla_delta", Integer.class),
+                rs.getObject("signing_working_days", Integer.class),
+                rs.getObject("planned_signing_sla_days", Integer.class),
+                rs.getObject("signing_sla_delta", Integer.class),
+                rs.getObject("total_working_days", Integer.class),
+                rs.getObject("total_planned_sla_days", Integer.class),
+                rs.getBoolean("sla_violated"));
     }
 }
@@ -0,0 +1,291 @@
+package com.uzproc.backend.service.contract;
+
+import com.uzproc.backend.dto.contract.ContractDto;
+import com.uzproc.backend.dto.contract.ContractSlaRowDto;
+import com.uzproc.backend.entity.contract.Contract;
+import com.uzproc.backend.entity.contract.ContractStatus;
+import com.uzproc.backend.event.ContractorFlagChangedEvent;
+import com.uzproc.backend.repository.contract.ContractRepository;
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.PersistenceContext;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.event.TransactionalEventListener;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.sql.Timestamp;
+import java.sql.Types;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeSet;
+
+/**
+ * Витрина дашборда «SLA договоров» (contract_sla_facts): по строке на подписанный документ,
+ * подготовленный договорником, с датой подписания, фактом, планом и отклонением по этапам.
+ * <p>
+ * Строки считаются прежней логикой — {@link ContractService#enrichContracts} и {@link #toSlaRow} — но только
+ * для изменившихся договоров: {@link #refresh} вызывается из пересчёта статусов для договоров, затронутых
+ * импортом (alldocuments, согласования), и договоров, связанных с затронутыми заявками и закупками,
+ * а также при смене признака договорника у пользователя ({@link ContractorFlagChangedEvent}).
+ * Договор, переставший быть подписанным или подготовленным договорником, из витрины удаляется.
+ * {@link #rebuildAll()} — полный пересчёт (при полном пересчёте статусов и при пустой витрине; изменение
+ * таблицы holidays очищает витрину триггером, и она строится заново со следующим пересчётом статусов).
+ */
+@Service
+public class ContractSlaFactService {
+
+    private static final Logger logger = LoggerFactory.getLogger(ContractSlaFactService.class);
+
+    private static final String SPECIFICATION_FORM = "Спецификация";
+    static final String NOT_ASSIGNED = "Не назначен";
+    /** Размер порции договоров: обогащение тянет зависимости batch-запросами IN (...). */
+    private static final int CHUNK_SIZE = 500;
+
+    private static final String INSERT_SQL =
+        "INSERT INTO contract_sla_facts (contract_id, inner_id, name, document_form, is_typical_form, cfo, " +
+        "prepared_by, preparer_key, customer_organization, purchase_request_system_id, purchase_request_inner_id, " +
+        "signing_date, signing_year, signing_month, approvals_signed_at, " +
+        "preparation_working_days, planned_preparation_sla_days, preparation_sla_delta, " +
+        "approval_working_days, planned_approval_sla_days, approval_sla_delta, " +
+        "signing_working_days, planned_signing_sla_days, signing_sla_delta, " +
+        "total_working_days, total_planned_sla_days, sla_violated, updated_at) " +
+        "VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?)";
+
+    @PersistenceContext
+    private EntityManager entityManager;
+
+    private final ContractRepository contractRepository;
+    private final ContractService contractService;
+    private final JdbcTemplate jdbcTemplate;
+    private final TransactionTemplate transactionTemplate;
+
+    public ContractSlaFactService(
+            ContractRepository contractRepository,
+            ContractService contractService,
+            JdbcTemplate jdbcTemplate,
+            PlatformTransactionManager transactionManager) {
+        this.contractRepository = contractRepository;
+        this.contractService = contractService;
+        this.jdbcTemplate = jdbcTemplate;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+    }
+
+    /**
+     * Пересчитывает строки витрины для указанных договоров (по порциям, каждая в своей транзакции).
+     *
+     * @return строк витрины записано
+     */
+    public int refresh(Collection<Long> contractIds) {
+        if (contractIds == null || contractIds.isEmpty()) {
+            return 0;
+        }
+        List<Long> ids = new ArrayList<>(new TreeSet<>(contractIds));
+        int written = 0;
+        for (int start = 0; start < ids.size(); start += CHUNK_SIZE) {
+            List<Long> chunk = ids.subList(start, Math.min(start + CHUNK_SIZE, ids.size()));
+            Integer count = transactionTemplate.execute(status -> refreshChunk(chunk));
+            written += count != null ? count : 0;
+        }
+        return written;
+    }
+
+    /**
+     * Полный пересчёт витрины по всем подписанным документам, подготовленным договорником.
+     */
+    public int rebuildAll() {
+        long startTime = System.currentTimeMillis();
+        List<Long> ids = jdbcTemplate.queryForList(
+            "SELECT c.id FROM contracts c JOIN users u ON u.id = c.prepared_by_id " +
+            "WHERE c.status = ? AND u.is_contractor = true ORDER BY c.id",
+            Long.class, ContractStatus.SIGNED.name());
+        // Договоры, которые больше не подходят, удаляются одним запросом; подходящие перезаписываются порциями
+        jdbcTemplate.update(
+            "DELETE FROM contract_sla_facts f WHERE NOT EXISTS (" +
+            "SELECT 1 FROM contracts c JOIN users u ON u.id = c.prepared_by_id " +
+            "WHERE c.id = f.contract_id AND c.status = ? AND u.is_contractor = true)",
+            ContractStatus.SIGNED.name());
+        int written = refresh(ids);
+        logger.info("Contract SLA facts rebuilt: {} signed documents, {} rows, time: {} ms",
+            ids.size(), written, System.currentTimeMillis() - startTime);
+        return written;
+    }
+
+    /**
+     * Обработчик {@link ContractorFlagChangedEvent}: пересчитывает строки договоров, подготовленных пользователем,
+     * после фиксации транзакции, изменившей признак (без транзакции — сразу).
+     */
+    @TransactionalEventListener(fallbackExecution = true)
+    @Transactional(propagation = Propagation.REQUIRES_NEW)
+    public void onContractorFlagChanged(ContractorFlagChangedEvent event) {
+        List<Long> ids = jdbcTemplate.queryForList(
+            "SELECT id FROM contracts WHERE prepared_by_id = ?", Long.class, event.userId());
+        int written = refresh(ids);
+        logger.info("Contractor flag of user {} changed: refreshed SLA facts of {} contracts, {} rows",
+            event.userId(), ids.size(), written);
+    }
+
+    public boolean isEmpty() {
+        Boolean exists = jdbcTemplate.queryForObject("SELECT EXISTS (SELECT 1 FROM contract_sla_facts)", Boolean.class);
+        return !Boolean.TRUE.equals(exists);
+    }
+
+    private int refreshChunk(List<Long> chunk) {
+        List<Contract> signed = contractRepository.findByIdsAndStatusPreparedByContractor(chunk, ContractStatus.SIGNED);
+        Map<Long, LocalDateTime> approvalsSignedAt = findApprovalsSignedAt(chunk);
+        List<ContractSlaFact> facts = new ArrayList<>(signed.size());
+        if (!signed.isEmpty()) {
+            for (ContractDto dto : contractService.enrichContracts(signed)) {
+                ContractSlaRowDto row = toSlaRow(dto);
+                if (row != null) {
+                    facts.add(new ContractSlaFact(row, dto, approvalsSignedAt.get(dto.getId())));
+                }
+            }
+        }
+
+        jdbcTemplate.update(con -> {
+            var ps = con.prepareStatement("DELETE FROM contract_sla_facts WHERE contract_id = ANY (?)");
+            ps.setArray(1, con.createArrayOf("bigint", chunk.toArray()));
+            return ps;
+        });
+        Timestamp now = Timestamp.valueOf(LocalDateTime.now());
+        jdbcTemplate.batchUpdate(INSERT_SQL, facts, facts.size(), (ps, fact) -> {
+            ContractSlaRowDto r = fact.row();
+            ps.setLong(1, r.id());
+            ps.setString(2, r.innerId());
+            ps.setString(3, r.name());
+            ps.setString(4, r.documentForm());
+            ps.setObject(5, r.isTypicalForm(), Types.BOOLEAN);
+            ps.setString(6, r.cfo());
+            ps.setString(7, r.preparedBy());
+            ps.setString(8, preparerName(r.preparedBy()));
+            ps.setString(9, fact.customerOrganization());
+            ps.setObject(10, r.purchaseRequestSystemId(), Types.BIGINT);
+            ps.setObject(11, r.purchaseRequestInnerId(), Types.BIGINT);
+            ps.setTimestamp(12, Timestamp.valueOf(r.signingDate()));
+            ps.setInt(13, r.signingDate().getYear());
+            ps.setInt(14, r.signingDate().getMonthValue());
+            ps.setTimestamp(15, fact.approvalsSignedAt() != null ? Timestamp.valueOf(fact.approvalsSignedAt()) : null);
+            ps.setObject(16, r.preparationWorkingDays(), Types.INTEGER);
+            ps.setObject(17, r.plannedPreparationSlaDays(), Types.INTEGER);
+            ps.setObject(18, r.preparationSlaDelta(), Types.INTEGER);
+            ps.setObject(19, r.approvalWorkingDays(), Types.INTEGER);
+            ps.setObject(20, r.plannedApprovalSlaDays(), Types.INTEGER);
+            ps.setObject(21, r.approvalSlaDelta(), Types.INTEGER);
+            ps.setObject(22, r.signingWorkingDays(), Types.INTEGER);
+            ps.setObject(23, r.plannedSigningSlaDays(), Types.INTEGER);
+            ps.setObject(24, r.signingSlaDelta(), Types.INTEGER);
+            ps.setObject(25, r.totalWorkingDays(), Types.INTEGER);
+            ps.setObject(26, r.totalPlannedSlaDays(), Types.INTEGER);
+            ps.setBoolean(27, r.slaViolated());
+            ps.setTimestamp(28, now);
+        });
+        // Обогащённые сущности порции больше не нужны — контекст не растёт при полном пересчёте
+        entityManager.clear();
+        return facts.size();
+    }
+
+    /**
+     * Дата подписания по согласованиям (MAX completion_date этапов «регистрация%»/«синхронизация%») —
+     * по ней, как и раньше, отбираются документы года.
+     */
+    private Map<Long, LocalDateTime> findApprovalsSignedAt(List<Long> contractIds) {
+        Map<Long, LocalDateTime> result = new HashMap<>();
+        jdbcTemplate.query(con -> {
+            var ps = con.prepareStatement(
+                "SELECT contract_id, MAX(completion_date) FROM contract_approvals " +
+                "WHERE contract_id = ANY (?) AND (LOWER(stage) LIKE 'регистрация%' OR LOWER(stage) LIKE 'синхронизация%') " +
+                "AND completion_date IS NOT NULL GROUP BY contract_id");
+            ps.setArray(1, con.createArrayOf("bigint", contractIds.toArray()));
+            return ps;
+        }, rs -> {
+            Timestamp ts = rs.getTimestamp(2);
+            if (ts != null) {
+                result.put(rs.getLong(1), ts.toLocalDateTime());
+            }
+        });
+        return result;
+    }
+
+    /** Строка дашборда из обогащённого DTO договора; null — если дату подписания определить не удалось. */
+    private ContractSlaRowDto toSlaRow(ContractDto dto) {
+        boolean isSpecification = SPECIFICATION_FORM.equals(dto.getDocumentForm());
+        LocalDateTime signingDate = isSpecification ? dto.getSynchronizationDate() : dto.getRegistrationDate();
+        if (signingDate == null) {
+            return null;
+        }
+
+        boolean violated = isOverdue(dto.getSlaDelta())
+                || isOverdue(dto.getApprovalSlaDelta())
+                || isOverdue(dto.getSigningSlaDelta());
+
+        Integer totalFactual = sumStages(
+                dto.getPlannedSlaDays() != null ? dto.getPreparationWorkingDays() : null,
+                dto.getPlannedApprovalSlaDays() != null ? dto.getApprovalWorkingDays() : null,
+                dto.getPlannedSigningSlaDays() != null ? dto.getSigningWorkingDays() : null);
+        Integer totalPlanned = sumStages(
+                dto.getPreparationWorkingDays() != null ? dto.getPlannedSlaDays() : null,
+                dto.getApprovalWorkingDays() != null ? dto.getPlannedApprovalSlaDays() : null,
+                dto.getSigningWorkingDays() != null ? dto.getPlannedSigningSlaDays() : null);
+
+        return new ContractSlaRowDto(
+                dto.getId(),
+                dto.getInnerId(),
+                dto.getName(),
+                dto.getDocumentForm(),
+                dto.getIsTypicalForm(),
+                dto.getCfo(),
+                dto.getPreparedBy(),
+                dto.getPurchaseRequestSystemId(),
+                dto.getPurchaseRequestInnerId(),
+                signingDate,
+                dto.getPreparationWorkingDays(),
+                dto.getPlannedSlaDays(),
+                dto.getSlaDelta(),
+                dto.getApprovalWorkingDays(),
+                dto.getPlannedApprovalSlaDays(),
+                dto.getApprovalSlaDelta(),
+                dto.getSigningWorkingDays(),
+                dto.getPlannedSigningSlaDays(),
+                dto.getSigningSlaDelta(),
+                totalFactual,
+                totalPlanned,
+                violated);
+    }
+
+    private static boolean isOverdue(Integer delta) {
+        return delta != null && delta < 0;
+    }
+
+    /** Сумма значений по этапам; null — если ни одного значения нет. */
+    private static Integer sumStages(Integer... values) {
+        int sum = 0;
+        boolean any = false;
+        for (Integer value : values) {
+            if (value != null) {
+                sum += value;
+                any = true;
+            }
+        }
+        return any ? sum : null;
+    }
+
+    static String preparerName(String preparedBy) {
+        return (preparedBy == null || preparedBy.trim().isEmpty()) ? NOT_ASSIGNED : preparedBy.trim();
+    }
+
+    /** Строка витрины: строка дашборда и поля, по которым она фильтруется. */
+    private record ContractSlaFact(ContractSlaRowDto row, String customerOrganization, LocalDateTime approvalsSignedAt) {
+        ContractSlaFact(ContractSlaRowDto row, ContractDto dto, LocalDateTime approvalsSignedAt) {
+            this(row, dto.getCustomerOrganization() != null ? dto.getCustomerOrganization().name() : null, approvalsSignedAt);
+        }
+    }
+}
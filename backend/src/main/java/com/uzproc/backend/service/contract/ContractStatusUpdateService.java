@@ -2,9 +2,11 @@ package com.uzproc.backend.service.contract;
 
 import com.uzproc.backend.entity.contract.Contract;
 import com.uzproc.backend.entity.contract.ContractStatus;
+import com.uzproc.backend.event.DataChangedEvent;
 import com.uzproc.backend.repository.contract.ContractRepository;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.context.ApplicationEventPublisher;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Propagation;
 import org.springframework.transaction.annotation.Transactional;
@@ -55,9 +57,11 @@ public class ContractStatusUpdateService {
     );
     
     private final ContractRepository contractRepository;
+    private final ApplicationEventPublisher eventPublisher;
 
-    public ContractStatusUpdateService(ContractRepository contractRepository) {
+    public ContractStatusUpdateService(ContractRepository contractRepository, ApplicationEventPublisher eventPublisher) {
         this.contractRepository = contractRepository;
+        this.eventPublisher = eventPublisher;
     }
 
     /**
@@ -184,8 +188,10 @@ public class ContractStatusUpdateService {
      * Массовое обновление статусов для всех договоров
      * Используется после парсинга данных для обновления всех статусов
      * Каждая обработка записи выполняется в отдельной транзакции с явным flush для освобождения соединения
+     *
+     * @return количество записей, обновить которые не удалось
      */
-    public void updateAllStatuses() {
+    public int updateAllStatuses() {
         logger.info("Starting mass status update for all contracts");
         long startTime = System.currentTimeMillis();
         
@@ -195,7 +201,7 @@ public class ContractStatusUpdateService {
         
         if (allContracts.isEmpty()) {
             logger.warn("No contracts found in database, skipping status update");
-            return;
+            return 0;
         }
         
         // Логируем первые несколько договоров для диагностики
@@ -241,6 +247,8 @@ public class ContractStatusUpdateService {
         long processingTime = System.currentTimeMillis() - startTime;
         logger.info("Mass status update completed: {} contracts processed, {} updated, {} errors, time: {} ms",
             allContracts.size(), updatedCount, errorCount, processingTime);
+        eventPublisher.publishEvent(new DataChangedEvent(DataChangedEvent.SOURCE_STATUS_UPDATE, true));
+        return errorCount;
     }
     
     /**
@@ -256,8 +264,9 @@ public class ContractStatusUpdateService {
      * Каждая обработка записи выполняется в отдельной транзакции
      * 
      * @param contractIds список ID договоров для обновления
+     * @return количество записей, обновить которые не удалось
      */
-    public void updateStatuses(List<Long> contractIds) {
+    public int updateStatuses(List<Long> contractIds) {
         logger.info("Starting status update for {} contracts", contractIds.size());
         long startTime = System.currentTimeMillis();
         
@@ -278,6 +287,7 @@ public class ContractStatusUpdateService {
         long processingTime = System.currentTimeMillis() - startTime;
         logger.info("Status update completed: {} contracts processed, {} updated, {} errors, time: {} ms", 
             contractIds.size(), updatedCount, errorCount, processingTime);
+        return errorCount;
     }
 }
 
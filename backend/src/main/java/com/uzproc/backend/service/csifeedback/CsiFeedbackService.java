@@ -9,12 +9,14 @@ import com.uzproc.backend.entity.csifeedback.CsiFeedback;
 import com.uzproc.backend.entity.csifeedback.CsiFeedbackInvitation;
 import com.uzproc.backend.entity.purchaserequest.PurchaseRequest;
 import com.uzproc.backend.entity.user.User;
+import com.uzproc.backend.event.DataChangedEvent;
 import com.uzproc.backend.repository.csifeedback.CsiFeedbackRepository;
 import com.uzproc.backend.repository.purchaserequest.PurchaseRequestRepository;
 import com.uzproc.backend.repository.user.UserRepository;
 import jakarta.persistence.criteria.Predicate;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.context.ApplicationEventPublisher;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.PageRequest;
 import org.springframework.data.domain.Pageable;
@@ -42,16 +44,19 @@ public class CsiFeedbackService {
     private final PurchaseRequestRepository purchaseRequestRepository;
     private final CsiFeedbackInvitationService invitationService;
     private final UserRepository userRepository;
+    private final ApplicationEventPublisher eventPublisher;
 
     public CsiFeedbackService(
             CsiFeedbackRepository csiFeedbackRepository,
             PurchaseRequestRepository purchaseRequestRepository,
             CsiFeedbackInvitationService invitationService,
-            UserRepository userRepository) {
+            UserRepository userRepository,
+            ApplicationEventPublisher eventPublisher) {
         this.csiFeedbackRepository = csiFeedbackRepository;
         this.purchaseRequestRepository = purchaseRequestRepository;
         this.invitationService = invitationService;
         this.userRepository = userRepository;
+        this.eventPublisher = eventPublisher;
     }
 
     @Transactional
@@ -118,6 +123,7 @@ public class CsiFeedbackService {
 
         CsiFeedback saved = csiFeedbackRepository.save(feedback);
         logger.info("CSI feedback created with ID: {} for purchase request ID: {}", saved.getId(), purchaseRequest.getId());
+        eventPublisher.publishEvent(new DataChangedEvent(DataChangedEvent.SOURCE_CSI_FEEDBACK));
 
         // Связываем приглашение с обратной связью, если приглашение найдено
         if (recipient != null) {
@@ -0,0 +1,242 @@
+package com.uzproc.backend.service.delivery;
+
+import com.uzproc.backend.entity.delivery.Delivery;
+import com.uzproc.backend.entity.payment.Payment;
+import com.uzproc.backend.repository.delivery.DeliveryRepository;
+import com.uzproc.backend.repository.payment.PaymentRepository;
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.PersistenceContext;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+
+/**
+ * Сверка поставок с оплатами их договоров за один проход.
+ * <p>
+ * Поставки обрабатываются порциями, сгруппированными по договору: на порцию — один запрос поставок
+ * с оплатами и схемой оплаты и один запрос оплат их договоров. К каждой поставке по очереди применяются
+ * правила, которые раньше выполнялись отдельными проходами по всей таблице:
+ * <ol>
+ *   <li>синхронизация привязок: недостающие оплаты договора добавляются, отклонённые отвязываются
+ *       (у отклонённых оплат договора снимается тип);</li>
+ *   <li>авто-распределение типов (Аванс / По факту) — только если ни одна оплата поставки ещё не размечена;</li>
+ *   <li>пересчёт статуса оплаты и статуса отгрузки по фактическому состоянию оплат;</li>
+ *   <li>авто-закрытие полностью оплаченных поставок «0/100/10 д.» и «100/0/10 д.» — последним,
+ *       чтобы его более специфичные правила имели приоритет над пересчётом.</li>
+ * </ol>
+ * Изменения порции сбрасываются в БД одним flush (пакетные UPDATE, см. hibernate.jdbc.batch_size),
+ * каждая порция — в своей транзакции.
+ */
+@Service
+public class DeliveryReconciliationService {
+
+    private static final Logger logger = LoggerFactory.getLogger(DeliveryReconciliationService.class);
+
+    /** Ориентировочный размер порции поставок; поставки одного договора не разделяются между порциями. */
+    private static final int CHUNK_SIZE = 500;
+
+    @PersistenceContext
+    private EntityManager entityManager;
+
+    private final DeliveryRepository deliveryRepository;
+    private final PaymentRepository paymentRepository;
+    private final DeliveryService deliveryService;
+    private final TransactionTemplate transactionTemplate;
+
+    public DeliveryReconciliationService(
+            DeliveryRepository deliveryRepository,
+            PaymentRepository paymentRepository,
+            DeliveryService deliveryService,
+            PlatformTransactionManager transactionManager) {
+        this.deliveryRepository = deliveryRepository;
+        this.paymentRepository = paymentRepository;
+        this.deliveryService = deliveryService;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+    }
+
+    /**
+     * Итог сверки: число поставок, изменённых каждым правилом (одна поставка может попасть в несколько).
+     *
+     * @param deliveries             поставок просмотрено
+     * @param deliveriesChanged      поставок, изменённых хотя бы одним правилом
+     * @param paymentLinksSynced     поставок, у которых изменился набор привязанных оплат
+     * @param rejectedTypesCleared   отклонённых оплат, у которых снят тип
+     * @param distributed            поставок, в которых авто-распределение проставило типы оплат
+     * @param statusesRecalculated   поставок, у которых изменился статус оплаты или отгрузки при пересчёте
+     * @param autoClosed             поставок, закрытых правилом авто-закрытия
+     */
+    public record ReconciliationResult(int deliveries, int deliveriesChanged, int paymentLinksSynced,
+                                       int rejectedTypesCleared, int distributed, int statusesRecalculated,
+                                       int autoClosed, long timeMs) {
+
+        static final ReconciliationResult EMPTY = new ReconciliationResult(0, 0, 0, 0, 0, 0, 0, 0);
+
+        ReconciliationResult plus(ReconciliationResult other) {
+            return new ReconciliationResult(deliveries + other.deliveries,
+                deliveriesChanged + other.deliveriesChanged,
+                paymentLinksSynced + other.paymentLinksSynced,
+                rejectedTypesCleared + other.rejectedTypesCleared,
+                distributed + other.distributed,
+                statusesRecalculated + other.statusesRecalculated,
+                autoClosed + other.autoClosed,
+                timeMs + other.timeMs);
+        }
+
+        ReconciliationResult withTimeMs(long value) {
+            return new ReconciliationResult(deliveries, deliveriesChanged, paymentLinksSynced,
+                rejectedTypesCleared, distributed, statusesRecalculated, autoClosed, value);
+        }
+    }
+
+    /**
+     * Сверка всех поставок.
+     */
+    public synchronized ReconciliationResult reconcileAll() {
+        long startTime = System.currentTimeMillis();
+        ReconciliationResult total = ReconciliationResult.EMPTY;
+        for (List<Long> chunk : chunksByContract(deliveryRepository.findIdsWithContractIds())) {
+            ReconciliationResult result = transactionTemplate.execute(status -> reconcileChunk(chunk));
+            if (result != null) {
+                total = total.plus(result);
+            }
+        }
+        total = total.withTimeMs(System.currentTimeMillis() - startTime);
+        logger.info("Delivery reconciliation: {} deliveries, {} changed (payment links synced: {}, " +
+                "rejected payment types cleared: {}, distributed: {}, statuses recalculated: {}, auto-closed: {}), " +
+                "time: {} ms",
+            total.deliveries(), total.deliveriesChanged(), total.paymentLinksSynced(), total.rejectedTypesCleared(),
+            total.distributed(), total.statusesRecalculated(), total.autoClosed(), total.timeMs());
+        return total;
+    }
+
+    private ReconciliationResult reconcileChunk(List<Long> deliveryIds) {
+        List<Delivery> deliveries = deliveryRepository.findWithPaymentsByIdIn(deliveryIds);
+        Set<Long> contractIds = new HashSet<>();
+        for (Delivery d : deliveries) {
+            if (d.getContract() != null) {
+                contractIds.add(d.getContract().getId());
+            }
+        }
+
+        // Оплаты договоров порции: отклонённые теряют тип, остальные — кандидаты на привязку
+        int rejectedTypesCleared = 0;
+        Map<Long, List<Payment>> distributableByContract = new HashMap<>();
+        if (!contractIds.isEmpty()) {
+            for (Payment p : paymentRepository.findByContractIdIn(contractIds)) {
+                if (!DeliveryService.isDistributable(p)) {
+                    if (p.getPaymentType() != null) {
+                        p.setPaymentType(null);
+                        rejectedTypesCleared++;
+                    }
+                    continue;
+                }
+                distributableByContract.computeIfAbsent(p.getContract().getId(), k -> new ArrayList<>()).add(p);
+            }
+        }
+
+        int changed = 0;
+        int synced = 0;
+        int distributed = 0;
+        int recalculated = 0;
+        int closed = 0;
+        for (Delivery d : deliveries) {
+            boolean deliveryChanged = false;
+            if (d.getContract() != null && syncPayments(d, distributableByContract.get(d.getContract().getId()))) {
+                synced++;
+                deliveryChanged = true;
+            }
+            if (distribute(d)) {
+                distributed++;
+                deliveryChanged = true;
+            }
+            if (deliveryService.recalculateStatuses(d)) {
+                recalculated++;
+                deliveryChanged = true;
+            }
+            if (deliveryService.applyAutoClose(d)) {
+                closed++;
+                deliveryChanged = true;
+            }
+            if (deliveryChanged) {
+                changed++;
+            }
+        }
+        entityManager.flush();
+        entityManager.clear();
+        return new ReconciliationResult(deliveries.size(), changed, synced, rejectedTypesCleared,
+            distributed, recalculated, closed, 0);
+    }
+
+    /**
+     * Добавляет к поставке недостающие оплаты договора и отвязывает отклонённые.
+     * Типы уже размеченных оплат (в т.ч. вручную) не трогает.
+     */
+    private static boolean syncPayments(Delivery d, List<Payment> contractPayments) {
+        if (d.getPayments() == null) {
+            d.setPayments(new HashSet<>());
+        }
+        Set<Payment> current = d.getPayments();
+        boolean changed = current.removeIf(p -> !DeliveryService.isDistributable(p));
+        if (contractPayments == null) {
+            return changed;
+        }
+        Set<Long> currentIds = new HashSet<>();
+        for (Payment p : current) {
+            currentIds.add(p.getId());
+        }
+        for (Payment p : contractPayments) {
+            if (currentIds.add(p.getId())) {
+                current.add(p);
+                changed = true;
+            }
+        }
+        return changed;
+    }
+
+    /**
+     * Авто-распределение типов оплат для поставки, у которой ни одна оплата ещё не размечена;
+     * уже размеченные (в т.ч. частично или вручную) не перераспределяются.
+     */
+    private boolean distribute(Delivery d) {
+        Set<Payment> payments = d.getPayments();
+        if (payments == null || payments.isEmpty()) return false;
+        if (payments.stream().map(Payment::getPaymentType).anyMatch(Objects::nonNull)) return false;
+        deliveryService.autoDistributePayments(d, true);
+        return payments.stream().map(Payment::getPaymentType).anyMatch(Objects::nonNull);
+    }
+
+    /**
+     * Режет упорядоченные по договору пары (id поставки, id договора) на порции: поставки одного договора
+     * остаются в одной порции — их общие оплаты загружаются и меняются один раз.
+     */
+    private static List<List<Long>> chunksByContract(List<Object[]> rows) {
+        List<List<Long>> chunks = new ArrayList<>();
+        List<Long> current = new ArrayList<>();
+        Long currentContract = null;
+        for (Object[] row : rows) {
+            Long deliveryId = ((Number) row[0]).longValue();
+            Long contractId = row[1] != null ? ((Number) row[1]).longValue() : null;
+            boolean sameContract = contractId != null && contractId.equals(currentContract);
+            if (current.size() >= CHUNK_SIZE && !sameContract) {
+                chunks.add(current);
+                current = new ArrayList<>();
+            }
+            current.add(deliveryId);
+            currentContract = contractId;
+        }
+        if (!current.isEmpty()) {
+            chunks.add(current);
+        }
+        return chunks;
+    }
+}
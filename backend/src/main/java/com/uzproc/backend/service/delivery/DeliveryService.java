@@ -41,6 +41,8 @@ import java.time.LocalDate;
 import java.util.ArrayList;
 import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Objects;
 import java.util.Set;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
@@ -58,19 +60,22 @@ public class DeliveryService {
     private final HolidayRepository holidayRepository;
     private final ContractApprovalRepository contractApprovalRepository;
     private final com.uzproc.backend.repository.delivery.DeliveryPaymentSchemeRepository paymentSchemeRepository;
+    private final com.uzproc.backend.service.search.TextSearchService textSearchService;
 
     public DeliveryService(DeliveryRepository deliveryRepository,
                            ContractRepository contractRepository,
                            PaymentRepository paymentRepository,
                            HolidayRepository holidayRepository,
                            ContractApprovalRepository contractApprovalRepository,
-                           com.uzproc.backend.repository.delivery.DeliveryPaymentSchemeRepository paymentSchemeRepository) {
+                           com.uzproc.backend.repository.delivery.DeliveryPaymentSchemeRepository paymentSchemeRepository,
+                           com.uzproc.backend.service.search.TextSearchService textSearchService) {
         this.deliveryRepository = deliveryRepository;
         this.contractRepository = contractRepository;
         this.paymentRepository = paymentRepository;
         this.holidayRepository = holidayRepository;
         this.contractApprovalRepository = contractApprovalRepository;
         this.paymentSchemeRepository = paymentSchemeRepository;
+        this.textSearchService = textSearchService;
     }
 
     /** Уникальные значения «Статуса из отчёта» — для выпадающего фильтра в таблице поставок. */
@@ -172,7 +177,7 @@ public class DeliveryService {
         // Батч-загрузка дат регистрации/синхронизации договоров для всей страницы (вместо 2 нативных запросов на строку)
         List<Long> contractIds = deliveries.getContent().stream()
                 .map(d -> d.getContract() != null ? d.getContract().getId() : null)
-                .filter(java.util.Objects::nonNull)
+                .filter(Objects::nonNull)
                 .distinct()
                 .collect(Collectors.toList());
         java.util.Map<Long, LocalDate> regDates = contractIds.isEmpty() ? java.util.Collections.emptyMap()
@@ -387,7 +392,7 @@ public class DeliveryService {
     }
 
     /** Оплата участвует в распределении, если её заявка не отклонена. */
-    private static boolean isDistributable(Payment p) {
+    static boolean isDistributable(Payment p) {
         return p.getRequestStatus() != PaymentRequestStatus.REJECTED;
     }
 
@@ -456,7 +461,7 @@ public class DeliveryService {
      *                          (см. {@link #upsertDeliveryForSpecification}), и её отсутствие на этом
      *                          шаге ещё не означает, что поставки не было.
      */
-    private void autoDistributePayments(Delivery delivery, boolean allowFactFallback) {
+    public void autoDistributePayments(Delivery delivery, boolean allowFactFallback) {
         DeliveryPaymentScheme ref = delivery.getPaymentSchemeRef();
         BigDecimal amount = delivery.getAmount();
         if (ref == null || delivery.getPayments() == null) return;
@@ -786,33 +791,7 @@ public class DeliveryService {
         List<Delivery> candidates = deliveryRepository.findAutoCloseCandidatesBySchemeLabels(AUTO_CLOSE_SCHEME_LABELS);
         int updated = 0;
         for (Delivery d : candidates) {
-            BigDecimal amount = d.getAmount();
-            if (amount == null) continue;
-            // Учитываем только фактически оплаченные платежи (статус «Оплачена»/PAID);
-            // неоплаченные (пустой статус, «К оплате» и т.п.) в сумму не входят.
-            BigDecimal paid = (d.getPayments() == null) ? BigDecimal.ZERO
-                    : d.getPayments().stream()
-                        .filter(p -> p.getPaymentStatus() == PaymentStatus.PAID)
-                        .map(Payment::getAmount)
-                        .filter(java.util.Objects::nonNull)
-                        .reduce(BigDecimal.ZERO, BigDecimal::add);
-            if (paid.compareTo(amount) != 0) continue;
-
-            String label = (d.getPaymentSchemeRef() != null && d.getPaymentSchemeRef().getLabel() != null)
-                    ? d.getPaymentSchemeRef().getLabel().trim() : null;
-            boolean isPostpay = POSTPAY_SCHEME_LABEL.equals(label);
-
-            boolean changed = false;
-            if (d.getStatus() != DeliveryStatus.PAID) {
-                d.setStatus(DeliveryStatus.PAID);
-                changed = true;
-            }
-            // «Поставлено» — только для постоплаты; для аванса не проставляем.
-            if (isPostpay && d.getShipmentStatus() != ShipmentStatus.DELIVERED) {
-                d.setShipmentStatus(ShipmentStatus.DELIVERED);
-                changed = true;
-            }
-            if (changed) {
+            if (applyAutoClose(d)) {
                 deliveryRepository.save(d);
                 updated++;
             }
@@ -824,96 +803,52 @@ public class DeliveryService {
     }
 
     /**
-     * Синхронизация привязок оплат с договорами.
-     * Оплаты грузятся из Excel позже, чем создаются/обновляются поставки из handreport,
-     * поэтому оплата, появившаяся у договора после создания поставки, остаётся не привязанной —
-     * в таблице у такой поставки отображается «Оплат нет», хотя в карточке оплата видна.
-     * Метод добавляет к каждой поставке недостающие оплаты её договора и отвязывает отклонённые.
-     * Типы уже размеченных оплат (в т.ч. вручную) не трогает. Возвращает число обновлённых поставок.
+     * Правило авто-закрытия для одной поставки (см. {@link #autoCloseFullyPaidDeliveries}).
+     * НЕ сохраняет. Возвращает true, если статус оплаты или отгрузки изменился.
      */
-    @Transactional
-    public int syncContractPaymentsToDeliveries() {
-        int updated = 0;
-        for (Delivery d : deliveryRepository.findAll()) {
-            if (d.getContract() == null) continue;
-            Set<Payment> current = d.getPayments() != null ? d.getPayments() : new HashSet<>();
-            boolean changed = current.removeIf(p -> !isDistributable(p));
-            Set<Long> currentIds = current.stream().map(Payment::getId).collect(Collectors.toSet());
-            for (Payment p : findDistributablePayments(d.getContract().getId())) {
-                if (currentIds.add(p.getId())) {
-                    current.add(p);
-                    changed = true;
-                }
-            }
-            if (!changed) continue;
-            d.setPayments(current);
-            d.setStatus(resolveInitialStatus(d.getPaymentScheme(), current));
-            applyDerivedShipmentStatus(d);
-            refinePostpayAwaitingBalance(d);
-            deliveryRepository.save(d);
-            updated++;
-        }
-        if (updated > 0) {
-            logger.info("Sync contract payments to deliveries: {} deliveries updated", updated);
-        }
-        return updated;
+    public boolean applyAutoClose(Delivery d) {
+        String label = (d.getPaymentSchemeRef() != null && d.getPaymentSchemeRef().getLabel() != null)
+                ? d.getPaymentSchemeRef().getLabel().trim() : null;
+        if (label == null || !AUTO_CLOSE_SCHEME_LABELS.contains(label)) return false;
+        BigDecimal amount = d.getAmount();
+        if (amount == null) return false;
+        // Учитываем только фактически оплаченные платежи (статус «Оплачена»/PAID);
+        // неоплаченные (пустой статус, «К оплате» и т.п.) в сумму не входят.
+        BigDecimal paid = (d.getPayments() == null) ? BigDecimal.ZERO
+                : d.getPayments().stream()
+                    .filter(p -> p.getPaymentStatus() == PaymentStatus.PAID)
+                    .map(Payment::getAmount)
+                    .filter(Objects::nonNull)
+                    .reduce(BigDecimal.ZERO, BigDecimal::add);
+        if (paid.compareTo(amount) != 0) return false;
+
+        boolean isPostpay = POSTPAY_SCHEME_LABEL.equals(label);
+        boolean changed = false;
+        if (d.getStatus() != DeliveryStatus.PAID) {
+            d.setStatus(DeliveryStatus.PAID);
+            changed = true;
+        }
+        // «Поставлено» — только для постоплаты; для аванса не проставляем.
+        if (isPostpay && d.getShipmentStatus() != ShipmentStatus.DELIVERED) {
+            d.setShipmentStatus(ShipmentStatus.DELIVERED);
+            changed = true;
+        }
+        return changed;
     }
 
     /**
-     * Финальный пересчёт статусов всех поставок (по паттерну StatusUpdateRunner для заявок).
-     * Статус оплаты и статус отгрузки каждый раз вычисляются заново по фактическому состоянию
-     * привязанных оплат (схема, типы, даты оплат). Нужен потому, что статус, посчитанный при
-     * создании поставки (handreport, порядок 150), устаревает: оплаты и их типы появляются позже
-     * (загрузка оплат 300, авто-распределение типов 400). Вручную выставленные статусы отгрузки
+     * Пересчёт статуса оплаты и статуса отгрузки поставки заново по фактическому состоянию
+     * привязанных оплат (схема, типы, даты оплат). Вручную выставленные статусы отгрузки
      * «Поставлено»/«Просрочено» не перетираются (см. {@link #applyDerivedShipmentStatus}).
-     * Выполняется ДО авто-закрытия (450), чтобы его более специфичные правила имели приоритет.
-     * Возвращает число поставок с изменённым статусом.
+     * НЕ сохраняет. Возвращает true, если хотя бы один из статусов изменился.
      */
-    @Transactional
-    public int recalculateAllDeliveryStatuses() {
-        int updated = 0;
-        for (Delivery d : deliveryRepository.findAll()) {
-            DeliveryStatus oldStatus = d.getStatus();
-            ShipmentStatus oldShipment = d.getShipmentStatus();
-            d.setStatus(resolveInitialStatus(d.getPaymentScheme(), d.getPayments()));
-            applyDerivedShipmentStatus(d);
-            refinePostpayAwaitingBalance(d);
-            if (d.getStatus() != oldStatus || d.getShipmentStatus() != oldShipment) {
-                deliveryRepository.save(d);
-                updated++;
-            }
-        }
-        if (updated > 0) {
-            logger.info("Recalculate delivery statuses: {} deliveries updated", updated);
-        }
-        return updated;
-    }
-
-    /**
-     * Разовое авто-распределение оплат при запуске приложения.
-     * Обрабатывает только поставки, у которых ни одна привязанная оплата не имеет типа:
-     * уже размеченные (в т.ч. вручную) не трогаем — перераспределения не происходит.
-     * Возвращает число поставок, в которых типы были проставлены.
-     */
-    @Transactional
-    public int autoDistributeUndistributedDeliveries() {
-        int updated = 0;
-        for (Delivery d : deliveryRepository.findAll()) {
-            Set<Payment> payments = d.getPayments();
-            if (payments == null || payments.isEmpty()) continue;
-            // Поставка уже размечена хотя бы частично — не вмешиваемся.
-            if (payments.stream().anyMatch(p -> p.getPaymentType() != null)) continue;
-
-            autoDistributePayments(d, true);
-            if (payments.stream().anyMatch(p -> p.getPaymentType() != null)) {
-                deliveryRepository.save(d);
-                updated++;
-            }
-        }
-        if (updated > 0) {
-            logger.info("Auto-distribute payments on startup: {} deliveries distributed", updated);
-        }
-        return updated;
+    public boolean recalculateStatuses(Delivery d) {
+        DeliveryStatus oldStatus = d.getStatus();
+        ShipmentStatus oldShipment = d.getShipmentStatus();
+        d.setStatus(resolveInitialStatus(d.getPaymentScheme(), d.getPayments()));
+        applyDerivedShipmentStatus(d);
+        refinePostpayAwaitingBalance(d);
+        return d.getStatus() != oldStatus || d.getShipmentStatus() != oldShipment;
     }
 
     /**
@@ -1272,48 +1207,53 @@ public class DeliveryService {
 
     /**
      * Поиск подписанных договоров, подготовленных договорником (preparedBy.isContractor = true).
-     * Используется в модальном окне создания поставки.
+     * Используется в модальном окне создания поставки. С запросом — ранжированный поиск по внутреннему номеру,
+     * наименованию и заголовку (триграммные индексы), без запроса — последние подписанные договоры.
      */
     public List<DeliveryContractSearchResultDto> searchSignedContracts(String search, int limit) {
         int safeLimit = Math.max(1, Math.min(limit, 50));
+        if (search != null && !search.trim().isEmpty()) {
+            List<Long> ids = textSearchService.searchSignedContractorContractIds(search, safeLimit);
+            Map<Long, Contract> byId = contractRepository.findAllById(ids).stream()
+                    .collect(Collectors.toMap(Contract::getId, c -> c));
+            return ids.stream()
+                    .map(byId::get)
+                    .filter(Objects::nonNull)
+                    .map(this::toContractSearchResult)
+                    .collect(Collectors.toList());
+        }
         org.springframework.data.jpa.domain.Specification<Contract> spec = (root, query, cb) -> {
             var preds = new ArrayList<jakarta.persistence.criteria.Predicate>();
             preds.add(cb.equal(root.get("status"), ContractStatus.SIGNED));
             var preparedByJoin = root.join("preparedBy", jakarta.persistence.criteria.JoinType.INNER);
             preds.add(cb.equal(preparedByJoin.get("isContractor"), true));
-            if (search != null && !search.trim().isEmpty()) {
-                String lower = "%" + search.trim().toLowerCase() + "%";
-                preds.add(cb.or(
-                        cb.like(cb.lower(root.get("innerId")), lower),
-                        cb.like(cb.lower(root.get("name")), lower),
-                        cb.like(cb.lower(root.get("title")), lower)
-                ));
-            }
             query.orderBy(cb.desc(root.get("contractCreationDate")));
             return cb.and(preds.toArray(new jakarta.persistence.criteria.Predicate[0]));
         };
         var pageable = PageRequest.of(0, safeLimit);
         return contractRepository.findAll(spec, pageable).stream()
-                .map(c -> {
-                    DeliveryContractSearchResultDto dto = new DeliveryContractSearchResultDto();
-                    dto.setId(c.getId());
-                    dto.setInnerId(c.getInnerId());
-                    dto.setName(c.getName());
-                    dto.setTitle(c.getTitle());
-                    dto.setDocumentForm(c.getDocumentForm());
-                    if (c.getSuppliers() != null && !c.getSuppliers().isEmpty()) {
-                        dto.setSupplierName(c.getSuppliers().iterator().next().getName());
-                    }
-                    dto.setBudgetAmount(c.getBudgetAmount());
-                    dto.setCurrency(c.getCurrency());
-                    dto.setPaymentTerms(c.getPaymentTerms());
-                    dto.setPaymentScheme(c.getPaymentScheme());
-                    dto.setDeliveryTerm(c.getDeliveryTerm());
-                    return dto;
-                })
+                .map(this::toContractSearchResult)
                 .collect(Collectors.toList());
     }
 
+    private DeliveryContractSearchResultDto toContractSearchResult(Contract c) {
+        DeliveryContractSearchResultDto dto = new DeliveryContractSearchResultDto();
+        dto.setId(c.getId());
+        dto.setInnerId(c.getInnerId());
+        dto.setName(c.getName());
+        dto.setTitle(c.getTitle());
+        dto.setDocumentForm(c.getDocumentForm());
+        if (c.getSuppliers() != null && !c.getSuppliers().isEmpty()) {
+            dto.setSupplierName(c.getSuppliers().iterator().next().getName());
+        }
+        dto.setBudgetAmount(c.getBudgetAmount());
+        dto.setCurrency(c.getCurrency());
+        dto.setPaymentTerms(c.getPaymentTerms());
+        dto.setPaymentScheme(c.getPaymentScheme());
+        dto.setDeliveryTerm(c.getDeliveryTerm());
+        return dto;
+    }
+
     /**
      * Оплаты, привязанные к договору — используются при выборе оплат в модальном окне создания поставки.
      */
@@ -0,0 +1,320 @@
+package com.uzproc.backend.service.excel;
+
+import com.uzproc.backend.entity.purchase.PurchaseApproval;
+import com.uzproc.backend.entity.purchaserequest.PurchaseRequestApproval;
+import com.uzproc.backend.service.contract.ContractApprovalRowData;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.sql.Types;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.UUID;
+
+/**
+ * Upsert согласований через staging-таблицу.
+ * <p>
+ * Пакет разобранных согласований складывается JDBC-батчем во временную таблицу (живёт до конца транзакции)
+ * и переносится в целевую одним {@code INSERT ... SELECT ... ON CONFLICT} по естественному ключу:
+ * (заявка, этап, роль, круг) для {@code purchase_request_approvals}, (закупка, этап, роль, круг)
+ * для {@code purchase_approvals} и (договор, этап, роль) для {@code contract_approvals}.
+ * Строка обновляется, только если её значения действительно изменились, поэтому результат различает
+ * вставленные, обновлённые и оставшиеся без изменений строки. Повторы ключа внутри пакета схлопываются
+ * (побеждает последнее значение) — иначе ON CONFLICT не сможет обновить строку дважды.
+ */
+@Service
+public class ApprovalMergeService {
+
+    private static final Logger logger = LoggerFactory.getLogger(ApprovalMergeService.class);
+    /** Ключей владельцев в одном запросе известных кругов. */
+    private static final int OWNER_CHUNK_SIZE = 1000;
+
+    private static final String CREATE_STAGE_SQL =
+        "CREATE TEMP TABLE IF NOT EXISTS approval_upsert_stage (" +
+        "owner_id BIGINT NOT NULL, stage VARCHAR(255) NOT NULL, role VARCHAR(255) NOT NULL, round INTEGER, " +
+        "guid UUID, cfo_id BIGINT, document_form VARCHAR(255), executor_id BIGINT, " +
+        "assignment_date TIMESTAMP, planned_completion_date TIMESTAMP, completion_date TIMESTAMP, " +
+        "days_in_work INTEGER, completion_result VARCHAR(1000), comment_text VARCHAR(2000), " +
+        "is_waiting BOOLEAN, counted_in_sla BOOLEAN" +
+        ") ON COMMIT DROP";
+
+    private static final String INSERT_STAGE_SQL =
+        "INSERT INTO approval_upsert_stage (owner_id, stage, role, round, guid, cfo_id, document_form, executor_id, " +
+        "assignment_date, planned_completion_date, completion_date, days_in_work, completion_result, comment_text, " +
+        "is_waiting, counted_in_sla) VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?)";
+
+    /** Вставка или обновление с подсчётом: xmax = 0 у только что вставленной строки. */
+    private static final String COUNT_MERGED_SQL =
+        "SELECT COUNT(*) FILTER (WHERE inserted), COUNT(*) FILTER (WHERE NOT inserted) FROM merged";
+
+    private static final String MERGE_REQUEST_APPROVALS_SQL =
+        "WITH merged AS (" +
+        "INSERT INTO purchase_request_approvals AS t (id_purchase_request, stage, role, round, assignment_date, " +
+        "completion_date, days_in_work, completion_result, counted_in_sla, created_at, updated_at) " +
+        "SELECT owner_id, stage, role, round, assignment_date, completion_date, days_in_work, completion_result, " +
+        "counted_in_sla, now(), now() FROM approval_upsert_stage " +
+        "ON CONFLICT (id_purchase_request, stage, role, round) DO UPDATE SET " +
+        "assignment_date = EXCLUDED.assignment_date, completion_date = EXCLUDED.completion_date, " +
+        "days_in_work = EXCLUDED.days_in_work, completion_result = EXCLUDED.completion_result, " +
+        "counted_in_sla = EXCLUDED.counted_in_sla, updated_at = now() " +
+        "WHERE (t.assignment_date, t.completion_date, t.days_in_work, t.completion_result, t.counted_in_sla) " +
+        "IS DISTINCT FROM (EXCLUDED.assignment_date, EXCLUDED.completion_date, EXCLUDED.days_in_work, " +
+        "EXCLUDED.completion_result, EXCLUDED.counted_in_sla) " +
+        "RETURNING (t.xmax = 0) AS inserted) " + COUNT_MERGED_SQL;
+
+    private static final String MERGE_PURCHASE_APPROVALS_SQL =
+        "WITH merged AS (" +
+        "INSERT INTO purchase_approvals AS t (purchase_request_id, stage, role, round, assignment_date, " +
+        "completion_date, days_in_work, completion_result, counted_in_sla, created_at, updated_at) " +
+        "SELECT owner_id, stage, role, round, assignment_date, completion_date, days_in_work, completion_result, " +
+        "counted_in_sla, now(), now() FROM approval_upsert_stage " +
+        "ON CONFLICT (purchase_request_id, stage, role, round) DO UPDATE SET " +
+        "assignment_date = EXCLUDED.assignment_date, completion_date = EXCLUDED.completion_date, " +
+        "days_in_work = EXCLUDED.days_in_work, completion_result = EXCLUDED.completion_result, " +
+        "counted_in_sla = EXCLUDED.counted_in_sla, updated_at = now() " +
+        "WHERE (t.assignment_date, t.completion_date, t.days_in_work, t.completion_result, t.counted_in_sla) " +
+        "IS DISTINCT FROM (EXCLUDED.assignment_date, EXCLUDED.completion_date, EXCLUDED.days_in_work, " +
+        "EXCLUDED.completion_result, EXCLUDED.counted_in_sla) " +
+        "RETURNING (t.xmax = 0) AS inserted) " + COUNT_MERGED_SQL;
+
+    private static final String MERGE_CONTRACT_APPROVALS_SQL =
+        "WITH merged AS (" +
+        "INSERT INTO contract_approvals AS t (contract_id, stage, role, guid, cfo_id, document_form, executor_id, " +
+        "assignment_date, planned_completion_date, completion_date, completion_result, comment_text, is_waiting, " +
+        "created_at, updated_at) " +
+        "SELECT owner_id, stage, role, guid, cfo_id, document_form, executor_id, assignment_date, " +
+        "planned_completion_date, completion_date, completion_result, comment_text, is_waiting, now(), now() " +
+        "FROM approval_upsert_stage " +
+        "ON CONFLICT (contract_id, stage, role) DO UPDATE SET " +
+        "guid = EXCLUDED.guid, cfo_id = EXCLUDED.cfo_id, document_form = EXCLUDED.document_form, " +
+        "executor_id = EXCLUDED.executor_id, assignment_date = EXCLUDED.assignment_date, " +
+        "planned_completion_date = EXCLUDED.planned_completion_date, completion_date = EXCLUDED.completion_date, " +
+        "completion_result = EXCLUDED.completion_result, comment_text = EXCLUDED.comment_text, " +
+        "is_waiting = EXCLUDED.is_waiting, updated_at = now() " +
+        "WHERE (t.guid, t.cfo_id, t.document_form, t.executor_id, t.assignment_date, t.planned_completion_date, " +
+        "t.completion_date, t.completion_result, t.comment_text, t.is_waiting) " +
+        "IS DISTINCT FROM (EXCLUDED.guid, EXCLUDED.cfo_id, EXCLUDED.document_form, EXCLUDED.executor_id, " +
+        "EXCLUDED.assignment_date, EXCLUDED.planned_completion_date, EXCLUDED.completion_date, " +
+        "EXCLUDED.completion_result, EXCLUDED.comment_text, EXCLUDED.is_waiting) " +
+        "RETURNING (t.xmax = 0) AS inserted) " + COUNT_MERGED_SQL;
+
+    private final JdbcTemplate jdbcTemplate;
+
+    public ApprovalMergeService(JdbcTemplate jdbcTemplate) {
+        this.jdbcTemplate = jdbcTemplate;
+    }
+
+    /**
+     * Итог upsert: строк вставлено, обновлено и найдено без изменений (после схлопывания повторов ключа).
+     */
+    public record MergeResult(int inserted, int updated, int unchanged) {
+
+        public static final MergeResult EMPTY = new MergeResult(0, 0, 0);
+
+        public int total() {
+            return inserted + updated + unchanged;
+        }
+
+        public MergeResult plus(MergeResult other) {
+            return new MergeResult(inserted + other.inserted, updated + other.updated, unchanged + other.unchanged);
+        }
+    }
+
+    /** Строка staging-таблицы; неиспользуемые целевой таблицей поля — null. */
+    private record StagedApproval(Long ownerId, String stage, String role, Integer round,
+                                  UUID guid, Long cfoId, String documentForm, Long executorId,
+                                  LocalDateTime assignmentDate, LocalDateTime plannedCompletionDate,
+                                  LocalDateTime completionDate, Integer daysInWork, String completionResult,
+                                  String commentText, Boolean isWaiting, Boolean countedInSla) {
+
+        Object key() {
+            return List.of(ownerId, stage, role, round != null ? round : 0);
+        }
+    }
+
+    @Transactional
+    public MergeResult mergeRequestApprovals(Collection<PurchaseRequestApproval> approvals) {
+        List<StagedApproval> rows = new ArrayList<>(approvals.size());
+        for (PurchaseRequestApproval a : approvals) {
+            rows.add(new StagedApproval(a.getIdPurchaseRequest(), a.getStage(), a.getRole(), a.getRound(),
+                null, null, null, null, a.getAssignmentDate(), null, a.getCompletionDate(), a.getDaysInWork(),
+                a.getCompletionResult(), null, null, a.getCountedInSla()));
+        }
+        return merge(rows, MERGE_REQUEST_APPROVALS_SQL, "purchase_request_approvals");
+    }
+
+    @Transactional
+    public MergeResult mergePurchaseApprovals(Collection<PurchaseApproval> approvals) {
+        List<StagedApproval> rows = new ArrayList<>(approvals.size());
+        for (PurchaseApproval a : approvals) {
+            rows.add(new StagedApproval(a.getPurchaseRequestId(), a.getStage(), a.getRole(), a.getRound(),
+                null, null, null, null, a.getAssignmentDate(), null, a.getCompletionDate(), a.getDaysInWork(),
+                a.getCompletionResult(), null, null, a.getCountedInSla()));
+        }
+        return merge(rows, MERGE_PURCHASE_APPROVALS_SQL, "purchase_approvals");
+    }
+
+    @Transactional
+    public MergeResult mergeContractApprovals(Collection<ContractApprovalRowData> approvals) {
+        List<StagedApproval> rows = new ArrayList<>(approvals.size());
+        for (ContractApprovalRowData d : approvals) {
+            rows.add(new StagedApproval(d.contractId, d.stage, d.role, null,
+                d.guid, d.cfoId, d.documentForm, d.executorId, d.assignmentDate, d.plannedCompletionDate,
+                d.completionDate, null, d.completionResult, d.commentText, d.isWaiting, null));
+        }
+        return merge(rows, MERGE_CONTRACT_APPROVALS_SQL, "contract_approvals");
+    }
+
+    /**
+     * Согласования заявок с указанными номерами (без связей) — известные круги для разбора отчёта
+     * без запроса на каждую ячейку. Читаются порциями {@code = ANY (?)} только по заявкам из файла.
+     *
+     * @param requestIds id_purchase_request заявок
+     */
+    @Transactional(readOnly = true)
+    public List<PurchaseRequestApproval> loadRequestApprovals(Collection<Long> requestIds) {
+        return loadByOwner(requestIds,
+            "SELECT id, id_purchase_request, stage, role, round, assignment_date, completion_date, days_in_work, " +
+            "completion_result, counted_in_sla FROM purchase_request_approvals " +
+            "WHERE id_purchase_request = ANY (?) ORDER BY id_purchase_request, round",
+            rs -> {
+                PurchaseRequestApproval a = new PurchaseRequestApproval(
+                    rs.getLong("id_purchase_request"), rs.getString("stage"), rs.getString("role"));
+                a.setId(rs.getLong("id"));
+                a.setRound(rs.getInt("round"));
+                a.setAssignmentDate(toLocalDateTime(rs, "assignment_date"));
+                a.setCompletionDate(toLocalDateTime(rs, "completion_date"));
+                a.setDaysInWork((Integer) rs.getObject("days_in_work"));
+                a.setCompletionResult(rs.getString("completion_result"));
+                a.setCountedInSla(rs.getBoolean("counted_in_sla"));
+                return a;
+            });
+    }
+
+    /**
+     * Согласования закупок с указанными ключами (без связей) — известные круги для разбора отчёта
+     * без запроса на каждую ячейку. Читаются порциями {@code = ANY (?)} только по закупкам из файла.
+     *
+     * @param purchaseKeys purchase_request_id закупок
+     */
+    @Transactional(readOnly = true)
+    public List<PurchaseApproval> loadPurchaseApprovals(Collection<Long> purchaseKeys) {
+        return loadByOwner(purchaseKeys,
+            "SELECT id, purchase_request_id, stage, role, round, assignment_date, completion_date, days_in_work, " +
+            "completion_result, counted_in_sla FROM purchase_approvals " +
+            "WHERE purchase_request_id = ANY (?) ORDER BY purchase_request_id, round",
+            rs -> {
+                PurchaseApproval a = new PurchaseApproval(
+                    rs.getLong("purchase_request_id"), rs.getString("stage"), rs.getString("role"));
+                a.setId(rs.getLong("id"));
+                a.setRound(rs.getInt("round"));
+                a.setAssignmentDate(toLocalDateTime(rs, "assignment_date"));
+                a.setCompletionDate(toLocalDateTime(rs, "completion_date"));
+                a.setDaysInWork((Integer) rs.getObject("days_in_work"));
+                a.setCompletionResult(rs.getString("completion_result"));
+                a.setCountedInSla(rs.getBoolean("counted_in_sla"));
+                return a;
+            });
+    }
+
+    /** Строки согласований по порциям ключей владельца; sql принимает массив ключей единственным параметром. */
+    private <T> List<T> loadByOwner(Collection<Long> ownerIds, String sql, ApprovalRowMapper<T> mapper) {
+        List<T> result = new ArrayList<>();
+        if (ownerIds == null || ownerIds.isEmpty()) {
+            return result;
+        }
+        List<Long> ids = new ArrayList<>(ownerIds);
+        for (int start = 0; start < ids.size(); start += OWNER_CHUNK_SIZE) {
+            Object[] chunk = ids.subList(start, Math.min(start + OWNER_CHUNK_SIZE, ids.size())).toArray();
+            jdbcTemplate.query(con -> {
+                PreparedStatement ps = con.prepareStatement(sql);
+                ps.setArray(1, con.createArrayOf("bigint", chunk));
+                return ps;
+            }, rs -> {
+                result.add(mapper.map(rs));
+            });
+        }
+        return result;
+    }
+
+    @FunctionalInterface
+    private interface ApprovalRowMapper<T> {
+        T map(ResultSet rs) throws SQLException;
+    }
+
+    private MergeResult merge(List<StagedApproval> rows, String mergeSql, String table) {
+        if (rows.isEmpty()) {
+            return MergeResult.EMPTY;
+        }
+        Map<Object, StagedApproval> unique = new LinkedHashMap<>(rows.size() * 2);
+        for (StagedApproval row : rows) {
+            unique.put(row.key(), row);
+        }
+        List<StagedApproval> staged = new ArrayList<>(unique.values());
+
+        jdbcTemplate.execute(CREATE_STAGE_SQL);
+        jdbcTemplate.batchUpdate(INSERT_STAGE_SQL, staged, staged.size(), ApprovalMergeService::bindStaged);
+        int[] counts = jdbcTemplate.queryForObject(mergeSql, (rs, rowNum) -> new int[]{rs.getInt(1), rs.getInt(2)});
+        jdbcTemplate.execute("TRUNCATE approval_upsert_stage");
+
+        int inserted = counts != null ? counts[0] : 0;
+        int updated = counts != null ? counts[1] : 0;
+        MergeResult result = new MergeResult(inserted, updated, staged.size() - inserted - updated);
+        logger.debug("Merged {} staged rows into {}: {} inserted, {} updated, {} unchanged",
+            staged.size(), table, result.inserted(), result.updated(), result.unchanged());
+        return result;
+    }
+
+    private static void bindStaged(PreparedStatement ps, StagedApproval row) throws SQLException {
+        ps.setLong(1, row.ownerId());
+        ps.setString(2, row.stage());
+        ps.setString(3, row.role());
+        setNullable(ps, 4, row.round(), Types.INTEGER);
+        setNullable(ps, 5, row.guid(), Types.OTHER);
+        setNullable(ps, 6, row.cfoId(), Types.BIGINT);
+        setNullable(ps, 7, row.documentForm(), Types.VARCHAR);
+        setNullable(ps, 8, row.executorId(), Types.BIGINT);
+        setNullable(ps, 9, toTimestamp(row.assignmentDate()), Types.TIMESTAMP);
+        setNullable(ps, 10, toTimestamp(row.plannedCompletionDate()), Types.TIMESTAMP);
+        setNullable(ps, 11, toTimestamp(row.completionDate()), Types.TIMESTAMP);
+        setNullable(ps, 12, row.daysInWork(), Types.INTEGER);
+        setNullable(ps, 13, row.completionResult(), Types.VARCHAR);
+        setNullable(ps, 14, row.commentText(), Types.VARCHAR);
+        setNullable(ps, 15, row.isWaiting(), Types.BOOLEAN);
+        setNullable(ps, 16, row.countedInSla(), Types.BOOLEAN);
+    }
+
+    private static void setNullable(PreparedStatement ps, int index, Object value, int sqlType) throws SQLException {
+        if (value == null) {
+            ps.setNull(index, sqlType);
+        } else {
+            ps.setObject(index, value, sqlType);
+        }
+    }
+
+    private static Timestamp toTimestamp(LocalDateTime value) {
+        return value != null ? Timestamp.valueOf(value) : null;
+    }
+
+    private static LocalDateTime toLocalDateTime(ResultSet rs, String column) throws SQLException {
+        Timestamp value = rs.getTimestamp(column);
+        return value != null ? value.toLocalDateTime() : null;
+    }
+
+    /** Ключ согласования заявки/закупки для группировки известных кругов: (владелец, этап, роль). */
+    static String roundsKey(Long ownerId, String stage, String role) {
+        return ownerId + "|" + Objects.toString(stage, "") + "|" + Objects.toString(role, "");
+    }
+}
@@ -12,14 +12,14 @@ import com.uzproc.backend.repository.CfoRepository;
 import com.uzproc.backend.repository.contract.ContractRepository;
 import com.uzproc.backend.repository.purchase.PurchaseRepository;
 import com.uzproc.backend.repository.purchaserequest.PurchaseRequestRepository;
-import com.uzproc.backend.repository.supplier.SupplierRepository;
 import com.uzproc.backend.repository.user.UserRepository;
-import com.uzproc.backend.service.user.UserImportEmailPolicy;
+import com.uzproc.backend.event.DataChangedEvent;
+import com.uzproc.backend.event.EntityIdsChangedEvent;
+import com.uzproc.backend.event.PurchaserChangedEvent;
+import com.uzproc.backend.service.changelog.ChangeLogBatchWriter;
 import com.uzproc.backend.service.excel.FileProcessingStatsService;
 import com.uzproc.backend.service.purchaserequest.PurchaseRequestChangeService;
-import com.uzproc.backend.service.purchaserequest.PurchaseRequestStatusUpdateService;
-import com.uzproc.backend.service.contract.ContractStatusUpdateService;
-import com.uzproc.backend.service.purchase.PurchaseStatusUpdateService;
+import com.uzproc.backend.service.status.StatusRecalculationService;
 import org.apache.poi.hssf.usermodel.HSSFWorkbook;
 import org.apache.poi.ss.usermodel.*;
 import org.apache.poi.ss.usermodel.DataFormatter;
@@ -34,6 +34,7 @@ import org.xml.sax.XMLReader;
 import org.xml.sax.helpers.XMLReaderFactory;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.context.ApplicationEventPublisher;
 import org.springframework.stereotype.Service;
 
 import java.io.File;
@@ -112,14 +113,16 @@ public class EntityExcelLoadService {
     private final ContractRepository contractRepository;
     private final UserRepository userRepository;
     private final CfoRepository cfoRepository;
-    private final SupplierRepository supplierRepository;
+    private final ImportReferenceDataService referenceDataService;
     private final DataFormatter dataFormatter = new DataFormatter();
 
     private final FileProcessingStatsService statsService;
-    private final PurchaseRequestStatusUpdateService statusUpdateService;
-    private final ContractStatusUpdateService contractStatusUpdateService;
-    private final PurchaseStatusUpdateService purchaseStatusUpdateService;
+    private final StatusRecalculationService statusRecalculationService;
     private final PurchaseRequestChangeService purchaseRequestChangeService;
+    private final PendingLinkService pendingLinkService;
+    private final ImportFingerprintService fingerprintService;
+    private final ChangeLogBatchWriter changeLogBatchWriter;
+    private final ApplicationEventPublisher eventPublisher;
 
     public EntityExcelLoadService(
             PurchaseRequestRepository purchaseRequestRepository,
@@ -127,23 +130,52 @@ public class EntityExcelLoadService {
             ContractRepository contractRepository,
             UserRepository userRepository,
             CfoRepository cfoRepository,
-            SupplierRepository supplierRepository,
+            ImportReferenceDataService referenceDataService,
             FileProcessingStatsService statsService,
-            PurchaseRequestStatusUpdateService statusUpdateService,
-            ContractStatusUpdateService contractStatusUpdateService,
-            PurchaseStatusUpdateService purchaseStatusUpdateService,
-            PurchaseRequestChangeService purchaseRequestChangeService) {
+            StatusRecalculationService statusRecalculationService,
+            PurchaseRequestChangeService purchaseRequestChangeService,
+            PendingLinkService pendingLinkService,
+            ImportFingerprintService fingerprintService,
+            ChangeLogBatchWriter changeLogBatchWriter,
+            ApplicationEventPublisher eventPublisher) {
         this.purchaseRequestRepository = purchaseRequestRepository;
         this.purchaseRepository = purchaseRepository;
         this.contractRepository = contractRepository;
         this.userRepository = userRepository;
         this.cfoRepository = cfoRepository;
-        this.supplierRepository = supplierRepository;
+        this.referenceDataService = referenceDataService;
         this.statsService = statsService;
-        this.statusUpdateService = statusUpdateService;
-        this.contractStatusUpdateService = contractStatusUpdateService;
-        this.purchaseStatusUpdateService = purchaseStatusUpdateService;
+        this.statusRecalculationService = statusRecalculationService;
         this.purchaseRequestChangeService = purchaseRequestChangeService;
+        this.pendingLinkService = pendingLinkService;
+        this.fingerprintService = fingerprintService;
+        this.changeLogBatchWriter = changeLogBatchWriter;
+        this.eventPublisher = eventPublisher;
+    }
+
+    /**
+     * Сбрасывает накопленную историю изменений импорта (после сохранения пакета заявок).
+     */
+    void flushChangeLog() {
+        changeLogBatchWriter.flushScope();
+    }
+
+    /**
+     * Сообщает ключи сохранённых обработчиком строк сущностей для инкрементального пересчёта статусов
+     */
+    void publishEntityIdsChanged(EntityIdsChangedEvent.EntityType type, Set<Long> ids) {
+        if (!ids.isEmpty()) {
+            eventPublisher.publishEvent(new EntityIdsChangedEvent(type, ids));
+        }
+    }
+
+    /**
+     * Сообщает заявки, у которых импорт сменил закупщика, — для синхронизации закупщика в позициях плана
+     */
+    void publishPurchaserChanged(Set<Long> purchaseRequestIds) {
+        if (!purchaseRequestIds.isEmpty()) {
+            eventPublisher.publishEvent(new PurchaserChangedEvent(Set.copyOf(purchaseRequestIds)));
+        }
     }
     
     /**
@@ -177,55 +209,65 @@ public class EntityExcelLoadService {
     }
 
     /**
-     * Загружает данные из Excel файла (заявки, закупки, пользователи)
-     * Принимает MultipartFile, валидирует его и вызывает соответствующие методы парсинга
+     * Валидирует загруженный файл и сохраняет его во временную директорию: MultipartFile живёт только
+     * в рамках запроса, а разбор выполняется асинхронно (см. {@link ExcelImportJobService}).
+     *
+     * @throws IllegalArgumentException файл не передан или не Excel
+     */
+    public Path storeUpload(MultipartFile file) throws IOException {
+        validateFile(file);
+        Path tempFile = Files.createTempFile("upload_", file.getOriginalFilename());
+        file.transferTo(tempFile.toFile());
+        return tempFile;
+    }
+
+    /**
+     * Загружает данные из сохранённого файла (заявки, закупки, пользователи) и удаляет его.
+     * Возвращает ответ в прежнем формате upload-from-excel (success, message, счётчики).
      */
-    public Map<String, Object> uploadFromExcel(MultipartFile file) {
+    public Map<String, Object> importUploadedFile(Path tempFile, String originalFilename, ExcelImportProgress progress) {
         Map<String, Object> response = new HashMap<>();
         
         try {
-            // Валидация файла
-            validateFile(file);
-            
-            // Сохраняем файл во временную директорию
-            Path tempFile = Files.createTempFile("upload_", file.getOriginalFilename());
-            file.transferTo(tempFile.toFile());
-            
-            try {
-                // Загружаем данные из Excel за один проход с оптимизацией
-                // Используем loadAllFromExcel вместо отдельных вызовов для избежания повторной обработки файла
-                Map<String, Integer> counts = loadAllFromExcel(tempFile.toFile());
-                int purchaseRequestsCount = counts.getOrDefault("purchaseRequests", 0);
-                int purchasesCount = counts.getOrDefault("purchases", 0);
-                int contractsCount = counts.getOrDefault("contracts", 0);
-                int usersCount = counts.getOrDefault("users", 0);
-                
-                int totalCount = purchaseRequestsCount + purchasesCount + contractsCount + usersCount;
-                
+            // Загружаем данные из Excel за один проход с оптимизацией
+            // Используем loadAllFromExcel вместо отдельных вызовов для избежания повторной обработки файла
+            Map<String, Integer> counts = loadAllFromExcel(tempFile.toFile(),
+                ImportFingerprintService.SOURCE_UPLOAD, originalFilename, progress);
+            if (counts.getOrDefault("fileUnchanged", 0) == 1) {
                 response.put("success", true);
-                response.put("message", String.format("Успешно загружено: %d заявок, %d закупок, %d договоров, %d пользователей (всего %d записей)", 
-                    purchaseRequestsCount, purchasesCount, contractsCount, usersCount, totalCount));
-                response.put("loadedCount", totalCount);
-                response.put("purchaseRequestsCount", purchaseRequestsCount);
-                response.put("purchasesCount", purchasesCount);
-                response.put("contractsCount", contractsCount);
-                response.put("usersCount", usersCount);
-            } finally {
-                // Удаляем временный файл
-                Files.deleteIfExists(tempFile);
-            }
-            
-            return response;
-        } catch (IllegalArgumentException e) {
-            logger.error("Validation error uploading Excel file", e);
-            response.put("success", false);
-            response.put("message", e.getMessage());
+                response.put("message", "Файл не изменился с последней загрузки — данные актуальны");
+                response.put("loadedCount", 0);
+                response.put("unchanged", true);
+                return response;
+            }
+            int purchaseRequestsCount = counts.getOrDefault("purchaseRequests", 0);
+            int purchasesCount = counts.getOrDefault("purchases", 0);
+            int contractsCount = counts.getOrDefault("contracts", 0);
+            int usersCount = counts.getOrDefault("users", 0);
+            
+            int totalCount = purchaseRequestsCount + purchasesCount + contractsCount + usersCount;
+            
+            response.put("success", true);
+            response.put("message", String.format("Успешно загружено: %d заявок, %d закупок, %d договоров, %d пользователей (всего %d записей)", 
+                purchaseRequestsCount, purchasesCount, contractsCount, usersCount, totalCount));
+            response.put("loadedCount", totalCount);
+            response.put("purchaseRequestsCount", purchaseRequestsCount);
+            response.put("purchasesCount", purchasesCount);
+            response.put("contractsCount", contractsCount);
+            response.put("usersCount", usersCount);
             return response;
         } catch (Exception e) {
             logger.error("Error uploading Excel file", e);
             response.put("success", false);
             response.put("message", "Ошибка при загрузке файла: " + e.getMessage());
             return response;
+        } finally {
+            // Удаляем временный файл
+            try {
+                Files.deleteIfExists(tempFile);
+            } catch (IOException e) {
+                logger.warn("Could not delete temp upload file {}: {}", tempFile, e.getMessage());
+            }
         }
     }
 
@@ -235,14 +277,45 @@ public class EntityExcelLoadService {
      * Всегда использует потоковое чтение для .xlsx файлов
      */
     public Map<String, Integer> loadAllFromExcel(File excelFile) throws IOException {
+        return loadAllFromExcel(excelFile, ImportFingerprintService.SOURCE_ALLDOCUMENTS, excelFile.getName());
+    }
+
+    /**
+     * Загрузка с инкрементальной проверкой: файл, уже успешно загруженный с тем же содержимым, пропускается
+     * (возвращаются нулевые счётчики и fileUnchanged=1), а в изменившемся файле пропускаются строки,
+     * хэш которых совпал с прошлым импортом.
+     *
+     * @param source      источник файла для отпечатка ({@link ImportFingerprintService#SOURCE_ALLDOCUMENTS}, ...)
+     * @param logicalName имя, под которым запоминается отпечаток (для загрузок — исходное имя файла)
+     */
+    public Map<String, Integer> loadAllFromExcel(File excelFile, String source, String logicalName) throws IOException {
+        return loadAllFromExcel(excelFile, source, logicalName, new ExcelImportProgress());
+    }
+
+    /**
+     * То же, с публикацией прогресса (фаза, обработанные строки, созданные/обновлённые, ошибки) в {@code progress}.
+     */
+    public Map<String, Integer> loadAllFromExcel(File excelFile, String source, String logicalName,
+                                                 ExcelImportProgress progress) throws IOException {
         // Всегда используем потоковое чтение
         if (!excelFile.getName().endsWith(".xlsx")) {
             throw new IllegalArgumentException("Only .xlsx files are supported. File: " + excelFile.getName());
         }
 
+        ImportFingerprintService.FileCheck fileCheck = fingerprintService.checkFile(
+            source, logicalName != null ? logicalName : excelFile.getName(), excelFile, ExcelStreamingRowHandler.ROW_HASH_VERSION);
+        if (fileCheck.unchanged()) {
+            logger.info("File {} is unchanged since the last successful import (sha256 {}); skipping",
+                fileCheck.fileName(), fileCheck.contentHash());
+            Map<String, Integer> results = new HashMap<>();
+            results.put("fileUnchanged", 1);
+            progress.setPhase(ExcelImportProgress.Phase.DONE);
+            return results;
+        }
+
         try {
             logger.info("Using streaming mode for file: {}", excelFile.getName());
-            return loadAllFromExcelStreaming(excelFile);
+            return loadAllFromExcelStreaming(excelFile, fileCheck, progress);
                         } catch (Exception e) {
             logger.error("Streaming mode failed for file {}: {}", excelFile.getName(), e.getMessage(), e);
             throw new IOException("Failed to load Excel file using streaming mode: " + e.getMessage(), e);
@@ -258,8 +331,12 @@ public class EntityExcelLoadService {
     /**
      * Потоковое чтение больших Excel файлов через Event API
      * Не загружает весь файл в память, обрабатывает построчно
+     *
+     * @param fileCheck отпечаток файла для инкрементального импорта; null — полная обработка всех строк
+     *                  без записи отпечатка (отдельные загрузчики заявок/закупок/пользователей)
      */
-    private Map<String, Integer> loadAllFromExcelStreaming(File excelFile) throws Exception {
+    private Map<String, Integer> loadAllFromExcelStreaming(File excelFile, ImportFingerprintService.FileCheck fileCheck,
+                                                           ExcelImportProgress progress) throws Exception {
         logger.info("Starting streaming read of file: {}", excelFile.getName());
         String fileName = excelFile.getName();
         
@@ -272,62 +349,85 @@ public class EntityExcelLoadService {
         
         OPCPackage pkg = OPCPackage.open(excelFile);
         XSSFReader reader = new XSSFReader(pkg);
+        // Импорт идёт без общей транзакции: история изменений копится и пишется пакетами
+        ChangeLogBatchWriter.Scope changeLogScope = changeLogBatchWriter.openScope();
         
         try {
             // Получаем таблицу стилей и общие строки
             StylesTable stylesTable = reader.getStylesTable();
             ReadOnlySharedStringsTable sharedStringsTable = new ReadOnlySharedStringsTable(pkg);
             
+            // Предварительный проход: собираем ключи всех заявок/закупок/договоров файла
+            // и загружаем их пачками через IN (...) вместо SELECT на каждую строку
+            progress.setPhase(ExcelImportProgress.Phase.PREFETCH);
+            ExcelImportKeyCollector keyCollector = new ExcelImportKeyCollector();
+            parseFirstSheet(reader, stylesTable, sharedStringsTable, keyCollector);
+            progress.setRowsTotal(keyCollector.getDataRowCount());
+            ExcelImportIdentityMap identityMap = new ExcelImportIdentityMap(
+                purchaseRequestRepository, purchaseRepository, contractRepository);
+            identityMap.prefetch(keyCollector);
+            ExcelImportRowHashes rowHashes = new ExcelImportRowHashes(fileCheck != null && fingerprintService.isEnabled());
+            rowHashes.prefetch(fingerprintService, keyCollector);
+            ImportReferenceData referenceData = referenceDataService.open();
+
             // Создаем обработчик строк
             ExcelStreamingRowHandler rowHandler = new ExcelStreamingRowHandler(
                 this,
                 purchaseRequestRepository,
                 purchaseRepository,
                 contractRepository,
-                userRepository,
-                cfoRepository,
-                supplierRepository,
+                referenceData,
+                identityMap,
+                rowHashes,
+                progress,
+                pendingLinkService,
                 stylesTable,
                 sharedStringsTable
             );
             
-            // Создаем XML парсер
-            XMLReader parser = XMLReaderFactory.createXMLReader();
-            XSSFSheetXMLHandler handler = new XSSFSheetXMLHandler(
-                stylesTable,
-                sharedStringsTable,
-                rowHandler,
-                new DataFormatter(),
-                false
-            );
-            parser.setContentHandler(handler);
-            
             // Обрабатываем первый лист
-            Iterator<InputStream> sheets = reader.getSheetsData();
-            if (sheets.hasNext()) {
-                InputStream sheetInputStream = sheets.next();
-                try {
-                    InputSource sheetSource = new InputSource(sheetInputStream);
-                    parser.parse(sheetSource);
-                } finally {
-                    sheetInputStream.close();
-                }
-            }
+            progress.setPhase(ExcelImportProgress.Phase.ROWS);
+            parseFirstSheet(reader, stylesTable, sharedStringsTable, rowHandler);
             
             // Сохраняем все оставшиеся сущности из batch перед получением результатов
             rowHandler.flushAllBatches();
 
             // Восстанавливаем отложенные связи между закупками/договорами и заявками
             // (для случаев, когда закупка/договор идут в Excel раньше заявки)
+            progress.setPhase(ExcelImportProgress.Phase.LINKING);
             logger.info("=== Starting pending links restoration ===");
-            int linkedCount = rowHandler.linkPendingEntities();
-            logger.info("=== Pending links restoration completed: {} links restored ===", linkedCount);
+            PendingLinkService.PendingLinkResult linkResult = rowHandler.linkPendingEntities();
+            logger.info("=== Pending links restoration completed: {} links restored, {} unresolved ===",
+                linkResult.linkedCount(), linkResult.unresolvedKeys().size());
+
+            for (String unresolvedKey : linkResult.unresolvedKeys()) {
+                // "purchase:<innerId>" / "contract:<innerId>" — строку нужно обработать снова
+                int separator = unresolvedKey.indexOf(':');
+                rowHashes.forget(unresolvedKey.substring(0, separator), unresolvedKey.substring(separator + 1));
+            }
 
             Map<String, Integer> results = rowHandler.getResults();
+            if (rowHandler.isCleanImport()) {
+                int savedHashes = rowHashes.persist(fingerprintService);
+                // Отпечаток файла — только если все строки разобраны и все связи восстановлены:
+                // иначе следующий запуск пропустил бы файл целиком и не повторил упавшие строки
+                if (fileCheck != null && !rowHandler.hasRowErrors() && linkResult.unresolvedKeys().isEmpty()) {
+                    fingerprintService.recordFile(fileCheck);
+                } else if (fileCheck != null) {
+                    logger.info("Import of {} had {} row errors and {} unresolved links; file fingerprint is not saved",
+                        fileName, results.get("rowErrors"), linkResult.unresolvedKeys().size());
+                }
+                logger.info("Incremental import: {} rows unchanged, {} row hashes saved",
+                    results.get("rowsUnchanged"), savedHashes);
+            } else {
+                logger.warn("Import of {} had {} failed batch saves; row hashes and file fingerprint are not saved",
+                    fileName, results.get("batchFailures"));
+            }
             long processingTime = System.currentTimeMillis() - startTime;
 
-            logger.info("Streaming read completed: {} purchase requests, {} purchases, {} users",
-                results.get("purchaseRequests"), results.get("purchases"), results.get("users"));
+            logger.info("Streaming read completed: {} purchase requests, {} purchases, {} users (identity map: {} hits, {} misses; reference data: {})",
+                results.get("purchaseRequests"), results.get("purchases"), results.get("users"),
+                results.get("identityMapHits"), results.get("identityMapMisses"), referenceData.describe());
             
             // Завершаем отслеживание общего метода
             if (statsService != null) {
@@ -352,54 +452,51 @@ public class EntityExcelLoadService {
                 );
             }
             
-            // Обновляем статусы в правильном порядке:
-            // 1. Сначала статусы закупок (так как статус заявки зависит от статуса закупки)
-            // 2. Затем статусы договоров
-            // 3. Затем статусы заявок (которые зависят от статусов закупок и договоров)
-            
-            if (purchaseStatusUpdateService != null) {
-                logger.info("=== Starting status update for all purchases after parsing ===");
-                try {
-                    purchaseStatusUpdateService.updateAllStatuses();
-                    logger.info("=== Purchase status update completed successfully ===");
-                } catch (Exception e) {
-                    logger.error("=== ERROR during purchase status update after parsing: {} ===", e.getMessage(), e);
-                }
-            } else {
-                logger.warn("=== purchaseStatusUpdateService is NULL, skipping purchase status update ===");
-            }
-            
-            if (contractStatusUpdateService != null) {
-                logger.info("Starting status update for all contracts after parsing");
+            progress.setPhase(ExcelImportProgress.Phase.STATUSES);
+            // Пересчитываем статусы только сохранённых импортом закупок, договоров и зависящих от них заявок
+            // (закупки → договоры → заявки); полный проход — StatusRecalculationService.recalculateAll()
+            if (statusRecalculationService != null) {
                 try {
-                    contractStatusUpdateService.updateAllStatuses();
-                    logger.info("Contract status update completed successfully");
+                    statusRecalculationService.recalculateDirty();
                 } catch (Exception e) {
-                    logger.error("Error during contract status update after parsing: {}", e.getMessage(), e);
-                    logger.error("Stack trace:", e);
+                    logger.error("Error during incremental status update after parsing: {}", e.getMessage(), e);
                 }
             } else {
-                logger.error("contractStatusUpdateService is NULL! Cannot update contract statuses.");
-            }
-            
-            // Обновляем статусы всех заявок на закупку после парсинга (после обновления статусов закупок и договоров)
-            if (statusUpdateService != null) {
-                logger.info("Starting status update for all purchase requests after parsing");
-                try {
-                    statusUpdateService.updateAllStatuses();
-                    logger.info("Status update completed successfully");
-                } catch (Exception e) {
-                    logger.error("Error during status update after parsing: {}", e.getMessage(), e);
-                }
+                logger.warn("statusRecalculationService is NULL, skipping status update after parsing");
             }
             
+            eventPublisher.publishEvent(new DataChangedEvent(DataChangedEvent.SOURCE_ALLDOCUMENTS));
+            progress.setPhase(ExcelImportProgress.Phase.DONE);
             return results;
             
         } finally {
+            changeLogScope.close();
             pkg.close();
         }
     }
     
+    /**
+     * Прогоняет первый лист книги через SAX-парсер с указанным обработчиком строк
+     */
+    private void parseFirstSheet(XSSFReader reader, StylesTable stylesTable,
+                                 ReadOnlySharedStringsTable sharedStringsTable,
+                                 XSSFSheetXMLHandler.SheetContentsHandler contentsHandler) throws Exception {
+        XMLReader parser = XMLReaderFactory.createXMLReader();
+        parser.setContentHandler(new XSSFSheetXMLHandler(
+            stylesTable,
+            sharedStringsTable,
+            contentsHandler,
+            new DataFormatter(),
+            false
+        ));
+        Iterator<InputStream> sheets = reader.getSheetsData();
+        if (sheets.hasNext()) {
+            try (InputStream sheetInputStream = sheets.next()) {
+                parser.parse(new InputSource(sheetInputStream));
+            }
+        }
+    }
+    
     /**
      * Обрабатывает одну строку заявки на закупку
      */
@@ -537,7 +634,7 @@ public class EntityExcelLoadService {
         }
         
             try {
-                Map<String, Integer> results = loadAllFromExcelStreaming(excelFile);
+                Map<String, Integer> results = loadAllFromExcelStreaming(excelFile, null, new ExcelImportProgress());
                 return results.getOrDefault("purchaseRequests", 0);
             } catch (Exception e) {
             logger.error("Streaming mode failed for file {}: {}", excelFile.getName(), e.getMessage(), e);
@@ -1452,140 +1549,6 @@ public class EntityExcelLoadService {
         }
     }
 
-    /**
-     * Парсит строку формата "Kupriianova Anastasiia (Административно-хозяйственный отдел, Офис менеджер)"
-     * и создает/обновляет User
-     * Формат: "Surname Name (Отдел, Должность)"
-     */
-    /**
-     * Парсит и сохраняет пользователя без работы с email: адрес не читается, не проверяется
-     * и не обновляется. Используется для "Ответственный за ЗП (Закупочная процедура)".
-     * Доступен для использования в других классах (например, ExcelStreamingRowHandler)
-     */
-    public void parseAndSaveUser(String preparedByValue) {
-        parseAndSaveUser(preparedByValue, null);
-    }
-
-    /**
-     * Парсит и сохраняет пользователя из строки "Подготовил" или "Ответственный за ЗП" с опциональным email.
-     * Email заполняется только для "Подготовил" — из первого вхождения колонки с точным названием
-     * "Email". Для "Ответственный за ЗП" email из выгрузки не берётся (передаётся null).
-     */
-    public void parseAndSaveUser(String preparedByValue, String email) {
-        try {
-            // Парсим строку формата "Kupriianova Anastasiia (Административно-хозяйственный отдел, Офис менеджер)"
-            String surname = null;
-            String name = null;
-            String department = null;
-            String position = null;
-            
-            // Ищем скобки с отделом и должностью
-            int openBracketIndex = preparedByValue.indexOf('(');
-            int closeBracketIndex = preparedByValue.indexOf(')');
-            
-            if (openBracketIndex > 0 && closeBracketIndex > openBracketIndex) {
-                // Есть скобки - извлекаем отдел и должность
-                String namePart = preparedByValue.substring(0, openBracketIndex).trim();
-                String departmentPart = preparedByValue.substring(openBracketIndex + 1, closeBracketIndex).trim();
-                
-                // Парсим имя и фамилию
-                String[] nameParts = namePart.split("\\s+", 2);
-                if (nameParts.length >= 1) {
-                    surname = nameParts[0].trim();
-                }
-                if (nameParts.length >= 2) {
-                    name = nameParts[1].trim();
-                }
-                
-                // Парсим отдел и должность (разделены запятой)
-                String[] deptParts = departmentPart.split(",", 2);
-                if (deptParts.length >= 1) {
-                    department = deptParts[0].trim();
-                }
-                if (deptParts.length >= 2) {
-                    position = deptParts[1].trim();
-                }
-            } else {
-                // Нет скобок - только имя и фамилия
-                String[] nameParts = preparedByValue.split("\\s+", 2);
-                if (nameParts.length >= 1) {
-                    surname = nameParts[0].trim();
-                }
-                if (nameParts.length >= 2) {
-                    name = nameParts[1].trim();
-                }
-            }
-            
-            // Создаем username из surname и name (для уникальности)
-            String username = (surname != null ? surname : "") + 
-                             (name != null ? "_" + name : "");
-            if (username.isEmpty() || username.equals("_")) {
-                username = "user_" + System.currentTimeMillis();
-            }
-            
-            // Ищем существующего пользователя по surname и name
-            User existingUser = null;
-            if (surname != null && name != null) {
-                // Сначала ищем по surname и name (более точный поиск)
-                existingUser = userRepository.findBySurnameAndName(surname, name).orElse(null);
-                // Если не нашли, пробуем по username
-                if (existingUser == null) {
-                    existingUser = userRepository.findByUsername(username).orElse(null);
-                }
-            }
-            
-            if (existingUser != null) {
-                // Обновляем существующего пользователя
-                boolean updated = false;
-                if (surname != null && !surname.equals(existingUser.getSurname())) {
-                    existingUser.setSurname(surname);
-                    updated = true;
-                }
-                if (name != null && !name.equals(existingUser.getName())) {
-                    existingUser.setName(name);
-                    updated = true;
-                }
-                if (department != null && !department.equals(existingUser.getDepartment())) {
-                    existingUser.setDepartment(department);
-                    updated = true;
-                }
-                if (position != null && !position.equals(existingUser.getPosition())) {
-                    existingUser.setPosition(position);
-                    updated = true;
-                }
-                if (!UserImportEmailPolicy.shouldSkipEmailFromImport(surname, name)
-                        && email != null && !email.trim().isEmpty()
-                        && !email.trim().equals(existingUser.getEmail())) {
-                    existingUser.setEmail(email.trim());
-                    updated = true;
-                }
-                if (updated) {
-                    userRepository.save(existingUser);
-                    logger.debug("Updated user: {} {}, email: {}", surname, name,
-                            (email != null && !email.trim().isEmpty()) ? email.trim() : "(empty)");
-                }
-            } else {
-                // Создаем нового пользователя
-                User newUser = new User();
-                newUser.setUsername(username);
-                newUser.setPassword(""); // Пароль будет установлен позже или через другой механизм
-                newUser.setSurname(surname);
-                newUser.setName(name);
-                newUser.setDepartment(department);
-                newUser.setPosition(position);
-                if (!UserImportEmailPolicy.shouldSkipEmailFromImport(surname, name)
-                        && email != null && !email.trim().isEmpty()) {
-                    newUser.setEmail(email.trim());
-                }
-                userRepository.save(newUser);
-                logger.debug("Created user: {} {}, email: {}", surname, name,
-                        (email != null && !email.trim().isEmpty()) ? email.trim() : "(empty)");
-            }
-        } catch (Exception e) {
-            logger.warn("Error parsing and saving user from '{}': {}", preparedByValue, e.getMessage());
-        }
-    }
-
     /**
      * Проверяет, пустая ли строка
      */
@@ -1665,7 +1628,7 @@ public class EntityExcelLoadService {
         }
         
             try {
-                Map<String, Integer> results = loadAllFromExcelStreaming(excelFile);
+                Map<String, Integer> results = loadAllFromExcelStreaming(excelFile, null, new ExcelImportProgress());
                 return results.getOrDefault("users", 0);
             } catch (Exception e) {
             logger.error("Streaming mode failed for file {}: {}", excelFile.getName(), e.getMessage(), e);
@@ -1691,7 +1654,7 @@ public class EntityExcelLoadService {
         }
         
             try {
-                Map<String, Integer> results = loadAllFromExcelStreaming(excelFile);
+                Map<String, Integer> results = loadAllFromExcelStreaming(excelFile, null, new ExcelImportProgress());
                 return results.getOrDefault("purchases", 0);
             } catch (Exception e) {
             logger.error("Streaming mode failed for file {}: {}", excelFile.getName(), e.getMessage(), e);
@@ -1926,7 +1889,7 @@ public class EntityExcelLoadService {
         }
         
             try {
-                Map<String, Integer> results = loadAllFromExcelStreaming(excelFile);
+                Map<String, Integer> results = loadAllFromExcelStreaming(excelFile, null, new ExcelImportProgress());
                 return results.getOrDefault("contracts", 0);
             } catch (Exception e) {
             logger.error("Streaming mode failed for file {}: {}", excelFile.getName(), e.getMessage(), e);
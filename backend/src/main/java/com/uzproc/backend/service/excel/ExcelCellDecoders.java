@@ -0,0 +1,187 @@
+package com.uzproc.backend.service.excel;
+
+import java.math.BigDecimal;
+import java.text.ParsePosition;
+import java.time.DateTimeException;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.Arrays;
+
+/**
+ * Разбор текстовых значений ячеек потокового импорта без регулярных выражений и исключений на «промахах».
+ * Вызываются на каждой ячейке каждой строки, поэтому работают одним проходом по символам.
+ */
+final class ExcelCellDecoders {
+
+    private ExcelCellDecoders() {
+    }
+
+    /**
+     * Индекс колонки по ссылке на ячейку ("A1" → 0, "AB12" → 27): буквы до первой цифры.
+     */
+    static int columnIndex(String cellReference) {
+        int index = 0;
+        for (int i = 0; i < cellReference.length(); i++) {
+            char c = cellReference.charAt(i);
+            if (c >= 'A' && c <= 'Z') {
+                index = index * 26 + (c - 'A' + 1);
+            } else if (c >= '0' && c <= '9') {
+                break;
+            }
+        }
+        return index - 1;
+    }
+
+    /**
+     * Число из цифр строки, остальные символы (пробелы, разделители разрядов, текст) пропускаются.
+     * null — цифр нет или число не помещается в long.
+     */
+    static Long parseDigits(String value) {
+        if (value == null) {
+            return null;
+        }
+        long result = 0;
+        int digits = 0;
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c >= '0' && c <= '9') {
+                if (result > (Long.MAX_VALUE - (c - '0')) / 10) {
+                    return null;
+                }
+                result = result * 10 + (c - '0');
+                digits++;
+            }
+        }
+        return digits == 0 ? null : result;
+    }
+
+    /**
+     * Десятичное число: сохраняются цифры, первый разделитель ('.' или ',') становится десятичной точкой,
+     * последующие разделители и прочие символы ("UZS", пробелы, неразрывные пробелы) отбрасываются.
+     * null — цифр нет.
+     */
+    static BigDecimal parseDecimal(String raw) {
+        if (raw == null) {
+            return null;
+        }
+        char[] buffer = new char[raw.length()];
+        int length = 0;
+        boolean hasDigits = false;
+        boolean hasPoint = false;
+        for (int i = 0; i < raw.length(); i++) {
+            char c = raw.charAt(i);
+            if (c >= '0' && c <= '9') {
+                buffer[length++] = c;
+                hasDigits = true;
+            } else if ((c == '.' || c == ',') && !hasPoint) {
+                buffer[length++] = '.';
+                hasPoint = true;
+            }
+        }
+        if (!hasDigits) {
+            return null;
+        }
+        return new BigDecimal(buffer, 0, length);
+    }
+
+    /**
+     * Разбор дат по набору форматов выгрузки. Для каждой колонки запоминается последний подошедший формат
+     * и пробуется первым: в одной колонке все значения, как правило, в одном формате.
+     * Несовпадение формата определяется через parseUnresolved (без исключения), строка должна разбираться целиком.
+     */
+    static final class DateDecoder {
+
+        /** Форматы в порядке приоритета; DATE_ONLY — без времени (начало дня). */
+        private static final DateTimeFormatter[] FORMATTERS = {
+            DateTimeFormatter.ofPattern("dd.MM.yyyy HH:mm:ss"),
+            DateTimeFormatter.ofPattern("dd.MM.yyyy H:mm:ss"),
+            DateTimeFormatter.ofPattern("dd.MM.yyyy HH:mm"),
+            DateTimeFormatter.ofPattern("dd.MM.yyyy H:mm"),
+            DateTimeFormatter.ofPattern("dd.MM.yyyy"),
+            DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss"),
+            DateTimeFormatter.ofPattern("yyyy-MM-dd H:mm:ss"),
+            DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm"),
+            DateTimeFormatter.ofPattern("yyyy-MM-dd H:mm"),
+            DateTimeFormatter.ofPattern("yyyy-MM-dd"),
+            DateTimeFormatter.ofPattern("dd/MM/yyyy HH:mm:ss"),
+            DateTimeFormatter.ofPattern("dd/MM/yyyy H:mm:ss"),
+            DateTimeFormatter.ofPattern("dd/MM/yyyy HH:mm"),
+            DateTimeFormatter.ofPattern("dd/MM/yyyy H:mm"),
+            DateTimeFormatter.ofPattern("dd/MM/yyyy"),
+            DateTimeFormatter.ISO_LOCAL_DATE_TIME
+        };
+        private static final boolean[] DATE_ONLY = {
+            false, false, false, false, true,
+            false, false, false, false, true,
+            false, false, false, false, true,
+            false
+        };
+        private static final int NO_HINT = -1;
+
+        /** Индекс последнего подошедшего формата по колонке; NO_HINT — ещё не определён. */
+        private int[] hintByColumn = new int[0];
+
+        /**
+         * Дата из строки колонки {@code column} или null, если ни один формат не подошёл.
+         */
+        LocalDateTime parse(int column, String value) {
+            if (value == null) {
+                return null;
+            }
+            String text = value.trim();
+            if (text.isEmpty()) {
+                return null;
+            }
+            int hint = hint(column);
+            if (hint != NO_HINT) {
+                LocalDateTime result = tryFormat(hint, text);
+                if (result != null) {
+                    return result;
+                }
+            }
+            for (int i = 0; i < FORMATTERS.length; i++) {
+                if (i == hint) {
+                    continue;
+                }
+                LocalDateTime result = tryFormat(i, text);
+                if (result != null) {
+                    if (column >= 0) {
+                        hintByColumn[column] = i;
+                    }
+                    return result;
+                }
+            }
+            return null;
+        }
+
+        private int hint(int column) {
+            if (column < 0) {
+                return NO_HINT;
+            }
+            if (column >= hintByColumn.length) {
+                int oldLength = hintByColumn.length;
+                hintByColumn = Arrays.copyOf(hintByColumn, Math.max(column + 1, oldLength * 2));
+                Arrays.fill(hintByColumn, oldLength, hintByColumn.length, NO_HINT);
+            }
+            return hintByColumn[column];
+        }
+
+        private static LocalDateTime tryFormat(int index, String text) {
+            DateTimeFormatter formatter = FORMATTERS[index];
+            ParsePosition position = new ParsePosition(0);
+            if (formatter.parseUnresolved(text, position) == null
+                    || position.getErrorIndex() >= 0 || position.getIndex() != text.length()) {
+                return null;
+            }
+            try {
+                return DATE_ONLY[index]
+                    ? LocalDate.parse(text, formatter).atStartOfDay()
+                    : LocalDateTime.parse(text, formatter);
+            } catch (DateTimeException e) {
+                // Строка подходит по форме, но значение недопустимо (например, 25:00)
+                return null;
+            }
+        }
+    }
+}
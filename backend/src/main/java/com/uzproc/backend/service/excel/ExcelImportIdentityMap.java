@@ -0,0 +1,171 @@
+package com.uzproc.backend.service.excel;
+
+import com.uzproc.backend.entity.contract.Contract;
+import com.uzproc.backend.entity.purchase.Purchase;
+import com.uzproc.backend.entity.purchaserequest.PurchaseRequest;
+import com.uzproc.backend.repository.contract.ContractRepository;
+import com.uzproc.backend.repository.purchase.PurchaseRepository;
+import com.uzproc.backend.repository.purchaserequest.PurchaseRequestRepository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.function.Consumer;
+import java.util.function.Function;
+
+/**
+ * Карта идентичности заявок, закупок и договоров на время одного импорта alldocuments.
+ * <p>
+ * {@link #prefetch} загружает все сущности, ключи которых собрал {@link ExcelImportKeyCollector},
+ * пачками через {@code IN (...)}; дальше построчные поиски {@link ExcelStreamingRowHandler}
+ * обслуживаются из памяти. Отсутствие ключа среди предзагруженных означает, что сущности в БД нет,
+ * — запрос не нужен. В БД поштучно идёт только ключ, не попавший в предварительный проход (промах).
+ * Новые сущности регистрируются через {@code put*} сразу при постановке в batch.
+ */
+public class ExcelImportIdentityMap {
+
+    private static final Logger logger = LoggerFactory.getLogger(ExcelImportIdentityMap.class);
+
+    /** Размер пачки для IN (...): держит число bind-параметров далеко от лимита PostgreSQL. */
+    private static final int PREFETCH_CHUNK_SIZE = 1000;
+
+    private final PurchaseRequestRepository purchaseRequestRepository;
+    private final PurchaseRepository purchaseRepository;
+    private final ContractRepository contractRepository;
+
+    private final Map<Long, PurchaseRequest> purchaseRequests = new HashMap<>();
+    private final Map<String, Purchase> purchases = new HashMap<>();
+    private final Map<String, Contract> contracts = new HashMap<>();
+
+    // Ключи, состояние которых в БД уже известно (найдены или точно отсутствуют)
+    private final Set<Long> knownPurchaseRequestIds = new HashSet<>();
+    private final Set<String> knownPurchaseInnerIds = new HashSet<>();
+    private final Set<String> knownContractInnerIds = new HashSet<>();
+
+    private int hits = 0;
+    private int misses = 0;
+
+    public ExcelImportIdentityMap(
+            PurchaseRequestRepository purchaseRequestRepository,
+            PurchaseRepository purchaseRepository,
+            ContractRepository contractRepository) {
+        this.purchaseRequestRepository = purchaseRequestRepository;
+        this.purchaseRepository = purchaseRepository;
+        this.contractRepository = contractRepository;
+    }
+
+    /**
+     * Загружает пачками все сущности по ключам, собранным предварительным проходом.
+     */
+    public void prefetch(ExcelImportKeyCollector keys) {
+        long start = System.currentTimeMillis();
+        loadInChunks(keys.getPurchaseRequestIds(),
+            chunk -> purchaseRequestRepository.findByIdPurchaseRequestIn(chunk),
+            PurchaseRequest::getIdPurchaseRequest, purchaseRequests);
+        knownPurchaseRequestIds.addAll(keys.getPurchaseRequestIds());
+
+        loadInChunks(keys.getPurchaseInnerIds(),
+            chunk -> purchaseRepository.findByInnerIdIn(chunk),
+            Purchase::getInnerId, purchases);
+        knownPurchaseInnerIds.addAll(keys.getPurchaseInnerIds());
+
+        loadInChunks(keys.getContractInnerIds(),
+            chunk -> contractRepository.findByInnerIdIn(chunk),
+            Contract::getInnerId, contracts);
+        knownContractInnerIds.addAll(keys.getContractInnerIds());
+
+        logger.info("Identity map prefetched in {} ms: {} of {} purchase requests, {} of {} purchases, {} of {} contracts",
+            System.currentTimeMillis() - start,
+            purchaseRequests.size(), knownPurchaseRequestIds.size(),
+            purchases.size(), knownPurchaseInnerIds.size(),
+            contracts.size(), knownContractInnerIds.size());
+    }
+
+    private static <K, E> void loadInChunks(Collection<K> keys, Function<List<K>, List<E>> loader,
+                                            Function<E, K> keyExtractor, Map<K, E> target) {
+        List<K> all = new ArrayList<>(keys);
+        for (int from = 0; from < all.size(); from += PREFETCH_CHUNK_SIZE) {
+            List<K> chunk = all.subList(from, Math.min(from + PREFETCH_CHUNK_SIZE, all.size()));
+            for (E entity : loader.apply(chunk)) {
+                target.put(keyExtractor.apply(entity), entity);
+            }
+        }
+    }
+
+    public Optional<PurchaseRequest> findPurchaseRequest(Long idPurchaseRequest) {
+        return lookup(idPurchaseRequest, purchaseRequests, knownPurchaseRequestIds,
+            id -> purchaseRequestRepository.findByIdPurchaseRequest(id));
+    }
+
+    public Optional<Purchase> findPurchase(String innerId) {
+        return lookup(innerId, purchases, knownPurchaseInnerIds,
+            id -> purchaseRepository.findByInnerId(id));
+    }
+
+    public Optional<Contract> findContract(String innerId) {
+        return lookup(innerId, contracts, knownContractInnerIds,
+            id -> contractRepository.findByInnerId(id));
+    }
+
+    /**
+     * Есть ли заявка в карте (после prefetch или созданная в этом импорте); без обращения к БД и без учёта в hits/misses.
+     */
+    public boolean hasPurchaseRequest(Long idPurchaseRequest) {
+        return purchaseRequests.containsKey(idPurchaseRequest);
+    }
+
+    public boolean hasPurchase(String innerId) {
+        return purchases.containsKey(innerId);
+    }
+
+    public boolean hasContract(String innerId) {
+        return contracts.containsKey(innerId);
+    }
+
+    private <K, E> Optional<E> lookup(K key, Map<K, E> cache, Set<K> known, Function<K, Optional<E>> fallback) {
+        E cached = cache.get(key);
+        if (cached != null || known.contains(key)) {
+            hits++;
+            return Optional.ofNullable(cached);
+        }
+        misses++;
+        Optional<E> loaded = fallback.apply(key);
+        loaded.ifPresent(entity -> cache.put(key, entity));
+        known.add(key);
+        return loaded;
+    }
+
+    public void putPurchaseRequest(PurchaseRequest purchaseRequest) {
+        register(purchaseRequest.getIdPurchaseRequest(), purchaseRequest, purchaseRequests, knownPurchaseRequestIds::add);
+    }
+
+    public void putPurchase(Purchase purchase) {
+        register(purchase.getInnerId(), purchase, purchases, knownPurchaseInnerIds::add);
+    }
+
+    public void putContract(Contract contract) {
+        register(contract.getInnerId(), contract, contracts, knownContractInnerIds::add);
+    }
+
+    private static <K, E> void register(K key, E entity, Map<K, E> cache, Consumer<K> known) {
+        if (key != null) {
+            cache.put(key, entity);
+            known.accept(key);
+        }
+    }
+
+    public int getHits() {
+        return hits;
+    }
+
+    public int getMisses() {
+        return misses;
+    }
+}
@@ -0,0 +1,82 @@
+package com.uzproc.backend.service.excel;
+
+import java.time.Instant;
+import java.util.Map;
+
+/**
+ * Асинхронная задача загрузки Excel (см. {@link ExcelImportJobService}).
+ * Состояние меняет поток исполнителя, читают HTTP-потоки опроса статуса.
+ */
+public class ExcelImportJob {
+
+    public enum Status { QUEUED, RUNNING, COMPLETED, FAILED }
+
+    private final String id;
+    private final String entityType;
+    private final String fileName;
+    private final Instant createdAt = Instant.now();
+    private final ExcelImportProgress progress = new ExcelImportProgress();
+
+    private volatile Status status = Status.QUEUED;
+    private volatile Instant startedAt;
+    private volatile Instant finishedAt;
+    private volatile Map<String, Object> result;
+
+    public ExcelImportJob(String id, String entityType, String fileName) {
+        this.id = id;
+        this.entityType = entityType;
+        this.fileName = fileName;
+    }
+
+    void markRunning() {
+        startedAt = Instant.now();
+        status = Status.RUNNING;
+    }
+
+    void markFinished(Map<String, Object> result) {
+        this.result = result;
+        finishedAt = Instant.now();
+        status = Boolean.TRUE.equals(result.get("success")) ? Status.COMPLETED : Status.FAILED;
+    }
+
+    public boolean isFinished() {
+        return status == Status.COMPLETED || status == Status.FAILED;
+    }
+
+    public String getId() {
+        return id;
+    }
+
+    public String getEntityType() {
+        return entityType;
+    }
+
+    public String getFileName() {
+        return fileName;
+    }
+
+    public Instant getCreatedAt() {
+        return createdAt;
+    }
+
+    public ExcelImportProgress getProgress() {
+        return progress;
+    }
+
+    public Status getStatus() {
+        return status;
+    }
+
+    public Instant getStartedAt() {
+        return startedAt;
+    }
+
+    public Instant getFinishedAt() {
+        return finishedAt;
+    }
+
+    /** Итоговый ответ загрузки (success, message, счётчики); null, пока задача не завершена. */
+    public Map<String, Object> getResult() {
+        return result;
+    }
+}
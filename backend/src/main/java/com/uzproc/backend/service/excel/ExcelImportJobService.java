@@ -0,0 +1,164 @@
+package com.uzproc.backend.service.excel;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.web.multipart.MultipartFile;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Асинхронные задачи загрузки Excel: запрос только сохраняет файл и сразу возвращает id задачи,
+ * разбор идёт на отдельном ограниченном пуле, не удерживая поток Tomcat и соединение Hikari.
+ * <p>
+ * Загрузки одного типа сущностей выполняются строго по очереди (общая блокировка на тип, {@link #entityLock}):
+ * параллельный разбор двух выгрузок alldocuments создавал бы дубли при find-or-create. Ту же блокировку берёт
+ * стартовый этап alldocuments ({@link com.uzproc.backend.config.ExcelFileAutoLoader}), поэтому загрузка через API,
+ * пришедшая во время стартового импорта, ждёт его файла в очереди. Завершённые задачи хранятся
+ * app.import.jobs.retention-minutes минут для опроса статуса.
+ */
+@Service
+public class ExcelImportJobService implements DisposableBean {
+
+    private static final Logger logger = LoggerFactory.getLogger(ExcelImportJobService.class);
+
+    /** Тип сущностей для выгрузки alldocuments (заявки, закупки, договоры, пользователи). */
+    public static final String ENTITY_ALLDOCUMENTS = "alldocuments";
+
+    private final EntityExcelLoadService excelLoadService;
+    private final ThreadPoolExecutor executor;
+    private final Duration retention;
+    private final Map<String, ExcelImportJob> jobs = new ConcurrentHashMap<>();
+    private final Map<String, ReentrantLock> entityLocks = new ConcurrentHashMap<>();
+
+    public ExcelImportJobService(
+            EntityExcelLoadService excelLoadService,
+            @Value("${app.import.jobs.threads:2}") int threads,
+            @Value("${app.import.jobs.queue-capacity:10}") int queueCapacity,
+            @Value("${app.import.jobs.retention-minutes:60}") long retentionMinutes) {
+        this.excelLoadService = excelLoadService;
+        this.retention = Duration.ofMinutes(retentionMinutes);
+        AtomicInteger threadCounter = new AtomicInteger();
+        int poolSize = Math.max(1, threads);
+        this.executor = new ThreadPoolExecutor(poolSize, poolSize, 0L, TimeUnit.MILLISECONDS,
+            new LinkedBlockingQueue<>(Math.max(1, queueCapacity)),
+            r -> {
+                Thread thread = new Thread(r, "excel-import-" + threadCounter.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            });
+    }
+
+    /**
+     * Сохраняет файл и ставит загрузку alldocuments в очередь.
+     *
+     * @throws IllegalArgumentException    файл не передан или не Excel
+     * @throws RejectedExecutionException очередь задач заполнена
+     */
+    public ExcelImportJob submitAlldocumentsUpload(MultipartFile file) throws IOException {
+        purgeExpiredJobs();
+        Path tempFile = excelLoadService.storeUpload(file);
+        ExcelImportJob job = new ExcelImportJob(UUID.randomUUID().toString(), ENTITY_ALLDOCUMENTS, file.getOriginalFilename());
+        jobs.put(job.getId(), job);
+        try {
+            executor.execute(() -> runJob(job, tempFile));
+        } catch (RejectedExecutionException e) {
+            jobs.remove(job.getId());
+            Files.deleteIfExists(tempFile);
+            throw e;
+        }
+        logger.info("Queued Excel import job {} ({}, file {})", job.getId(), job.getEntityType(), job.getFileName());
+        return job;
+    }
+
+    /**
+     * Блокировка загрузок типа сущностей: её держат задачи загрузки через API и стартовый импорт того же типа.
+     */
+    public ReentrantLock entityLock(String entityType) {
+        return entityLocks.computeIfAbsent(entityType, t -> new ReentrantLock(true));
+    }
+
+    private void runJob(ExcelImportJob job, Path tempFile) {
+        ReentrantLock lock = entityLock(job.getEntityType());
+        lock.lock();
+        try {
+            job.markRunning();
+            logger.info("Excel import job {} started ({}, file {})", job.getId(), job.getEntityType(), job.getFileName());
+            Map<String, Object> result = excelLoadService.importUploadedFile(tempFile, job.getFileName(), job.getProgress());
+            job.markFinished(result);
+            logger.info("Excel import job {} finished: success={}, message={}",
+                job.getId(), result.get("success"), result.get("message"));
+        } catch (Throwable e) {
+            // Error (например, OutOfMemoryError на большой книге) тоже завершает задачу: иначе она навсегда остаётся RUNNING
+            logger.error("Excel import job {} failed", job.getId(), e);
+            Map<String, Object> result = new LinkedHashMap<>();
+            result.put("success", false);
+            result.put("message", "Ошибка при загрузке файла: " + e.getMessage());
+            job.markFinished(result);
+            if (e instanceof Error error) {
+                throw error;
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public Optional<ExcelImportJob> findJob(String jobId) {
+        purgeExpiredJobs();
+        return Optional.ofNullable(jobs.get(jobId));
+    }
+
+    /**
+     * Статус задачи для API: состояние, фаза, живые счётчики строк, ETA и итоговый ответ загрузки.
+     */
+    public Map<String, Object> toStatus(ExcelImportJob job) {
+        ExcelImportProgress progress = job.getProgress();
+        Map<String, Object> status = new LinkedHashMap<>();
+        status.put("jobId", job.getId());
+        status.put("entityType", job.getEntityType());
+        status.put("fileName", job.getFileName());
+        status.put("status", job.getStatus());
+        status.put("phase", progress.getPhase());
+        status.put("createdAt", job.getCreatedAt());
+        status.put("startedAt", job.getStartedAt());
+        status.put("finishedAt", job.getFinishedAt());
+        status.put("rowsTotal", progress.getRowsTotal());
+        status.put("rowsProcessed", progress.getRowsProcessed());
+        status.put("created", progress.getCreated());
+        status.put("updated", progress.getUpdated());
+        status.put("unchanged", progress.getUnchanged());
+        status.put("errors", progress.getErrors());
+        status.put("percent", progress.getRowsTotal() > 0
+            ? Math.min(100, progress.getRowsProcessed() * 100 / progress.getRowsTotal()) : null);
+        status.put("etaSeconds", progress.getEtaSeconds());
+        status.put("result", job.getResult());
+        return status;
+    }
+
+    private void purgeExpiredJobs() {
+        Instant threshold = Instant.now().minus(retention);
+        jobs.values().removeIf(job -> job.isFinished() && job.getFinishedAt().isBefore(threshold));
+    }
+
+    @Override
+    public void destroy() {
+        executor.shutdownNow();
+    }
+}
@@ -0,0 +1,202 @@
+package com.uzproc.backend.service.excel;
+
+import org.apache.poi.xssf.eventusermodel.XSSFSheetXMLHandler;
+import org.apache.poi.xssf.usermodel.XSSFComment;
+
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Предварительный проход по листу alldocuments: собирает ключи всех сущностей, на которые
+ * ссылается файл (номера заявок, внутренние номера закупок и договоров, номера заявок из колонок
+ * "Ссылка" / "Закупочная процедура (Договор)"). Ничего не пишет в БД — по собранным ключам
+ * {@link ExcelImportIdentityMap} загружает сущности пачками перед основным проходом.
+ * Правила поиска колонок совпадают с {@link ExcelStreamingRowHandler}.
+ */
+public class ExcelImportKeyCollector implements XSSFSheetXMLHandler.SheetContentsHandler {
+
+    private static final String DOCUMENT_TYPE_COLUMN = "Вид документа";
+    private static final String PURCHASE_REQUEST_TYPE = "Заявка на ЗП";
+    private static final String PURCHASE_TYPE = "Закупочная процедура";
+    private static final String CONTRACT_TYPE = "Договор";
+    private static final String REQUEST_NUMBER_COLUMN = "Номер заявки на ЗП";
+    private static final String INNER_ID_COLUMN = "Внутренний номер";
+    private static final String LINK_COLUMN = "Ссылка";
+    private static final String PURCHASE_PROCEDURE_CONTRACT_COLUMN = "Закупочная процедура (Договор)";
+    private static final Pattern REQUEST_ID_IN_LINK_PATTERN = Pattern.compile("N\\s+(\\d+)");
+
+    private final Map<String, Integer> columnIndices = new HashMap<>();
+    private final Map<Integer, String> currentRowData = new HashMap<>();
+    private boolean headerProcessed = false;
+
+    private Integer docTypeCol;
+    private Integer requestNumberCol;
+    private Integer innerIdCol;
+    private Integer linkCol;
+    private Integer purchaseProcedureCol;
+
+    private final Set<Long> purchaseRequestIds = new HashSet<>();
+    private final Set<String> purchaseInnerIds = new HashSet<>();
+    private final Set<String> contractInnerIds = new HashSet<>();
+    private int dataRowCount = 0;
+
+    @Override
+    public void startRow(int rowNum) {
+        currentRowData.clear();
+    }
+
+    @Override
+    public void cell(String cellReference, String formattedValue, XSSFComment comment) {
+        currentRowData.put(columnIndexOf(cellReference), formattedValue);
+    }
+
+    @Override
+    public void endRow(int rowNum) {
+        if (rowNum == 0) {
+            processHeaderRow();
+        } else if (headerProcessed && docTypeCol != null) {
+            dataRowCount++;
+            processDataRow();
+        }
+        currentRowData.clear();
+    }
+
+    @Override
+    public void headerFooter(String text, boolean isHeader, String tagName) {
+        // Игнорируем header/footer
+    }
+
+    private void processHeaderRow() {
+        for (Map.Entry<Integer, String> entry : currentRowData.entrySet()) {
+            if (entry.getValue() != null && !entry.getValue().trim().isEmpty()) {
+                columnIndices.put(entry.getValue().trim(), entry.getKey());
+            }
+        }
+        docTypeCol = findColumnIndex(DOCUMENT_TYPE_COLUMN);
+        requestNumberCol = findColumnIndex(REQUEST_NUMBER_COLUMN);
+        if (requestNumberCol == null) {
+            requestNumberCol = findColumnIndex("Номер заяки на ЗП"); // Опечатка в файле
+        }
+        if (requestNumberCol == null) {
+            requestNumberCol = findColumnIndex("Номер заявки");
+        }
+        innerIdCol = findColumnIndex(INNER_ID_COLUMN);
+        linkCol = columnIndices.get(LINK_COLUMN);
+        purchaseProcedureCol = findColumnIndex(PURCHASE_PROCEDURE_CONTRACT_COLUMN);
+        headerProcessed = true;
+    }
+
+    private void processDataRow() {
+        String documentType = trimToNull(currentRowData.get(docTypeCol));
+        if (documentType == null) {
+            return;
+        }
+        if (PURCHASE_REQUEST_TYPE.equals(documentType)) {
+            Long requestNumber = parseDigits(requestNumberCol != null ? currentRowData.get(requestNumberCol) : null);
+            if (requestNumber != null) {
+                purchaseRequestIds.add(requestNumber);
+            }
+        } else if (PURCHASE_TYPE.equals(documentType)) {
+            String innerId = innerIdCol != null ? trimToNull(currentRowData.get(innerIdCol)) : null;
+            if (innerId != null) {
+                purchaseInnerIds.add(innerId);
+                collectLinkedRequestId(linkCol);
+            }
+        } else if (CONTRACT_TYPE.equals(documentType)) {
+            String innerId = innerIdCol != null ? trimToNull(currentRowData.get(innerIdCol)) : null;
+            if (innerId != null) {
+                contractInnerIds.add(innerId);
+                collectLinkedRequestId(linkCol);
+                collectLinkedRequestId(purchaseProcedureCol);
+            }
+        }
+    }
+
+    private void collectLinkedRequestId(Integer col) {
+        String value = col != null ? currentRowData.get(col) : null;
+        if (value == null) {
+            return;
+        }
+        Matcher matcher = REQUEST_ID_IN_LINK_PATTERN.matcher(value);
+        if (matcher.find()) {
+            try {
+                purchaseRequestIds.add(Long.parseLong(matcher.group(1)));
+            } catch (NumberFormatException ignored) {
+                // слишком длинное число — строка будет разобрана основным проходом
+            }
+        }
+    }
+
+    private Integer findColumnIndex(String columnName) {
+        Integer exactMatch = columnIndices.get(columnName);
+        if (exactMatch != null) {
+            return exactMatch;
+        }
+        for (Map.Entry<String, Integer> entry : columnIndices.entrySet()) {
+            if (entry.getKey().contains(columnName) || columnName.contains(entry.getKey())) {
+                return entry.getValue();
+            }
+        }
+        return null;
+    }
+
+    private static int columnIndexOf(String cellReference) {
+        int index = 0;
+        for (int i = 0; i < cellReference.length(); i++) {
+            char c = cellReference.charAt(i);
+            if (c < 'A' || c > 'Z') {
+                break;
+            }
+            index = index * 26 + (c - 'A' + 1);
+        }
+        return index - 1;
+    }
+
+    private static Long parseDigits(String value) {
+        if (value == null) {
+            return null;
+        }
+        long result = 0;
+        boolean hasDigits = false;
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c >= '0' && c <= '9') {
+                if (result > (Long.MAX_VALUE - (c - '0')) / 10) {
+                    return null;
+                }
+                result = result * 10 + (c - '0');
+                hasDigits = true;
+            }
+        }
+        return hasDigits ? result : null;
+    }
+
+    private static String trimToNull(String value) {
+        if (value == null) {
+            return null;
+        }
+        String trimmed = value.trim();
+        return trimmed.isEmpty() ? null : trimmed;
+    }
+
+    /** Количество строк данных (для оценки прогресса и ETA основного прохода). */
+    public int getDataRowCount() {
+        return dataRowCount;
+    }
+
+    public Set<Long> getPurchaseRequestIds() {
+        return purchaseRequestIds;
+    }
+
+    public Set<String> getPurchaseInnerIds() {
+        return purchaseInnerIds;
+    }
+
+    public Set<String> getContractInnerIds() {
+        return contractInnerIds;
+    }
+}
@@ -0,0 +1,86 @@
+package com.uzproc.backend.service.excel;
+
+/**
+ * Живые счётчики импорта alldocuments для опроса статуса задачи загрузки.
+ * <p>
+ * Пишет один поток ({@link ExcelStreamingRowHandler} и {@link EntityExcelLoadService}),
+ * читают HTTP-потоки; поля volatile, поэтому снимок может быть слегка несогласованным между полями,
+ * но каждое значение актуально.
+ */
+public class ExcelImportProgress {
+
+    public enum Phase { QUEUED, PREFETCH, ROWS, LINKING, STATUSES, DONE }
+
+    private volatile Phase phase = Phase.QUEUED;
+    private volatile int rowsTotal;
+    private volatile int rowsProcessed;
+    private volatile int created;
+    private volatile int updated;
+    private volatile int unchanged;
+    private volatile int errors;
+    private volatile long rowsStartedAt;
+
+    public void setPhase(Phase phase) {
+        if (phase == Phase.ROWS) {
+            rowsStartedAt = System.currentTimeMillis();
+        }
+        this.phase = phase;
+    }
+
+    public void setRowsTotal(int rowsTotal) {
+        this.rowsTotal = rowsTotal;
+    }
+
+    /**
+     * Публикует текущие значения счётчиков обработчика строк.
+     */
+    public void publish(int rowsProcessed, int created, int updated, int unchanged, int errors) {
+        this.rowsProcessed = rowsProcessed;
+        this.created = created;
+        this.updated = updated;
+        this.unchanged = unchanged;
+        this.errors = errors;
+    }
+
+    /**
+     * Оценка оставшегося времени основного прохода по средней скорости обработки строк;
+     * null, пока скорость не известна или проход уже завершён.
+     */
+    public Long getEtaSeconds() {
+        int processed = rowsProcessed;
+        int total = rowsTotal;
+        if (phase != Phase.ROWS || processed == 0 || total <= processed) {
+            return null;
+        }
+        long elapsedMs = System.currentTimeMillis() - rowsStartedAt;
+        return elapsedMs * (total - processed) / processed / 1000;
+    }
+
+    public Phase getPhase() {
+        return phase;
+    }
+
+    public int getRowsTotal() {
+        return rowsTotal;
+    }
+
+    public int getRowsProcessed() {
+        return rowsProcessed;
+    }
+
+    public int getCreated() {
+        return created;
+    }
+
+    public int getUpdated() {
+        return updated;
+    }
+
+    public int getUnchanged() {
+        return unchanged;
+    }
+
+    public int getErrors() {
+        return errors;
+    }
+}
@@ -0,0 +1,81 @@
+package com.uzproc.backend.service.excel;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Хэши строк alldocuments на время одного импорта: сохранённые с прошлой загрузки
+ * (по ключам из {@link ExcelImportKeyCollector}) и посчитанные в текущей.
+ * <p>
+ * Строка пропускается {@link ExcelStreamingRowHandler}, только если её хэш совпал с сохранённым
+ * и сама сущность есть в БД: хэш без сущности (удалили вручную, сбой batch) не должен блокировать загрузку.
+ * Новые хэши пишутся в БД только после импорта без ошибок сохранения.
+ */
+public class ExcelImportRowHashes {
+
+    public static final String PURCHASE_REQUEST = "purchase_request";
+    public static final String PURCHASE = "purchase";
+    public static final String CONTRACT = "contract";
+
+    private final Map<String, Map<String, Long>> previous = new HashMap<>();
+    private final Map<String, Map<String, Long>> current = new HashMap<>();
+    private final boolean skipEnabled;
+
+    public ExcelImportRowHashes(boolean skipEnabled) {
+        this.skipEnabled = skipEnabled;
+    }
+
+    /**
+     * Загружает сохранённые хэши для всех ключей файла.
+     */
+    public void prefetch(ImportFingerprintService fingerprintService, ExcelImportKeyCollector keys) {
+        previous.put(PURCHASE_REQUEST, fingerprintService.loadRowHashes(PURCHASE_REQUEST,
+            keys.getPurchaseRequestIds().stream().map(String::valueOf).toList()));
+        previous.put(PURCHASE, fingerprintService.loadRowHashes(PURCHASE, keys.getPurchaseInnerIds()));
+        previous.put(CONTRACT, fingerprintService.loadRowHashes(CONTRACT, keys.getContractInnerIds()));
+    }
+
+    public boolean isUnchanged(String entityType, String businessKey, long rowHash) {
+        if (!skipEnabled) {
+            return false;
+        }
+        Long stored = previous.getOrDefault(entityType, Map.of()).get(businessKey);
+        return stored != null && stored == rowHash;
+    }
+
+    public void record(String entityType, String businessKey, long rowHash) {
+        current.computeIfAbsent(entityType, t -> new HashMap<>()).put(businessKey, rowHash);
+    }
+
+    /**
+     * Не запоминать хэш строки (например, не удалось восстановить её отложенную связь):
+     * следующий импорт обработает строку снова.
+     */
+    public void forget(String entityType, String businessKey) {
+        Map<String, Long> hashes = current.get(entityType);
+        if (hashes != null) {
+            hashes.remove(businessKey);
+        }
+    }
+
+    /**
+     * Сохраняет хэши строк, посчитанные в этом импорте (только изменившиеся и новые).
+     */
+    public int persist(ImportFingerprintService fingerprintService) {
+        int saved = 0;
+        for (Map.Entry<String, Map<String, Long>> byType : current.entrySet()) {
+            Map<String, Long> stored = previous.getOrDefault(byType.getKey(), Map.of());
+            Map<String, Long> changed = new HashMap<>();
+            byType.getValue().forEach((key, hash) -> {
+                if (!hash.equals(stored.get(key))) {
+                    changed.put(key, hash);
+                }
+            });
+            if (!changed.isEmpty()) {
+                fingerprintService.saveRowHashes(byType.getKey(), changed);
+                saved += changed.size();
+            }
+        }
+        return saved;
+    }
+}
@@ -9,13 +9,11 @@ import com.uzproc.backend.entity.purchaserequest.PurchaseRequest;
 import com.uzproc.backend.entity.purchaserequest.PurchaseRequestStatus;
 import com.uzproc.backend.entity.purchase.PurchaseStatus;
 import com.uzproc.backend.entity.user.User;
+import com.uzproc.backend.event.EntityIdsChangedEvent;
 import com.uzproc.backend.entity.supplier.Supplier;
-import com.uzproc.backend.repository.CfoRepository;
 import com.uzproc.backend.repository.contract.ContractRepository;
 import com.uzproc.backend.repository.purchase.PurchaseRepository;
 import com.uzproc.backend.repository.purchaserequest.PurchaseRequestRepository;
-import com.uzproc.backend.repository.supplier.SupplierRepository;
-import com.uzproc.backend.repository.user.UserRepository;
 import org.apache.poi.ss.usermodel.DataFormatter;
 import org.apache.poi.xssf.eventusermodel.ReadOnlySharedStringsTable;
 import org.apache.poi.xssf.eventusermodel.XSSFSheetXMLHandler;
@@ -25,11 +23,11 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.xml.sax.SAXException;
 
-import java.time.LocalDate;
 import java.time.LocalDateTime;
-import java.time.format.DateTimeFormatter;
-import java.time.format.DateTimeParseException;
 import java.util.*;
+import java.util.function.Function;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
 
 /**
  * Обработчик строк для потокового чтения больших Excel файлов через Event API
@@ -42,19 +40,21 @@ public class ExcelStreamingRowHandler implements XSSFSheetXMLHandler.SheetConten
     private final PurchaseRequestRepository purchaseRequestRepository;
     private final PurchaseRepository purchaseRepository;
     private final ContractRepository contractRepository;
-    private final UserRepository userRepository;
-    private final CfoRepository cfoRepository;
-    private final SupplierRepository supplierRepository;
     private final DataFormatter dataFormatter;
+
+    // Карта идентичности импорта: заявки/закупки/договоры предзагружены пачками, построчные поиски — из памяти
+    private final ExcelImportIdentityMap identityMap;
+    private final PendingLinkService pendingLinkService;
     
-    // Кеш ЦФО для оптимизации (загружается один раз в начале)
-    private final Map<String, Cfo> cfoCache = new HashMap<>();
+    // Справочники импорта: ЦФО, поставщики и пользователи предзагружены, новые записи пишутся пакетом
+    private final ImportReferenceData referenceData;
     
     // Batch-списки для накопления сущностей перед сохранением
     private final List<PurchaseRequest> purchaseRequestBatch = new ArrayList<>();
+    // id_purchase_request заявок пакета, у которых сменился закупщик (для синхронизации позиций плана)
+    private final Set<Long> purchaserChangedRequestIds = new HashSet<>();
     private final List<Purchase> purchaseBatch = new ArrayList<>();
     private final List<Contract> contractBatch = new ArrayList<>();
-    private final List<Cfo> newCfoBatch = new ArrayList<>();
     private static final int BATCH_SIZE = 100; // Размер пакета для batch-операций
 
     // Список отложенных связей (для закупок и договоров, у которых еще не найдена заявка)
@@ -70,6 +70,12 @@ public class ExcelStreamingRowHandler implements XSSFSheetXMLHandler.SheetConten
      * по возрастанию индекса.
      */
     private final Map<String, List<Integer>> allColumnIndices = new HashMap<>();
+    /**
+     * План привязки колонок: результат нечёткого поиска {@link #findColumnIndex} по названию
+     * (или {@link #NO_COLUMN}), вычисляется один раз на заголовок, а не на каждой строке.
+     */
+    private final Map<String, Integer> columnBindings = new HashMap<>();
+    private static final Integer NO_COLUMN = -1;
     private boolean headerProcessed = false;
     private int currentRowNum = -1;
     private Map<Integer, String> currentRowData = new HashMap<>();
@@ -87,6 +93,26 @@ public class ExcelStreamingRowHandler implements XSSFSheetXMLHandler.SheetConten
     private int contractsUpdated = 0;
     private int usersCreated = 0;
     private int usersUpdated = 0;
+    private int rowsUnchanged = 0;
+    private int dataRowsProcessed = 0;
+    private int rowErrors = 0;
+
+    /**
+     * Версия логики разбора строк: входит в хэш каждой строки и в отпечаток файла.
+     * Увеличивать при изменении маппинга колонок на поля, чтобы следующий импорт прошёл полностью.
+     */
+    public static final int ROW_HASH_VERSION = 1;
+    private static final long FNV64_OFFSET_BASIS = 0xcbf29ce484222325L;
+    private static final long FNV64_PRIME = 0x100000001b3L;
+
+    private final ExcelImportRowHashes rowHashes;
+    private final ExcelImportProgress progress;
+    /** Хэш заголовка: перестановка/переименование колонок меняет хэши всех строк. */
+    private long headerHash = FNV64_OFFSET_BASIS;
+    /** Ошибка в обработке текущей строки — её хэш не запоминается, строка будет обработана снова. */
+    private boolean currentRowFailed = false;
+    /** Ошибки сохранения batch: при ненулевом значении хэши строк и отпечаток файла не сохраняются. */
+    private int batchFailures = 0;
     
     // Константы
     private static final String DOCUMENT_TYPE_COLUMN = "Вид документа";
@@ -141,24 +167,13 @@ public class ExcelStreamingRowHandler implements XSSFSheetXMLHandler.SheetConten
     /** Организация заказчика в договоре. */
     private static final String ORGANIZATION_COLUMN = "Организация";
     
-    // Оптимизация: статические DateTimeFormatter для парсинга дат (создаются один раз)
-    private static final DateTimeFormatter[] DATE_TIME_FORMATTERS = {
-        DateTimeFormatter.ofPattern("dd.MM.yyyy HH:mm:ss"),      // 0 - с двузначным часом
-        DateTimeFormatter.ofPattern("dd.MM.yyyy H:mm:ss"),       // 1 - с однозначным часом (новый)
-        DateTimeFormatter.ofPattern("dd.MM.yyyy HH:mm"),          // 2 - с двузначным часом
-        DateTimeFormatter.ofPattern("dd.MM.yyyy H:mm"),           // 3 - с однозначным часом (новый)
-        DateTimeFormatter.ofPattern("dd.MM.yyyy"),               // 4 - только дата
-        DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss"),      // 5 - ISO с двузначным часом
-        DateTimeFormatter.ofPattern("yyyy-MM-dd H:mm:ss"),       // 6 - ISO с однозначным часом (новый)
-        DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm"),         // 7 - ISO с двузначным часом
-        DateTimeFormatter.ofPattern("yyyy-MM-dd H:mm"),          // 8 - ISO с однозначным часом (новый)
-        DateTimeFormatter.ofPattern("yyyy-MM-dd"),               // 9 - только дата
-        DateTimeFormatter.ofPattern("dd/MM/yyyy HH:mm:ss"),      // 10 - с двузначным часом
-        DateTimeFormatter.ofPattern("dd/MM/yyyy H:mm:ss"),       // 11 - с однозначным часом (новый)
-        DateTimeFormatter.ofPattern("dd/MM/yyyy HH:mm"),         // 12 - с двузначным часом
-        DateTimeFormatter.ofPattern("dd/MM/yyyy H:mm"),          // 13 - с однозначным часом (новый)
-        DateTimeFormatter.ofPattern("dd/MM/yyyy")                 // 14 - только дата
-    };
+    /** Номер заявки в ссылке: "N 1782". */
+    private static final Pattern LINK_REQUEST_NUMBER_PATTERN = Pattern.compile("N\\s+(\\d+)");
+    /** Контрагент: "Название (ИНН)". */
+    private static final Pattern CONTRAGENT_PATTERN = Pattern.compile("(.+)\\s*\\((\\d+)\\)");
+
+    /** Разбор дат с запоминанием формата по колонке (на время одного листа). */
+    private final ExcelCellDecoders.DateDecoder dateDecoder = new ExcelCellDecoders.DateDecoder();
     
     // Названия колонок для проверки инвертированной логики
     private String requiresPurchaseColumnName = null;
@@ -169,65 +184,35 @@ public class ExcelStreamingRowHandler implements XSSFSheetXMLHandler.SheetConten
             PurchaseRequestRepository purchaseRequestRepository,
             PurchaseRepository purchaseRepository,
             ContractRepository contractRepository,
-            UserRepository userRepository,
-            CfoRepository cfoRepository,
-            SupplierRepository supplierRepository,
+            ImportReferenceData referenceData,
+            ExcelImportIdentityMap identityMap,
+            ExcelImportRowHashes rowHashes,
+            ExcelImportProgress progress,
+            PendingLinkService pendingLinkService,
             StylesTable stylesTable,
             ReadOnlySharedStringsTable sharedStringsTable) {
         this.excelLoadService = excelLoadService;
         this.purchaseRequestRepository = purchaseRequestRepository;
         this.purchaseRepository = purchaseRepository;
         this.contractRepository = contractRepository;
-        this.userRepository = userRepository;
-        this.cfoRepository = cfoRepository;
-        this.supplierRepository = supplierRepository;
+        this.referenceData = referenceData;
+        this.identityMap = identityMap;
+        this.rowHashes = rowHashes;
+        this.progress = progress;
+        this.pendingLinkService = pendingLinkService;
         this.dataFormatter = new DataFormatter();
-        
-        // Загружаем все ЦФО в кеш один раз при создании обработчика
-        loadCfoCache();
-    }
-    
-    /**
-     * Загружает все ЦФО в кеш для быстрого доступа
-     */
-    private void loadCfoCache() {
-        try {
-            List<Cfo> allCfos = cfoRepository.findAll();
-            for (Cfo cfo : allCfos) {
-                cfoCache.put(cfo.getName().toLowerCase().trim(), cfo);
-            }
-            logger.info("Loaded {} CFOs into cache", cfoCache.size());
-        } catch (Exception e) {
-            logger.warn("Error loading CFO cache: {}", e.getMessage());
-        }
     }
     
     /**
      * Вспомогательный метод для установки Cfo на основе строкового значения
-     * Использует кеш для быстрого поиска. Если ЦФО не найдено, добавляет в batch для создания
+     * Ищет по справочнику импорта. Если ЦФО не найдено, оно ставится в очередь на пакетную запись
      */
     private void setCfoFromString(Object entity, String cfoStr) {
         if (cfoStr == null || cfoStr.trim().isEmpty()) {
             return;
         }
-        String trimmedCfo = cfoStr.trim();
-        String cacheKey = trimmedCfo.toLowerCase();
-        
-        // Ищем в кеше
-        Cfo cfo = cfoCache.get(cacheKey);
-        
-        // Если не найдено в кеше, создаем новое и добавляем в batch
-        if (cfo == null) {
-            cfo = new Cfo(trimmedCfo);
-            cfoCache.put(cacheKey, cfo); // Добавляем в кеш сразу
-            newCfoBatch.add(cfo); // Добавляем в batch для сохранения
-            logger.debug("Queued new Cfo for batch save: {}", trimmedCfo);
-            
-            // Сохраняем batch если он заполнен
-            if (newCfoBatch.size() >= BATCH_SIZE) {
-                flushCfoBatch();
-            }
-        }
+        Cfo cfo = referenceData.resolveCfo(cfoStr);
+        flushReferenceDataIfFull();
         
         // Устанавливаем ЦФО в сущность
         if (entity instanceof PurchaseRequest) {
@@ -240,21 +225,11 @@ public class ExcelStreamingRowHandler implements XSSFSheetXMLHandler.SheetConten
     }
     
     /**
-     * Сохраняет накопленные ЦФО пакетом
+     * Записывает накопленные новые справочные записи, когда очередь заполнилась
      */
-    private void flushCfoBatch() {
-        if (!newCfoBatch.isEmpty()) {
-            try {
-                List<Cfo> saved = cfoRepository.saveAll(newCfoBatch);
-                // Обновляем кеш с сохраненными ЦФО (на случай если были изменения ID)
-                for (Cfo savedCfo : saved) {
-                    cfoCache.put(savedCfo.getName().toLowerCase().trim(), savedCfo);
-                }
-                logger.debug("Flushed {} CFOs to database", saved.size());
-                newCfoBatch.clear();
-            } catch (Exception e) {
-                logger.error("Error flushing CFO batch: {}", e.getMessage(), e);
-            }
+    private void flushReferenceDataIfFull() {
+        if (referenceData.pendingCount() >= BATCH_SIZE) {
+            referenceData.flushPending();
         }
     }
     
@@ -279,11 +254,17 @@ public class ExcelStreamingRowHandler implements XSSFSheetXMLHandler.SheetConten
         } else if (headerProcessed) {
             // Обрабатываем строку данных
             processDataRow();
+            dataRowsProcessed++;
+            progress.publish(dataRowsProcessed,
+                purchaseRequestsCreated + purchasesCreated + contractsCreated + usersCreated,
+                purchaseRequestsUpdated + purchasesUpdated + contractsUpdated + usersUpdated,
+                rowsUnchanged, rowErrors);
         }
         currentRowData.clear();
     }
     
     private void processHeaderRow() {
+        columnBindings.clear();
         // Строим карту индексов колонок из заголовков
         for (Map.Entry<Integer, String> entry : currentRowData.entrySet()) {
             if (entry.getValue() != null && !entry.getValue().trim().isEmpty()) {
@@ -302,6 +283,7 @@ public class ExcelStreamingRowHandler implements XSSFSheetXMLHandler.SheetConten
         }
         // currentRowData — HashMap, порядок обхода не гарантирован: упорядочиваем вхождения по индексу колонки
         allColumnIndices.values().forEach(Collections::sort);
+        headerHash = hashCells(mix(FNV64_OFFSET_BASIS, ROW_HASH_VERSION));
         headerProcessed = true;
         logger.info("Processed header row with {} columns", columnIndices.size());
         
@@ -354,6 +336,19 @@ public class ExcelStreamingRowHandler implements XSSFSheetXMLHandler.SheetConten
             }
             
             String trimmedDocType = documentType.trim();
+
+            // Строка, не изменившаяся с прошлого успешного импорта, пропускается целиком
+            String hashEntityType = rowHashEntityType(trimmedDocType);
+            String businessKey = hashEntityType != null ? resolveBusinessKey(hashEntityType) : null;
+            long rowHash = 0;
+            if (businessKey != null) {
+                rowHash = hashCells(headerHash);
+                if (rowHashes.isUnchanged(hashEntityType, businessKey, rowHash) && isKnownEntity(hashEntityType, businessKey)) {
+                    rowsUnchanged++;
+                    return;
+                }
+            }
+            currentRowFailed = false;
             
             // Обрабатываем в зависимости от типа документа
             boolean isProcessedType = false;
@@ -372,11 +367,97 @@ public class ExcelStreamingRowHandler implements XSSFSheetXMLHandler.SheetConten
             if (isProcessedType) {
                 processUserRow();
             }
+
+            if (currentRowFailed) {
+                rowErrors++;
+            } else if (businessKey != null && isKnownEntity(hashEntityType, businessKey)) {
+                rowHashes.record(hashEntityType, businessKey, rowHash);
+            }
             
         } catch (Exception e) {
+            rowErrors++;
             logger.warn("Error processing row {}: {}", currentRowNum + 1, e.getMessage());
         }
     }
+
+    private static String rowHashEntityType(String documentType) {
+        if (PURCHASE_REQUEST_TYPE.equals(documentType)) {
+            return ExcelImportRowHashes.PURCHASE_REQUEST;
+        } else if (PURCHASE_TYPE.equals(documentType)) {
+            return ExcelImportRowHashes.PURCHASE;
+        } else if (CONTRACT_TYPE.equals(documentType)) {
+            return ExcelImportRowHashes.CONTRACT;
+        }
+        return null;
+    }
+
+    /**
+     * Бизнес-ключ строки: номер заявки или внутренний номер закупки/договора (те же колонки, что в process*Row).
+     */
+    private String resolveBusinessKey(String entityType) {
+        if (ExcelImportRowHashes.PURCHASE_REQUEST.equals(entityType)) {
+            Integer requestNumberCol = columnIndices.get(REQUEST_NUMBER_COLUMN);
+            if (requestNumberCol == null) {
+                requestNumberCol = findColumnIndex(REQUEST_NUMBER_COLUMN);
+            }
+            if (requestNumberCol == null) {
+                requestNumberCol = columnIndices.get("Номер заяки на ЗП");
+            }
+            if (requestNumberCol == null) {
+                requestNumberCol = findColumnIndex("Номер заяки на ЗП");
+            }
+            if (requestNumberCol == null) {
+                requestNumberCol = findColumnIndex("Номер заявки");
+            }
+            String value = requestNumberCol != null ? currentRowData.get(requestNumberCol) : null;
+            Long requestNumber = value != null && !value.trim().isEmpty() ? parseLong(value) : null;
+            return requestNumber != null ? String.valueOf(requestNumber) : null;
+        }
+        Integer innerIdCol = columnIndices.get(INNER_ID_COLUMN);
+        if (innerIdCol == null) {
+            innerIdCol = findColumnIndex(INNER_ID_COLUMN);
+        }
+        String value = innerIdCol != null ? currentRowData.get(innerIdCol) : null;
+        return value != null && !value.trim().isEmpty() ? value.trim() : null;
+    }
+
+    private boolean isKnownEntity(String entityType, String businessKey) {
+        return switch (entityType) {
+            case ExcelImportRowHashes.PURCHASE_REQUEST -> identityMap.hasPurchaseRequest(Long.valueOf(businessKey));
+            case ExcelImportRowHashes.PURCHASE -> identityMap.hasPurchase(businessKey);
+            case ExcelImportRowHashes.CONTRACT -> identityMap.hasContract(businessKey);
+            default -> false;
+        };
+    }
+
+    /**
+     * 64-битный FNV-1a по ячейкам текущей строки в порядке индексов колонок.
+     */
+    private long hashCells(long seed) {
+        int[] columns = new int[currentRowData.size()];
+        int n = 0;
+        for (Integer column : currentRowData.keySet()) {
+            columns[n++] = column;
+        }
+        Arrays.sort(columns);
+        long hash = seed;
+        for (int column : columns) {
+            String value = currentRowData.get(column);
+            if (value == null || value.isEmpty()) {
+                continue;
+            }
+            hash = mix(hash, column);
+            for (int i = 0; i < value.length(); i++) {
+                hash = mix(hash, value.charAt(i));
+            }
+            hash = mix(hash, 0x1F);
+        }
+        return hash;
+    }
+
+    private static long mix(long hash, int value) {
+        return (hash ^ value) * FNV64_PRIME;
+    }
     
     private void processPurchaseRequestRow() {
         try {
@@ -419,7 +500,7 @@ public class ExcelStreamingRowHandler implements XSSFSheetXMLHandler.SheetConten
             }
             
             // Создаем или получаем существующую заявку
-            Optional<PurchaseRequest> existingOpt = purchaseRequestRepository.findByIdPurchaseRequest(requestNumber);
+            Optional<PurchaseRequest> existingOpt = identityMap.findPurchaseRequest(requestNumber);
             
             // Сохраняем оригинальное значение закупщика, если заявка существует
             String originalPurchaser = null;
@@ -438,7 +519,7 @@ public class ExcelStreamingRowHandler implements XSSFSheetXMLHandler.SheetConten
             // Парсим дату создания
             String dateStr = currentRowData.get(creationDateCol);
             if (dateStr != null && !dateStr.trim().isEmpty()) {
-                LocalDateTime creationDate = parseStringDate(dateStr);
+                LocalDateTime creationDate = parseStringDate(creationDateCol, dateStr);
                 if (creationDate != null) {
                     pr.setPurchaseRequestCreationDate(creationDate);
                 }
@@ -708,6 +789,7 @@ public class ExcelStreamingRowHandler implements XSSFSheetXMLHandler.SheetConten
                 logger.debug("Row {}: Queuing new purchase request {} for batch save", 
                     currentRowNum + 1, pr.getIdPurchaseRequest());
                 purchaseRequestBatch.add(pr);
+                identityMap.putPurchaseRequest(pr);
                 purchaseRequestsCreated++;
                 
                 // Сохраняем batch если он заполнен
@@ -718,6 +800,7 @@ public class ExcelStreamingRowHandler implements XSSFSheetXMLHandler.SheetConten
             purchaseRequestsCount++;
             
         } catch (Exception e) {
+            currentRowFailed = true;
             logger.warn("Error processing purchase request row {}: {}", currentRowNum + 1, e.getMessage(), e);
         }
     }
@@ -744,7 +827,7 @@ public class ExcelStreamingRowHandler implements XSSFSheetXMLHandler.SheetConten
             // Все поля из Excel парсим в ОТДЕЛЬНЫЙ новый объект `purchase`, чтобы не мутировать `existing`
             // напрямую — иначе сравнение existing vs newData в updatePurchaseFields даст false
             // и изменения не попадут в batch (паттерн А, как в processPurchaseRequestRow).
-            Optional<Purchase> existingOpt = purchaseRepository.findByInnerId(innerId);
+            Optional<Purchase> existingOpt = identityMap.findPurchase(innerId);
             Purchase purchase = new Purchase();
             purchase.setInnerId(innerId);
             
@@ -756,7 +839,7 @@ public class ExcelStreamingRowHandler implements XSSFSheetXMLHandler.SheetConten
             if (creationDateCol != null) {
                 String dateStr = currentRowData.get(creationDateCol);
                 if (dateStr != null && !dateStr.trim().isEmpty()) {
-                    LocalDateTime creationDate = parseStringDate(dateStr);
+                    LocalDateTime creationDate = parseStringDate(creationDateCol, dateStr);
                     if (creationDate != null) {
                         purchase.setPurchaseCreationDate(creationDate);
                         logger.debug("Row {}: parsed creation date '{}' for purchase {}", currentRowNum + 1, creationDate, purchase.getInnerId());
@@ -787,35 +870,14 @@ public class ExcelStreamingRowHandler implements XSSFSheetXMLHandler.SheetConten
                 if (link != null && !link.trim().isEmpty()) {
                     Long purchaseRequestId = parsePurchaseRequestIdFromLink(link.trim());
                     if (purchaseRequestId != null) {
-                        // Сначала проверяем batch, потом БД (заявка может быть еще не сохранена)
-                        Optional<PurchaseRequest> purchaseRequest = purchaseRequestBatch.stream()
-                            .filter(pr -> pr.getIdPurchaseRequest() != null && pr.getIdPurchaseRequest().equals(purchaseRequestId))
-                            .findFirst();
-                        
-                        boolean foundInBatch = purchaseRequest.isPresent();
-                        
-                        if (!purchaseRequest.isPresent()) {
-                            // Если не нашли в batch, сначала сохраняем batch, чтобы заявки были в БД
-                            // Это нужно, если заявка обрабатывается раньше в Excel, но еще не сохранена
-                            if (!purchaseRequestBatch.isEmpty()) {
-                                flushPurchaseRequestBatch();
-                                logger.debug("Row {}: Flushed purchase request batch before searching for purchaseRequest {} for purchase {}", 
-                                    currentRowNum + 1, purchaseRequestId, purchase.getInnerId());
-                            }
-                            
-                            // Теперь ищем в БД
-                            purchaseRequest = purchaseRequestRepository.findByIdPurchaseRequest(purchaseRequestId);
-                            if (purchaseRequest.isPresent()) {
-                                logger.debug("Row {}: Found purchaseRequest {} in database for purchase {}", 
-                                    currentRowNum + 1, purchaseRequestId, purchase.getInnerId());
-                            }
-                        }
+                        // Заявка ищется в карте идентичности: там и предзагруженные из БД, и созданные в этом импорте
+                        // (ещё не сохранённые заявки flushPurchaseBatch сохраняет первыми — FK по id_purchase_request)
+                        Optional<PurchaseRequest> purchaseRequest = identityMap.findPurchaseRequest(purchaseRequestId);
                         
                         if (purchaseRequest.isPresent()) {
                             purchase.setPurchaseRequestId(purchaseRequest.get().getIdPurchaseRequest());
-                            logger.info("Row {}: Set purchaseRequestId {} for purchase {} from link '{}' (found in {})",
-                                currentRowNum + 1, purchaseRequest.get().getIdPurchaseRequest(), purchase.getInnerId(), link.trim(),
-                                foundInBatch ? "batch" : "database");
+                            logger.info("Row {}: Set purchaseRequestId {} for purchase {} from link '{}'",
+                                currentRowNum + 1, purchaseRequest.get().getIdPurchaseRequest(), purchase.getInnerId(), link.trim());
                         } else {
                             // Заявка не найдена - добавляем в список отложенных связей для последующей обработки
                             pendingPurchaseLinks.put(purchase.getInnerId(), purchaseRequestId);
@@ -1040,6 +1102,7 @@ public class ExcelStreamingRowHandler implements XSSFSheetXMLHandler.SheetConten
                 }
             } else {
                 purchaseBatch.add(purchase);
+                identityMap.putPurchase(purchase);
                 purchasesCreated++;
                 
                 // Сохраняем batch если он заполнен
@@ -1050,6 +1113,7 @@ public class ExcelStreamingRowHandler implements XSSFSheetXMLHandler.SheetConten
             purchasesCount++;
             
         } catch (Exception e) {
+            currentRowFailed = true;
             logger.warn("Error processing purchase row {}: {}", currentRowNum + 1, e.getMessage(), e);
             // ВАЖНО: Увеличиваем счетчик даже при ошибке, чтобы статистика была корректной
             purchasesCount++;
@@ -1078,7 +1142,7 @@ public class ExcelStreamingRowHandler implements XSSFSheetXMLHandler.SheetConten
             // Все поля из Excel парсим в ОТДЕЛЬНЫЙ новый объект `contract`, чтобы не мутировать `existing`
             // напрямую — иначе сравнение existing vs newData в updateContractFields даст false
             // и изменения никогда не попадут в batch (см. паттерн А processPurchaseRequestRow).
-            Optional<Contract> existingOpt = contractRepository.findByInnerId(innerId);
+            Optional<Contract> existingOpt = identityMap.findContract(innerId);
             Contract contract = new Contract();
             contract.setInnerId(innerId);
             
@@ -1087,7 +1151,7 @@ public class ExcelStreamingRowHandler implements XSSFSheetXMLHandler.SheetConten
             if (creationDateCol != null) {
                 String dateStr = currentRowData.get(creationDateCol);
                 if (dateStr != null && !dateStr.trim().isEmpty()) {
-                    LocalDateTime creationDate = parseStringDate(dateStr);
+                    LocalDateTime creationDate = parseStringDate(creationDateCol, dateStr);
                     if (creationDate != null) {
                         contract.setContractCreationDate(creationDate);
                     }
@@ -1138,35 +1202,14 @@ public class ExcelStreamingRowHandler implements XSSFSheetXMLHandler.SheetConten
                 if (link != null && !link.trim().isEmpty()) {
                     Long purchaseRequestId = parsePurchaseRequestIdFromLink(link.trim());
                     if (purchaseRequestId != null) {
-                        // Сначала проверяем batch, потом БД (заявка может быть еще не сохранена)
-                        Optional<PurchaseRequest> purchaseRequest = purchaseRequestBatch.stream()
-                            .filter(pr -> pr.getIdPurchaseRequest() != null && pr.getIdPurchaseRequest().equals(purchaseRequestId))
-                            .findFirst();
-                        
-                        boolean foundInBatch = purchaseRequest.isPresent();
-                        
-                        if (!purchaseRequest.isPresent()) {
-                            // Если не нашли в batch, сначала сохраняем batch, чтобы заявки были в БД
-                            // Это нужно, если заявка обрабатывается раньше в Excel, но еще не сохранена
-                            if (!purchaseRequestBatch.isEmpty()) {
-                                flushPurchaseRequestBatch();
-                                logger.debug("Row {}: Flushed purchase request batch before searching for purchaseRequest {} for contract {}", 
-                                    currentRowNum + 1, purchaseRequestId, contract.getInnerId());
-                            }
-                            
-                            // Теперь ищем в БД
-                            purchaseRequest = purchaseRequestRepository.findByIdPurchaseRequest(purchaseRequestId);
-                            if (purchaseRequest.isPresent()) {
-                                logger.debug("Row {}: Found purchaseRequest {} in database for contract {}", 
-                                    currentRowNum + 1, purchaseRequestId, contract.getInnerId());
-                            }
-                        }
+                        // Заявка ищется в карте идентичности: там и предзагруженные из БД, и созданные в этом импорте
+                        // (ещё не сохранённые заявки flushContractBatch сохраняет первыми — FK по id_purchase_request)
+                        Optional<PurchaseRequest> purchaseRequest = identityMap.findPurchaseRequest(purchaseRequestId);
                         
                         if (purchaseRequest.isPresent()) {
                             contract.setPurchaseRequestId(purchaseRequest.get().getIdPurchaseRequest());
-                            logger.info("Row {}: Set purchaseRequestId {} for contract {} from link '{}' (found in {})",
-                                currentRowNum + 1, purchaseRequest.get().getIdPurchaseRequest(), contract.getInnerId(), link.trim(),
-                                foundInBatch ? "batch" : "database");
+                            logger.info("Row {}: Set purchaseRequestId {} for contract {} from link '{}'",
+                                currentRowNum + 1, purchaseRequest.get().getIdPurchaseRequest(), contract.getInnerId(), link.trim());
                         } else {
                             // Заявка не найдена - добавляем в список отложенных связей для последующей обработки
                             pendingContractLinks.put(contract.getInnerId(), purchaseRequestId);
@@ -1191,22 +1234,12 @@ public class ExcelStreamingRowHandler implements XSSFSheetXMLHandler.SheetConten
                     if (purchaseProcedure != null && !purchaseProcedure.trim().isEmpty()) {
                         Long purchaseRequestId = parsePurchaseRequestIdFromLink(purchaseProcedure.trim());
                         if (purchaseRequestId != null) {
-                            Optional<PurchaseRequest> purchaseRequest = purchaseRequestBatch.stream()
-                                .filter(pr -> pr.getIdPurchaseRequest() != null && pr.getIdPurchaseRequest().equals(purchaseRequestId))
-                                .findFirst();
-                            boolean foundInBatch = purchaseRequest.isPresent();
-                            if (!purchaseRequest.isPresent() && !purchaseRequestBatch.isEmpty()) {
-                                flushPurchaseRequestBatch();
-                                purchaseRequest = purchaseRequestRepository.findByIdPurchaseRequest(purchaseRequestId);
-                            } else if (!purchaseRequest.isPresent()) {
-                                purchaseRequest = purchaseRequestRepository.findByIdPurchaseRequest(purchaseRequestId);
-                            }
+                            Optional<PurchaseRequest> purchaseRequest = identityMap.findPurchaseRequest(purchaseRequestId);
                             if (purchaseRequest.isPresent()) {
                                 contract.setPurchaseRequestId(purchaseRequest.get().getIdPurchaseRequest());
-                                logger.info("Row {}: Set purchaseRequestId {} for contract {} from '{}' (found in {})",
+                                logger.info("Row {}: Set purchaseRequestId {} for contract {} from '{}'",
                                     currentRowNum + 1, purchaseRequest.get().getIdPurchaseRequest(), contract.getInnerId(),
-                                    purchaseProcedure.trim().length() > 60 ? purchaseProcedure.trim().substring(0, 60) + "..." : purchaseProcedure.trim(),
-                                    foundInBatch ? "batch" : "database");
+                                    purchaseProcedure.trim().length() > 60 ? purchaseProcedure.trim().substring(0, 60) + "..." : purchaseProcedure.trim());
                             } else {
                                 pendingContractLinks.put(contract.getInnerId(), purchaseRequestId);
                                 logger.warn("Row {}: PurchaseRequest {} not found for contract {} (column '{}') - added to pending links",
@@ -1300,7 +1333,7 @@ public class ExcelStreamingRowHandler implements XSSFSheetXMLHandler.SheetConten
             if (plannedDeliveryStartCol != null) {
                 String dateStr = currentRowData.get(plannedDeliveryStartCol);
                 if (dateStr != null && !dateStr.trim().isEmpty()) {
-                    LocalDateTime plannedStart = parseStringDate(dateStr);
+                    LocalDateTime plannedStart = parseStringDate(plannedDeliveryStartCol, dateStr);
                     if (plannedStart != null) {
                         contract.setPlannedDeliveryStartDate(plannedStart);
                         logger.debug("Row {}: parsed plannedDeliveryStartDate '{}' for contract {}", currentRowNum + 1, plannedStart, contract.getInnerId());
@@ -1316,7 +1349,7 @@ public class ExcelStreamingRowHandler implements XSSFSheetXMLHandler.SheetConten
             if (plannedDeliveryEndCol != null) {
                 String dateStr = currentRowData.get(plannedDeliveryEndCol);
                 if (dateStr != null && !dateStr.trim().isEmpty()) {
-                    LocalDateTime plannedEnd = parseStringDate(dateStr);
+                    LocalDateTime plannedEnd = parseStringDate(plannedDeliveryEndCol, dateStr);
                     if (plannedEnd != null) {
                         contract.setPlannedDeliveryEndDate(plannedEnd);
                         logger.debug("Row {}: parsed plannedDeliveryEndDate '{}' for contract {}", currentRowNum + 1, plannedEnd, contract.getInnerId());
@@ -1434,7 +1467,7 @@ public class ExcelStreamingRowHandler implements XSSFSheetXMLHandler.SheetConten
 
                     // Ищем пользователя по фамилии и имени
                     if (surname != null && name != null) {
-                        Optional<User> userOpt = userRepository.findBySurnameAndName(surname, name);
+                        Optional<User> userOpt = referenceData.findUser(surname, name);
                         if (userOpt.isPresent()) {
                             contract.setPreparedBy(userOpt.get());
                             logger.debug("Row {}: Set preparedBy user '{}' for contract {}",
@@ -1531,6 +1564,7 @@ public class ExcelStreamingRowHandler implements XSSFSheetXMLHandler.SheetConten
                 }
             } else {
                 contractBatch.add(contract);
+                identityMap.putContract(contract);
                 contractsCreated++;
                 
                 // Сохраняем batch если он заполнен
@@ -1541,6 +1575,7 @@ public class ExcelStreamingRowHandler implements XSSFSheetXMLHandler.SheetConten
             contractsCount++;
             
         } catch (Exception e) {
+            currentRowFailed = true;
             logger.warn("Error processing contract row {}: {}", currentRowNum + 1, e.getMessage(), e);
         }
     }
@@ -1567,7 +1602,8 @@ public class ExcelStreamingRowHandler implements XSSFSheetXMLHandler.SheetConten
             if (preparedByCol != null) {
                 String preparedBy = currentRowData.get(preparedByCol);
                 if (preparedBy != null && !preparedBy.trim().isEmpty()) {
-                    excelLoadService.parseAndSaveUser(preparedBy.trim(), emailPreparedBy);
+                    referenceData.resolveUser(ImportPerson.parse(preparedBy.trim()).withEmail(emailPreparedBy));
+                    flushReferenceDataIfFull();
                     usersCount++;
                 }
             }
@@ -1579,84 +1615,33 @@ public class ExcelStreamingRowHandler implements XSSFSheetXMLHandler.SheetConten
             if (purchaserCol != null) {
                 String purchaser = currentRowData.get(purchaserCol);
                 if (purchaser != null && !purchaser.trim().isEmpty()) {
-                    excelLoadService.parseAndSaveUser(purchaser.trim());
+                    referenceData.resolveUser(ImportPerson.parse(purchaser.trim()));
+                    flushReferenceDataIfFull();
                     usersCount++;
                 }
             }
         } catch (Exception e) {
+            currentRowFailed = true;
             logger.warn("Error processing user row {}: {}", currentRowNum + 1, e.getMessage());
         }
     }
     
     private int getColumnIndex(String cellReference) {
         // Извлекаем букву колонки (например, "A1" -> "A" -> 0)
-        String columnPart = cellReference.replaceAll("[0-9]", "");
-        int index = 0;
-        for (int i = 0; i < columnPart.length(); i++) {
-            index = index * 26 + (columnPart.charAt(i) - 'A' + 1);
-        }
-        return index - 1;
+        return ExcelCellDecoders.columnIndex(cellReference);
     }
     
     private Long parseLong(String value) {
-        try {
-            if (value == null || value.trim().isEmpty()) {
-                return null;
-            }
-            // Убираем пробелы и форматирование
-            String cleaned = value.trim().replaceAll("[^0-9]", "");
-            return cleaned.isEmpty() ? null : Long.parseLong(cleaned);
-        } catch (NumberFormatException e) {
-            return null;
-        }
+        // Убираем пробелы и форматирование: учитываются только цифры
+        return ExcelCellDecoders.parseDigits(value);
     }
     
     /**
-     * Парсит строку с датой в различных форматах
-     */
-    /**
-     * Парсит строку с датой в различных форматах
-     * Оптимизировано: использует статические DateTimeFormatter вместо создания новых
+     * Парсит строку с датой в различных форматах.
+     * Формат, подошедший колонке {@code column}, пробуется первым для следующих строк.
      */
-    private LocalDateTime parseStringDate(String dateStr) {
-        if (dateStr == null || dateStr.trim().isEmpty()) {
-            return null;
-        }
-        
-        dateStr = dateStr.trim();
-        
-        // Используем предварительно созданные статические форматтеры
-        for (int i = 0; i < DATE_TIME_FORMATTERS.length; i++) {
-            DateTimeFormatter formatter = DATE_TIME_FORMATTERS[i];
-            try {
-                // Форматтеры с индексами 0,1,2,3,5,6,7,8,10,11,12,13 содержат время
-                // Индексы 4, 9, 14 - только дата
-                if (i == 4 || i == 9 || i == 14) {
-                    // Только дата
-                    LocalDate date = LocalDate.parse(dateStr, formatter);
-                    return date.atStartOfDay();
-                } else {
-                    // Дата и время
-                    return LocalDateTime.parse(dateStr, formatter);
-                }
-            } catch (DateTimeParseException e) {
-                // Пробуем следующий формат
-            }
-        }
-        
-        // Пробуем ISO форматы как fallback
-        try {
-            return LocalDateTime.parse(dateStr, DateTimeFormatter.ISO_LOCAL_DATE_TIME);
-        } catch (DateTimeParseException e) {
-            // ignore
-        }
-        try {
-            return LocalDate.parse(dateStr, DateTimeFormatter.ISO_LOCAL_DATE).atStartOfDay();
-        } catch (DateTimeParseException e) {
-            // ignore
-        }
-        
-        return null;
+    private LocalDateTime parseStringDate(int column, String dateStr) {
+        return dateDecoder.parse(column, dateStr);
     }
     
     /**
@@ -1702,37 +1687,13 @@ public class ExcelStreamingRowHandler implements XSSFSheetXMLHandler.SheetConten
         if (raw == null || raw.trim().isEmpty()) {
             return null;
         }
-        
-        try {
-            // Оставляем только цифры: убираем пробелы, неразрывные пробелы, "UZS" и любые другие символы
-            // Также сохраняем точку или запятую для десятичных чисел
-            String cleaned = raw.replaceAll("[^0-9.,]", "");
-            
-            // Заменяем запятую на точку для десятичных чисел
-            cleaned = cleaned.replace(",", ".");
-            
-            // Если есть несколько точек, оставляем только первую (для корректного парсинга)
-            int firstDotIndex = cleaned.indexOf('.');
-            if (firstDotIndex >= 0) {
-                String beforeDot = cleaned.substring(0, firstDotIndex);
-                String afterDot = cleaned.substring(firstDotIndex + 1).replace(".", "");
-                cleaned = beforeDot + "." + afterDot;
-            }
-            
-            logger.debug("parseBigDecimalString: cleaned value: '{}'", cleaned);
-
-            if (cleaned.isEmpty()) {
-                logger.warn("Cannot parse BigDecimal from string (no digits after cleanup): '{}'", raw);
-                return null;
-            }
-
-            java.math.BigDecimal result = new java.math.BigDecimal(cleaned);
-            logger.debug("parseBigDecimalString: parsed BigDecimal: {}", result);
-            return result;
-        } catch (NumberFormatException e) {
-            logger.warn("Cannot parse BigDecimal from string: '{}', error: {}", raw, e.getMessage());
-            return null;
+        // Оставляем только цифры и первый десятичный разделитель (запятая → точка):
+        // пробелы, неразрывные пробелы, "UZS" и прочие символы отбрасываются
+        java.math.BigDecimal result = ExcelCellDecoders.parseDecimal(raw);
+        if (result == null) {
+            logger.warn("Cannot parse BigDecimal from string (no digits after cleanup): '{}'", raw);
         }
+        return result;
     }
     
     /**
@@ -1768,6 +1729,11 @@ public class ExcelStreamingRowHandler implements XSSFSheetXMLHandler.SheetConten
     }
 
     private Integer findColumnIndex(String columnName) {
+        Integer bound = columnBindings.computeIfAbsent(columnName, this::resolveColumnIndex);
+        return NO_COLUMN.equals(bound) ? null : bound;
+    }
+
+    private Integer resolveColumnIndex(String columnName) {
         // Сначала ищем точное совпадение
         Integer exactMatch = columnIndices.get(columnName);
         if (exactMatch != null) {
@@ -1781,7 +1747,7 @@ public class ExcelStreamingRowHandler implements XSSFSheetXMLHandler.SheetConten
             }
         }
         
-        return null;
+        return NO_COLUMN;
     }
     
     /**
@@ -1889,6 +1855,7 @@ public class ExcelStreamingRowHandler implements XSSFSheetXMLHandler.SheetConten
             if (existingPurchaser == null || !existingPurchaser.equals(newPurchaser)) {
                 // Закупщик обновляется из Excel
                 existing.setPurchaser(newPurchaser);
+                purchaserChangedRequestIds.add(existing.getIdPurchaseRequest());
                 updated = true;
                 logger.info("Updated purchaser for request {}: '{}' -> '{}'", 
                     existing.getIdPurchaseRequest(), existingPurchaser, newPurchaser);
@@ -2454,32 +2421,25 @@ public class ExcelStreamingRowHandler implements XSSFSheetXMLHandler.SheetConten
      * Парсит колонку "Контрагенты" в набор поставщиков.
      * Формат одной записи: "Mega Poligraf Servise Mchj (303459905)" — название и ИНН в скобках.
      * Несколько контрагентов через запятую: "Name1 (INN1), Name2 (INN2)".
-     * Поставщик ищется по ИНН; если не найден — создаётся с code=INN, name=название, inn=INN.
+     * Поставщик ищется по ИНН (затем по коду) в справочнике импорта; если не найден — ставится в очередь
+     * на создание с code=INN, name=название, inn=INN.
      */
     private Set<Supplier> parseContragentsToSuppliers(String value) {
         Set<Supplier> result = new HashSet<>();
         if (value == null || value.trim().isEmpty()) {
             return result;
         }
-        java.util.regex.Pattern pattern = java.util.regex.Pattern.compile("(.+)\\s*\\((\\d+)\\)");
         String[] parts = value.split("[,;]");
         for (String part : parts) {
             String trimmed = part.trim();
             if (trimmed.isEmpty()) {
                 continue;
             }
-            java.util.regex.Matcher matcher = pattern.matcher(trimmed);
+            Matcher matcher = CONTRAGENT_PATTERN.matcher(trimmed);
             if (matcher.matches()) {
                 String name = matcher.group(1).trim();
                 String inn = matcher.group(2).trim();
-                Supplier supplier = supplierRepository.findFirstByInn(inn)
-                    .orElseGet(() -> {
-                        Supplier s = new Supplier();
-                        s.setCode(inn);
-                        s.setInn(inn);
-                        s.setName(name);
-                        return supplierRepository.save(s);
-                    });
+                Supplier supplier = referenceData.resolveSupplier(inn, name);
                 result.add(supplier);
             } else {
                 logger.debug("Contragents: could not parse segment '{}' (expected 'Name (INN)')", trimmed);
@@ -2502,8 +2462,7 @@ public class ExcelStreamingRowHandler implements XSSFSheetXMLHandler.SheetConten
         }
         
         try {
-            java.util.regex.Pattern pattern = java.util.regex.Pattern.compile("N\\s+(\\d+)");
-            java.util.regex.Matcher matcher = pattern.matcher(link);
+            Matcher matcher = LINK_REQUEST_NUMBER_PATTERN.matcher(link);
             
             if (matcher.find()) {
                 String numberStr = matcher.group(1);
@@ -2520,7 +2479,7 @@ public class ExcelStreamingRowHandler implements XSSFSheetXMLHandler.SheetConten
      * Сохраняет все накопленные сущности пакетами (вызывается в конце обработки файла)
      */
     public void flushAllBatches() {
-        flushCfoBatch();
+        referenceData.flushPending();
         flushPurchaseRequestBatch();
         flushPurchaseBatch();
         flushContractBatch();
@@ -2528,17 +2487,23 @@ public class ExcelStreamingRowHandler implements XSSFSheetXMLHandler.SheetConten
     
     /**
      * Сохраняет накопленные заявки на закупку пакетом
-     * ВАЖНО: Сначала сохраняет все новые ЦФО, чтобы избежать ошибки TransientPropertyValueException
+     * ВАЖНО: Сначала сохраняет все новые ЦФО и поставщиков, чтобы избежать ошибки TransientPropertyValueException
      */
     private void flushPurchaseRequestBatch() {
         if (!purchaseRequestBatch.isEmpty()) {
             try {
-                // Сначала сохраняем все новые ЦФО, которые могут быть связаны с заявками
-                flushCfoBatch();
-                purchaseRequestRepository.saveAll(purchaseRequestBatch);
+                // Сначала сохраняем все новые справочные записи, которые могут быть связаны с заявками
+                referenceData.flushPending();
+                List<PurchaseRequest> saved = purchaseRequestRepository.saveAll(purchaseRequestBatch);
                 logger.debug("Flushed {} purchase requests to database", purchaseRequestBatch.size());
+                markChanged(EntityIdsChangedEvent.EntityType.PURCHASE_REQUEST, saved, PurchaseRequest::getIdPurchaseRequest);
+                excelLoadService.publishPurchaserChanged(purchaserChangedRequestIds);
                 purchaseRequestBatch.clear();
+                purchaserChangedRequestIds.clear();
+                // История изменений полей пишется следом за сохранённым пакетом
+                excelLoadService.flushChangeLog();
             } catch (Exception e) {
+                batchFailures++;
                 logger.error("Error flushing purchase request batch: {}", e.getMessage(), e);
             }
         }
@@ -2546,17 +2511,21 @@ public class ExcelStreamingRowHandler implements XSSFSheetXMLHandler.SheetConten
     
     /**
      * Сохраняет накопленные закупки пакетом
-     * ВАЖНО: Сначала сохраняет все новые ЦФО, чтобы избежать ошибки TransientPropertyValueException
+     * ВАЖНО: Сначала сохраняет все новые ЦФО и поставщиков, чтобы избежать ошибки TransientPropertyValueException,
+     * и накопленные заявки: ссылка может указывать на заявку этого же импорта (FK по id_purchase_request)
      */
     private void flushPurchaseBatch() {
         if (!purchaseBatch.isEmpty()) {
             try {
-                // Сначала сохраняем все новые ЦФО, которые могут быть связаны с закупками
-                flushCfoBatch();
-                purchaseRepository.saveAll(purchaseBatch);
+                // Сначала сохраняем все новые справочные записи и заявки, которые могут быть связаны с закупками
+                referenceData.flushPending();
+                flushPurchaseRequestBatch();
+                List<Purchase> saved = purchaseRepository.saveAll(purchaseBatch);
                 logger.debug("Flushed {} purchases to database", purchaseBatch.size());
+                markChanged(EntityIdsChangedEvent.EntityType.PURCHASE, saved, Purchase::getPurchaseRequestId);
                 purchaseBatch.clear();
             } catch (Exception e) {
+                batchFailures++;
                 logger.error("Error flushing purchase batch: {}", e.getMessage(), e);
             }
         }
@@ -2564,17 +2533,21 @@ public class ExcelStreamingRowHandler implements XSSFSheetXMLHandler.SheetConten
     
     /**
      * Сохраняет накопленные договоры пакетом
-     * ВАЖНО: Сначала сохраняет все новые ЦФО, чтобы избежать ошибки TransientPropertyValueException
+     * ВАЖНО: Сначала сохраняет все новые ЦФО и поставщиков, чтобы избежать ошибки TransientPropertyValueException,
+     * и накопленные заявки: ссылка может указывать на заявку этого же импорта (FK по id_purchase_request)
      */
     private void flushContractBatch() {
         if (!contractBatch.isEmpty()) {
             try {
-                // Сначала сохраняем все новые ЦФО, которые могут быть связаны с договорами
-                flushCfoBatch();
-                contractRepository.saveAll(contractBatch);
+                // Сначала сохраняем все новые справочные записи и заявки, которые могут быть связаны с договорами
+                referenceData.flushPending();
+                flushPurchaseRequestBatch();
+                List<Contract> saved = contractRepository.saveAll(contractBatch);
                 logger.debug("Flushed {} contracts to database", contractBatch.size());
+                markChanged(EntityIdsChangedEvent.EntityType.CONTRACT, saved, Contract::getId);
                 contractBatch.clear();
             } catch (Exception e) {
+                batchFailures++;
                 logger.error("Error flushing contract batch: {}", e.getMessage(), e);
             }
         }
@@ -2583,80 +2556,63 @@ public class ExcelStreamingRowHandler implements XSSFSheetXMLHandler.SheetConten
     /**
      * Восстанавливает отложенные связи между закупками/договорами и заявками.
      * Вызывается после полной загрузки Excel файла, когда все заявки уже в БД.
+     * Связи применяются множественно через {@link PendingLinkService} (staging + UPDATE ... FROM).
      *
-     * @return количество восстановленных связей
+     * @return количество восстановленных связей и ключи, которые связать не удалось
      */
-    public int linkPendingEntities() {
+    public PendingLinkService.PendingLinkResult linkPendingEntities() {
         logger.info("=== Starting post-processing to link pending entities ===");
         logger.info("Pending purchase links: {}, Pending contract links: {}",
             pendingPurchaseLinks.size(), pendingContractLinks.size());
 
-        int linkedCount = 0;
-
-        // Восстанавливаем связи для закупок
-        for (Map.Entry<String, Long> entry : pendingPurchaseLinks.entrySet()) {
-            String purchaseInnerId = entry.getKey();
-            Long purchaseRequestId = entry.getValue();
-
-            try {
-                // Ищем заявку в БД
-                Optional<PurchaseRequest> purchaseRequest = purchaseRequestRepository.findByIdPurchaseRequest(purchaseRequestId);
-                if (purchaseRequest.isPresent()) {
-                    // Ищем закупку в БД
-                    Optional<Purchase> purchase = purchaseRepository.findByInnerId(purchaseInnerId);
-                    if (purchase.isPresent()) {
-                        Purchase p = purchase.get();
-                        p.setPurchaseRequestId(purchaseRequest.get().getIdPurchaseRequest());
-                        purchaseRepository.save(p);
-                        linkedCount++;
-                        logger.info("Post-processing: Linked purchase {} to purchaseRequest {}",
-                            purchaseInnerId, purchaseRequestId);
-                    } else {
-                        logger.warn("Post-processing: Purchase {} not found in database", purchaseInnerId);
-                    }
-                } else {
-                    logger.warn("Post-processing: PurchaseRequest {} still not found for purchase {}",
-                        purchaseRequestId, purchaseInnerId);
-                }
-            } catch (Exception e) {
-                logger.error("Post-processing: Error linking purchase {} to purchaseRequest {}: {}",
-                    purchaseInnerId, purchaseRequestId, e.getMessage(), e);
-            }
+        PendingLinkService.PendingLinkResult result;
+        try {
+            result = pendingLinkService.applyPendingLinks(pendingPurchaseLinks, pendingContractLinks);
+        } catch (Exception e) {
+            logger.error("Post-processing: Error applying pending links: {}", e.getMessage(), e);
+            List<String> unresolved = new ArrayList<>();
+            pendingPurchaseLinks.keySet().forEach(innerId -> unresolved.add("purchase:" + innerId));
+            pendingContractLinks.keySet().forEach(innerId -> unresolved.add("contract:" + innerId));
+            result = new PendingLinkService.PendingLinkResult(0, unresolved);
         }
 
-        // Восстанавливаем связи для договоров
-        for (Map.Entry<String, Long> entry : pendingContractLinks.entrySet()) {
-            String contractInnerId = entry.getKey();
-            Long purchaseRequestId = entry.getValue();
+        // Заявки, к которым привязались закупки/договоры, пересчитываются вместе с самими закупками
+        Set<Long> linkedRequestIds = new HashSet<>(pendingPurchaseLinks.values());
+        excelLoadService.publishEntityIdsChanged(EntityIdsChangedEvent.EntityType.PURCHASE, linkedRequestIds);
+        linkedRequestIds.addAll(pendingContractLinks.values());
+        excelLoadService.publishEntityIdsChanged(EntityIdsChangedEvent.EntityType.PURCHASE_REQUEST, linkedRequestIds);
 
-            try {
-                // Ищем заявку в БД
-                Optional<PurchaseRequest> purchaseRequest = purchaseRequestRepository.findByIdPurchaseRequest(purchaseRequestId);
-                if (purchaseRequest.isPresent()) {
-                    // Ищем договор в БД
-                    Optional<Contract> contract = contractRepository.findByInnerId(contractInnerId);
-                    if (contract.isPresent()) {
-                        Contract c = contract.get();
-                        c.setPurchaseRequestId(purchaseRequest.get().getIdPurchaseRequest());
-                        contractRepository.save(c);
-                        linkedCount++;
-                        logger.info("Post-processing: Linked contract {} to purchaseRequest {}",
-                            contractInnerId, purchaseRequestId);
-                    } else {
-                        logger.warn("Post-processing: Contract {} not found in database", contractInnerId);
-                    }
-                } else {
-                    logger.warn("Post-processing: PurchaseRequest {} still not found for contract {}",
-                        purchaseRequestId, contractInnerId);
-                }
-            } catch (Exception e) {
-                logger.error("Post-processing: Error linking contract {} to purchaseRequest {}: {}",
-                    contractInnerId, purchaseRequestId, e.getMessage(), e);
+        logger.info("=== Post-processing completed: {} links restored, {} unresolved ===",
+            result.linkedCount(), result.unresolvedKeys().size());
+        return result;
+    }
+
+    /**
+     * Сообщает ключи сохранённого пакета для инкрементального пересчёта статусов
+     */
+    private <T> void markChanged(EntityIdsChangedEvent.EntityType type, List<T> saved, Function<T, Long> key) {
+        Set<Long> ids = new HashSet<>();
+        for (T entity : saved) {
+            Long id = key.apply(entity);
+            if (id != null) {
+                ids.add(id);
             }
         }
+        excelLoadService.publishEntityIdsChanged(type, ids);
+    }
 
-        logger.info("=== Post-processing completed: {} links restored ===", linkedCount);
-        return linkedCount;
+    /**
+     * Импорт прошёл без ошибок сохранения batch — можно запоминать хэши строк и отпечаток файла.
+     */
+    public boolean isCleanImport() {
+        return batchFailures == 0;
+    }
+
+    /**
+     * Были строки, обработать которые не удалось (их хэши не записаны, строки нужно разобрать снова).
+     */
+    public boolean hasRowErrors() {
+        return rowErrors > 0;
     }
 
     public Map<String, Integer> getResults() {
@@ -2676,6 +2632,11 @@ public class ExcelStreamingRowHandler implements XSSFSheetXMLHandler.SheetConten
         results.put("contractsUpdated", contractsUpdated);
         results.put("usersCreated", usersCreated);
         results.put("usersUpdated", usersUpdated);
+        results.put("rowsUnchanged", rowsUnchanged);
+        results.put("batchFailures", batchFailures);
+        results.put("rowErrors", rowErrors);
+        results.put("identityMapHits", identityMap.getHits());
+        results.put("identityMapMisses", identityMap.getMisses());
         return results;
     }
     
@@ -0,0 +1,178 @@
+package com.uzproc.backend.service.excel;
+
+import com.uzproc.backend.entity.excel.ImportFileFingerprint;
+import com.uzproc.backend.repository.excel.ImportFileFingerprintRepository;
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.PersistenceContext;
+import jakarta.persistence.Query;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+
+/**
+ * Отпечатки Excel-файлов и хэши строк для инкрементального реимпорта.
+ * <p>
+ * Файл считается неизменным, если совпали версия логики разбора и размер, а также mtime
+ * (тогда содержимое не читается) или SHA-256 содержимого (переименованный/перезалитый тот же файл).
+ * Хэши строк хранятся в import_row_hashes по бизнес-ключу и пишутся пачками INSERT ... ON CONFLICT.
+ * Отключается свойством app.import.incremental.enabled=false — тогда всё загружается заново,
+ * но отпечатки и хэши продолжают записываться.
+ */
+@Service
+public class ImportFingerprintService {
+
+    private static final Logger logger = LoggerFactory.getLogger(ImportFingerprintService.class);
+
+    public static final String SOURCE_ALLDOCUMENTS = "alldocuments";
+    public static final String SOURCE_UPLOAD = "upload";
+
+    /** Ключей в одном IN (...) / строк в одном INSERT ... VALUES. */
+    private static final int CHUNK_SIZE = 1000;
+
+    @PersistenceContext
+    private EntityManager entityManager;
+
+    private final ImportFileFingerprintRepository fingerprintRepository;
+    private final boolean enabled;
+
+    public ImportFingerprintService(
+            ImportFileFingerprintRepository fingerprintRepository,
+            @Value("${app.import.incremental.enabled:true}") boolean enabled) {
+        this.fingerprintRepository = fingerprintRepository;
+        this.enabled = enabled;
+    }
+
+    /**
+     * Результат проверки файла.
+     *
+     * @param unchanged true — файл с тем же содержимым уже был успешно загружен этой версией разбора
+     */
+    public record FileCheck(String source, String fileName, long size, long lastModified, String contentHash,
+                            int formatVersion, boolean unchanged) {
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Сравнивает файл с последним успешно загруженным под тем же именем.
+     *
+     * @param fileName логическое имя файла (для загрузок через API — исходное имя, а не временный файл)
+     */
+    public FileCheck checkFile(String source, String fileName, File file, int formatVersion) throws IOException {
+        long size = file.length();
+        long lastModified = file.lastModified();
+        Optional<ImportFileFingerprint> storedOpt = fingerprintRepository.findBySourceAndFileName(source, fileName);
+        if (storedOpt.isPresent()) {
+            ImportFileFingerprint stored = storedOpt.get();
+            boolean sameFormat = stored.getFormatVersion() != null && stored.getFormatVersion() == formatVersion;
+            boolean sameSize = stored.getFileSize() != null && stored.getFileSize() == size;
+            if (sameFormat && sameSize && stored.getLastModified() != null && stored.getLastModified() == lastModified) {
+                return new FileCheck(source, fileName, size, lastModified, stored.getContentHash(), formatVersion, enabled);
+            }
+            String contentHash = sha256(file);
+            boolean unchanged = sameFormat && sameSize && contentHash.equals(stored.getContentHash());
+            return new FileCheck(source, fileName, size, lastModified, contentHash, formatVersion, enabled && unchanged);
+        }
+        return new FileCheck(source, fileName, size, lastModified, sha256(file), formatVersion, false);
+    }
+
+    /**
+     * Запоминает отпечаток успешно загруженного файла.
+     */
+    @Transactional
+    public void recordFile(FileCheck check) {
+        ImportFileFingerprint fingerprint = fingerprintRepository.findBySourceAndFileName(check.source(), check.fileName())
+            .orElseGet(() -> new ImportFileFingerprint(check.source(), check.fileName()));
+        fingerprint.setFileSize(check.size());
+        fingerprint.setLastModified(check.lastModified());
+        fingerprint.setContentHash(check.contentHash());
+        fingerprint.setFormatVersion(check.formatVersion());
+        fingerprint.setImportedAt(LocalDateTime.now());
+        fingerprintRepository.save(fingerprint);
+    }
+
+    /**
+     * Загружает сохранённые хэши строк для переданных бизнес-ключей.
+     */
+    @SuppressWarnings("unchecked")
+    public Map<String, Long> loadRowHashes(String entityType, Collection<String> keys) {
+        Map<String, Long> result = new HashMap<>();
+        List<String> all = new ArrayList<>(keys);
+        for (int from = 0; from < all.size(); from += CHUNK_SIZE) {
+            List<String> chunk = all.subList(from, Math.min(from + CHUNK_SIZE, all.size()));
+            List<Object[]> rows = entityManager.createNativeQuery(
+                "SELECT business_key, row_hash FROM import_row_hashes " +
+                "WHERE entity_type = :entityType AND business_key IN (:keys)")
+                .setParameter("entityType", entityType)
+                .setParameter("keys", chunk)
+                .getResultList();
+            for (Object[] row : rows) {
+                result.put((String) row[0], ((Number) row[1]).longValue());
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Сохраняет хэши строк пачками INSERT ... ON CONFLICT DO UPDATE.
+     */
+    @Transactional
+    public void saveRowHashes(String entityType, Map<String, Long> hashes) {
+        List<Map.Entry<String, Long>> entries = new ArrayList<>(hashes.entrySet());
+        for (int from = 0; from < entries.size(); from += CHUNK_SIZE) {
+            List<Map.Entry<String, Long>> chunk = entries.subList(from, Math.min(from + CHUNK_SIZE, entries.size()));
+            StringBuilder sql = new StringBuilder("INSERT INTO import_row_hashes (entity_type, business_key, row_hash, updated_at) VALUES ");
+            for (int i = 0; i < chunk.size(); i++) {
+                if (i > 0) {
+                    sql.append(", ");
+                }
+                sql.append("(?1, ?").append(i * 2 + 2).append(", ?").append(i * 2 + 3).append(", CURRENT_TIMESTAMP)");
+            }
+            sql.append(" ON CONFLICT (entity_type, business_key) DO UPDATE SET row_hash = EXCLUDED.row_hash, updated_at = EXCLUDED.updated_at");
+            Query insert = entityManager.createNativeQuery(sql.toString());
+            insert.setParameter(1, entityType);
+            for (int i = 0; i < chunk.size(); i++) {
+                insert.setParameter(i * 2 + 2, chunk.get(i).getKey());
+                insert.setParameter(i * 2 + 3, chunk.get(i).getValue());
+            }
+            insert.executeUpdate();
+        }
+        logger.debug("Saved {} row hashes for {}", hashes.size(), entityType);
+    }
+
+    private static String sha256(File file) throws IOException {
+        MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 is not available", e);
+        }
+        byte[] buffer = new byte[64 * 1024];
+        try (InputStream in = Files.newInputStream(file.toPath())) {
+            int read;
+            while ((read = in.read(buffer)) != -1) {
+                digest.update(buffer, 0, read);
+            }
+        }
+        return HexFormat.of().formatHex(digest.digest());
+    }
+}
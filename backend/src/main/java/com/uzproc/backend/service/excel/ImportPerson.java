@@ -0,0 +1,60 @@
+package com.uzproc.backend.service.excel;
+
+/**
+ * Человек из строки выгрузки: ФИО, отдел/должность и email (любое поле может отсутствовать).
+ * Ключ для {@link ImportReferenceData#resolveUser} и {@link ImportReferenceData#resolveUserLenient}.
+ */
+public record ImportPerson(String surname, String name, String department, String position, String email) {
+
+    /**
+     * Разбирает строку "Фамилия Имя (Отдел, Должность)" или "Фамилия Имя"; email не заполняется.
+     */
+    public static ImportPerson parse(String value) {
+        String surname = null;
+        String name = null;
+        String department = null;
+        String position = null;
+
+        int openBracketIndex = value.indexOf('(');
+        int closeBracketIndex = value.indexOf(')');
+        String namePart = value;
+        if (openBracketIndex > 0 && closeBracketIndex > openBracketIndex) {
+            namePart = value.substring(0, openBracketIndex);
+            String[] deptParts = value.substring(openBracketIndex + 1, closeBracketIndex).trim().split(",", 2);
+            if (deptParts.length >= 1) department = deptParts[0].trim();
+            if (deptParts.length >= 2) position = deptParts[1].trim();
+        }
+        String[] nameParts = namePart.trim().split("\\s+", 2);
+        if (nameParts.length >= 1) surname = nameParts[0].trim();
+        if (nameParts.length >= 2) name = nameParts[1].trim();
+        return new ImportPerson(surname, name, department, position, null);
+    }
+
+    /**
+     * Полное имя "Фамилия Имя" (без отдела) и email, как в выгрузке согласований.
+     */
+    public static ImportPerson ofFullName(String fullName, String email) {
+        String surname = null;
+        String name = null;
+        if (fullName != null && !fullName.trim().isEmpty()) {
+            String[] parts = fullName.trim().split("\\s+", 2);
+            if (parts.length >= 1) surname = parts[0].trim();
+            if (parts.length >= 2) name = parts[1].trim();
+        }
+        String trimmedEmail = email != null && !email.trim().isEmpty() ? email.trim() : null;
+        return new ImportPerson(surname, name, null, null, trimmedEmail);
+    }
+
+    public ImportPerson withEmail(String value) {
+        String trimmed = value != null && !value.trim().isEmpty() ? value.trim() : null;
+        return new ImportPerson(surname, name, department, position, trimmed);
+    }
+
+    public boolean isEmpty() {
+        return isBlank(surname) && isBlank(name) && isBlank(email);
+    }
+
+    private static boolean isBlank(String value) {
+        return value == null || value.isEmpty();
+    }
+}
@@ -0,0 +1,546 @@
+package com.uzproc.backend.service.excel;
+
+import com.uzproc.backend.entity.Cfo;
+import com.uzproc.backend.entity.supplier.Supplier;
+import com.uzproc.backend.entity.user.User;
+import com.uzproc.backend.service.user.UserImportEmailPolicy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+
+/**
+ * Справочники ЦФО, поставщиков и пользователей на время одного импорта.
+ * <p>
+ * Создаётся {@link ImportReferenceDataService#open()}: справочники читаются целиком один раз, дальше все
+ * построчные поиски загрузчиков идут по индексам в памяти с нормализованными ключами — ИНН и код поставщика,
+ * ФИО (регистр, «ё»/«е» и лишние пробелы не различаются), email, username и название ЦФО.
+ * <p>
+ * Отсутствующие записи не пишутся в БД сразу: {@code resolve*} возвращает новый экземпляр и ставит его
+ * в очередь, изменения найденных записей (отдел, должность, email, пустое наименование поставщика) тоже
+ * копятся. {@link #flushPending()} записывает очередь одним пакетом — загрузчик вызывает его на границе
+ * своего батча, до сохранения сущностей, которые ссылаются на новые записи. Если пакет не прошёл, записи
+ * повторяются по одной; ЦФО, поставщики и пользователи, уже созданные в обход импорта, привязываются
+ * к существующей строке.
+ * <p>
+ * Не потокобезопасен: один экземпляр — один загрузчик.
+ */
+public class ImportReferenceData {
+
+    private static final Logger logger = LoggerFactory.getLogger(ImportReferenceData.class);
+
+    private final ImportReferenceDataService service;
+
+    private final Map<String, Cfo> cfoByName = new HashMap<>();
+    private final Map<String, Supplier> supplierByInn = new HashMap<>();
+    private final Map<String, Supplier> supplierByCode = new HashMap<>();
+    private final Map<String, Supplier> supplierByName = new HashMap<>();
+    private final Map<String, User> userByFio = new HashMap<>();
+    private final Map<String, List<User>> usersByEmail = new HashMap<>();
+    private final Map<String, User> userByUsername = new HashMap<>();
+    /** Все пользователи в порядке id — для нечёткого поиска по части ФИО. */
+    private final List<User> users = new ArrayList<>();
+    private final Map<String, Optional<User>> fuzzyUserCache = new HashMap<>();
+
+    private final List<Cfo> newCfos = new ArrayList<>();
+    private final List<Supplier> newSuppliers = new ArrayList<>();
+    private final List<User> newUsers = new ArrayList<>();
+    private final Set<Supplier> changedSuppliers = new LinkedHashSet<>();
+    private final Set<User> changedUsers = new LinkedHashSet<>();
+
+    private int created = 0;
+    private int updated = 0;
+
+    ImportReferenceData(ImportReferenceDataService service, List<Cfo> cfos, List<Supplier> suppliers, List<User> users) {
+        this.service = service;
+        for (Cfo cfo : cfos) {
+            indexCfo(cfo);
+        }
+        for (Supplier supplier : suppliers) {
+            indexSupplier(supplier);
+        }
+        for (User user : users) {
+            this.users.add(user);
+            indexUser(user);
+        }
+    }
+
+    // ============================ ЦФО ============================
+
+    public Optional<Cfo> findCfo(String name) {
+        String key = nameKey(name);
+        return key != null ? Optional.ofNullable(cfoByName.get(key)) : Optional.empty();
+    }
+
+    /**
+     * ЦФО по названию (без учёта регистра); при отсутствии — новое, в очереди на запись.
+     */
+    public Cfo resolveCfo(String name) {
+        String key = nameKey(name);
+        if (key == null) {
+            return null;
+        }
+        Cfo cfo = cfoByName.get(key);
+        if (cfo == null) {
+            cfo = new Cfo(name.trim());
+            indexCfo(cfo);
+            newCfos.add(cfo);
+            logger.debug("Queued new Cfo: {}", cfo.getName());
+        }
+        return cfo;
+    }
+
+    // ============================ Поставщики ============================
+
+    /**
+     * Поставщик по ИНН, затем по коду: новый поставщик создаётся с {@code code = ИНН},
+     * а на {@code code} висит уникальный индекс (idx_suppliers_code).
+     */
+    public Optional<Supplier> findSupplierByInn(String inn) {
+        String key = innKey(inn);
+        if (key == null) {
+            return Optional.empty();
+        }
+        Supplier supplier = supplierByInn.get(key);
+        return Optional.ofNullable(supplier != null ? supplier : supplierByCode.get(key));
+    }
+
+    public Optional<Supplier> findSupplierByCode(String code) {
+        String key = innKey(code);
+        return key != null ? Optional.ofNullable(supplierByCode.get(key)) : Optional.empty();
+    }
+
+    public Optional<Supplier> findSupplierByName(String name) {
+        String key = nameKey(name);
+        return key != null ? Optional.ofNullable(supplierByName.get(key)) : Optional.empty();
+    }
+
+    /**
+     * Поставщик по ИНН (см. {@link #findSupplierByInn}); пустое наименование найденного заполняется из выгрузки.
+     * При отсутствии — новый ({@code code = inn = ИНН}, наименование из выгрузки или ИНН), в очереди на запись.
+     */
+    public Supplier resolveSupplier(String inn, String name) {
+        String key = innKey(inn);
+        if (key == null) {
+            return null;
+        }
+        String trimmedName = name != null && !name.trim().isEmpty() ? name.trim() : null;
+        Supplier supplier = findSupplierByInn(key).orElse(null);
+        if (supplier != null) {
+            if (trimmedName != null && (supplier.getName() == null || supplier.getName().isBlank())) {
+                supplier.setName(trimmedName);
+                indexSupplier(supplier);
+                markChanged(supplier);
+            }
+            return supplier;
+        }
+        supplier = new Supplier(key);
+        supplier.setInn(key);
+        supplier.setName(trimmedName != null ? trimmedName : key);
+        indexSupplier(supplier);
+        newSuppliers.add(supplier);
+        logger.debug("Queued new supplier with INN/code={}", key);
+        return supplier;
+    }
+
+    /**
+     * Регистрирует поставщика, сохранённого загрузчиком напрямую (справочник поставщиков),
+     * чтобы последующие строки импорта находили его без обращения к БД.
+     */
+    public void registerSupplier(Supplier supplier) {
+        indexSupplier(supplier);
+    }
+
+    // ============================ Пользователи ============================
+
+    /**
+     * Пользователь по фамилии и имени (нормализованное ФИО), без создания.
+     */
+    public Optional<User> findUser(String surname, String name) {
+        String key = fioKey(surname, name);
+        return key != null ? Optional.ofNullable(userByFio.get(key)) : Optional.empty();
+    }
+
+    /**
+     * Нечёткий поиск: первый (по id) пользователь, у которого строка содержится в «Фамилия Имя»,
+     * в фамилии или в имени без учёта регистра. Результат по одной строке запроса кешируется.
+     */
+    public Optional<User> findUserFuzzy(String query) {
+        String q = normalize(query);
+        if (q == null) {
+            return Optional.empty();
+        }
+        return fuzzyUserCache.computeIfAbsent(q, key -> {
+            for (User u : users) {
+                String surname = normalize(u.getSurname());
+                String name = normalize(u.getName());
+                String full = (surname != null ? surname : "") + " " + (name != null ? name : "");
+                if (full.contains(key) || (surname != null && surname.contains(key))
+                        || (name != null && name.contains(key))) {
+                    return Optional.of(u);
+                }
+            }
+            return Optional.empty();
+        });
+    }
+
+    /**
+     * Пользователь по ФИО, затем по username «Фамилия_Имя»; отдел, должность и email (если разрешён
+     * {@link UserImportEmailPolicy}) обновляются из выгрузки. При отсутствии — новый пользователь
+     * с username «Фамилия_Имя», в очереди на запись. Используется для «Подготовил», «Ответственный» и т.п.
+     */
+    public User resolveUser(ImportPerson person) {
+        if (person == null || person.isEmpty()) {
+            return null;
+        }
+        boolean matchedByFio = true;
+        User user = findUser(person.surname(), person.name()).orElse(null);
+        if (user == null) {
+            user = userByUsername.get(usernameKey(nameUsername(person)));
+            matchedByFio = false;
+        }
+        if (user != null) {
+            applyPerson(user, person, !matchedByFio);
+            return user;
+        }
+        return createUser(person, nameUsername(person));
+    }
+
+    /**
+     * Как {@link #resolveUser}, но с более мягким сопоставлением для исполнителей согласований:
+     * ФИО в прямом и обратном порядке («Имя Фамилия»), затем email (предпочтительно с тем же ФИО).
+     * Новый пользователь получает username из локальной части email.
+     */
+    public User resolveUserLenient(ImportPerson person) {
+        if (person == null || person.isEmpty()) {
+            return null;
+        }
+        String email = allowedEmail(person);
+        boolean matchedByFio = true;
+        User user = findUser(person.surname(), person.name())
+            .or(() -> findUser(person.name(), person.surname()))
+            .orElse(null);
+        if (user == null && email != null) {
+            List<User> byEmail = usersByEmail.getOrDefault(emailKey(email), List.of());
+            String fio = fioKey(person.surname(), person.name());
+            for (User u : byEmail) {
+                if (fio != null && fio.equals(fioKey(u.getSurname(), u.getName()))) {
+                    user = u;
+                    break;
+                }
+            }
+            if (user == null && !byEmail.isEmpty()) {
+                user = byEmail.get(0);
+            }
+            matchedByFio = false;
+        }
+        if (user != null) {
+            applyPerson(user, person, !matchedByFio);
+            return user;
+        }
+        String username = email != null && email.contains("@")
+            ? email.substring(0, email.indexOf('@')).replaceAll("[^a-zA-Z0-9_.-]", "_")
+            : nameUsername(person);
+        return createUser(person, username);
+    }
+
+    private void applyPerson(User user, ImportPerson person, boolean updateNames) {
+        unindexUser(user);
+        boolean changed = false;
+        if (updateNames && person.surname() != null && !person.surname().equals(user.getSurname())) {
+            user.setSurname(person.surname());
+            changed = true;
+        }
+        if (updateNames && person.name() != null && !person.name().equals(user.getName())) {
+            user.setName(person.name());
+            changed = true;
+        }
+        if (person.department() != null && !person.department().equals(user.getDepartment())) {
+            user.setDepartment(person.department());
+            changed = true;
+        }
+        if (person.position() != null && !person.position().equals(user.getPosition())) {
+            user.setPosition(person.position());
+            changed = true;
+        }
+        String email = allowedEmail(person);
+        if (email != null && !email.equals(user.getEmail())) {
+            user.setEmail(email);
+            changed = true;
+        }
+        indexUser(user);
+        if (changed) {
+            markChanged(user);
+        }
+    }
+
+    private User createUser(ImportPerson person, String username) {
+        User user = new User();
+        user.setUsername(uniqueUsername(username));
+        user.setPassword("");
+        user.setSurname(person.surname());
+        user.setName(person.name());
+        user.setDepartment(person.department());
+        user.setPosition(person.position());
+        user.setEmail(allowedEmail(person));
+        indexUser(user);
+        users.add(user);
+        fuzzyUserCache.clear();
+        newUsers.add(user);
+        logger.debug("Queued new user: {} {} (username {})", person.surname(), person.name(), user.getUsername());
+        return user;
+    }
+
+    private String uniqueUsername(String base) {
+        String username = base == null || base.isEmpty() || base.equals("_") ? "user" : base;
+        if (!userByUsername.containsKey(usernameKey(username))) {
+            return username;
+        }
+        int suffix = 2;
+        while (userByUsername.containsKey(usernameKey(username + "_" + suffix))) {
+            suffix++;
+        }
+        return username + "_" + suffix;
+    }
+
+    private static String nameUsername(ImportPerson person) {
+        return (person.surname() != null ? person.surname() : "") + (person.name() != null ? "_" + person.name() : "");
+    }
+
+    private static String allowedEmail(ImportPerson person) {
+        if (person.email() == null || UserImportEmailPolicy.shouldSkipEmailFromImport(person.surname(), person.name())) {
+            return null;
+        }
+        return person.email();
+    }
+
+    // ============================ Запись очереди ============================
+
+    /** Число новых и изменённых записей, ожидающих {@link #flushPending()}. */
+    public int pendingCount() {
+        return newCfos.size() + newSuppliers.size() + newUsers.size() + changedSuppliers.size() + changedUsers.size();
+    }
+
+    /**
+     * Записывает новые и изменённые записи одним пакетом (см. {@link ImportReferenceDataService#write}).
+     * После вызова у новых записей есть id. Если пакет не прошёл — записи повторяются по одной;
+     * новая запись, уже созданная в обход импорта, привязывается к существующей строке; иначе запись, которую
+     * сохранить не удалось, убирается из индексов (у новой остаётся id = null).
+     */
+    public void flushPending() {
+        if (pendingCount() == 0) {
+            return;
+        }
+        List<Cfo> cfos = new ArrayList<>(newCfos);
+        List<Supplier> suppliers = new ArrayList<>(newSuppliers);
+        List<User> createdUsers = new ArrayList<>(newUsers);
+        List<Supplier> supplierChanges = new ArrayList<>(changedSuppliers);
+        List<User> userChanges = new ArrayList<>(changedUsers);
+        newCfos.clear();
+        newSuppliers.clear();
+        newUsers.clear();
+        changedSuppliers.clear();
+        changedUsers.clear();
+        try {
+            service.write(cfos, suppliers, createdUsers, supplierChanges, userChanges);
+            created += cfos.size() + suppliers.size() + createdUsers.size();
+            updated += supplierChanges.size() + userChanges.size();
+            return;
+        } catch (Exception e) {
+            logger.warn("Reference data: batch write failed ({}), retrying {} records one by one",
+                e.getMessage(), cfos.size() + suppliers.size() + createdUsers.size() + supplierChanges.size() + userChanges.size());
+        }
+        // Откаченная вставка могла успеть выдать id — сбрасываем, чтобы повтор был вставкой
+        cfos.forEach(c -> c.setId(null));
+        suppliers.forEach(s -> s.setId(null));
+        createdUsers.forEach(u -> u.setId(null));
+
+        for (Cfo cfo : cfos) {
+            if (writeOne(List.of(cfo), List.of(), List.of(), List.of(), List.of(), "CFO " + cfo.getName())) {
+                created++;
+            } else {
+                Optional<Long> existingId = service.findCfoId(cfo.getName());
+                if (existingId.isPresent()) {
+                    cfo.setId(existingId.get());
+                } else {
+                    cfoByName.remove(nameKey(cfo.getName()), cfo);
+                }
+            }
+        }
+        for (Supplier supplier : suppliers) {
+            if (writeOne(List.of(), List.of(supplier), List.of(), List.of(), List.of(), "supplier " + supplier.getCode())) {
+                created++;
+            } else {
+                Optional<Long> existingId = service.findSupplierIdByCode(supplier.getCode());
+                if (existingId.isPresent()) {
+                    supplier.setId(existingId.get());
+                } else {
+                    unindexSupplier(supplier);
+                }
+            }
+        }
+        for (User user : createdUsers) {
+            if (writeOne(List.of(), List.of(), List.of(user), List.of(), List.of(), "user " + user.getUsername())) {
+                created++;
+            } else {
+                // Строки батча уже ссылаются на этот экземпляр: привязываем его к существующей записи
+                Optional<Long> existingId = service.findUserId(user.getUsername(), user.getSurname(), user.getName());
+                if (existingId.isPresent()) {
+                    user.setId(existingId.get());
+                } else {
+                    logger.error("Reference data: user {} was not saved; rows referencing it will fail", user.getUsername());
+                    unindexUser(user);
+                    users.remove(user);
+                }
+            }
+        }
+        for (Supplier supplier : supplierChanges) {
+            if (writeOne(List.of(), List.of(), List.of(), List.of(supplier), List.of(), "supplier " + supplier.getCode())) {
+                updated++;
+            }
+        }
+        for (User user : userChanges) {
+            if (writeOne(List.of(), List.of(), List.of(), List.of(), List.of(user), "user " + user.getUsername())) {
+                updated++;
+            }
+        }
+    }
+
+    private boolean writeOne(Collection<Cfo> cfos, Collection<Supplier> suppliers, Collection<User> createdUsers,
+                             Collection<Supplier> supplierChanges, Collection<User> userChanges, String label) {
+        try {
+            service.write(cfos, suppliers, createdUsers, supplierChanges, userChanges);
+            return true;
+        } catch (Exception e) {
+            logger.warn("Reference data: skipping {}: {}", label, e.getMessage());
+            return false;
+        }
+    }
+
+    private void markChanged(Supplier supplier) {
+        if (supplier.getId() != null) {
+            changedSuppliers.add(supplier);
+        }
+    }
+
+    private void markChanged(User user) {
+        if (user.getId() != null) {
+            changedUsers.add(user);
+        }
+    }
+
+    /** Сводка для логов: размеры справочников и число созданных/обновлённых записей. */
+    public String describe() {
+        return String.format("%d CFOs, %d suppliers, %d users; created %d, updated %d",
+            cfoByName.size(), supplierByCode.size(), users.size(), created, updated);
+    }
+
+    // ============================ Индексы ============================
+
+    private void indexCfo(Cfo cfo) {
+        String key = nameKey(cfo.getName());
+        if (key != null) {
+            cfoByName.putIfAbsent(key, cfo);
+        }
+    }
+
+    private void indexSupplier(Supplier supplier) {
+        String inn = innKey(supplier.getInn());
+        if (inn != null) {
+            supplierByInn.putIfAbsent(inn, supplier);
+        }
+        String code = innKey(supplier.getCode());
+        if (code != null) {
+            supplierByCode.putIfAbsent(code, supplier);
+        }
+        String name = nameKey(supplier.getName());
+        if (name != null) {
+            supplierByName.putIfAbsent(name, supplier);
+        }
+    }
+
+    private void unindexSupplier(Supplier supplier) {
+        supplierByInn.remove(innKey(supplier.getInn()), supplier);
+        supplierByCode.remove(innKey(supplier.getCode()), supplier);
+        supplierByName.remove(nameKey(supplier.getName()), supplier);
+    }
+
+    private void indexUser(User user) {
+        String fio = fioKey(user.getSurname(), user.getName());
+        if (fio != null) {
+            userByFio.putIfAbsent(fio, user);
+        }
+        String email = emailKey(user.getEmail());
+        if (email != null) {
+            List<User> list = usersByEmail.computeIfAbsent(email, k -> new ArrayList<>());
+            if (!list.contains(user)) {
+                list.add(user);
+            }
+        }
+        String username = usernameKey(user.getUsername());
+        if (username != null) {
+            userByUsername.putIfAbsent(username, user);
+        }
+    }
+
+    /** Убирает пользователя из ключевых индексов (список для нечёткого поиска не меняется). */
+    private void unindexUser(User user) {
+        userByFio.remove(fioKey(user.getSurname(), user.getName()), user);
+        String email = emailKey(user.getEmail());
+        if (email != null && usersByEmail.containsKey(email)) {
+            usersByEmail.get(email).remove(user);
+        }
+        userByUsername.remove(usernameKey(user.getUsername()), user);
+    }
+
+    // ============================ Нормализация ключей ============================
+
+    /** ИНН/код: без пробелов по краям и внутри. */
+    static String innKey(String value) {
+        if (value == null) {
+            return null;
+        }
+        String key = value.replaceAll("\\s+", "");
+        return key.isEmpty() ? null : key;
+    }
+
+    /** Название: без учёта регистра и пробелов по краям. */
+    static String nameKey(String value) {
+        if (value == null) {
+            return null;
+        }
+        String key = value.trim().toLowerCase(Locale.ROOT);
+        return key.isEmpty() ? null : key;
+    }
+
+    /** ФИО: фамилия и имя обязательны; регистр, «ё»/«е» и повторяющиеся пробелы не различаются. */
+    static String fioKey(String surname, String name) {
+        String s = normalize(surname);
+        String n = normalize(name);
+        return s != null && n != null ? s + "|" + n : null;
+    }
+
+    static String emailKey(String value) {
+        return nameKey(value);
+    }
+
+    static String usernameKey(String value) {
+        return nameKey(value);
+    }
+
+    private static String normalize(String value) {
+        if (value == null) {
+            return null;
+        }
+        String key = value.trim().replaceAll("\\s+", " ").toLowerCase(Locale.ROOT).replace('ё', 'е');
+        return key.isEmpty() ? null : key;
+    }
+}
@@ -0,0 +1,133 @@
+package com.uzproc.backend.service.excel;
+
+import com.uzproc.backend.entity.Cfo;
+import com.uzproc.backend.entity.supplier.Supplier;
+import com.uzproc.backend.entity.user.User;
+import com.uzproc.backend.repository.CfoRepository;
+import com.uzproc.backend.repository.supplier.SupplierRepository;
+import com.uzproc.backend.repository.user.UserRepository;
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.PersistenceContext;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.data.domain.Sort;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Optional;
+
+/**
+ * Загрузка и запись справочников (ЦФО, поставщики, пользователи) для {@link ImportReferenceData}.
+ * <p>
+ * {@link #open()} читает справочники целиком один раз на запуск загрузчика. Новые и изменённые записи
+ * пишутся пакетом в отдельной транзакции (REQUIRES_NEW): они коммитятся независимо от батча загрузчика,
+ * поэтому откат батча не оставляет в индексах ссылок на несуществующие строки.
+ */
+@Service
+public class ImportReferenceDataService {
+
+    private static final Logger logger = LoggerFactory.getLogger(ImportReferenceDataService.class);
+
+    private final CfoRepository cfoRepository;
+    private final SupplierRepository supplierRepository;
+    private final UserRepository userRepository;
+
+    @PersistenceContext
+    private EntityManager entityManager;
+
+    public ImportReferenceDataService(CfoRepository cfoRepository,
+                                      SupplierRepository supplierRepository,
+                                      UserRepository userRepository) {
+        this.cfoRepository = cfoRepository;
+        this.supplierRepository = supplierRepository;
+        this.userRepository = userRepository;
+    }
+
+    /**
+     * Предзагружает справочники и строит индексы на время одного импорта.
+     * Читает в собственной транзакции: записи возвращаются отсоединёнными и не попадают
+     * в persistence context загрузчика (иначе каждый его flush проверял бы тысячи справочных записей).
+     */
+    @Transactional(propagation = Propagation.REQUIRES_NEW, readOnly = true)
+    public ImportReferenceData open() {
+        long start = System.currentTimeMillis();
+        Sort byId = Sort.by("id");
+        ImportReferenceData data = new ImportReferenceData(this,
+            cfoRepository.findAll(byId), supplierRepository.findAll(byId), userRepository.findAll(byId));
+        logger.info("Reference data preloaded in {} ms: {}", System.currentTimeMillis() - start, data.describe());
+        return data;
+    }
+
+    /**
+     * Записывает новые записи (INSERT) и изменения существующих в одной транзакции.
+     * Изменённые записи перечитываются по id, и в них переносятся только поля, которые ведёт импорт,
+     * — правки, сделанные в интерфейсе после предзагрузки (роль, признаки закупщика и т.п.), не затираются.
+     */
+    @Transactional(propagation = Propagation.REQUIRES_NEW)
+    public void write(Collection<Cfo> newCfos, Collection<Supplier> newSuppliers, Collection<User> newUsers,
+                      Collection<Supplier> changedSuppliers, Collection<User> changedUsers) {
+        cfoRepository.saveAll(newCfos);
+        supplierRepository.saveAll(newSuppliers);
+        userRepository.saveAll(newUsers);
+
+        if (!changedSuppliers.isEmpty()) {
+            Map<Long, Supplier> byId = new HashMap<>();
+            for (Supplier s : changedSuppliers) {
+                byId.put(s.getId(), s);
+            }
+            for (Supplier current : supplierRepository.findAllById(byId.keySet())) {
+                Supplier imported = byId.get(current.getId());
+                current.setInn(imported.getInn());
+                current.setName(imported.getName());
+            }
+        }
+        if (!changedUsers.isEmpty()) {
+            Map<Long, User> byId = new HashMap<>();
+            for (User u : changedUsers) {
+                byId.put(u.getId(), u);
+            }
+            for (User current : userRepository.findAllById(byId.keySet())) {
+                User imported = byId.get(current.getId());
+                current.setSurname(imported.getSurname());
+                current.setName(imported.getName());
+                current.setDepartment(imported.getDepartment());
+                current.setPosition(imported.getPosition());
+                current.setEmail(imported.getEmail());
+            }
+        }
+        entityManager.flush();
+    }
+
+    /**
+     * ЦФО с таким названием, созданное в обход импорта (например, параллельно), — для повторной привязки после сбоя вставки.
+     */
+    @Transactional(readOnly = true)
+    public Optional<Long> findCfoId(String name) {
+        return cfoRepository.findByNameIgnoreCase(name).map(Cfo::getId);
+    }
+
+    /**
+     * Поставщик с таким кодом (уникальный индекс idx_suppliers_code) — для повторной привязки после сбоя вставки.
+     */
+    @Transactional(readOnly = true)
+    public Optional<Long> findSupplierIdByCode(String code) {
+        return supplierRepository.findByCode(code).map(Supplier::getId);
+    }
+
+    /**
+     * Пользователь с таким username (уникальный индекс), иначе первый с таким ФИО — для повторной привязки
+     * после сбоя вставки.
+     */
+    @Transactional(readOnly = true)
+    public Optional<Long> findUserId(String username, String surname, String name) {
+        Optional<User> user = userRepository.findByUsername(username);
+        if (user.isEmpty() && surname != null && name != null) {
+            user = userRepository.findFirstBySurnameAndNameOrderByIdAsc(surname, name);
+        }
+        return user.map(User::getId);
+    }
+}
@@ -0,0 +1,119 @@
+package com.uzproc.backend.service.excel;
+
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.PersistenceContext;
+import jakarta.persistence.Query;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Восстанавливает отложенные связи закупок/договоров с заявками множественными операциями.
+ * <p>
+ * Пары (innerId, idPurchaseRequest) складываются во временную staging-таблицу (живёт до конца транзакции),
+ * после чего связи применяются двумя UPDATE ... FROM — по одному на purchases и contracts — вместо
+ * двух SELECT и save() на каждую пару. Связь ставится, только если заявка существует (FK по id_purchase_request).
+ */
+@Service
+public class PendingLinkService {
+
+    private static final Logger logger = LoggerFactory.getLogger(PendingLinkService.class);
+
+    /** Пар в одном INSERT ... VALUES: 3 параметра на пару, держимся далеко от лимита 32767 bind-параметров. */
+    private static final int INSERT_CHUNK_SIZE = 1000;
+
+    private static final String KIND_PURCHASE = "purchase";
+    private static final String KIND_CONTRACT = "contract";
+
+    @PersistenceContext
+    private EntityManager entityManager;
+
+    /**
+     * Результат восстановления связей.
+     *
+     * @param linkedCount    количество закупок/договоров, получивших ссылку на заявку
+     * @param unresolvedKeys ключи вида "purchase:innerId" / "contract:innerId", которые связать не удалось
+     *                       (заявка так и не появилась или сама закупка/договор не сохранились)
+     */
+    public record PendingLinkResult(int linkedCount, List<String> unresolvedKeys) {
+        public static PendingLinkResult empty() {
+            return new PendingLinkResult(0, List.of());
+        }
+    }
+
+    @Transactional
+    public PendingLinkResult applyPendingLinks(Map<String, Long> purchaseLinks, Map<String, Long> contractLinks) {
+        if (purchaseLinks.isEmpty() && contractLinks.isEmpty()) {
+            return PendingLinkResult.empty();
+        }
+
+        entityManager.createNativeQuery(
+            "CREATE TEMP TABLE IF NOT EXISTS pending_entity_links (" +
+            "kind VARCHAR(16) NOT NULL, inner_id VARCHAR(255) NOT NULL, request_id BIGINT NOT NULL" +
+            ") ON COMMIT DROP")
+            .executeUpdate();
+
+        stageLinks(KIND_PURCHASE, purchaseLinks);
+        stageLinks(KIND_CONTRACT, contractLinks);
+
+        int linkedPurchases = entityManager.createNativeQuery(
+            "UPDATE purchases p SET purchase_request_id = s.request_id " +
+            "FROM pending_entity_links s " +
+            "WHERE s.kind = 'purchase' AND p.inner_id = s.inner_id " +
+            "AND EXISTS (SELECT 1 FROM purchase_requests pr WHERE pr.id_purchase_request = s.request_id)")
+            .executeUpdate();
+
+        int linkedContracts = entityManager.createNativeQuery(
+            "UPDATE contracts c SET purchase_request_id = s.request_id " +
+            "FROM pending_entity_links s " +
+            "WHERE s.kind = 'contract' AND c.inner_id = s.inner_id " +
+            "AND EXISTS (SELECT 1 FROM purchase_requests pr WHERE pr.id_purchase_request = s.request_id)")
+            .executeUpdate();
+
+        @SuppressWarnings("unchecked")
+        List<Object[]> unresolvedRows = entityManager.createNativeQuery(
+            "SELECT s.kind, s.inner_id, s.request_id FROM pending_entity_links s " +
+            "WHERE (s.kind = 'purchase' AND NOT EXISTS (SELECT 1 FROM purchases p " +
+            "       WHERE p.inner_id = s.inner_id AND p.purchase_request_id = s.request_id)) " +
+            "   OR (s.kind = 'contract' AND NOT EXISTS (SELECT 1 FROM contracts c " +
+            "       WHERE c.inner_id = s.inner_id AND c.purchase_request_id = s.request_id)) " +
+            "ORDER BY s.kind, s.inner_id")
+            .getResultList();
+
+        List<String> unresolvedKeys = new ArrayList<>(unresolvedRows.size());
+        for (Object[] row : unresolvedRows) {
+            unresolvedKeys.add(row[0] + ":" + row[1]);
+            logger.warn("Post-processing: {} {} could not be linked to purchaseRequest {}", row[0], row[1], row[2]);
+        }
+
+        logger.info("Post-processing: linked {} purchases and {} contracts, {} unresolved",
+            linkedPurchases, linkedContracts, unresolvedKeys.size());
+        return new PendingLinkResult(linkedPurchases + linkedContracts, unresolvedKeys);
+    }
+
+    private void stageLinks(String kind, Map<String, Long> links) {
+        List<Map.Entry<String, Long>> entries = new ArrayList<>(links.entrySet());
+        for (int from = 0; from < entries.size(); from += INSERT_CHUNK_SIZE) {
+            List<Map.Entry<String, Long>> chunk = entries.subList(from, Math.min(from + INSERT_CHUNK_SIZE, entries.size()));
+            StringBuilder sql = new StringBuilder("INSERT INTO pending_entity_links (kind, inner_id, request_id) VALUES ");
+            for (int i = 0; i < chunk.size(); i++) {
+                if (i > 0) {
+                    sql.append(", ");
+                }
+                sql.append("(?").append(i * 3 + 1).append(", ?").append(i * 3 + 2).append(", ?").append(i * 3 + 3).append(')');
+            }
+            Query insert = entityManager.createNativeQuery(sql.toString());
+            for (int i = 0; i < chunk.size(); i++) {
+                insert.setParameter(i * 3 + 1, kind);
+                insert.setParameter(i * 3 + 2, chunk.get(i).getKey());
+                insert.setParameter(i * 3 + 3, chunk.get(i).getValue());
+            }
+            insert.executeUpdate();
+        }
+    }
+}
@@ -5,37 +5,33 @@ import com.uzproc.backend.entity.purchaserequest.PurchaseRequest;
 import com.uzproc.backend.entity.purchase.PurchaseApproval;
 import com.uzproc.backend.entity.purchaserequest.PurchaseRequestApproval;
 import com.uzproc.backend.repository.contract.ContractRepository;
-import com.uzproc.backend.repository.purchase.PurchaseApprovalRepository;
-import com.uzproc.backend.repository.purchaserequest.PurchaseRequestApprovalRepository;
 import com.uzproc.backend.repository.purchase.PurchaseRepository;
 import com.uzproc.backend.repository.purchaserequest.PurchaseRequestRepository;
 import com.uzproc.backend.service.purchaserequest.PurchaseRequestService;
-import com.uzproc.backend.service.purchaserequest.PurchaseRequestStatusUpdateService;
-import com.uzproc.backend.service.contract.ContractStatusUpdateService;
-import com.uzproc.backend.service.purchase.PurchaseStatusUpdateService;
-import org.apache.poi.hssf.usermodel.HSSFWorkbook;
+import com.uzproc.backend.event.EntityIdsChangedEvent;
+import com.uzproc.backend.service.status.StatusRecalculationService;
 import org.apache.poi.ss.usermodel.*;
 import org.apache.poi.ss.usermodel.DataFormatter;
 import org.apache.poi.ss.util.CellRangeAddress;
 import org.apache.poi.ss.util.DateFormatConverter;
-import org.apache.poi.xssf.usermodel.XSSFWorkbook;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.context.ApplicationEventPublisher;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
 import java.io.File;
-import java.io.FileInputStream;
 import java.io.IOException;
 import java.time.LocalDateTime;
 import java.time.ZoneId;
 import java.util.Date;
 import java.util.HashMap;
-import java.util.Iterator;
+import java.util.HashSet;
 import java.util.List;
 import java.util.ArrayList;
 import java.util.Map;
 import java.util.Optional;
+import java.util.Set;
 
 @Service
 public class ReportExcelLoadService {
@@ -131,81 +127,85 @@ public class ReportExcelLoadService {
     };
 
     private final PurchaseRequestRepository purchaseRequestRepository;
-    private final PurchaseRequestApprovalRepository requestApprovalRepository;
     private final PurchaseRepository purchaseRepository;
-    private final PurchaseApprovalRepository purchaseApprovalRepository;
     private final ContractRepository contractRepository;
-    private final PurchaseRequestStatusUpdateService statusUpdateService;
-    private final ContractStatusUpdateService contractStatusUpdateService;
-    private final PurchaseStatusUpdateService purchaseStatusUpdateService;
+    private final StatusRecalculationService statusRecalculationService;
+    private final ApplicationEventPublisher eventPublisher;
+    private final ApprovalMergeService approvalMergeService;
     private final DataFormatter dataFormatter = new DataFormatter();
     
     // Batch-списки для накопления согласований перед сохранением
     private final List<PurchaseRequestApproval> requestApprovalBatch = new ArrayList<>();
     private final List<PurchaseApproval> purchaseApprovalBatch = new ArrayList<>();
+    // Известные круги согласований по (владелец, этап, роль): загружаются один раз на файл
+    // и пополняются новыми кругами по ходу разбора (см. ApprovalMergeService.roundsKey)
+    private final Map<String, List<PurchaseRequestApproval>> knownRequestRounds = new HashMap<>();
+    private final Map<String, List<PurchaseApproval>> knownPurchaseRounds = new HashMap<>();
+    // Итоги upsert согласований по текущему файлу
+    private ApprovalMergeService.MergeResult requestApprovalsMerged = ApprovalMergeService.MergeResult.EMPTY;
+    private ApprovalMergeService.MergeResult purchaseApprovalsMerged = ApprovalMergeService.MergeResult.EMPTY;
     private final List<Purchase> purchaseUpdateBatch = new ArrayList<>();
     private static final int BATCH_SIZE = 100; // Размер пакета для batch-операций
+    private static final int APPROVAL_BATCH_SIZE = 1000; // Согласований в одном upsert через staging-таблицу
 
     public ReportExcelLoadService(
             PurchaseRequestRepository purchaseRequestRepository,
-            PurchaseRequestApprovalRepository requestApprovalRepository,
             PurchaseRepository purchaseRepository,
-            PurchaseApprovalRepository purchaseApprovalRepository,
             ContractRepository contractRepository,
-            PurchaseRequestStatusUpdateService statusUpdateService,
-            ContractStatusUpdateService contractStatusUpdateService,
-            PurchaseStatusUpdateService purchaseStatusUpdateService) {
+            StatusRecalculationService statusRecalculationService,
+            ApplicationEventPublisher eventPublisher,
+            ApprovalMergeService approvalMergeService) {
         this.purchaseRequestRepository = purchaseRequestRepository;
-        this.requestApprovalRepository = requestApprovalRepository;
         this.purchaseRepository = purchaseRepository;
-        this.purchaseApprovalRepository = purchaseApprovalRepository;
         this.contractRepository = contractRepository;
-        this.statusUpdateService = statusUpdateService;
-        this.contractStatusUpdateService = contractStatusUpdateService;
-        this.purchaseStatusUpdateService = purchaseStatusUpdateService;
+        this.statusRecalculationService = statusRecalculationService;
+        this.eventPublisher = eventPublisher;
+        this.approvalMergeService = approvalMergeService;
     }
 
     /**
-     * Загружает данные из Excel файла отчета
-     * Парсит согласования для заявок на закупку
+     * Итог загрузки файла отчёта.
+     *
+     * @param processed         обработано строк заявок и закупок
+     * @param requestApprovals  upsert согласований заявок: вставлено / обновлено / без изменений
+     * @param purchaseApprovals upsert согласований закупок: вставлено / обновлено / без изменений
      */
-    public int loadFromExcel(File excelFile) throws IOException {
-        Workbook workbook;
-        try (FileInputStream fis = new FileInputStream(excelFile)) {
-            if (excelFile.getName().endsWith(".xlsx")) {
-                workbook = new XSSFWorkbook(fis);
-            } else {
-                workbook = new HSSFWorkbook(fis);
-            }
+    public record ReportLoadResult(int processed,
+                                   ApprovalMergeService.MergeResult requestApprovals,
+                                   ApprovalMergeService.MergeResult purchaseApprovals) {
+        static ReportLoadResult empty() {
+            return new ReportLoadResult(0, ApprovalMergeService.MergeResult.EMPTY, ApprovalMergeService.MergeResult.EMPTY);
         }
+    }
 
-        try {
-            Sheet sheet = workbook.getSheetAt(0);
-            Iterator<Row> rowIterator = sheet.iterator();
-            
-            if (!rowIterator.hasNext()) {
+    /**
+     * Загружает данные из Excel файла отчета
+     * Парсит согласования для заявок на закупку
+     */
+    public ReportLoadResult loadFromExcel(File excelFile) throws IOException {
+        try (StreamingSheetReader reader = StreamingSheetReader.open(excelFile);
+             StreamingSheetReader.SheetCursor sheet = reader.openSheet(0)) {
+            if (!sheet.hasNext()) {
                 logger.warn("Sheet is empty in report file {}", excelFile.getName());
-                return 0;
+                return ReportLoadResult.empty();
             }
 
-            // Пропускаем первые 3 строки (0, 1, 2) - они содержат фильтры или пустые
-            // Заголовки находятся в строках 3, 4, 5 (индексы 3, 4, 5)
-            for (int i = 0; i < 3 && rowIterator.hasNext(); i++) {
-                rowIterator.next();
-            }
-            
-            // Читаем заголовки (строки 3-5) для построения карты колонок
-            Row headerRow0 = rowIterator.hasNext() ? rowIterator.next() : null; // Строка 3 (POI индекс 3) - этапы
-            Row headerRow1 = rowIterator.hasNext() ? rowIterator.next() : null; // Строка 4 (POI индекс 4) - роли
-            Row headerRow2 = rowIterator.hasNext() ? rowIterator.next() : null; // Строка 5 (POI индекс 5) - поля/действия
+            // Первые 3 строки (0, 1, 2) содержат фильтры или пустые
+            // Заголовки находятся в строках 3, 4, 5 (индексы 3, 4, 5); строки заголовков остаются в памяти
+            List<Row> leadingRows = sheet.readLeadingRows(6);
+            Row headerRow0 = leadingRows.size() > 3 ? leadingRows.get(3) : null; // Строка 3 (POI индекс 3) - этапы
+            Row headerRow1 = leadingRows.size() > 4 ? leadingRows.get(4) : null; // Строка 4 (POI индекс 4) - роли
+            Row headerRow2 = leadingRows.size() > 5 ? leadingRows.get(5) : null; // Строка 5 (POI индекс 5) - поля/действия
             
             if (headerRow2 == null) {
                 logger.warn("Header rows not found in report file {}", excelFile.getName());
-                return 0;
+                return ReportLoadResult.empty();
             }
 
+            loadKnownRounds(collectRequestNumbers(reader));
+
             // Строим карту колонок на основе заголовков с учетом merged cells
-            Map<String, Integer> approvalColumnMap = buildApprovalColumnMap(sheet, headerRow0, headerRow1, headerRow2);
+            Map<String, Integer> approvalColumnMap = buildApprovalColumnMap(sheet.getMergedRegions(), headerRow0, headerRow1, headerRow2);
             logger.info("Built approval column map with {} entries", approvalColumnMap.size());
             
             // Ищем колонку "Договор.Внутренний номер" в заголовках репорта
@@ -224,10 +224,13 @@ public class ReportExcelLoadService {
             int requestApprovalsCount = 0;
             int purchaseApprovalsCount = 0;
             int skippedCount = 0;
+            // Ключи заявок и закупок, согласования (или связь с договором) которых записаны из файла
+            Set<Long> touchedRequestIds = new HashSet<>();
+            Set<Long> touchedPurchaseKeys = new HashSet<>();
             
             // Обрабатываем строки данных (начиная со строки 6)
-            while (rowIterator.hasNext()) {
-                Row row = rowIterator.next();
+            while (sheet.hasNext()) {
+                Row row = sheet.next();
                 
                 if (isRowEmpty(row)) {
                     continue;
@@ -259,6 +262,7 @@ public class ReportExcelLoadService {
                             logger.info("=== ЗАЯВКА {}: спарсено согласований: {} ===", requestNumber, rowApprovalsCount);
                         }
                         requestApprovalsCount += rowApprovalsCount;
+                        touchedRequestIds.add(idPurchaseRequest);
                         
                         processedRequestsCount++;
                     } else if (requestNumber == 2075L) {
@@ -283,6 +287,7 @@ public class ReportExcelLoadService {
                                     logger.info("=== ЗАКУПКА {}: спарсено согласований: {} ===", purchaseRequestId, rowPurchaseApprovalsCount);
                                 }
                                 purchaseApprovalsCount += rowPurchaseApprovalsCount;
+                                touchedPurchaseKeys.add(purchaseRequestId);
                                 
                                 // Парсим и обновляем contractInnerId из колонки "Договор.Внутренний номер" в репорте
                                 // Связь с закупкой через номер заявки на закупку (purchaseRequestId)
@@ -314,59 +319,86 @@ public class ReportExcelLoadService {
             
             logger.info("Processed {} requests ({} approvals), {} purchases ({} approvals), skipped {} rows from report file {}", 
                 processedRequestsCount, requestApprovalsCount, processedPurchasesCount, purchaseApprovalsCount, skippedCount, excelFile.getName());
+            logger.info("Approvals upsert from report file {}: requests {} inserted / {} updated / {} unchanged, " +
+                    "purchases {} inserted / {} updated / {} unchanged", excelFile.getName(),
+                requestApprovalsMerged.inserted(), requestApprovalsMerged.updated(), requestApprovalsMerged.unchanged(),
+                purchaseApprovalsMerged.inserted(), purchaseApprovalsMerged.updated(), purchaseApprovalsMerged.unchanged());
+            ReportLoadResult result = new ReportLoadResult(processedRequestsCount + processedPurchasesCount,
+                requestApprovalsMerged, purchaseApprovalsMerged);
+            knownRequestRounds.clear();
+            knownPurchaseRounds.clear();
             
-            // Обновляем статусы в правильном порядке в отдельных транзакциях:
-            // 1. Сначала статусы закупок (так как статус заявки зависит от статуса закупки)
-            // 2. Затем статусы договоров
-            // 3. Затем статусы заявок (которые зависят от статусов закупок и договоров)
-            // Каждое обновление в отдельной транзакции, чтобы ошибка в одном не откатывала все
-            
-            if (purchaseStatusUpdateService != null) {
-                logger.info("=== Starting status update for all purchases after parsing report file ===");
+            // Пересчитываем статусы только затронутых файлом закупок и заявок (закупки → договоры → заявки)
+            // в отдельных транзакциях, чтобы ошибка пересчёта не откатывала уже сохранённые согласования
+            eventPublisher.publishEvent(new EntityIdsChangedEvent(EntityIdsChangedEvent.EntityType.PURCHASE, touchedPurchaseKeys));
+            eventPublisher.publishEvent(new EntityIdsChangedEvent(EntityIdsChangedEvent.EntityType.PURCHASE_REQUEST, touchedRequestIds));
+            if (statusRecalculationService != null) {
                 try {
-                    purchaseStatusUpdateService.updateAllStatuses();
-                    logger.info("=== Purchase status update completed successfully ===");
+                    statusRecalculationService.recalculateDirty();
                 } catch (Exception e) {
-                    logger.error("=== ERROR during purchase status update after parsing report file: {} ===", e.getMessage(), e);
+                    logger.error("=== ERROR during status update after parsing report file: {} ===", e.getMessage(), e);
                     // Не прерываем выполнение - согласования уже сохранены
                 }
             } else {
-                logger.warn("=== purchaseStatusUpdateService is NULL, skipping purchase status update ===");
+                logger.warn("=== statusRecalculationService is NULL, skipping status update after parsing report file ===");
             }
             
-            if (contractStatusUpdateService != null) {
-                logger.info("Starting status update for all contracts after parsing report file");
-                try {
-                    contractStatusUpdateService.updateAllStatuses();
-                    logger.info("Contract status update completed successfully");
-                } catch (Exception e) {
-                    logger.error("Error during contract status update after parsing report file: {}", e.getMessage(), e);
-                    logger.error("Stack trace:", e);
-                    // Не прерываем выполнение - согласования уже сохранены
+            return result;
+        }
+    }
+
+    /**
+     * Номера заявок из колонки 0 строк данных: отдельный лёгкий проход по листу (строки не удерживаются).
+     * Номер заявки — ключ и заявки, и её закупок.
+     */
+    private Set<Long> collectRequestNumbers(StreamingSheetReader reader) throws IOException {
+        Set<Long> requestNumbers = new HashSet<>();
+        try (StreamingSheetReader.SheetCursor cursor = reader.openSheet(0)) {
+            cursor.readLeadingRows(6);
+            while (cursor.hasNext()) {
+                Long requestNumber = parseLongCell(cursor.next().getCell(REQUEST_NUMBER_COLUMN_INDEX));
+                if (requestNumber != null) {
+                    requestNumbers.add(requestNumber);
                 }
-            } else {
-                logger.error("contractStatusUpdateService is NULL! Cannot update contract statuses after parsing report file.");
             }
-            
-            // Обновляем статусы всех заявок на закупку после парсинга (после обновления статусов закупок и договоров)
-            if (statusUpdateService != null) {
-                logger.info("=== Starting status update for all purchase requests after parsing report file ===");
-                try {
-                    statusUpdateService.updateAllStatuses();
-                    logger.info("=== Status update completed successfully ===");
-                } catch (Exception e) {
-                    logger.error("=== ERROR during status update after parsing report file: {} ===", e.getMessage(), e);
-                    logger.error("=== Stack trace ===", e);
-                    // Не прерываем выполнение - согласования уже сохранены
-                }
-            } else {
-                logger.warn("=== statusUpdateService is NULL, skipping purchase request status update after parsing report file ===");
-            }
-            
-            return processedRequestsCount + processedPurchasesCount;
-            
-        } finally {
-            workbook.close();
+        }
+        return requestNumbers;
+    }
+
+    /**
+     * Загружает известные круги согласований заявок и закупок из файла (порциями по номерам заявок)
+     * вместо поиска по (владелец, этап, роль) на каждую ячейку отчёта.
+     */
+    private void loadKnownRounds(Set<Long> requestNumbers) {
+        knownRequestRounds.clear();
+        knownPurchaseRounds.clear();
+        requestApprovalsMerged = ApprovalMergeService.MergeResult.EMPTY;
+        purchaseApprovalsMerged = ApprovalMergeService.MergeResult.EMPTY;
+        for (PurchaseRequestApproval a : approvalMergeService.loadRequestApprovals(requestNumbers)) {
+            rememberRequestApproval(a);
+        }
+        for (PurchaseApproval a : approvalMergeService.loadPurchaseApprovals(requestNumbers)) {
+            rememberPurchaseApproval(a);
+        }
+        logger.info("Loaded known approval rounds for {} request numbers: {} request keys, {} purchase keys",
+            requestNumbers.size(), knownRequestRounds.size(), knownPurchaseRounds.size());
+    }
+
+    private void rememberRequestApproval(PurchaseRequestApproval approval) {
+        List<PurchaseRequestApproval> rounds = knownRequestRounds.computeIfAbsent(
+            ApprovalMergeService.roundsKey(approval.getIdPurchaseRequest(), approval.getStage(), approval.getRole()),
+            k -> new ArrayList<>());
+        if (rounds.stream().noneMatch(r -> r == approval)) {
+            rounds.add(approval);
+        }
+    }
+
+    private void rememberPurchaseApproval(PurchaseApproval approval) {
+        List<PurchaseApproval> rounds = knownPurchaseRounds.computeIfAbsent(
+            ApprovalMergeService.roundsKey(approval.getPurchaseRequestId(), approval.getStage(), approval.getRole()),
+            k -> new ArrayList<>());
+        if (rounds.stream().noneMatch(r -> r == approval)) {
+            rounds.add(approval);
         }
     }
     
@@ -436,14 +468,13 @@ public class ReportExcelLoadService {
      * Ключ: "Этап|Роль|Поле", Значение: индекс колонки
      * Учитывает merged cells для этапов и ролей
      */
-    private Map<String, Integer> buildApprovalColumnMap(Sheet sheet, Row headerRow0, Row headerRow1, Row headerRow2) {
+    private Map<String, Integer> buildApprovalColumnMap(List<CellRangeAddress> mergedRegions, Row headerRow0, Row headerRow1, Row headerRow2) {
         Map<String, Integer> columnMap = new HashMap<>();
         
         // Строим карту merged cells для строки 3 (этапы) - headerRow0 имеет индекс 3
         Map<Integer, String> mergedStageMap = new HashMap<>();
         int stageRowIndex = headerRow0 != null ? headerRow0.getRowNum() : 3;
-        for (int i = 0; i < sheet.getNumMergedRegions(); i++) {
-            CellRangeAddress mergedRegion = sheet.getMergedRegion(i);
+        for (CellRangeAddress mergedRegion : mergedRegions) {
             if (mergedRegion.getFirstRow() == stageRowIndex && mergedRegion.getLastRow() == stageRowIndex) {
                 // Это merged cell в строке этапов
                 Cell firstCell = headerRow0 != null ? headerRow0.getCell(mergedRegion.getFirstColumn()) : null;
@@ -460,8 +491,7 @@ public class ReportExcelLoadService {
         // Строим карту merged cells для строки 4 (роли) - headerRow1 имеет индекс 4
         Map<Integer, String> mergedRoleMap = new HashMap<>();
         int roleRowIndex = headerRow1 != null ? headerRow1.getRowNum() : 4;
-        for (int i = 0; i < sheet.getNumMergedRegions(); i++) {
-            CellRangeAddress mergedRegion = sheet.getMergedRegion(i);
+        for (CellRangeAddress mergedRegion : mergedRegions) {
             if (mergedRegion.getFirstRow() == roleRowIndex && mergedRegion.getLastRow() == roleRowIndex) {
                 // Это merged cell в строке ролей
                 Cell firstCell = headerRow1 != null ? headerRow1.getCell(mergedRegion.getFirstColumn()) : null;
@@ -640,16 +670,9 @@ public class ReportExcelLoadService {
                     || (completionResult != null && !completionResult.trim().isEmpty());
             
             if (hasValue) {
-                // Все известные круги по (этап, роль): из БД + уже добавленные в текущий batch
+                // Все известные круги по (этап, роль): из БД и созданные по ходу разбора файла
                 java.util.List<PurchaseRequestApproval> knownRounds = new java.util.ArrayList<>(
-                    requestApprovalRepository.findByIdPurchaseRequestAndStageAndRoleOrderByRoundAsc(idPurchaseRequest, stage, role));
-                for (PurchaseRequestApproval b : requestApprovalBatch) {
-                    if (b.getIdPurchaseRequest().equals(idPurchaseRequest)
-                            && stage.equals(b.getStage()) && role.equals(b.getRole())) {
-                        knownRounds.removeIf(k -> k.getRound() != null && k.getRound().equals(b.getRound()));
-                        knownRounds.add(b);
-                    }
-                }
+                    knownRequestRounds.getOrDefault(ApprovalMergeService.roundsKey(idPurchaseRequest, stage, role), List.of()));
 
                 // Определяем целевой круг согласования:
                 //  - та же дата назначения (или дата отсутствует) → обновляем существующий круг;
@@ -787,16 +810,9 @@ public class ReportExcelLoadService {
                     || (completionResult != null && !completionResult.trim().isEmpty());
             
             if (hasValue) {
-                // Все известные круги по (этап, роль): из БД + уже добавленные в текущий batch
+                // Все известные круги по (этап, роль): из БД и созданные по ходу разбора файла
                 java.util.List<PurchaseApproval> knownRounds = new java.util.ArrayList<>(
-                    purchaseApprovalRepository.findByPurchaseRequestIdAndStageAndRoleOrderByRoundAsc(purchaseRequestId, stage, role));
-                for (PurchaseApproval b : purchaseApprovalBatch) {
-                    if (b.getPurchaseRequestId().equals(purchaseRequestId)
-                            && stage.equals(b.getStage()) && role.equals(b.getRole())) {
-                        knownRounds.removeIf(k -> k.getRound() != null && k.getRound().equals(b.getRound()));
-                        knownRounds.add(b);
-                    }
-                }
+                    knownPurchaseRounds.getOrDefault(ApprovalMergeService.roundsKey(purchaseRequestId, stage, role), List.of()));
 
                 // Определяем целевой круг согласования:
                 //  - та же дата назначения (или дата отсутствует) → обновляем существующий круг;
@@ -1238,6 +1254,7 @@ public class ReportExcelLoadService {
      * При переполнении batch сбрасывает его в БД.
      */
     private void enqueueRequestApproval(PurchaseRequestApproval approval) {
+        rememberRequestApproval(approval);
         boolean alreadyInBatch = requestApprovalBatch.stream().anyMatch(b ->
             b == approval || (
                 b.getIdPurchaseRequest().equals(approval.getIdPurchaseRequest()) &&
@@ -1247,7 +1264,7 @@ public class ReportExcelLoadService {
         if (!alreadyInBatch) {
             requestApprovalBatch.add(approval);
         }
-        if (requestApprovalBatch.size() >= BATCH_SIZE) {
+        if (requestApprovalBatch.size() >= APPROVAL_BATCH_SIZE) {
             flushRequestApprovalBatch();
         }
     }
@@ -1257,6 +1274,7 @@ public class ReportExcelLoadService {
      * При переполнении batch сбрасывает его в БД.
      */
     private void enqueuePurchaseApproval(PurchaseApproval approval) {
+        rememberPurchaseApproval(approval);
         boolean alreadyInBatch = purchaseApprovalBatch.stream().anyMatch(b ->
             b == approval || (
                 b.getPurchaseRequestId().equals(approval.getPurchaseRequestId()) &&
@@ -1266,43 +1284,24 @@ public class ReportExcelLoadService {
         if (!alreadyInBatch) {
             purchaseApprovalBatch.add(approval);
         }
-        if (purchaseApprovalBatch.size() >= BATCH_SIZE) {
+        if (purchaseApprovalBatch.size() >= APPROVAL_BATCH_SIZE) {
             flushPurchaseApprovalBatch();
         }
     }
 
     /**
-     * Сохраняет накопленные согласования заявок пакетом
-     * Использует save вместо saveAll для правильной обработки существующих записей
+     * Сохраняет накопленные согласования заявок пакетом: staging + INSERT ... ON CONFLICT (см. {@link ApprovalMergeService})
      */
     private void flushRequestApprovalBatch() {
         if (!requestApprovalBatch.isEmpty()) {
             try {
-                int saved = 0;
-                int skipped = 0;
-                for (PurchaseRequestApproval approval : requestApprovalBatch) {
-                    try {
-                        // Используем save для правильной обработки существующих записей (merge)
-                        requestApprovalRepository.save(approval);
-                        saved++;
-                    } catch (Exception e) {
-                        // Если согласование уже существует, пропускаем его
-                        if (e.getMessage() != null && e.getMessage().contains("unique_approval_per_request")) {
-                            logger.debug("Approval already exists, skipping: idPurchaseRequest={}, stage={}, role={}", 
-                                approval.getIdPurchaseRequest(), approval.getStage(), approval.getRole());
-                            skipped++;
-                        } else {
-                            logger.warn("Error saving approval: idPurchaseRequest={}, stage={}, role={}, error={}", 
-                                approval.getIdPurchaseRequest(), approval.getStage(), approval.getRole(), e.getMessage());
-                            throw e; // Пробрасываем другие ошибки
-                        }
-                    }
-                }
-                logger.info("Flushed {} request approvals to database (saved: {}, skipped: {})", 
-                    requestApprovalBatch.size(), saved, skipped);
-                requestApprovalBatch.clear();
+                ApprovalMergeService.MergeResult merged = approvalMergeService.mergeRequestApprovals(requestApprovalBatch);
+                requestApprovalsMerged = requestApprovalsMerged.plus(merged);
+                logger.info("Flushed {} request approvals to database (inserted: {}, updated: {}, unchanged: {})",
+                    requestApprovalBatch.size(), merged.inserted(), merged.updated(), merged.unchanged());
             } catch (Exception e) {
                 logger.error("Error flushing request approval batch: {}", e.getMessage(), e);
+            } finally {
                 // Очищаем batch даже при ошибке, чтобы не зациклиться
                 requestApprovalBatch.clear();
             }
@@ -1310,37 +1309,18 @@ public class ReportExcelLoadService {
     }
     
     /**
-     * Сохраняет накопленные согласования закупок пакетом
-     * Использует save вместо saveAll для правильной обработки существующих записей
+     * Сохраняет накопленные согласования закупок пакетом: staging + INSERT ... ON CONFLICT (см. {@link ApprovalMergeService})
      */
     private void flushPurchaseApprovalBatch() {
         if (!purchaseApprovalBatch.isEmpty()) {
             try {
-                int saved = 0;
-                int skipped = 0;
-                for (PurchaseApproval approval : purchaseApprovalBatch) {
-                    try {
-                        // Используем save для правильной обработки существующих записей (merge)
-                        purchaseApprovalRepository.save(approval);
-                        saved++;
-                    } catch (Exception e) {
-                        // Если согласование уже существует, пропускаем его
-                        if (e.getMessage() != null && e.getMessage().contains("unique")) {
-                            logger.debug("Approval already exists, skipping: purchaseRequestId={}, stage={}, role={}", 
-                                approval.getPurchaseRequestId(), approval.getStage(), approval.getRole());
-                            skipped++;
-                        } else {
-                            logger.warn("Error saving approval: purchaseRequestId={}, stage={}, role={}, error={}", 
-                                approval.getPurchaseRequestId(), approval.getStage(), approval.getRole(), e.getMessage());
-                            throw e; // Пробрасываем другие ошибки
-                        }
-                    }
-                }
-                logger.info("Flushed {} purchase approvals to database (saved: {}, skipped: {})", 
-                    purchaseApprovalBatch.size(), saved, skipped);
-                purchaseApprovalBatch.clear();
+                ApprovalMergeService.MergeResult merged = approvalMergeService.mergePurchaseApprovals(purchaseApprovalBatch);
+                purchaseApprovalsMerged = purchaseApprovalsMerged.plus(merged);
+                logger.info("Flushed {} purchase approvals to database (inserted: {}, updated: {}, unchanged: {})",
+                    purchaseApprovalBatch.size(), merged.inserted(), merged.updated(), merged.unchanged());
             } catch (Exception e) {
                 logger.error("Error flushing purchase approval batch: {}", e.getMessage(), e);
+            } finally {
                 // Очищаем batch даже при ошибке, чтобы не зациклиться
                 purchaseApprovalBatch.clear();
             }
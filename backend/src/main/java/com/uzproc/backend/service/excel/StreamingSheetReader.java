@@ -0,0 +1,471 @@
+package com.uzproc.backend.service.excel;
+
+import org.apache.poi.hssf.usermodel.HSSFWorkbook;
+import org.apache.poi.openxml4j.opc.OPCPackage;
+import org.apache.poi.openxml4j.opc.PackageAccess;
+import org.apache.poi.ss.usermodel.Cell;
+import org.apache.poi.ss.usermodel.CellStyle;
+import org.apache.poi.ss.usermodel.DataFormatter;
+import org.apache.poi.ss.usermodel.FormulaError;
+import org.apache.poi.ss.usermodel.Row;
+import org.apache.poi.ss.usermodel.Sheet;
+import org.apache.poi.ss.util.CellRangeAddress;
+import org.apache.poi.util.XMLHelper;
+import org.apache.poi.xssf.eventusermodel.ReadOnlySharedStringsTable;
+import org.apache.poi.xssf.eventusermodel.XSSFReader;
+import org.apache.poi.xssf.model.StylesTable;
+import org.apache.poi.xssf.usermodel.XSSFCellStyle;
+import org.apache.poi.xssf.usermodel.XSSFWorkbook;
+
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.function.Predicate;
+
+/**
+ * Потоковое чтение листов Excel для загрузчиков, которым нужен обычный {@link Row}/{@link Cell} API.
+ * <p>
+ * Для .xlsx лист читается pull-парсером (StAX) прямо из пакета, без построения {@link XSSFWorkbook}:
+ * каждая строка материализуется в служебном листе-носителе и удаляется, как только итерация уходит дальше.
+ * В памяти одновременно живут только строки заголовка и текущая строка (плюс таблица общих строк),
+ * поэтому пиковое потребление не зависит от размера файла. Ячейки сохраняют тип и формат данных исходного
+ * стиля — {@code DateUtil.isCellDateFormatted} и {@link DataFormatter} работают как на DOM-книге;
+ * для формул отдаётся закэшированный в файле результат.
+ * <p>
+ * .xls (BIFF) потоково не читается — для него fallback на {@link HSSFWorkbook}; формат ограничен
+ * 65536 строками, так что и здесь объём памяти ограничен сверху.
+ */
+public final class StreamingSheetReader implements Closeable {
+
+    private final File file;
+    private final boolean xlsx;
+
+    // .xlsx
+    private OPCPackage pkg;
+    private XSSFReader xssfReader;
+    private ReadOnlySharedStringsTable sharedStrings;
+    private StylesTable styles;
+    private XSSFWorkbook scratchWorkbook;
+    private final Map<Integer, CellStyle> scratchStyles = new HashMap<>();
+
+    // .xls fallback
+    private HSSFWorkbook hssfWorkbook;
+
+    private List<String> sheetNames;
+
+    private StreamingSheetReader(File file) {
+        this.file = file;
+        this.xlsx = file.getName().toLowerCase().endsWith(".xlsx");
+    }
+
+    /**
+     * Открывает файл: .xlsx — потоково, любой другой — как .xls через HSSF.
+     */
+    public static StreamingSheetReader open(File file) throws IOException {
+        StreamingSheetReader reader = new StreamingSheetReader(file);
+        try {
+            reader.init();
+        } catch (Exception e) {
+            reader.close();
+            if (e instanceof IOException ioException) {
+                throw ioException;
+            }
+            throw new IOException("Cannot open Excel file " + file.getName() + ": " + e.getMessage(), e);
+        }
+        return reader;
+    }
+
+    private void init() throws Exception {
+        if (xlsx) {
+            pkg = OPCPackage.open(file, PackageAccess.READ);
+            xssfReader = new XSSFReader(pkg);
+            sharedStrings = new ReadOnlySharedStringsTable(pkg);
+            styles = xssfReader.getStylesTable();
+            scratchWorkbook = new XSSFWorkbook();
+            List<String> names = new ArrayList<>();
+            XSSFReader.SheetIterator sheets = (XSSFReader.SheetIterator) xssfReader.getSheetsData();
+            while (sheets.hasNext()) {
+                sheets.next().close();
+                names.add(sheets.getSheetName());
+            }
+            sheetNames = Collections.unmodifiableList(names);
+        } else {
+            try (FileInputStream fis = new FileInputStream(file)) {
+                hssfWorkbook = new HSSFWorkbook(fis);
+            }
+            List<String> names = new ArrayList<>();
+            for (int i = 0; i < hssfWorkbook.getNumberOfSheets(); i++) {
+                names.add(hssfWorkbook.getSheetName(i));
+            }
+            sheetNames = Collections.unmodifiableList(names);
+        }
+    }
+
+    public int getNumberOfSheets() {
+        return sheetNames.size();
+    }
+
+    public String getSheetName(int index) {
+        return sheetNames.get(index);
+    }
+
+    /**
+     * Открывает курсор по листу с указанным индексом. Курсор нужно закрыть (или закрыть весь reader).
+     */
+    public SheetCursor openSheet(int index) throws IOException {
+        if (index < 0 || index >= sheetNames.size()) {
+            throw new IllegalArgumentException("Sheet index " + index + " is out of range for file " + file.getName());
+        }
+        if (!xlsx) {
+            return new SheetCursor(sheetNames.get(index), hssfWorkbook.getSheetAt(index));
+        }
+        try {
+            return new SheetCursor(sheetNames.get(index), openSheetStream(index), index);
+        } catch (XMLStreamException e) {
+            throw new IOException("Cannot read sheet '" + sheetNames.get(index) + "' of file " + file.getName(), e);
+        }
+    }
+
+    private InputStream openSheetStream(int index) throws IOException {
+        try {
+            XSSFReader.SheetIterator sheets = (XSSFReader.SheetIterator) xssfReader.getSheetsData();
+            for (int i = 0; sheets.hasNext(); i++) {
+                InputStream stream = sheets.next();
+                if (i == index) {
+                    return stream;
+                }
+                stream.close();
+            }
+        } catch (IOException e) {
+            throw e;
+        } catch (Exception e) {
+            throw new IOException("Cannot open sheet " + index + " of file " + file.getName(), e);
+        }
+        throw new IOException("Sheet " + index + " not found in file " + file.getName());
+    }
+
+    private CellStyle scratchStyleFor(int styleIndex) {
+        return scratchStyles.computeIfAbsent(styleIndex, idx -> {
+            XSSFCellStyle source = styles != null ? styles.getStyleAt(idx) : null;
+            CellStyle style = scratchWorkbook.createCellStyle();
+            if (source != null && source.getDataFormatString() != null) {
+                style.setDataFormat(scratchWorkbook.createDataFormat().getFormat(source.getDataFormatString()));
+            }
+            return style;
+        });
+    }
+
+    @Override
+    public void close() throws IOException {
+        try {
+            if (scratchWorkbook != null) {
+                scratchWorkbook.close();
+            }
+            if (hssfWorkbook != null) {
+                hssfWorkbook.close();
+            }
+        } finally {
+            if (pkg != null) {
+                pkg.revert();
+            }
+        }
+    }
+
+    /**
+     * Курсор по строкам одного листа. Строка, полученная через {@link #next()}, действительна до следующего
+     * вызова {@link #next()}; строки, прочитанные через {@link #findHeaderRow} и {@link #readLeadingRows},
+     * остаются доступны до закрытия курсора.
+     */
+    public final class SheetCursor implements Iterator<Row>, Closeable {
+
+        private final String sheetName;
+        private final int sheetIndex;
+
+        // .xlsx
+        private final InputStream sheetStream;
+        private final XMLStreamReader xml;
+        private final Sheet scratchSheet;
+        private boolean sourceExhausted = false;
+        private int lastRowIndex = -1;
+
+        // .xls
+        private final Sheet hssfSheet;
+        private final Iterator<Row> hssfRows;
+
+        // Прочитанные из источника, но ещё не выданные строки; в установившемся режиме — не больше одной
+        private final List<Row> pending = new ArrayList<>();
+        private Row lastEmitted;
+        private List<CellRangeAddress> mergedRegions;
+
+        private SheetCursor(String sheetName, InputStream sheetStream, int sheetIndex) throws XMLStreamException {
+            this.sheetName = sheetName;
+            this.sheetIndex = sheetIndex;
+            this.sheetStream = sheetStream;
+            this.xml = XMLHelper.newXMLInputFactory().createXMLStreamReader(sheetStream);
+            this.scratchSheet = scratchWorkbook.createSheet();
+            this.hssfSheet = null;
+            this.hssfRows = null;
+        }
+
+        private SheetCursor(String sheetName, Sheet hssfSheet) {
+            this.sheetName = sheetName;
+            this.sheetIndex = -1;
+            this.sheetStream = null;
+            this.xml = null;
+            this.scratchSheet = null;
+            this.hssfSheet = hssfSheet;
+            this.hssfRows = hssfSheet.iterator();
+        }
+
+        public String getSheetName() {
+            return sheetName;
+        }
+
+        /**
+         * Ищет строку заголовков среди строк с индексом меньше {@code maxRows}.
+         * Строки до заголовка и сам заголовок поглощаются (итерация продолжится со следующей строки)
+         * и остаются в памяти. Если заголовок не найден — возвращает null.
+         */
+        public Row findHeaderRow(int maxRows, Predicate<Row> isHeader) {
+            int scanned = 0;
+            while (true) {
+                if (scanned == pending.size() && !readIntoPending()) {
+                    return null;
+                }
+                Row candidate = pending.get(scanned);
+                if (candidate.getRowNum() >= maxRows) {
+                    return null;
+                }
+                scanned++;
+                if (isHeader.test(candidate)) {
+                    pending.subList(0, scanned).clear();
+                    return candidate;
+                }
+            }
+        }
+
+        /**
+         * Поглощает до {@code count} первых строк листа (по физическому порядку в файле)
+         * и возвращает их; строки остаются в памяти до закрытия курсора.
+         */
+        public List<Row> readLeadingRows(int count) {
+            List<Row> rows = new ArrayList<>(count);
+            while (rows.size() < count && (!pending.isEmpty() || readIntoPending())) {
+                rows.add(pending.remove(0));
+            }
+            return rows;
+        }
+
+        /**
+         * Объединённые ячейки листа. Для .xlsx блок mergeCells лежит в конце XML листа,
+         * поэтому он читается отдельным быстрым проходом по XML (без материализации строк).
+         */
+        public List<CellRangeAddress> getMergedRegions() throws IOException {
+            if (mergedRegions != null) {
+                return mergedRegions;
+            }
+            List<CellRangeAddress> regions = new ArrayList<>();
+            if (hssfSheet != null) {
+                for (int i = 0; i < hssfSheet.getNumMergedRegions(); i++) {
+                    regions.add(hssfSheet.getMergedRegion(i));
+                }
+            } else {
+                try (InputStream stream = openSheetStream(sheetIndex)) {
+                    XMLStreamReader mergeXml = XMLHelper.newXMLInputFactory().createXMLStreamReader(stream);
+                    try {
+                        while (mergeXml.hasNext()) {
+                            if (mergeXml.next() == XMLStreamConstants.START_ELEMENT
+                                    && "mergeCell".equals(mergeXml.getLocalName())) {
+                                String ref = mergeXml.getAttributeValue(null, "ref");
+                                if (ref != null) {
+                                    regions.add(CellRangeAddress.valueOf(ref));
+                                }
+                            }
+                        }
+                    } finally {
+                        mergeXml.close();
+                    }
+                } catch (XMLStreamException e) {
+                    throw new IOException("Cannot read merged regions of sheet '" + sheetName + "'", e);
+                }
+            }
+            mergedRegions = Collections.unmodifiableList(regions);
+            return mergedRegions;
+        }
+
+        @Override
+        public boolean hasNext() {
+            return !pending.isEmpty() || readIntoPending();
+        }
+
+        @Override
+        public Row next() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            evictLastEmitted();
+            lastEmitted = pending.remove(0);
+            return lastEmitted;
+        }
+
+        private void evictLastEmitted() {
+            if (lastEmitted != null && scratchSheet != null) {
+                scratchSheet.removeRow(lastEmitted);
+            }
+            lastEmitted = null;
+        }
+
+        private boolean readIntoPending() {
+            Row row;
+            if (hssfRows != null) {
+                row = hssfRows.hasNext() ? hssfRows.next() : null;
+            } else {
+                try {
+                    row = readXlsxRow();
+                } catch (XMLStreamException e) {
+                    throw new IllegalStateException("Cannot parse sheet '" + sheetName + "': " + e.getMessage(), e);
+                }
+            }
+            if (row == null) {
+                return false;
+            }
+            pending.add(row);
+            return true;
+        }
+
+        private Row readXlsxRow() throws XMLStreamException {
+            if (sourceExhausted) {
+                return null;
+            }
+            while (xml.hasNext()) {
+                int event = xml.next();
+                if (event == XMLStreamConstants.START_ELEMENT && "row".equals(xml.getLocalName())) {
+                    return parseRow();
+                }
+                if (event == XMLStreamConstants.END_ELEMENT && "sheetData".equals(xml.getLocalName())) {
+                    break;
+                }
+            }
+            sourceExhausted = true;
+            return null;
+        }
+
+        private Row parseRow() throws XMLStreamException {
+            String r = xml.getAttributeValue(null, "r");
+            int rowIndex = r != null ? Integer.parseInt(r) - 1 : lastRowIndex + 1;
+            lastRowIndex = rowIndex;
+            Row row = scratchSheet.createRow(rowIndex);
+            int nextColumn = 0;
+            while (xml.hasNext()) {
+                int event = xml.next();
+                if (event == XMLStreamConstants.START_ELEMENT && "c".equals(xml.getLocalName())) {
+                    String ref = xml.getAttributeValue(null, "r");
+                    String type = xml.getAttributeValue(null, "t");
+                    String style = xml.getAttributeValue(null, "s");
+                    int column = ref != null ? columnIndexOf(ref) : nextColumn;
+                    nextColumn = column + 1;
+                    String value = readCellValue();
+                    if (value != null) {
+                        fillCell(row.createCell(column), type, style, value);
+                    }
+                } else if (event == XMLStreamConstants.END_ELEMENT && "row".equals(xml.getLocalName())) {
+                    break;
+                }
+            }
+            return row;
+        }
+
+        /** Читает содержимое &lt;c&gt;: значение &lt;v&gt; или текст inline-строки &lt;is&gt;&lt;t&gt;. */
+        private String readCellValue() throws XMLStreamException {
+            String value = null;
+            StringBuilder inline = null;
+            while (xml.hasNext()) {
+                int event = xml.next();
+                if (event == XMLStreamConstants.START_ELEMENT) {
+                    String name = xml.getLocalName();
+                    if ("v".equals(name)) {
+                        value = xml.getElementText();
+                    } else if ("t".equals(name)) {
+                        if (inline == null) {
+                            inline = new StringBuilder();
+                        }
+                        inline.append(xml.getElementText());
+                    }
+                } else if (event == XMLStreamConstants.END_ELEMENT && "c".equals(xml.getLocalName())) {
+                    break;
+                }
+            }
+            return inline != null ? inline.toString() : value;
+        }
+
+        private void fillCell(Cell cell, String type, String style, String value) {
+            if ("s".equals(type)) {
+                cell.setCellValue(sharedStrings.getItemAt(Integer.parseInt(value.trim())).getString());
+            } else if ("inlineStr".equals(type) || "str".equals(type) || "d".equals(type)) {
+                cell.setCellValue(value);
+            } else if ("b".equals(type)) {
+                cell.setCellValue("1".equals(value.trim()) || "true".equalsIgnoreCase(value.trim()));
+            } else if ("e".equals(type)) {
+                try {
+                    cell.setCellErrorValue(FormulaError.forString(value.trim()).getCode());
+                } catch (IllegalArgumentException ignored) {
+                    // неизвестный код ошибки — ячейка остаётся пустой
+                }
+            } else {
+                try {
+                    cell.setCellValue(Double.parseDouble(value.trim()));
+                } catch (NumberFormatException e) {
+                    cell.setCellValue(value);
+                    return;
+                }
+                if (style != null) {
+                    cell.setCellStyle(scratchStyleFor(Integer.parseInt(style)));
+                }
+            }
+        }
+
+        @Override
+        public void close() throws IOException {
+            pending.clear();
+            lastEmitted = null;
+            if (xml != null) {
+                try {
+                    xml.close();
+                } catch (XMLStreamException ignored) {
+                    // поток закрывается ниже
+                }
+            }
+            if (sheetStream != null) {
+                sheetStream.close();
+            }
+            if (scratchSheet != null) {
+                scratchWorkbook.removeSheetAt(scratchWorkbook.getSheetIndex(scratchSheet));
+            }
+        }
+    }
+
+    /** "AB12" → 27 (индекс колонки с нуля) без регулярных выражений. */
+    static int columnIndexOf(String cellReference) {
+        int index = 0;
+        for (int i = 0; i < cellReference.length(); i++) {
+            char c = cellReference.charAt(i);
+            if (c < 'A' || c > 'Z') {
+                break;
+            }
+            index = index * 26 + (c - 'A' + 1);
+        }
+        return index - 1;
+    }
+}
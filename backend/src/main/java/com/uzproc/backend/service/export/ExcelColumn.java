@@ -0,0 +1,14 @@
+package com.uzproc.backend.service.export;
+
+import java.util.function.Function;
+
+/**
+ * Колонка потоковой выгрузки: заголовок и значение ячейки из строки.
+ * Значение — String, Number (в т.ч. BigDecimal), LocalDate или LocalDateTime (пишется как дата dd.MM.yyyy); null — пустая ячейка.
+ */
+public record ExcelColumn<T>(String header, Function<T, Object> value) {
+
+    public static <T> ExcelColumn<T> of(String header, Function<T, Object> value) {
+        return new ExcelColumn<>(header, value);
+    }
+}
@@ -0,0 +1,148 @@
+package com.uzproc.backend.service.export;
+
+import org.apache.poi.ss.usermodel.Cell;
+import org.apache.poi.ss.usermodel.CellStyle;
+import org.apache.poi.ss.usermodel.FillPatternType;
+import org.apache.poi.ss.usermodel.Font;
+import org.apache.poi.ss.usermodel.IndexedColors;
+import org.apache.poi.ss.usermodel.Row;
+import org.apache.poi.ss.usermodel.Sheet;
+import org.apache.poi.xssf.streaming.SXSSFWorkbook;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.function.Consumer;
+
+/**
+ * Потоковая выгрузка списков в Excel (SXSSF).
+ * <p>
+ * В памяти держится только окно из {@link #ROW_WINDOW} последних строк, остальные сбрасываются во временный
+ * сжатый файл; данные приходят порциями от источника, а готовый файл пишется сразу в поток ответа.
+ * autoSizeColumn в потоковом режиме видит только окно, поэтому ширина колонок считается по длине значений
+ * первых {@link #WIDTH_SAMPLE_ROWS} строк и заголовка.
+ * <p>
+ * Источник — функция, которая передаёт порции строк в полученный consumer (например, постранично из БД);
+ * список целиком не собирается. Экраны подключаются своим набором {@link ExcelColumn}.
+ */
+@Component
+public class StreamingExcelExporter {
+
+    private static final Logger logger = LoggerFactory.getLogger(StreamingExcelExporter.class);
+
+    /** Строк в памяти до сброса на диск. */
+    private static final int ROW_WINDOW = 100;
+    /** Строк, по которым оценивается ширина колонок. */
+    private static final int WIDTH_SAMPLE_ROWS = 1000;
+    /** Ширина колонки в символах: минимум и максимум. */
+    private static final int MIN_WIDTH_CHARS = 8;
+    private static final int MAX_WIDTH_CHARS = 80;
+    /** Длина даты dd.MM.yyyy в символах. */
+    private static final int DATE_WIDTH_CHARS = 10;
+
+    /**
+     * Пишет лист {@code sheetName} с заголовком и строками из {@code source} в {@code out}.
+     * Поток не закрывается.
+     *
+     * @return количество записанных строк данных
+     */
+    public <T> int export(OutputStream out, String sheetName, List<ExcelColumn<T>> columns,
+                          Consumer<Consumer<List<T>>> source) {
+        long startTime = System.currentTimeMillis();
+        SXSSFWorkbook workbook = new SXSSFWorkbook(ROW_WINDOW);
+        workbook.setCompressTempFiles(true);
+        try {
+            Sheet sheet = workbook.createSheet(sheetName);
+            CellStyle headerStyle = createHeaderStyle(workbook);
+            CellStyle dateStyle = workbook.createCellStyle();
+            dateStyle.setDataFormat(workbook.getCreationHelper().createDataFormat().getFormat("dd.mm.yyyy"));
+
+            int[] widths = new int[columns.size()];
+            Row headerRow = sheet.createRow(0);
+            for (int i = 0; i < columns.size(); i++) {
+                Cell cell = headerRow.createCell(i);
+                cell.setCellValue(columns.get(i).header());
+                cell.setCellStyle(headerStyle);
+                widths[i] = columns.get(i).header().length();
+            }
+
+            int[] rowIdx = {1};
+            source.accept(chunk -> {
+                for (T item : chunk) {
+                    Row row = sheet.createRow(rowIdx[0]);
+                    boolean sample = rowIdx[0] <= WIDTH_SAMPLE_ROWS;
+                    for (int i = 0; i < columns.size(); i++) {
+                        int length = writeCell(row, i, columns.get(i).value().apply(item), dateStyle);
+                        if (sample && length > widths[i]) {
+                            widths[i] = length;
+                        }
+                    }
+                    rowIdx[0]++;
+                }
+            });
+
+            for (int i = 0; i < widths.length; i++) {
+                int chars = Math.min(Math.max(widths[i] + 2, MIN_WIDTH_CHARS), MAX_WIDTH_CHARS);
+                sheet.setColumnWidth(i, chars * 256);
+            }
+            workbook.write(out);
+            out.flush();
+            int rows = rowIdx[0] - 1;
+            logger.info("Streamed Excel sheet '{}': {} rows in {} ms", sheetName, rows, System.currentTimeMillis() - startTime);
+            return rows;
+        } catch (IOException e) {
+            throw new UncheckedIOException("Ошибка при формировании Excel: " + e.getMessage(), e);
+        } finally {
+            // Удаляет временные файлы окна
+            workbook.dispose();
+            try {
+                workbook.close();
+            } catch (IOException e) {
+                logger.warn("Error closing streaming workbook: {}", e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * Записывает значение в ячейку; возвращает его длину в символах для оценки ширины колонки.
+     */
+    private static int writeCell(Row row, int column, Object value, CellStyle dateStyle) {
+        if (value == null) {
+            return 0;
+        }
+        Cell cell = row.createCell(column);
+        if (value instanceof Number number) {
+            cell.setCellValue(number.doubleValue());
+            return number.toString().length();
+        }
+        if (value instanceof LocalDateTime dateTime) {
+            cell.setCellValue(dateTime);
+            cell.setCellStyle(dateStyle);
+            return DATE_WIDTH_CHARS;
+        }
+        if (value instanceof LocalDate date) {
+            cell.setCellValue(date);
+            cell.setCellStyle(dateStyle);
+            return DATE_WIDTH_CHARS;
+        }
+        String text = value.toString();
+        cell.setCellValue(text);
+        return text.length();
+    }
+
+    private static CellStyle createHeaderStyle(SXSSFWorkbook workbook) {
+        CellStyle headerStyle = workbook.createCellStyle();
+        Font headerFont = workbook.createFont();
+        headerFont.setBold(true);
+        headerStyle.setFont(headerFont);
+        headerStyle.setFillForegroundColor(IndexedColors.GREY_25_PERCENT.getIndex());
+        headerStyle.setFillPattern(FillPatternType.SOLID_FOREGROUND);
+        return headerStyle;
+    }
+}
@@ -4,22 +4,19 @@ import com.uzproc.backend.entity.contract.Contract;
 import com.uzproc.backend.entity.contract.ContractStatus;
 import com.uzproc.backend.repository.contract.ContractRepository;
 import com.uzproc.backend.service.delivery.DeliveryService;
-import org.apache.poi.hssf.usermodel.HSSFWorkbook;
+import com.uzproc.backend.service.excel.StreamingSheetReader;
 import org.apache.poi.ss.usermodel.*;
-import org.apache.poi.xssf.usermodel.XSSFWorkbook;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.stereotype.Service;
 
 import java.io.File;
-import java.io.FileInputStream;
 import java.io.IOException;
 import java.time.Instant;
 import java.time.LocalDate;
 import java.time.ZoneId;
 import java.util.Date;
 import java.util.HashMap;
-import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 import java.util.regex.Matcher;
@@ -57,94 +54,76 @@ public class HandReportExcelLoadService {
 
     /** Парсит файл и возвращает число обработанных поставок (создано + обновлена дата). */
     public int loadHandReport(File excelFile) throws IOException {
-        Workbook workbook;
-        try (FileInputStream fis = new FileInputStream(excelFile)) {
-            workbook = excelFile.getName().toLowerCase().endsWith(".xlsx")
-                    ? new XSSFWorkbook(fis) : new HSSFWorkbook(fis);
-        }
-        try {
+        try (StreamingSheetReader reader = StreamingSheetReader.open(excelFile)) {
             // Ищем лист и строку заголовка с колонкой «ЗП/заявка».
-            Sheet sheet = null;
-            Map<String, Integer> columns = null;
-            int headerRowIndex = -1;
-            for (int s = 0; s < workbook.getNumberOfSheets() && columns == null; s++) {
-                Sheet candidate = workbook.getSheetAt(s);
-                int last = Math.min(30, candidate.getLastRowNum());
-                for (int i = 0; i <= last; i++) {
-                    Row row = candidate.getRow(i);
-                    if (row == null) continue;
-                    Map<String, Integer> map = buildColumnIndexMap(row);
-                    if (findColumnIndex(map, REQUEST_COLUMN) != null) {
-                        sheet = candidate;
-                        columns = map;
-                        headerRowIndex = i;
-                        break;
+            for (int s = 0; s < reader.getNumberOfSheets(); s++) {
+                try (StreamingSheetReader.SheetCursor sheet = reader.openSheet(s)) {
+                    Row headerRow = sheet.findHeaderRow(31,
+                            row -> findColumnIndex(buildColumnIndexMap(row), REQUEST_COLUMN) != null);
+                    if (headerRow != null) {
+                        return loadSheet(excelFile, sheet, headerRow);
                     }
                 }
             }
-            if (columns == null) {
-                logger.warn("HandReport: header with column '{}' not found in file {}", REQUEST_COLUMN, excelFile.getName());
-                return 0;
-            }
-
-            Integer requestIdx = findColumnIndex(columns, REQUEST_COLUMN);
-            Integer factDateIdx = findColumnIndex(columns, FACT_DATE_COLUMN);
-            Integer esfDateIdx = findColumnIndex(columns, ESF_DATE_COLUMN);
-            Integer noteIdx = findColumnIndex(columns, NOTE_COLUMN);
-            Integer reportStatusIdx = columns.get(REPORT_STATUS_COLUMN); // только точное совпадение заголовка «41»
-            logger.info("HandReport: file {} sheet '{}' headerRow={} -> ЗП/заявка={}, Дата отгрузки (факт)={}, Дата выставления ЭСФ={}, Примечание={}, Статус(41)={}",
-                    excelFile.getName(), sheet.getSheetName(), headerRowIndex + 1, requestIdx, factDateIdx, esfDateIdx, noteIdx, reportStatusIdx);
-
-            Iterator<Row> it = sheet.iterator();
-            for (int i = 0; i <= headerRowIndex && it.hasNext(); i++) {
-                it.next();
-            }
-
-            int rowsWithRequest = 0;
-            int createdDeliveries = 0;
-            int updatedDates = 0;
-            int noSpecification = 0;
+            logger.warn("HandReport: header with column '{}' not found in file {}", REQUEST_COLUMN, excelFile.getName());
+            return 0;
+        }
+    }
 
-            while (it.hasNext()) {
-                Row row = it.next();
-                if (row == null) continue;
-                try {
-                    Long requestId = parseFirstLong(getCellValueAsString(row.getCell(requestIdx)));
-                    if (requestId == null) continue;
-                    rowsWithRequest++;
-
-                    LocalDate factDate = (factDateIdx != null) ? parseExcelDate(row.getCell(factDateIdx)) : null;
-                    LocalDate esfDate = (esfDateIdx != null) ? parseExcelDate(row.getCell(esfDateIdx)) : null;
-                    String note = (noteIdx != null) ? getCellValueAsString(row.getCell(noteIdx)) : null;
-                    String reportStatus = (reportStatusIdx != null) ? getCellValueAsString(row.getCell(reportStatusIdx)) : null;
-
-                    // Подписанные договоры-спецификации по этой заявке.
-                    List<Contract> specs = contractRepository.findByPurchaseRequestId(requestId).stream()
-                            .filter(c -> SPECIFICATION_FORM.equalsIgnoreCase(
-                                    c.getDocumentForm() != null ? c.getDocumentForm().trim() : null))
-                            .filter(c -> c.getStatus() == ContractStatus.SIGNED)
-                            .collect(Collectors.toList());
-
-                    if (specs.isEmpty()) {
-                        noSpecification++;
-                        continue;
-                    }
-                    for (Contract spec : specs) {
-                        boolean created = deliveryService.upsertDeliveryForSpecification(spec.getId(), factDate, esfDate, note, reportStatus);
-                        if (created) createdDeliveries++;
-                        if (factDate != null) updatedDates++;
-                    }
-                } catch (Exception e) {
-                    logger.warn("HandReport: error on row {}: {}", row.getRowNum() + 1, e.getMessage());
+    /** Обрабатывает строки листа после найденного заголовка. */
+    private int loadSheet(File excelFile, StreamingSheetReader.SheetCursor sheet, Row headerRow) {
+        Map<String, Integer> columns = buildColumnIndexMap(headerRow);
+
+        Integer requestIdx = findColumnIndex(columns, REQUEST_COLUMN);
+        Integer factDateIdx = findColumnIndex(columns, FACT_DATE_COLUMN);
+        Integer esfDateIdx = findColumnIndex(columns, ESF_DATE_COLUMN);
+        Integer noteIdx = findColumnIndex(columns, NOTE_COLUMN);
+        Integer reportStatusIdx = columns.get(REPORT_STATUS_COLUMN); // только точное совпадение заголовка «41»
+        logger.info("HandReport: file {} sheet '{}' headerRow={} -> ЗП/заявка={}, Дата отгрузки (факт)={}, Дата выставления ЭСФ={}, Примечание={}, Статус(41)={}",
+                excelFile.getName(), sheet.getSheetName(), headerRow.getRowNum() + 1, requestIdx, factDateIdx, esfDateIdx, noteIdx, reportStatusIdx);
+
+        int rowsWithRequest = 0;
+        int createdDeliveries = 0;
+        int updatedDates = 0;
+        int noSpecification = 0;
+
+        while (sheet.hasNext()) {
+            Row row = sheet.next();
+            if (row == null) continue;
+            try {
+                Long requestId = parseFirstLong(getCellValueAsString(row.getCell(requestIdx)));
+                if (requestId == null) continue;
+                rowsWithRequest++;
+
+                LocalDate factDate = (factDateIdx != null) ? parseExcelDate(row.getCell(factDateIdx)) : null;
+                LocalDate esfDate = (esfDateIdx != null) ? parseExcelDate(row.getCell(esfDateIdx)) : null;
+                String note = (noteIdx != null) ? getCellValueAsString(row.getCell(noteIdx)) : null;
+                String reportStatus = (reportStatusIdx != null) ? getCellValueAsString(row.getCell(reportStatusIdx)) : null;
+
+                // Подписанные договоры-спецификации по этой заявке.
+                List<Contract> specs = contractRepository.findByPurchaseRequestId(requestId).stream()
+                        .filter(c -> SPECIFICATION_FORM.equalsIgnoreCase(
+                                c.getDocumentForm() != null ? c.getDocumentForm().trim() : null))
+                        .filter(c -> c.getStatus() == ContractStatus.SIGNED)
+                        .collect(Collectors.toList());
+
+                if (specs.isEmpty()) {
+                    noSpecification++;
+                    continue;
+                }
+                for (Contract spec : specs) {
+                    boolean created = deliveryService.upsertDeliveryForSpecification(spec.getId(), factDate, esfDate, note, reportStatus);
+                    if (created) createdDeliveries++;
+                    if (factDate != null) updatedDates++;
                 }
+            } catch (Exception e) {
+                logger.warn("HandReport: error on row {}: {}", row.getRowNum() + 1, e.getMessage());
             }
-
-            logger.info("HandReport done: rowsWithRequest={}, createdDeliveries={}, factDatesSet={}, rowsWithoutSpecification={}",
-                    rowsWithRequest, createdDeliveries, updatedDates, noSpecification);
-            return createdDeliveries + updatedDates;
-        } finally {
-            workbook.close();
         }
+
+        logger.info("HandReport done: rowsWithRequest={}, createdDeliveries={}, factDatesSet={}, rowsWithoutSpecification={}",
+                rowsWithRequest, createdDeliveries, updatedDates, noSpecification);
+        return createdDeliveries + updatedDates;
     }
 
     // ─────────────────────────────── Хелперы ───────────────────────────────
@@ -0,0 +1,115 @@
+package com.uzproc.backend.service.keyset;
+
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.PersistenceContext;
+import jakarta.persistence.criteria.CriteriaBuilder;
+import jakarta.persistence.criteria.CriteriaQuery;
+import jakarta.persistence.criteria.Path;
+import jakarta.persistence.criteria.Predicate;
+import jakarta.persistence.criteria.Root;
+import org.springframework.data.jpa.domain.Specification;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.List;
+
+/**
+ * Keyset-пагинация списков по id: вместо OFFSET следующая страница начинается после последнего id предыдущей
+ * ({@code WHERE id < :lastId ORDER BY id DESC LIMIT n}), поэтому время страницы не зависит от её глубины,
+ * а вставки между запросами не сдвигают записи между страницами.
+ * <p>
+ * Фильтры — те же Specification, что у постраничных списков. Отбираются только id (по индексу первичного
+ * ключа); строки страницы вызывающий код читает отдельной плоской выборкой. Курсор — непрозрачный токен
+ * (base64url от направления и последнего id); направление зашито в токен, поэтому продолжение всегда
+ * идёт в том же порядке, что и первая страница.
+ */
+@Service
+@Transactional(readOnly = true)
+public class KeysetPaginationService {
+
+    private static final String TOKEN_VERSION = "k1";
+    public static final int MAX_PAGE_SIZE = 500;
+
+    @PersistenceContext
+    private EntityManager entityManager;
+
+    /** Позиция keyset-курсора: направление и последний id отданной страницы (null — первая страница). */
+    public record Position(boolean ascending, Long lastId) {
+    }
+
+    /** Id одной страницы и позиция следующей (null — страница последняя). */
+    public record IdPage(List<Long> ids, Position next) {
+    }
+
+    /**
+     * Позиция из параметров запроса: токен курсора или, для первой страницы, направление сортировки по id.
+     *
+     * @throws IllegalArgumentException если токен повреждён
+     */
+    public static Position position(String cursor, String sortDir) {
+        if (cursor == null || cursor.isBlank()) {
+            return new Position("asc".equalsIgnoreCase(sortDir), null);
+        }
+        String decoded;
+        try {
+            decoded = new String(Base64.getUrlDecoder().decode(cursor.trim()), StandardCharsets.UTF_8);
+        } catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException("Некорректный курсор страницы");
+        }
+        String[] parts = decoded.split(":");
+        if (parts.length != 3 || !TOKEN_VERSION.equals(parts[0]) || !(parts[1].equals("a") || parts[1].equals("d"))) {
+            throw new IllegalArgumentException("Некорректный курсор страницы");
+        }
+        try {
+            return new Position(parts[1].equals("a"), Long.parseLong(parts[2]));
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Некорректный курсор страницы");
+        }
+    }
+
+    /** Токен курсора для позиции; null — для конца списка. */
+    public static String token(Position position) {
+        if (position == null) {
+            return null;
+        }
+        String raw = TOKEN_VERSION + ":" + (position.ascending() ? "a" : "d") + ":" + position.lastId();
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(raw.getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Id следующей страницы сущностей {@code type}, удовлетворяющих {@code spec}.
+     */
+    public <E> IdPage findIds(Class<E> type, Specification<E> spec, Position position, int size) {
+        int limit = Math.max(1, Math.min(size, MAX_PAGE_SIZE));
+        CriteriaBuilder cb = entityManager.getCriteriaBuilder();
+        CriteriaQuery<Long> query = cb.createQuery(Long.class);
+        Root<E> root = query.from(type);
+        Path<Long> id = root.get("id");
+
+        List<Predicate> predicates = new ArrayList<>();
+        if (spec != null) {
+            Predicate filter = spec.toPredicate(root, query, cb);
+            if (filter != null) {
+                predicates.add(filter);
+            }
+        }
+        if (position.lastId() != null) {
+            predicates.add(position.ascending() ? cb.greaterThan(id, position.lastId()) : cb.lessThan(id, position.lastId()));
+        }
+        query.select(id)
+             .where(predicates.toArray(new Predicate[0]))
+             .orderBy(position.ascending() ? cb.asc(id) : cb.desc(id));
+
+        // Одна лишняя строка показывает, есть ли следующая страница, без COUNT(*)
+        List<Long> ids = new ArrayList<>(entityManager.createQuery(query).setMaxResults(limit + 1).getResultList());
+        Position next = null;
+        if (ids.size() > limit) {
+            ids = new ArrayList<>(ids.subList(0, limit));
+            next = new Position(position.ascending(), ids.get(ids.size() - 1));
+        }
+        return new IdPage(ids, next);
+    }
+}
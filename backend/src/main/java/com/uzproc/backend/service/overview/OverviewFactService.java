@@ -0,0 +1,464 @@
+package com.uzproc.backend.service.overview;
+
+import com.uzproc.backend.entity.purchase.Purchase;
+import com.uzproc.backend.entity.purchase.PurchaseApproval;
+import com.uzproc.backend.entity.purchase.PurchaseStatus;
+import com.uzproc.backend.entity.purchaserequest.PurchaseRequest;
+import com.uzproc.backend.entity.purchaserequest.PurchaseRequestApproval;
+import com.uzproc.backend.entity.purchaserequest.PurchaseRequestStatus;
+import com.uzproc.backend.event.KpiInputsChangedEvent;
+import com.uzproc.backend.event.PurchaserChangedEvent;
+import com.uzproc.backend.repository.purchase.PurchaseApprovalRepository;
+import com.uzproc.backend.repository.purchase.PurchaseRepository;
+import com.uzproc.backend.repository.purchaserequest.PurchaseRequestApprovalRepository;
+import com.uzproc.backend.repository.purchaserequest.PurchaseRequestRepository;
+import com.uzproc.backend.service.calendar.WorkingDayService;
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.PersistenceContext;
+import jakarta.persistence.criteria.JoinType;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.data.jpa.domain.Specification;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.event.TransactionalEventListener;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.math.BigDecimal;
+import java.sql.Timestamp;
+import java.sql.Types;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.stream.Collectors;
+
+/**
+ * Витрина дашбордов «Обзора» (overview_sla_facts, overview_ek_facts, overview_savings_facts): по строке на заявку
+ * SLA-блока за год назначения на утверждение, на заявку диаграммы ЕК за год назначения и год создания и на
+ * завершённую закупку с датой «Закупочной комиссии». Эндпоинты ({@link OverviewKpiStoreService}) собирают ответ
+ * запросами к строкам выбранного года, поэтому время ответа не растёт с объёмом истории.
+ * <p>
+ * Строки считаются по правилам прежнего расчёта {@link OverviewService} (отбор заявок как в findEntitiesForSla
+ * и в выборке ЕК, даты согласований, рабочие дни), но только для изменившихся заявок: {@link #refresh} вызывается
+ * из пересчёта статусов для заявок, затронутых импортом (и их закупок — ключ закупки равен номеру заявки),
+ * а также после правок в интерфейсе ({@link PurchaserChangedEvent}, {@link KpiInputsChangedEvent}).
+ * {@link #rebuildAll()} — полный пересчёт (при полном пересчёте статусов и при пустой витрине; изменение
+ * таблицы holidays очищает витрину триггером, и она строится заново со следующим пересчётом статусов).
+ */
+@Service
+public class OverviewFactService {
+
+    private static final Logger logger = LoggerFactory.getLogger(OverviewFactService.class);
+
+    static final String YEAR_BASIS_ASSIGNMENT = "assignment";
+    static final String YEAR_BASIS_CREATION = "creation";
+    static final String NOT_ASSIGNED = "Не назначен";
+    static final String NOT_SPECIFIED = "Не указан";
+    private static final String NO_CFO = "(без ЦФО)";
+    private static final String COMMISSION_STAGE = "Закупочная комиссия";
+    /** Этапы, по дате назначения которых определяется год назначения на утверждение. */
+    private static final Set<String> APPROVAL_ASSIGNMENT_STAGES = Set.of(
+            "Утверждение заявки на ЗП", "Утверждение заявки на ЗП (НЕ требуется ЗП)");
+    /** Статусы, не попадающие в диаграмму ЕК (как excludePendingStatuses в выборке заявок). */
+    private static final Set<PurchaseRequestStatus> EK_EXCLUDED_STATUSES = Set.of(
+            PurchaseRequestStatus.NOT_COORDINATED, PurchaseRequestStatus.NOT_APPROVED, PurchaseRequestStatus.PROJECT);
+    /** Размер порции заявок: согласования и закупки порции загружаются запросами IN (...). */
+    private static final int CHUNK_SIZE = 500;
+
+    private static final String INSERT_SLA_SQL =
+        "INSERT INTO overview_sla_facts (purchase_request_id, sla_year, id_purchase_request, status_group, name, " +
+        "budget_amount, purchaser, purchaser_key, complexity, planned_sla_days, status, approval_assignment_date, " +
+        "purchase_completion_date, purchase_general_days, purchase_result_days, sla_month, met_sla, updated_at) " +
+        "VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?)";
+    private static final String INSERT_EK_SQL =
+        "INSERT INTO overview_ek_facts (purchase_request_id, year_basis, year, id_purchase_request, cfo, currency, " +
+        "budget_amount, single_source, updated_at) VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?)";
+    private static final String INSERT_SAVINGS_SQL =
+        "INSERT INTO overview_savings_facts (purchase_id, purchase_request_id, completion_year, completion_month, cfo, " +
+        "purchaser_key, budget_amount, savings, savings_type, excluded_from_kpi, updated_at) " +
+        "VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?)";
+
+    private static final String DELETE_SLA_SQL =
+        "DELETE FROM overview_sla_facts WHERE id_purchase_request = ANY (?) OR purchase_request_id = ANY (?)";
+    private static final String DELETE_EK_SQL =
+        "DELETE FROM overview_ek_facts WHERE id_purchase_request = ANY (?) OR purchase_request_id = ANY (?)";
+    private static final String DELETE_SAVINGS_SQL =
+        "DELETE FROM overview_savings_facts WHERE purchase_request_id = ANY (?) OR purchase_id = ANY (?)";
+
+    @PersistenceContext
+    private EntityManager entityManager;
+
+    private final PurchaseRequestRepository purchaseRequestRepository;
+    private final PurchaseRepository purchaseRepository;
+    private final PurchaseRequestApprovalRepository purchaseRequestApprovalRepository;
+    private final PurchaseApprovalRepository purchaseApprovalRepository;
+    private final WorkingDayService workingDayService;
+    private final JdbcTemplate jdbcTemplate;
+    private final TransactionTemplate transactionTemplate;
+
+    public OverviewFactService(
+            PurchaseRequestRepository purchaseRequestRepository,
+            PurchaseRepository purchaseRepository,
+            PurchaseRequestApprovalRepository purchaseRequestApprovalRepository,
+            PurchaseApprovalRepository purchaseApprovalRepository,
+            WorkingDayService workingDayService,
+            JdbcTemplate jdbcTemplate,
+            PlatformTransactionManager transactionManager) {
+        this.purchaseRequestRepository = purchaseRequestRepository;
+        this.purchaseRepository = purchaseRepository;
+        this.purchaseRequestApprovalRepository = purchaseRequestApprovalRepository;
+        this.purchaseApprovalRepository = purchaseApprovalRepository;
+        this.workingDayService = workingDayService;
+        this.jdbcTemplate = jdbcTemplate;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+    }
+
+    /**
+     * Пересчитывает строки витрины заявок и их закупок (по порциям, каждая в своей транзакции).
+     *
+     * @param purchaseRequestIds id_purchase_request заявок (ключи закупок — те же номера)
+     * @return строк витрины записано
+     */
+    public int refresh(Collection<Long> purchaseRequestIds) {
+        if (purchaseRequestIds == null || purchaseRequestIds.isEmpty()) {
+            return 0;
+        }
+        List<Long> keys = new ArrayList<>(new TreeSet<>(purchaseRequestIds));
+        int written = 0;
+        for (int start = 0; start < keys.size(); start += CHUNK_SIZE) {
+            List<Long> chunk = keys.subList(start, Math.min(start + CHUNK_SIZE, keys.size()));
+            Integer count = transactionTemplate.execute(status -> refreshChunk(chunk));
+            written += count != null ? count : 0;
+        }
+        return written;
+    }
+
+    /**
+     * Полный пересчёт витрины по всем заявкам.
+     */
+    public int rebuildAll() {
+        long startTime = System.currentTimeMillis();
+        List<Long> keys = jdbcTemplate.queryForList(
+            "SELECT id_purchase_request FROM purchase_requests WHERE id_purchase_request IS NOT NULL ORDER BY id_purchase_request",
+            Long.class);
+        // Строки заявок и закупок, сменивших номер, удаляются одним запросом; остальные перезаписываются порциями
+        jdbcTemplate.update(
+            "DELETE FROM overview_sla_facts f WHERE NOT EXISTS (" +
+            "SELECT 1 FROM purchase_requests pr WHERE pr.id = f.purchase_request_id AND pr.id_purchase_request = f.id_purchase_request)");
+        jdbcTemplate.update(
+            "DELETE FROM overview_ek_facts f WHERE NOT EXISTS (" +
+            "SELECT 1 FROM purchase_requests pr WHERE pr.id = f.purchase_request_id AND pr.id_purchase_request = f.id_purchase_request)");
+        jdbcTemplate.update(
+            "DELETE FROM overview_savings_facts f WHERE NOT EXISTS (" +
+            "SELECT 1 FROM purchases p WHERE p.id = f.purchase_id AND p.purchase_request_id = f.purchase_request_id)");
+        int written = refresh(keys);
+        logger.info("Overview facts rebuilt: {} purchase requests, {} rows, time: {} ms",
+            keys.size(), written, System.currentTimeMillis() - startTime);
+        return written;
+    }
+
+    /**
+     * Обработчик {@link PurchaserChangedEvent}: закупщик — ключ группировки SLA, экономии и KPI.
+     */
+    @TransactionalEventListener(fallbackExecution = true)
+    @Transactional(propagation = Propagation.REQUIRES_NEW)
+    public void onPurchaserChanged(PurchaserChangedEvent event) {
+        int written = refresh(event.purchaseRequestIds());
+        logger.info("Purchaser changed: refreshed overview facts of {} purchase requests, {} rows",
+            event.purchaseRequestIds().size(), written);
+    }
+
+    /**
+     * Обработчик {@link KpiInputsChangedEvent}: пересчитывает строки заявок после фиксации транзакции правки
+     * (без транзакции — сразу).
+     */
+    @TransactionalEventListener(fallbackExecution = true)
+    @Transactional(propagation = Propagation.REQUIRES_NEW)
+    public void onKpiInputsChanged(KpiInputsChangedEvent event) {
+        int written = refresh(event.purchaseRequestIds());
+        logger.info("KPI inputs changed: refreshed overview facts of {} purchase requests, {} rows",
+            event.purchaseRequestIds().size(), written);
+    }
+
+    /** Витрина пуста целиком (после миграции или очистки триггером holidays). */
+    public boolean isEmpty() {
+        Boolean exists = jdbcTemplate.queryForObject(
+            "SELECT EXISTS (SELECT 1 FROM overview_sla_facts) OR EXISTS (SELECT 1 FROM overview_ek_facts) " +
+            "OR EXISTS (SELECT 1 FROM overview_savings_facts)", Boolean.class);
+        return !Boolean.TRUE.equals(exists);
+    }
+
+    private int refreshChunk(List<Long> keys) {
+        List<PurchaseRequest> requests = purchaseRequestRepository.findAll(requestsByKeys(keys));
+        Map<Long, List<PurchaseRequestApproval>> requestApprovalsByKey =
+            purchaseRequestApprovalRepository.findByIdPurchaseRequestIn(keys).stream()
+                .collect(Collectors.groupingBy(PurchaseRequestApproval::getIdPurchaseRequest));
+        Map<Long, List<PurchaseApproval>> purchaseApprovalsByKey =
+            purchaseApprovalRepository.findByPurchaseRequestIdIn(keys).stream()
+                .collect(Collectors.groupingBy(PurchaseApproval::getPurchaseRequestId));
+        List<Purchase> purchases = purchaseRepository.findAll(purchasesByKeys(keys));
+        Set<Long> singleSourceKeys = purchases.stream()
+            .filter(OverviewService::isSingleSourcePurchase)
+            .map(Purchase::getPurchaseRequestId)
+            .collect(Collectors.toCollection(HashSet::new));
+
+        List<SlaFact> slaFacts = new ArrayList<>();
+        List<EkFact> ekFacts = new ArrayList<>();
+        for (PurchaseRequest request : requests) {
+            // SLA и ЕК: только заявки с типом закупка, не скрытые из работы
+            if (!Boolean.TRUE.equals(request.getRequiresPurchase()) || Boolean.TRUE.equals(request.getExcludeFromInWork())) {
+                continue;
+            }
+            List<PurchaseRequestApproval> requestApprovals =
+                requestApprovalsByKey.getOrDefault(request.getIdPurchaseRequest(), Collections.emptyList());
+            Set<Integer> assignmentYears = requestApprovals.stream()
+                .filter(a -> a.getStage() != null && APPROVAL_ASSIGNMENT_STAGES.contains(a.getStage()))
+                .map(PurchaseRequestApproval::getAssignmentDate)
+                .filter(Objects::nonNull)
+                .map(LocalDateTime::getYear)
+                .collect(Collectors.toCollection(TreeSet::new));
+            PurchaseRequestStatus status = request.getStatus();
+            if (status != null && OverviewService.SLA_STATUS_GROUPS.contains(status.getGroupDisplayName())) {
+                List<PurchaseApproval> purchaseApprovals =
+                    purchaseApprovalsByKey.getOrDefault(request.getIdPurchaseRequest(), Collections.emptyList());
+                for (Integer year : assignmentYears) {
+                    slaFacts.add(toSlaFact(request, year, requestApprovals, purchaseApprovals));
+                }
+            }
+            if ((status == null || !EK_EXCLUDED_STATUSES.contains(status))
+                    && (request.getState() == null || !request.getState().toLowerCase().contains("исключена"))) {
+                boolean singleSource = singleSourceKeys.contains(request.getIdPurchaseRequest());
+                for (Integer year : assignmentYears) {
+                    ekFacts.add(new EkFact(request, YEAR_BASIS_ASSIGNMENT, year, singleSource));
+                }
+                LocalDateTime created = request.getPurchaseRequestCreationDate() != null
+                    ? request.getPurchaseRequestCreationDate() : request.getCreatedAt();
+                if (created != null) {
+                    ekFacts.add(new EkFact(request, YEAR_BASIS_CREATION, created.getYear(), singleSource));
+                }
+            }
+        }
+
+        List<SavingsFact> savingsFacts = new ArrayList<>();
+        for (Purchase purchase : purchases) {
+            // Экономия и KPI экономии: завершённые закупки, кроме закупок у единственного источника
+            if (purchase.getStatus() != PurchaseStatus.COMPLETED || OverviewService.isSingleSourcePurchase(purchase)) {
+                continue;
+            }
+            LocalDateTime commissionDate = commissionCompletionDate(
+                purchaseApprovalsByKey.getOrDefault(purchase.getPurchaseRequestId(), Collections.emptyList()));
+            if (commissionDate != null) {
+                savingsFacts.add(new SavingsFact(purchase, commissionDate));
+            }
+        }
+
+        // Удаляются и строки, записанные под прежним номером заявки/закупки (иначе вставка упрётся в первичный ключ)
+        Long[] keyArray = keys.toArray(new Long[0]);
+        Long[] requestIds = requests.stream().map(PurchaseRequest::getId).toArray(Long[]::new);
+        Long[] purchaseIds = purchases.stream().map(Purchase::getId).toArray(Long[]::new);
+        deleteByKeys(DELETE_SLA_SQL, keyArray, requestIds);
+        deleteByKeys(DELETE_EK_SQL, keyArray, requestIds);
+        deleteByKeys(DELETE_SAVINGS_SQL, keyArray, purchaseIds);
+        Timestamp now = Timestamp.valueOf(LocalDateTime.now());
+        jdbcTemplate.batchUpdate(INSERT_SLA_SQL, slaFacts, slaFacts.size(), (ps, f) -> {
+            ps.setLong(1, f.requestId());
+            ps.setInt(2, f.slaYear());
+            ps.setLong(3, f.idPurchaseRequest());
+            ps.setString(4, f.statusGroup());
+            ps.setString(5, f.name());
+            ps.setBigDecimal(6, f.budgetAmount());
+            ps.setString(7, f.purchaser());
+            ps.setString(8, purchaserKey(f.purchaser()));
+            ps.setString(9, f.complexity());
+            ps.setObject(10, f.plannedSlaDays(), Types.INTEGER);
+            ps.setString(11, f.status());
+            ps.setTimestamp(12, toTimestamp(f.approvalAssignmentDate()));
+            ps.setTimestamp(13, toTimestamp(f.purchaseCompletionDate()));
+            ps.setObject(14, f.purchaseGeneralDays(), Types.INTEGER);
+            ps.setObject(15, f.purchaseResultDays(), Types.INTEGER);
+            ps.setObject(16, f.slaMonth(), Types.INTEGER);
+            ps.setBoolean(17, f.metSla());
+            ps.setTimestamp(18, now);
+        });
+        jdbcTemplate.batchUpdate(INSERT_EK_SQL, ekFacts, ekFacts.size(), (ps, f) -> {
+            ps.setLong(1, f.requestId());
+            ps.setString(2, f.yearBasis());
+            ps.setInt(3, f.year());
+            ps.setLong(4, f.idPurchaseRequest());
+            ps.setString(5, f.cfo());
+            ps.setString(6, f.currency());
+            ps.setBigDecimal(7, f.budgetAmount());
+            ps.setBoolean(8, f.singleSource());
+            ps.setTimestamp(9, now);
+        });
+        jdbcTemplate.batchUpdate(INSERT_SAVINGS_SQL, savingsFacts, savingsFacts.size(), (ps, f) -> {
+            ps.setLong(1, f.purchaseId());
+            ps.setLong(2, f.purchaseRequestId());
+            ps.setInt(3, f.completionDate().getYear());
+            ps.setInt(4, f.completionDate().getMonthValue());
+            ps.setString(5, f.cfo());
+            ps.setString(6, f.purchaserKey());
+            ps.setBigDecimal(7, f.budgetAmount());
+            ps.setBigDecimal(8, f.savings());
+            ps.setString(9, f.savingsType());
+            ps.setBoolean(10, f.excludedFromKpi());
+            ps.setTimestamp(11, now);
+        });
+        // Сущности порции больше не нужны — контекст не растёт при полном пересчёте
+        entityManager.clear();
+        return slaFacts.size() + ekFacts.size() + savingsFacts.size();
+    }
+
+    private void deleteByKeys(String sql, Long[] keys, Long[] ids) {
+        jdbcTemplate.update(con -> {
+            var ps = con.prepareStatement(sql);
+            ps.setArray(1, con.createArrayOf("bigint", keys));
+            ps.setArray(2, con.createArrayOf("bigint", ids));
+            return ps;
+        });
+    }
+
+    /**
+     * Строка SLA-блока: даты и рабочие дни — как в toOverviewSlaRequest и getSlaData,
+     * учёт в проценте SLA — как в buildSlaPercentageByMonth.
+     */
+    private SlaFact toSlaFact(PurchaseRequest request, int slaYear,
+                              List<PurchaseRequestApproval> requestApprovals, List<PurchaseApproval> purchaseApprovals) {
+        String name = (request.getTitle() != null && !request.getTitle().trim().isEmpty())
+            ? request.getTitle().trim()
+            : (request.getName() != null ? request.getName().trim() : "—");
+        LocalDateTime assignment = requestApprovals.stream()
+            .filter(a -> a.getStage() != null && APPROVAL_ASSIGNMENT_STAGES.contains(a.getStage()))
+            .map(PurchaseRequestApproval::getAssignmentDate)
+            .filter(Objects::nonNull)
+            .min(LocalDateTime::compareTo)
+            .orElse(null);
+        LocalDateTime completion = OverviewService.computePurchaseCompletionDate(purchaseApprovals);
+
+        Integer generalDays = null;
+        Integer resultDays = null;
+        if (assignment != null && !purchaseApprovals.isEmpty()) {
+            LocalDateTime firstApprovalAssignment = purchaseApprovals.stream()
+                .map(PurchaseApproval::getAssignmentDate)
+                .filter(Objects::nonNull)
+                .min(LocalDateTime::compareTo)
+                .orElse(null);
+            LocalDateTime lastApprovalCompletion = purchaseApprovals.stream()
+                .map(PurchaseApproval::getCompletionDate)
+                .filter(Objects::nonNull)
+                .max(LocalDateTime::compareTo)
+                .orElse(null);
+            if (firstApprovalAssignment != null) {
+                generalDays = (int) workingDayService.countFromDayAfterThroughInclusive(assignment, firstApprovalAssignment);
+                if (lastApprovalCompletion != null) {
+                    resultDays = (int) workingDayService.countFromDayAfterThroughInclusive(firstApprovalAssignment, lastApprovalCompletion);
+                }
+            }
+        }
+
+        Integer slaMonth = null;
+        boolean metSla = false;
+        if (assignment != null && completion != null
+                && !assignment.isBefore(OverviewService.SLA_ASSIGNMENT_CUTOFF) && completion.getYear() == slaYear) {
+            slaMonth = completion.getMonthValue();
+            Integer planned = request.getPlannedSlaDays() != null
+                ? request.getPlannedSlaDays() : OverviewService.getPlannedSlaDays(request.getComplexity());
+            metSla = planned != null && workingDayService.countFromDayAfterThroughInclusive(assignment, completion) <= planned;
+        }
+        return new SlaFact(request.getId(), slaYear, request.getIdPurchaseRequest(),
+            request.getStatus().getGroupDisplayName(), name, request.getBudgetAmount(), request.getPurchaser(),
+            request.getComplexity(), request.getPlannedSlaDays(), request.getStatus().getDisplayName(),
+            assignment, completion, generalDays, resultDays, slaMonth, metSla);
+    }
+
+    /** Дата завершения «Закупочной комиссии»: MAX completionDate, если все её согласования завершены. */
+    private static LocalDateTime commissionCompletionDate(List<PurchaseApproval> approvals) {
+        List<PurchaseApproval> commission = approvals.stream()
+            .filter(a -> COMMISSION_STAGE.equals(a.getStage()))
+            .toList();
+        if (commission.isEmpty() || !commission.stream().allMatch(a -> a.getCompletionDate() != null)) {
+            return null;
+        }
+        return commission.stream()
+            .map(PurchaseApproval::getCompletionDate)
+            .max(LocalDateTime::compareTo)
+            .orElse(null);
+    }
+
+    private static Specification<PurchaseRequest> requestsByKeys(List<Long> keys) {
+        return (root, query, cb) -> {
+            if (query.getResultType() == PurchaseRequest.class) {
+                root.fetch("cfo", JoinType.LEFT);
+            }
+            return root.get("idPurchaseRequest").in(keys);
+        };
+    }
+
+    private static Specification<Purchase> purchasesByKeys(List<Long> keys) {
+        return (root, query, cb) -> {
+            if (query.getResultType() == Purchase.class) {
+                root.fetch("cfo", JoinType.LEFT);
+                root.fetch("purchaseRequest", JoinType.LEFT);
+            }
+            return root.get("purchaseRequestId").in(keys);
+        };
+    }
+
+    static String purchaserKey(String purchaser) {
+        return (purchaser == null || purchaser.trim().isEmpty()) ? NOT_ASSIGNED : purchaser.trim();
+    }
+
+    private static Timestamp toTimestamp(LocalDateTime value) {
+        return value != null ? Timestamp.valueOf(value) : null;
+    }
+
+    /** Строка overview_sla_facts. */
+    private record SlaFact(Long requestId, int slaYear, Long idPurchaseRequest, String statusGroup, String name,
+                           BigDecimal budgetAmount, String purchaser, String complexity, Integer plannedSlaDays,
+                           String status, LocalDateTime approvalAssignmentDate, LocalDateTime purchaseCompletionDate,
+                           Integer purchaseGeneralDays, Integer purchaseResultDays, Integer slaMonth, boolean metSla) {
+    }
+
+    /** Строка overview_ek_facts. */
+    private record EkFact(Long requestId, String yearBasis, int year, Long idPurchaseRequest, String cfo,
+                          String currency, BigDecimal budgetAmount, boolean singleSource) {
+        EkFact(PurchaseRequest request, String yearBasis, int year, boolean singleSource) {
+            this(request.getId(), yearBasis, year, request.getIdPurchaseRequest(), cfoName(request),
+                request.getCurrency() != null && !request.getCurrency().isBlank() ? request.getCurrency().trim() : null,
+                request.getBudgetAmount(), singleSource);
+        }
+
+        private static String cfoName(PurchaseRequest request) {
+            String cfo = request.getCfo() != null ? request.getCfo().getName() : null;
+            return (cfo != null && !cfo.isBlank()) ? cfo.trim() : NO_CFO;
+        }
+    }
+
+    /** Строка overview_savings_facts: закупщик и исключение из KPI берутся из заявки закупки. */
+    private record SavingsFact(Long purchaseId, Long purchaseRequestId, LocalDateTime completionDate, String cfo,
+                               String purchaserKey, BigDecimal budgetAmount, BigDecimal savings, String savingsType,
+                               boolean excludedFromKpi) {
+        SavingsFact(Purchase purchase, LocalDateTime completionDate) {
+            this(purchase.getId(), purchase.getPurchaseRequestId(), completionDate,
+                purchase.getCfo() != null && purchase.getCfo().getName() != null ? purchase.getCfo().getName() : NOT_SPECIFIED,
+                purchase.getPurchaseRequest() != null && purchase.getPurchaseRequest().getPurchaser() != null
+                    && !purchase.getPurchaseRequest().getPurchaser().isBlank()
+                    ? purchase.getPurchaseRequest().getPurchaser() : NOT_SPECIFIED,
+                purchase.getBudgetAmount(), purchase.getSavings(),
+                purchase.getSavingsType() != null ? purchase.getSavingsType().name() : null,
+                purchase.getPurchaseRequest() != null
+                    && (Boolean.TRUE.equals(purchase.getPurchaseRequest().getExcludeFromKpi())
+                        || Boolean.TRUE.equals(purchase.getPurchaseRequest().getExcludeFromInWork())));
+        }
+    }
+}
@@ -0,0 +1,476 @@
+package com.uzproc.backend.service.overview;
+
+import com.uzproc.backend.config.OverviewEkProperties;
+import com.uzproc.backend.dto.overview.KpiCsiResponseDto;
+import com.uzproc.backend.dto.overview.KpiSavingsByPurchaserDto;
+import com.uzproc.backend.dto.overview.KpiSavingsResponseDto;
+import com.uzproc.backend.dto.overview.KpiSlaByPurchaserDto;
+import com.uzproc.backend.dto.overview.KpiSlaResponseDto;
+import com.uzproc.backend.dto.overview.OverviewEkChartResponseDto;
+import com.uzproc.backend.dto.overview.OverviewEkChartRowDto;
+import com.uzproc.backend.dto.overview.OverviewSavingsByCfoDto;
+import com.uzproc.backend.dto.overview.OverviewSavingsByPurchaserDto;
+import com.uzproc.backend.dto.overview.OverviewSavingsMonthDto;
+import com.uzproc.backend.dto.overview.OverviewSavingsResponseDto;
+import com.uzproc.backend.dto.overview.OverviewSlaBlockDto;
+import com.uzproc.backend.dto.overview.OverviewSlaPercentageByMonthDto;
+import com.uzproc.backend.dto.overview.OverviewSlaPercentageByPurchaserDto;
+import com.uzproc.backend.dto.overview.OverviewSlaRequestDto;
+import com.uzproc.backend.dto.overview.OverviewSlaResponseDto;
+import com.uzproc.backend.entity.purchase.SavingsType;
+import com.uzproc.backend.service.purchaserequest.PurchaseRequestCommentService;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Дашборды «Обзора» из витрины {@link OverviewFactService}: SLA, экономия, KPI экономии/SLA, ЕК.
+ * <p>
+ * Ответ собирается запросами к строкам выбранного года (индексы по году и месяцу) и группировкой в БД,
+ * поэтому время ответа не растёт с объёмом истории, а первый запрос не запускает расчёт по сырым данным.
+ * Витрина обновляется инкрементально после импорта, пересчёта статусов и правок в интерфейсе — отдельного кэша
+ * ответов нет, и после обновления строк дашборд сразу видит новые данные. Количество SLA-замечаний
+ * (правятся пользователями) читается на лету по заявкам ответа. KPI CSI по-прежнему считается
+ * {@link OverviewService}: он читает только отзывы выбранного периода.
+ */
+@Service
+public class OverviewKpiStoreService {
+
+    private static final Logger logger = LoggerFactory.getLogger(OverviewKpiStoreService.class);
+
+    private static final DateTimeFormatter ISO_FORMAT = DateTimeFormatter.ISO_DATE_TIME;
+    /** Заявок в блоке статус-группы SLA, как в прежней выборке findEntitiesForSla; проценты считаются по всем. */
+    private static final int SLA_BLOCK_LIMIT = 2000;
+
+    private static final String SLA_REQUEST_COLUMNS =
+        "purchase_request_id, id_purchase_request, name, budget_amount, purchaser, complexity, planned_sla_days, status, " +
+        "approval_assignment_date, purchase_completion_date, purchase_general_days, purchase_result_days";
+
+    private final JdbcTemplate jdbcTemplate;
+    private final OverviewService overviewService;
+    private final OverviewEkProperties overviewEkProperties;
+    private final PurchaseRequestCommentService purchaseRequestCommentService;
+
+    public OverviewKpiStoreService(
+            JdbcTemplate jdbcTemplate,
+            OverviewService overviewService,
+            OverviewEkProperties overviewEkProperties,
+            PurchaseRequestCommentService purchaseRequestCommentService) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.overviewService = overviewService;
+        this.overviewEkProperties = overviewEkProperties;
+        this.purchaseRequestCommentService = purchaseRequestCommentService;
+    }
+
+    /**
+     * Данные для вкладки SLA: заявки по группам статусов за год назначения на утверждение
+     * и процент выполнения SLA по месяцам и закупщикам.
+     * @param purchaser опциональный фильтр по закупщику (ФИО, без учёта регистра; «Не назначен» — без закупщика)
+     */
+    public OverviewSlaResponseDto getSlaData(Integer year, String purchaser) {
+        List<Object> filterArgs = new ArrayList<>();
+        String purchaserCondition = purchaserCondition(purchaser, filterArgs);
+
+        List<OverviewSlaBlockDto> blocks = new ArrayList<>();
+        List<Long> requestIds = new ArrayList<>();
+        for (String statusGroup : OverviewService.SLA_STATUS_GROUPS) {
+            List<Object> args = new ArrayList<>(List.of(year, statusGroup));
+            args.addAll(filterArgs);
+            List<OverviewSlaRequestDto> requests = jdbcTemplate.query(
+                "SELECT " + SLA_REQUEST_COLUMNS + " FROM overview_sla_facts WHERE sla_year = ? AND status_group = ?" +
+                purchaserCondition + " ORDER BY purchase_request_id LIMIT " + SLA_BLOCK_LIMIT,
+                (rs, rowNum) -> toSlaRequest(rs), args.toArray());
+            requests.forEach(r -> requestIds.add(r.getId()));
+            blocks.add(new OverviewSlaBlockDto(statusGroup, requests));
+        }
+        Map<Long, Long> slaCounts = purchaseRequestCommentService.getSlaCommentCountByPurchaseRequestIds(requestIds);
+        for (OverviewSlaBlockDto block : blocks) {
+            for (OverviewSlaRequestDto r : block.getRequests()) {
+                r.setSlaCommentCount(slaCounts.getOrDefault(r.getId(), 0L).intValue());
+            }
+        }
+
+        List<Object> args = new ArrayList<>(List.of(year));
+        args.addAll(filterArgs);
+        Map<Integer, int[]> byMonth = new LinkedHashMap<>();
+        jdbcTemplate.query(
+            "SELECT sla_month, COUNT(*), COUNT(*) FILTER (WHERE met_sla) FROM overview_sla_facts " +
+            "WHERE sla_year = ? AND sla_month IS NOT NULL" + purchaserCondition + " GROUP BY sla_month",
+            rs -> {
+                byMonth.put(rs.getInt(1), new int[]{rs.getInt(2), rs.getInt(3)});
+            }, args.toArray());
+        List<OverviewSlaPercentageByMonthDto> slaPercentageByMonth = new ArrayList<>(12);
+        for (int month = 1; month <= 12; month++) {
+            int[] counts = byMonth.getOrDefault(month, new int[2]);
+            OverviewSlaPercentageByMonthDto dto = new OverviewSlaPercentageByMonthDto();
+            dto.setMonth(month);
+            dto.setTotalCompleted(counts[0]);
+            dto.setMetSla(counts[1]);
+            dto.setPercentage(counts[0] > 0 ? (counts[1] * 100.0 / counts[0]) : null);
+            slaPercentageByMonth.add(dto);
+        }
+
+        List<OverviewSlaPercentageByPurchaserDto> slaPercentageByPurchaser = jdbcTemplate.query(
+            "SELECT purchaser_key, COUNT(*), COUNT(*) FILTER (WHERE met_sla) FROM overview_sla_facts " +
+            "WHERE sla_year = ? AND sla_month IS NOT NULL" + purchaserCondition + " GROUP BY purchaser_key",
+            (rs, rowNum) -> {
+                OverviewSlaPercentageByPurchaserDto dto = new OverviewSlaPercentageByPurchaserDto();
+                dto.setPurchaser(rs.getString(1));
+                dto.setTotalCompleted(rs.getInt(2));
+                dto.setMetSla(rs.getInt(3));
+                dto.setPercentage(rs.getInt(2) > 0 ? (rs.getInt(3) * 100.0 / rs.getInt(2)) : null);
+                return dto;
+            }, args.toArray());
+        slaPercentageByPurchaser.sort(Comparator.comparing(OverviewSlaPercentageByPurchaserDto::getPurchaser, (a, b) -> {
+            if (OverviewFactService.NOT_ASSIGNED.equals(a)) return 1;
+            if (OverviewFactService.NOT_ASSIGNED.equals(b)) return -1;
+            return a.compareTo(b);
+        }));
+
+        OverviewSlaResponseDto response = new OverviewSlaResponseDto();
+        response.setYear(year);
+        response.setStatusBlocks(blocks);
+        response.setSlaPercentageByMonth(slaPercentageByMonth);
+        response.setSlaPercentageByPurchaser(slaPercentageByPurchaser);
+        logger.debug("Overview SLA data for year {}: {} requests, {} purchaser rows", year, requestIds.size(), slaPercentageByPurchaser.size());
+        return response;
+    }
+
+    /**
+     * Экономия по закупкам за год (по дате завершения «Закупочной комиссии»): общая, по типам,
+     * по месяцам, ЦФО и закупщикам, а также бюджет всех завершённых закупок года.
+     */
+    public OverviewSavingsResponseDto getSavingsData(int year) {
+        BigDecimal[] totalBudget = {BigDecimal.ZERO};
+        int[] totalBudgetCount = {0};
+        jdbcTemplate.query(
+            "SELECT COUNT(*), COALESCE(SUM(budget_amount), 0) FROM overview_savings_facts WHERE completion_year = ?",
+            rs -> {
+                totalBudgetCount[0] = rs.getInt(1);
+                totalBudget[0] = rs.getBigDecimal(2);
+            }, year);
+
+        // [всего, от медианы, от существующего договора, без типа] и количество закупок с экономией
+        BigDecimal[] totals = zeros();
+        int[] totalCounts = new int[4];
+        BigDecimal[][] months = new BigDecimal[12][];
+        int[] monthCounts = new int[12];
+        for (int i = 0; i < 12; i++) {
+            months[i] = zeros();
+        }
+        Map<String, BigDecimal[]> cfoMap = new LinkedHashMap<>();
+        Map<String, Integer> cfoCountMap = new LinkedHashMap<>();
+        Map<String, BigDecimal[]> purchaserMap = new LinkedHashMap<>();
+        Map<String, Integer> purchaserCountMap = new LinkedHashMap<>();
+        jdbcTemplate.query(
+            "SELECT completion_month, cfo, purchaser_key, savings_type, COUNT(*), SUM(savings) FROM overview_savings_facts " +
+            "WHERE completion_year = ? AND savings IS NOT NULL GROUP BY completion_month, cfo, purchaser_key, savings_type",
+            rs -> {
+                int monthIdx = rs.getInt(1) - 1;
+                String cfo = rs.getString(2);
+                String purchaser = rs.getString(3);
+                int typeIdx = savingsTypeIndex(rs.getString(4));
+                int count = rs.getInt(5);
+                BigDecimal savings = rs.getBigDecimal(6);
+
+                addSavings(totals, typeIdx, savings);
+                totalCounts[0] += count;
+                totalCounts[typeIdx] += count;
+                addSavings(months[monthIdx], typeIdx, savings);
+                monthCounts[monthIdx] += count;
+                addSavings(cfoMap.computeIfAbsent(cfo, k -> zeros()), typeIdx, savings);
+                cfoCountMap.merge(cfo, count, Integer::sum);
+                addSavings(purchaserMap.computeIfAbsent(purchaser, k -> zeros()), typeIdx, savings);
+                purchaserCountMap.merge(purchaser, count, Integer::sum);
+            }, year);
+
+        List<OverviewSavingsMonthDto> byMonth = new ArrayList<>();
+        for (int i = 0; i < 12; i++) {
+            OverviewSavingsMonthDto m = new OverviewSavingsMonthDto();
+            m.setMonth(i + 1);
+            m.setTotalSavings(months[i][0]);
+            m.setSavingsFromMedian(months[i][1]);
+            m.setSavingsFromExistingContract(months[i][2]);
+            m.setSavingsUntyped(months[i][3]);
+            m.setCount(monthCounts[i]);
+            byMonth.add(m);
+        }
+
+        OverviewSavingsResponseDto response = new OverviewSavingsResponseDto();
+        response.setYear(year);
+        response.setTotalBudget(totalBudget[0]);
+        response.setTotalBudgetCount(totalBudgetCount[0]);
+        response.setTotalSavings(totals[0]);
+        response.setSavingsFromMedian(totals[1]);
+        response.setSavingsFromExistingContract(totals[2]);
+        response.setSavingsUntyped(totals[3]);
+        response.setTotalCount(totalCounts[0]);
+        response.setFromMedianCount(totalCounts[1]);
+        response.setFromExistingContractCount(totalCounts[2]);
+        response.setUntypedCount(totalCounts[3]);
+        response.setByMonth(byMonth);
+
+        List<OverviewSavingsByCfoDto> byCfo = new ArrayList<>();
+        for (var entry : cfoMap.entrySet()) {
+            OverviewSavingsByCfoDto dto = new OverviewSavingsByCfoDto();
+            dto.setCfo(entry.getKey());
+            dto.setTotalSavings(entry.getValue()[0]);
+            dto.setSavingsFromMedian(entry.getValue()[1]);
+            dto.setSavingsFromExistingContract(entry.getValue()[2]);
+            dto.setSavingsUntyped(entry.getValue()[3]);
+            dto.setCount(cfoCountMap.getOrDefault(entry.getKey(), 0));
+            byCfo.add(dto);
+        }
+        byCfo.sort((a, b) -> b.getTotalSavings().compareTo(a.getTotalSavings()));
+        response.setByCfo(byCfo);
+
+        List<OverviewSavingsByPurchaserDto> byPurchaser = new ArrayList<>();
+        for (var entry : purchaserMap.entrySet()) {
+            OverviewSavingsByPurchaserDto dto = new OverviewSavingsByPurchaserDto();
+            dto.setPurchaser(entry.getKey());
+            dto.setTotalSavings(entry.getValue()[0]);
+            dto.setSavingsFromMedian(entry.getValue()[1]);
+            dto.setSavingsFromExistingContract(entry.getValue()[2]);
+            dto.setSavingsUntyped(entry.getValue()[3]);
+            dto.setCount(purchaserCountMap.getOrDefault(entry.getKey(), 0));
+            byPurchaser.add(dto);
+        }
+        byPurchaser.sort((a, b) -> b.getTotalSavings().compareTo(a.getTotalSavings()));
+        response.setByPurchaser(byPurchaser);
+        return response;
+    }
+
+    /** KPI экономии нарастающим итогом январь–месяц. */
+    public KpiSavingsResponseDto getKpiSavingsData(int year, int month) {
+        return getKpiSavingsDataForMonthRange(year, 1, month);
+    }
+
+    public KpiSavingsResponseDto getKpiSavingsDataForQuarter(int year, int quarter) {
+        return getKpiSavingsDataForMonthRange(year, OverviewService.quarterStartMonth(quarter), OverviewService.quarterEndMonth(quarter));
+    }
+
+    public KpiSlaResponseDto getKpiSlaData(int year, int month) {
+        return getKpiSlaDataForMonthRange(year, 1, month);
+    }
+
+    public KpiSlaResponseDto getKpiSlaDataForQuarter(int year, int quarter) {
+        return getKpiSlaDataForMonthRange(year, OverviewService.quarterStartMonth(quarter), OverviewService.quarterEndMonth(quarter));
+    }
+
+    public KpiCsiResponseDto getKpiCsiData(int year, int month) {
+        return getKpiCsiDataForMonthRange(year, 1, month);
+    }
+
+    public KpiCsiResponseDto getKpiCsiDataForQuarter(int year, int quarter) {
+        return getKpiCsiDataForMonthRange(year, OverviewService.quarterStartMonth(quarter), OverviewService.quarterEndMonth(quarter));
+    }
+
+    /**
+     * KPI экономии: экономия и бюджет по закупщикам за диапазон месяцев завершения «Закупочной комиссии»
+     * (без исключённых из KPI и скрытых из работы).
+     */
+    public KpiSavingsResponseDto getKpiSavingsDataForMonthRange(int year, int startMonth, int endMonth) {
+        List<KpiSavingsByPurchaserDto> byPurchaser = jdbcTemplate.query(
+            "SELECT purchaser_key, COUNT(*), COALESCE(SUM(savings), 0), COALESCE(SUM(budget_amount), 0) " +
+            "FROM overview_savings_facts WHERE completion_year = ? AND completion_month BETWEEN ? AND ? " +
+            "AND NOT excluded_from_kpi GROUP BY purchaser_key",
+            (rs, rowNum) -> {
+                KpiSavingsByPurchaserDto dto = new KpiSavingsByPurchaserDto();
+                dto.setPurchaser(rs.getString(1));
+                dto.setCount(rs.getInt(2));
+                dto.setTotalSavings(rs.getBigDecimal(3));
+                dto.setTotalBudget(rs.getBigDecimal(4));
+                return dto;
+            }, year, startMonth, endMonth);
+        byPurchaser.sort((a, b) -> b.getTotalSavings().compareTo(a.getTotalSavings()));
+
+        KpiSavingsResponseDto response = new KpiSavingsResponseDto();
+        response.setYear(year);
+        response.setMonth(endMonth);
+        response.setByPurchaser(byPurchaser);
+        return response;
+    }
+
+    /**
+     * KPI SLA по закупщикам за диапазон месяцев завершения закупки (назначение на закупщика
+     * не ранее 01.01.2026, плановый срок — явный или по сложности).
+     */
+    public KpiSlaResponseDto getKpiSlaDataForMonthRange(int year, int startMonth, int endMonth) {
+        List<KpiSlaByPurchaserDto> byPurchaser = jdbcTemplate.query(
+            "SELECT purchaser_key, COUNT(*), COUNT(*) FILTER (WHERE met_sla) FROM overview_sla_facts " +
+            "WHERE sla_year = ? AND sla_month BETWEEN ? AND ? GROUP BY purchaser_key",
+            (rs, rowNum) -> {
+                KpiSlaByPurchaserDto dto = new KpiSlaByPurchaserDto();
+                dto.setPurchaser(rs.getString(1));
+                dto.setTotalCompleted(rs.getInt(2));
+                dto.setMetSla(rs.getInt(3));
+                dto.setPercentage(rs.getInt(2) > 0 ? (rs.getInt(3) * 100.0 / rs.getInt(2)) : null);
+                return dto;
+            }, year, startMonth, endMonth);
+        byPurchaser.sort((a, b) -> {
+            Double pa = a.getPercentage() != null ? a.getPercentage() : -1.0;
+            Double pb = b.getPercentage() != null ? b.getPercentage() : -1.0;
+            return pb.compareTo(pa);
+        });
+
+        KpiSlaResponseDto response = new KpiSlaResponseDto();
+        response.setYear(year);
+        response.setMonth(endMonth);
+        response.setByPurchaser(byPurchaser);
+        return response;
+    }
+
+    public KpiCsiResponseDto getKpiCsiDataForMonthRange(int year, int startMonth, int endMonth) {
+        return overviewService.getKpiCsiDataForMonthRange(year, startMonth, endMonth);
+    }
+
+    /**
+     * Диаграмма ЕК за год назначения на утверждение (если за него данных нет — за год создания заявки):
+     * по ЦФО сумма заявок, сумма заявок у единственного источника и её доля.
+     */
+    public OverviewEkChartResponseDto getEkChartData(int year) {
+        boolean byAssignmentYear = true;
+        List<EkGroup> groups = loadEkGroups(OverviewFactService.YEAR_BASIS_ASSIGNMENT, year);
+        if (groups.isEmpty()) {
+            // Нет данных по году назначения (например, не загружен отчёт с этапами) — берём по году создания заявки
+            logger.info("Overview EK: no data for assignment year {}, falling back to creation year", year);
+            byAssignmentYear = false;
+            groups = loadEkGroups(OverviewFactService.YEAR_BASIS_CREATION, year);
+        }
+        String baseCurrency = overviewEkProperties.getBaseCurrency();
+        // Нужен ли перевод по курсу: есть ли заявки с валютой, отличной от базовой
+        boolean amountsInBaseCurrency = groups.stream()
+            .anyMatch(g -> g.currency() != null && !g.currency().equalsIgnoreCase(baseCurrency));
+
+        Map<String, List<EkGroup>> byCfo = new LinkedHashMap<>();
+        for (EkGroup group : groups) {
+            byCfo.computeIfAbsent(group.cfo(), k -> new ArrayList<>()).add(group);
+        }
+        List<OverviewEkChartRowDto> rows = new ArrayList<>();
+        for (Map.Entry<String, List<EkGroup>> e : byCfo.entrySet()) {
+            int totalCount = 0;
+            int singleCount = 0;
+            BigDecimal totalAmount = BigDecimal.ZERO;
+            BigDecimal singleSupplierAmount = BigDecimal.ZERO;
+            Set<String> currenciesInGroup = new HashSet<>();
+            for (EkGroup g : e.getValue()) {
+                totalCount += g.totalCount();
+                singleCount += g.singleCount();
+                totalAmount = totalAmount.add(overviewEkProperties.toBaseCurrency(g.totalAmount(), g.currency()));
+                singleSupplierAmount = singleSupplierAmount.add(overviewEkProperties.toBaseCurrency(g.singleAmount(), g.currency()));
+                if (g.currency() != null) {
+                    currenciesInGroup.add(g.currency());
+                }
+            }
+            BigDecimal percentByAmount = BigDecimal.ZERO;
+            if (totalAmount.compareTo(BigDecimal.ZERO) > 0 && singleSupplierAmount.compareTo(BigDecimal.ZERO) > 0) {
+                percentByAmount = singleSupplierAmount.multiply(BigDecimal.valueOf(100))
+                    .divide(totalAmount, 2, RoundingMode.HALF_UP);
+            }
+            String rowCurrency = amountsInBaseCurrency
+                ? baseCurrency
+                : (currenciesInGroup.isEmpty() ? null : (currenciesInGroup.size() == 1 ? currenciesInGroup.iterator().next() : "mixed"));
+
+            OverviewEkChartRowDto row = new OverviewEkChartRowDto();
+            row.setCfo(e.getKey());
+            row.setCurrency(rowCurrency);
+            row.setTotalCount(totalCount);
+            row.setSingleSupplierCount(singleCount);
+            row.setTotalAmount(totalAmount);
+            row.setSingleSupplierAmount(singleSupplierAmount);
+            row.setPercentByAmount(percentByAmount);
+            rows.add(row);
+        }
+        rows.sort(Comparator.comparing(OverviewEkChartRowDto::getCfo, Comparator.nullsLast(Comparator.naturalOrder())));
+        String yearType = byAssignmentYear ? "assignment" : "creation";
+        logger.debug("Overview EK chart for year {}: {} CFO rows (yearType={}, amountsInBaseCurrency={})",
+            year, rows.size(), yearType, amountsInBaseCurrency);
+        return new OverviewEkChartResponseDto(yearType, rows, amountsInBaseCurrency ? baseCurrency : null, amountsInBaseCurrency);
+    }
+
+    /** Суммы заявок ЕК года в разрезе ЦФО и валюты (перевод в базовую валюту — по сумме валюты). */
+    private List<EkGroup> loadEkGroups(String yearBasis, int year) {
+        return jdbcTemplate.query(
+            "SELECT cfo, currency, COUNT(*), COUNT(*) FILTER (WHERE single_source), COALESCE(SUM(budget_amount), 0), " +
+            "COALESCE(SUM(budget_amount) FILTER (WHERE single_source), 0) FROM overview_ek_facts " +
+            "WHERE year_basis = ? AND year = ? GROUP BY cfo, currency",
+            (rs, rowNum) -> new EkGroup(rs.getString(1), rs.getString(2), rs.getInt(3), rs.getInt(4),
+                rs.getBigDecimal(5), rs.getBigDecimal(6)),
+            yearBasis, year);
+    }
+
+    private record EkGroup(String cfo, String currency, int totalCount, int singleCount,
+                           BigDecimal totalAmount, BigDecimal singleAmount) {
+    }
+
+    private static OverviewSlaRequestDto toSlaRequest(ResultSet rs) throws SQLException {
+        OverviewSlaRequestDto r = new OverviewSlaRequestDto();
+        r.setId(rs.getLong("purchase_request_id"));
+        r.setIdPurchaseRequest(rs.getLong("id_purchase_request"));
+        r.setName(rs.getString("name"));
+        r.setBudgetAmount(rs.getBigDecimal("budget_amount"));
+        r.setPurchaser(rs.getString("purchaser"));
+        r.setComplexity(rs.getString("complexity"));
+        r.setPlannedSlaDays(rs.getObject("planned_sla_days", Integer.class));
+        r.setStatus(rs.getString("status"));
+        r.setApprovalAssignmentDate(formatTimestamp(rs.getTimestamp("approval_assignment_date")));
+        r.setPurchaseCompletionDate(formatTimestamp(rs.getTimestamp("purchase_completion_date")));
+        r.setPurchaseGeneralDays(rs.getObject("purchase_general_days", Integer.class));
+        r.setPurchaseResultDays(rs.getObject("purchase_result_days", Integer.class));
+        return r;
+    }
+
+    private static String formatTimestamp(Timestamp value) {
+        return value != null ? value.toLocalDateTime().format(ISO_FORMAT) : null;
+    }
+
+    /**
+     * Условие фильтра по закупщику — как в фильтре списка заявок: «Не назначен» — пустой закупщик,
+     * иначе совпадение начала ФИО без учёта регистра.
+     */
+    private static String purchaserCondition(String purchaser, List<Object> args) {
+        if (purchaser == null || purchaser.trim().isEmpty()) {
+            return "";
+        }
+        String value = purchaser.trim();
+        if (value.equalsIgnoreCase(OverviewFactService.NOT_ASSIGNED)) {
+            return " AND (purchaser IS NULL OR purchaser = '')";
+        }
+        args.add(value.toLowerCase() + "%");
+        return " AND LOWER(purchaser) LIKE ?";
+    }
+
+    private static int savingsTypeIndex(String savingsType) {
+        if (SavingsType.FROM_MEDIAN.name().equals(savingsType)) {
+            return 1;
+        }
+        if (SavingsType.FROM_EXISTING_CONTRACT.name().equals(savingsType)) {
+            return 2;
+        }
+        return 3;
+    }
+
+    private static void addSavings(BigDecimal[] sums, int typeIdx, BigDecimal savings) {
+        sums[0] = sums[0].add(savings);
+        sums[typeIdx] = sums[typeIdx].add(savings);
+    }
+
+    private static BigDecimal[] zeros() {
+        return new BigDecimal[]{BigDecimal.ZERO, BigDecimal.ZERO, BigDecimal.ZERO, BigDecimal.ZERO};
+    }
+}
@@ -1,5 +1,6 @@
 package com.uzproc.backend.service.overview;
 
+import com.uzproc.backend.config.CacheConfig;
 import com.uzproc.backend.config.OverviewEkProperties;
 import com.uzproc.backend.dto.overview.*;
 import com.uzproc.backend.dto.purchaserequest.PurchaseRequestDto;
@@ -17,20 +18,23 @@ import com.uzproc.backend.repository.purchaserequest.PurchaseRequestApprovalRepo
 import com.uzproc.backend.repository.user.UserRepository;
 import com.uzproc.backend.service.calendar.WorkingDayService;
 import com.uzproc.backend.service.csifeedback.CsiFeedbackService;
+import com.uzproc.backend.service.keyset.KeysetPaginationService;
 import com.uzproc.backend.dto.csifeedback.CsiFeedbackStatsByPurchaserDto;
 import com.uzproc.backend.service.purchaserequest.PurchaseRequestCommentService;
 import com.uzproc.backend.service.purchaserequest.PurchaseRequestService;
 import com.uzproc.backend.service.purchaseplan.PurchasePlanVersionService;
-import org.apache.poi.ss.usermodel.*;
-import org.apache.poi.xssf.usermodel.XSSFWorkbook;
+import com.uzproc.backend.service.export.ExcelColumn;
+import com.uzproc.backend.service.export.StreamingExcelExporter;
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.PersistenceContext;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.data.domain.Page;
+import org.springframework.cache.annotation.Cacheable;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
-import java.io.ByteArrayOutputStream;
-import java.io.IOException;
+import java.io.OutputStream;
 import java.math.BigDecimal;
 import java.time.LocalDate;
 import java.time.LocalDateTime;
@@ -48,13 +52,15 @@ public class OverviewService {
 
     private static final Logger logger = LoggerFactory.getLogger(OverviewService.class);
     private static final DateTimeFormatter ISO_FORMAT = DateTimeFormatter.ISO_DATE_TIME;
-    private static final List<String> SLA_STATUS_GROUPS = List.of(
+    static final List<String> SLA_STATUS_GROUPS = List.of(
             "Заявка у закупщика",
             "Договор в работе",
             "Договор подписан"
     );
+    /** Заявок в порции потоковой выгрузки «Закупки по ЦФО» (порции читаются keyset по id). */
+    private static final int PURCHASES_BY_CFO_EXPORT_CHUNK = KeysetPaginationService.MAX_PAGE_SIZE;
     /** Закупки в расчётах СЛА учитываются только при назначении на закупщика не ранее этой даты. */
-    private static final LocalDateTime SLA_ASSIGNMENT_CUTOFF = LocalDateTime.of(2026, 1, 1, 0, 0);
+    static final LocalDateTime SLA_ASSIGNMENT_CUTOFF = LocalDateTime.of(2026, 1, 1, 0, 0);
 
     private static final Set<String> APPROVAL_EXCLUDED_STAGE_PREFIXES = Set.of(
             "синхронизация",
@@ -77,12 +83,16 @@ public class OverviewService {
     private final OverviewEkProperties overviewEkProperties;
     private final WorkingDayService workingDayService;
     private final CsiFeedbackService csiFeedbackService;
+    private final StreamingExcelExporter streamingExcelExporter;
+
+    @PersistenceContext
+    private EntityManager entityManager;
 
     /** Подстрока способа закупки у связанной закупки для признака «Закупка у единственного источника». */
     private static final String SINGLE_SOURCE_MCC_SUBSTRING = "единственного источника";
 
     /** Закупка считается «у единственного контрагента» по способу закупки (regardless of savings). Исключается из расчёта экономии везде. */
-    private static boolean isSingleSourcePurchase(com.uzproc.backend.entity.purchase.Purchase p) {
+    static boolean isSingleSourcePurchase(com.uzproc.backend.entity.purchase.Purchase p) {
         return p != null
             && p.getPurchaseMethod() != null
             && p.getPurchaseMethod().toLowerCase().contains(SINGLE_SOURCE_MCC_SUBSTRING);
@@ -100,7 +110,8 @@ public class OverviewService {
             UserRepository userRepository,
             OverviewEkProperties overviewEkProperties,
             WorkingDayService workingDayService,
-            CsiFeedbackService csiFeedbackService) {
+            CsiFeedbackService csiFeedbackService,
+            StreamingExcelExporter streamingExcelExporter) {
         this.purchaseRequestService = purchaseRequestService;
         this.purchasePlanVersionService = purchasePlanVersionService;
         this.purchaseRequestCommentService = purchaseRequestCommentService;
@@ -113,6 +124,7 @@ public class OverviewService {
         this.overviewEkProperties = overviewEkProperties;
         this.workingDayService = workingDayService;
         this.csiFeedbackService = csiFeedbackService;
+        this.streamingExcelExporter = streamingExcelExporter;
     }
 
     /**
@@ -301,7 +313,7 @@ public class OverviewService {
     }
 
     /** Плановый срок SLA (рабочих дней): 1→3, 2→7, 3→15, 4→30. */
-    private Integer getPlannedSlaDays(String complexity) {
+    static Integer getPlannedSlaDays(String complexity) {
         if (complexity == null || complexity.trim().isEmpty()) return null;
         switch (complexity.trim()) {
             case "1": return 3;
@@ -327,6 +339,7 @@ public class OverviewService {
      * Список всех уникальных форм документа из согласований договоров.
      * Для выпадающего фильтра на вкладке «Согласования».
      */
+    @Cacheable(CacheConfig.OVERVIEW)
     public List<String> getApprovalDocumentForms() {
         List<String> list = contractApprovalRepository.findDistinctDocumentForms();
         return list != null ? list : Collections.emptyList();
@@ -344,6 +357,7 @@ public class OverviewService {
      * @param year         год назначения (assignmentDate), null — без фильтра по году
      * @param documentForm форма документа для фильтра по ContractApproval, null/пусто — без фильтра
      */
+    @Cacheable(CacheConfig.OVERVIEW)
     public OverviewApprovalsSummaryResponseDto getApprovalsSummaryByRole(Integer year, List<String> documentForms) {
         boolean filterByDocForm = documentForms != null && !documentForms.isEmpty();
         String docFormsParam = filterByDocForm ? String.join(",", documentForms) : null;
@@ -421,6 +435,7 @@ public class OverviewService {
     /**
      * Сводная таблица согласований по ФИО исполнителя (только договорные согласования).
      */
+    @Cacheable(CacheConfig.OVERVIEW)
     public OverviewApprovalsGroupedResponseDto getApprovalsSummaryByPerson(Integer year, List<String> documentForms) {
         String docFormsParam = (documentForms != null && !documentForms.isEmpty()) ? String.join(",", documentForms) : null;
         List<Object[]> rows = contractApprovalRepository.findPersonAndDatesForSummary(year, docFormsParam);
@@ -430,6 +445,7 @@ public class OverviewService {
     /**
      * Сводная таблица согласований по виду документа (только договорные согласования).
      */
+    @Cacheable(CacheConfig.OVERVIEW)
     public OverviewApprovalsGroupedResponseDto getApprovalsSummaryByDocumentForm(Integer year) {
         List<Object[]> rows = contractApprovalRepository.findDocumentFormAndDatesForSummary(year);
         return buildGroupedResponse(rows);
@@ -439,6 +455,7 @@ public class OverviewService {
      * Сводка согласований «по документам»: срок каждого договора от первого назначения
      * до последнего фактического завершения (только не-технические этапы).
      */
+    @Cacheable(CacheConfig.OVERVIEW)
     public OverviewContractDurationResponseDto getContractDurationSummary(Integer year, List<String> documentForms) {
         String docFormsParam = (documentForms != null && !documentForms.isEmpty()) ? String.join(",", documentForms) : null;
         List<Object[]> rawRows = contractApprovalRepository.findContractDurationForSummary(year, docFormsParam);
@@ -598,6 +615,7 @@ public class OverviewService {
      * @param year год планирования
      * @param months месяцы (1–12, календарные)
      */
+    @Cacheable(CacheConfig.OVERVIEW)
     public OverviewPurchasePlanMonthsResponseDto getPurchasePlanMonthsData(int year, List<Integer> months) {
         OverviewPurchasePlanMonthsResponseDto response = new OverviewPurchasePlanMonthsResponseDto();
         response.setYear(year);
@@ -676,7 +694,7 @@ public class OverviewService {
      * (нет ни одного с null). Та же логика, что в PurchaseRequestService.toDto. null если согласований нет
      * или хотя бы одно не завершено.
      */
-    private static LocalDateTime computePurchaseCompletionDate(
+    static LocalDateTime computePurchaseCompletionDate(
             List<com.uzproc.backend.entity.purchase.PurchaseApproval> purchApprovals) {
         if (purchApprovals == null || purchApprovals.isEmpty()) return null;
         if (!purchApprovals.stream().allMatch(a -> a.getCompletionDate() != null)) return null;
@@ -1059,6 +1077,7 @@ public class OverviewService {
      * Этап «Подготовка договора»: от последнего завершения согласования закупки до даты создания первого договора (день завершения закупки не считается).
      * «Срок»: сумма всех этапов.
      */
+    @Cacheable(CacheConfig.OVERVIEW)
     public OverviewTimelinesResponseDto getTimelinesData(boolean onlySignedContracts) {
         List<String> stages = List.of(STAGE_PREPARATION, STAGE_APPROVAL, STAGE_PURCHASE, STAGE_PURCHASE_GENERAL, STAGE_PURCHASE_RESULT, STAGE_CONTRACT_PREP, STAGE_CONTRACT_APPROVAL, STAGE_CONTRACT_REGISTRATION, STAGE_TOTAL);
         List<Object[]> rawRows = purchaseRequestApprovalRepository.findCreationAndFirstAssignmentDates();
@@ -1196,6 +1215,7 @@ public class OverviewService {
      * Возвращает список заявок на закупку (DTO) с рабочими днями по этапам,
      * участвовавших в расчёте для указанного года и сложности.
      */
+    @Cacheable(CacheConfig.OVERVIEW)
     public List<OverviewTimelinesRequestDto> getTimelinesRequests(int year, String complexity, boolean onlySignedContracts) {
         List<Object[]> rawRows = purchaseRequestApprovalRepository.findCreationAndFirstAssignmentDates();
         // id → row (для вычисления дней по этапам)
@@ -1620,13 +1640,13 @@ public class OverviewService {
     }
 
     /** Первый месяц квартала (1–4 → 1, 4, 7, 10). */
-    private static int quarterStartMonth(int quarter) {
+    static int quarterStartMonth(int quarter) {
         int safeQuarter = Math.max(1, Math.min(4, quarter));
         return (safeQuarter - 1) * 3 + 1;
     }
 
     /** Последний месяц квартала (1–4 → 3, 6, 9, 12). */
-    private static int quarterEndMonth(int quarter) {
+    static int quarterEndMonth(int quarter) {
         return quarterStartMonth(quarter) + 2;
     }
 
@@ -1834,6 +1854,7 @@ public class OverviewService {
      * Детали KPI SLA для конкретного закупщика за период (нарастающим итогом январь–месяц):
      * список заявок, чьи завершения попадают в этот период, с плановым и фактическим SLA.
      */
+    @Cacheable(CacheConfig.OVERVIEW)
     public List<KpiSlaDetailDto> getKpiSlaDetails(int year, int month, String purchaser) {
         return getKpiSlaDetailsForMonthRange(year, 1, month, purchaser);
     }
@@ -1841,6 +1862,7 @@ public class OverviewService {
     /**
      * Детали KPI SLA (премия 2) для конкретного закупщика: только закупки, завершённые в выбранном квартале.
      */
+    @Cacheable(CacheConfig.OVERVIEW)
     public List<KpiSlaDetailDto> getKpiSlaDetailsForQuarter(int year, int quarter, String purchaser) {
         logger.info("getKpiSlaDetailsForQuarter: year={}, quarter={}, purchaser={}", year, quarter, purchaser);
         return getKpiSlaDetailsForMonthRange(year, quarterStartMonth(quarter), quarterEndMonth(quarter), purchaser);
@@ -1947,6 +1969,7 @@ public class OverviewService {
     /**
      * Детали отзывов CSI для конкретного закупщика за период (нарастающим итогом январь–месяц).
      */
+    @Cacheable(CacheConfig.OVERVIEW)
     public List<KpiCsiDetailDto> getKpiCsiDetails(int year, int month, String purchaser) {
         return getKpiCsiDetailsForMonthRange(year, 1, month, purchaser);
     }
@@ -1954,6 +1977,7 @@ public class OverviewService {
     /**
      * Детали отзывов CSI (премия 2) для конкретного закупщика: только отзывы выбранного квартала.
      */
+    @Cacheable(CacheConfig.OVERVIEW)
     public List<KpiCsiDetailDto> getKpiCsiDetailsForQuarter(int year, int quarter, String purchaser) {
         logger.info("getKpiCsiDetailsForQuarter: year={}, quarter={}, purchaser={}", year, quarter, purchaser);
         return getKpiCsiDetailsForMonthRange(year, quarterStartMonth(quarter), quarterEndMonth(quarter), purchaser);
@@ -2005,6 +2029,7 @@ public class OverviewService {
         return getSavingsPurchaseDetails(year, null, purchaser);
     }
 
+    @Cacheable(CacheConfig.OVERVIEW)
     public List<OverviewSavingsPurchaseDetailDto> getSavingsPurchaseDetails(int year, Integer month, String purchaser) {
         // Нарастающим итогом: январь–месяц (или весь год, если месяц не указан)
         return getSavingsPurchaseDetailsForMonthRange(year, month != null ? 1 : null, month, purchaser);
@@ -2013,6 +2038,7 @@ public class OverviewService {
     /**
      * Детали закупок с экономией (премия 2) для конкретного закупщика: только завершённые в выбранном квартале.
      */
+    @Cacheable(CacheConfig.OVERVIEW)
     public List<OverviewSavingsPurchaseDetailDto> getSavingsPurchaseDetailsForQuarter(int year, int quarter, String purchaser) {
         logger.info("getSavingsPurchaseDetailsForQuarter: year={}, quarter={}, purchaser={}", year, quarter, purchaser);
         return getSavingsPurchaseDetailsForMonthRange(year, quarterStartMonth(quarter), quarterEndMonth(quarter), purchaser);
@@ -2131,17 +2157,34 @@ public class OverviewService {
      * Дашборд «Закупки по ЦФО»: все заявки (requiresPurchase), обогащённые данными связанного договора.
      * Фильтр по ЦФО (опционально) и по году даты завершения закупки (опционально).
      */
+    @Cacheable(CacheConfig.OVERVIEW)
     public List<OverviewPurchasesByCfoItemDto> getPurchasesByCfo(List<String> cfos, List<Integer> years) {
         // Лёгкая выборка СУЩНОСТЕЙ (cfo предзагружен через @EntityGraph) — без N+1 полного toDto.
-        Page<com.uzproc.backend.entity.purchaserequest.PurchaseRequest> page = purchaseRequestService.findEntities(
-                0, 10000,
-                null, null, null, null,
+        Page<com.uzproc.backend.entity.purchaserequest.PurchaseRequest> page = findPurchasesByCfoPage(cfos, 0, 10000, null);
+        return toPurchasesByCfoItems(page.getContent(), years);
+    }
+
+    /**
+     * Страница заявок дашборда «Закупки по ЦФО» (requiresPurchase, фильтр по ЦФО).
+     * size должен быть больше 1000: на меньших страницах findEntities включает заявки без статуса.
+     */
+    private Page<com.uzproc.backend.entity.purchaserequest.PurchaseRequest> findPurchasesByCfoPage(
+            List<String> cfos, int page, int size, String sortBy) {
+        return purchaseRequestService.findEntities(
+                page, size,
+                null, null, sortBy, sortBy != null ? "asc" : null,
                 null, (cfos != null && !cfos.isEmpty() ? cfos : null),
                 null, null, null, null, null, null, null, null,
                 true, null, false,
                 null, null, null, null, null);
-        List<com.uzproc.backend.entity.purchaserequest.PurchaseRequest> allEntities = new ArrayList<>(page.getContent());
+    }
 
+    /**
+     * Строки дашборда «Закупки по ЦФО» для порции заявок: дата завершения закупки (из согласований),
+     * фильтр по году и данные связанного договора загружаются батчами только для этой порции.
+     */
+    private List<OverviewPurchasesByCfoItemDto> toPurchasesByCfoItems(
+            List<com.uzproc.backend.entity.purchaserequest.PurchaseRequest> allEntities, List<Integer> years) {
         // purchaseCompletionDate вычисляется из согласований закупок — батч-загрузка вместо N+1
         List<Long> allIdPR = allEntities.stream()
                 .map(com.uzproc.backend.entity.purchaserequest.PurchaseRequest::getIdPurchaseRequest)
@@ -2204,61 +2247,35 @@ public class OverviewService {
     }
 
     /**
-     * Выгрузка дашборда «Закупки по ЦФО» в Excel.
+     * Выгрузка дашборда «Закупки по ЦФО» в Excel прямо в поток ответа.
+     * Заявки читаются порциями по id и обогащаются попорционно; после каждой порции контекст
+     * персистентности очищается, так что память не растёт с объёмом выгрузки.
      */
-    public byte[] exportPurchasesByCfoToExcel(List<String> cfos, List<Integer> years) {
-        List<OverviewPurchasesByCfoItemDto> items = getPurchasesByCfo(cfos, years);
-        try (XSSFWorkbook workbook = new XSSFWorkbook()) {
-            Sheet sheet = workbook.createSheet("Закупки по ЦФО");
-
-            CellStyle headerStyle = workbook.createCellStyle();
-            Font headerFont = workbook.createFont();
-            headerFont.setBold(true);
-            headerStyle.setFont(headerFont);
-            headerStyle.setFillForegroundColor(IndexedColors.GREY_25_PERCENT.getIndex());
-            headerStyle.setFillPattern(FillPatternType.SOLID_FOREGROUND);
-
-            String[] headers = {"ЦФО", "Наименование", "Статус заявки", "Сумма заявки", "Сумма договора", "Дата завершения закупки", "Контрагент"};
-            Row headerRow = sheet.createRow(0);
-            for (int i = 0; i < headers.length; i++) {
-                Cell cell = headerRow.createCell(i);
-                cell.setCellValue(headers[i]);
-                cell.setCellStyle(headerStyle);
-            }
-
-            DateTimeFormatter dateFmt = DateTimeFormatter.ofPattern("dd.MM.yyyy");
-            int rowIdx = 1;
-            for (OverviewPurchasesByCfoItemDto item : items) {
-                Row row = sheet.createRow(rowIdx++);
-                row.createCell(0).setCellValue(item.getCfo() != null ? item.getCfo() : "");
-                row.createCell(1).setCellValue(item.getName() != null ? item.getName() : "");
-                row.createCell(2).setCellValue(item.getStatus() != null ? item.getStatus() : "");
-                if (item.getBudgetAmount() != null) {
-                    row.createCell(3).setCellValue(item.getBudgetAmount().doubleValue());
-                }
-                if (item.getLinkedContractAmount() != null) {
-                    row.createCell(4).setCellValue(item.getLinkedContractAmount().doubleValue());
-                }
-                if (item.getPurchaseCompletionDate() != null) {
-                    try {
-                        LocalDateTime dt = LocalDateTime.parse(item.getPurchaseCompletionDate(), ISO_FORMAT);
-                        row.createCell(5).setCellValue(dt.format(dateFmt));
-                    } catch (Exception e) {
-                        row.createCell(5).setCellValue(item.getPurchaseCompletionDate());
+    public void exportPurchasesByCfoToExcel(List<String> cfos, List<Integer> years, OutputStream out) {
+        List<ExcelColumn<OverviewPurchasesByCfoItemDto>> columns = List.of(
+                ExcelColumn.of("ЦФО", item -> item.getCfo() != null ? item.getCfo() : ""),
+                ExcelColumn.of("Наименование", item -> item.getName() != null ? item.getName() : ""),
+                ExcelColumn.of("Статус заявки", item -> item.getStatus() != null ? item.getStatus() : ""),
+                ExcelColumn.of("Сумма заявки", OverviewPurchasesByCfoItemDto::getBudgetAmount),
+                ExcelColumn.of("Сумма договора", OverviewPurchasesByCfoItemDto::getLinkedContractAmount),
+                ExcelColumn.of("Дата завершения закупки", item -> {
+                    if (item.getPurchaseCompletionDate() == null) {
+                        return null;
                     }
-                }
-                row.createCell(6).setCellValue(item.getLinkedContractCounterparty() != null ? item.getLinkedContractCounterparty() : "");
-            }
-
-            for (int i = 0; i < headers.length; i++) {
-                sheet.autoSizeColumn(i);
-            }
-
-            ByteArrayOutputStream out = new ByteArrayOutputStream();
-            workbook.write(out);
-            return out.toByteArray();
-        } catch (IOException e) {
-            throw new RuntimeException("Ошибка при формировании Excel: " + e.getMessage(), e);
-        }
+                    LocalDateTime completionDate = parseIsoDateTime(item.getPurchaseCompletionDate());
+                    return completionDate != null ? completionDate : item.getPurchaseCompletionDate();
+                }),
+                ExcelColumn.of("Контрагент", item -> item.getLinkedContractCounterparty() != null ? item.getLinkedContractCounterparty() : ""));
+
+        streamingExcelExporter.export(out, "Закупки по ЦФО", columns, sink -> {
+            KeysetPaginationService.Position position = new KeysetPaginationService.Position(true, null);
+            do {
+                PurchaseRequestService.EntityChunk chunk = purchaseRequestService.findEntitiesChunk(
+                        position, PURCHASES_BY_CFO_EXPORT_CHUNK, (cfos != null && !cfos.isEmpty() ? cfos : null), true, false);
+                sink.accept(toPurchasesByCfoItems(chunk.entities(), years));
+                entityManager.clear();
+                position = chunk.next();
+            } while (position != null);
+        });
     }
 }
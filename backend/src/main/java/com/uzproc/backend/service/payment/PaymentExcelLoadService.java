@@ -1,29 +1,25 @@
 package com.uzproc.backend.service.payment;
 
-import com.uzproc.backend.entity.Cfo;
 import com.uzproc.backend.entity.payment.Payment;
 import com.uzproc.backend.entity.payment.PaymentRequestStatus;
 import com.uzproc.backend.entity.payment.PaymentStatus;
 import com.uzproc.backend.entity.purchaserequest.PurchaseRequest;
 import com.uzproc.backend.entity.supplier.Supplier;
-import com.uzproc.backend.entity.user.User;
 import com.uzproc.backend.entity.contract.Contract;
-import com.uzproc.backend.repository.CfoRepository;
 import com.uzproc.backend.repository.contract.ContractRepository;
 import com.uzproc.backend.repository.payment.PaymentRepository;
 import com.uzproc.backend.repository.purchaserequest.PurchaseRequestRepository;
-import com.uzproc.backend.repository.supplier.SupplierRepository;
-import com.uzproc.backend.repository.user.UserRepository;
-import org.apache.poi.hssf.usermodel.HSSFWorkbook;
+import com.uzproc.backend.service.excel.ImportPerson;
+import com.uzproc.backend.service.excel.ImportReferenceData;
+import com.uzproc.backend.service.excel.ImportReferenceDataService;
+import com.uzproc.backend.service.excel.StreamingSheetReader;
 import org.apache.poi.ss.usermodel.*;
-import org.apache.poi.xssf.usermodel.XSSFWorkbook;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
 import java.io.File;
-import java.io.FileInputStream;
 import java.io.IOException;
 import java.math.BigDecimal;
 import java.time.Instant;
@@ -34,7 +30,6 @@ import java.time.format.DateTimeParseException;
 import java.util.Date;
 import java.util.HashMap;
 import java.util.HashSet;
-import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 import java.util.Optional;
@@ -80,24 +75,19 @@ public class PaymentExcelLoadService {
     private static final Pattern REQUEST_NUMBER_M_CONSTRUCTION = Pattern.compile("M-Construction\\s+(\\d+)");
 
     private final PaymentRepository paymentRepository;
-    private final CfoRepository cfoRepository;
     private final PurchaseRequestRepository purchaseRequestRepository;
     private final ContractRepository contractRepository;
-    private final UserRepository userRepository;
-    private final SupplierRepository supplierRepository;
+    private final ImportReferenceDataService referenceDataService;
     private final DataFormatter dataFormatter = new DataFormatter();
 
-    public PaymentExcelLoadService(PaymentRepository paymentRepository, CfoRepository cfoRepository,
+    public PaymentExcelLoadService(PaymentRepository paymentRepository,
                                   PurchaseRequestRepository purchaseRequestRepository,
                                   ContractRepository contractRepository,
-                                  UserRepository userRepository,
-                                  SupplierRepository supplierRepository) {
+                                  ImportReferenceDataService referenceDataService) {
         this.paymentRepository = paymentRepository;
-        this.cfoRepository = cfoRepository;
         this.purchaseRequestRepository = purchaseRequestRepository;
         this.contractRepository = contractRepository;
-        this.userRepository = userRepository;
-        this.supplierRepository = supplierRepository;
+        this.referenceDataService = referenceDataService;
     }
 
     /**
@@ -107,39 +97,18 @@ public class PaymentExcelLoadService {
      */
     @Transactional
     public int loadPaymentsFromExcel(File excelFile) throws IOException {
-        Workbook workbook;
-        try (FileInputStream fis = new FileInputStream(excelFile)) {
-            if (excelFile.getName().endsWith(".xlsx")) {
-                workbook = new XSSFWorkbook(fis);
-            } else {
-                workbook = new HSSFWorkbook(fis);
-            }
-        }
-
-        try {
-            Sheet sheet = workbook.getSheetAt(0);
-            Row headerRow = null;
-            int headerRowIndex = -1;
-            Map<String, Integer> columnIndexMap = null;
-
-            for (int i = 0; i < Math.min(10, sheet.getLastRowNum() + 1); i++) {
-                Row row = sheet.getRow(i);
-                if (row == null) continue;
+        try (StreamingSheetReader reader = StreamingSheetReader.open(excelFile);
+             StreamingSheetReader.SheetCursor sheet = reader.openSheet(0)) {
+            Row headerRow = sheet.findHeaderRow(10, row -> {
                 Map<String, Integer> tempMap = buildColumnIndexMap(row);
-                Integer amountIdx = findColumnIndex(tempMap, AMOUNT_COLUMN);
-                Integer cfoIdx = findColumnIndex(tempMap, CFO_COLUMN);
-                if (amountIdx != null || cfoIdx != null) {
-                    headerRow = row;
-                    headerRowIndex = i;
-                    columnIndexMap = tempMap;
-                    break;
-                }
-            }
+                return findColumnIndex(tempMap, AMOUNT_COLUMN) != null || findColumnIndex(tempMap, CFO_COLUMN) != null;
+            });
 
-            if (columnIndexMap == null) {
+            if (headerRow == null) {
                 logger.warn("Payments: header row not found in file {} (checked first 10 rows)", excelFile.getName());
                 return 0;
             }
+            Map<String, Integer> columnIndexMap = buildColumnIndexMap(headerRow);
 
             Integer numberColumnIndex = findColumnIndex(columnIndexMap, NUMBER_COLUMN);
             Integer amountColumnIndex = findColumnIndex(columnIndexMap, AMOUNT_COLUMN);
@@ -169,20 +138,16 @@ public class PaymentExcelLoadService {
                 return 0;
             }
 
-            Iterator<Row> rowIterator = sheet.iterator();
-            for (int i = 0; i <= headerRowIndex && rowIterator.hasNext(); i++) {
-                rowIterator.next();
-            }
-
+            ImportReferenceData referenceData = referenceDataService.open();
             int loadedCount = 0;
             int skippedNoMainId = 0;
             int skippedDuplicateMainId = 0;
             Set<String> mainIdsSeenInFile = new HashSet<>();
-            while (rowIterator.hasNext()) {
-                Row row = rowIterator.next();
+            while (sheet.hasNext()) {
+                Row row = sheet.next();
                 if (isRowEmpty(row)) continue;
                 try {
-                    Payment payment = parsePaymentRow(row, numberColumnIndex, amountColumnIndex, cfoColumnIndex, commentColumnIndex, paymentStatusColumnIndex, requestStatusColumnIndex, plannedExpenseDateColumnIndex, paymentDateColumnIndex, counterpartyColumnIndex, innColumnIndex, executorColumnIndex, responsibleColumnIndex);
+                    Payment payment = parsePaymentRow(row, referenceData, numberColumnIndex, amountColumnIndex, cfoColumnIndex, commentColumnIndex, paymentStatusColumnIndex, requestStatusColumnIndex, plannedExpenseDateColumnIndex, paymentDateColumnIndex, counterpartyColumnIndex, innColumnIndex, executorColumnIndex, responsibleColumnIndex);
                     // Загружаем только строки с основным номером (Номер); строки без номера — мусор, пропускаем
                     if (payment == null || payment.getMainId() == null || payment.getMainId().trim().isEmpty()) {
                         skippedNoMainId++;
@@ -199,6 +164,9 @@ public class PaymentExcelLoadService {
                         continue;
                     }
                     mainIdsSeenInFile.add(mainIdTrimmed);
+                    // Новые ЦФО, контрагенты и пользователи строки записываются до оплаты, которая на них ссылается
+                    referenceData.flushPending();
+                    dropUnsavedReferences(payment);
                     // Сопоставление только по mainId (номер оплаты). Не ищем по комментарию:
                     // к одной заявке может быть несколько оплат с одинаковым текстом в комментарии.
                     Optional<Payment> existingOpt = paymentRepository.findFirstByMainId(mainIdTrimmed);
@@ -218,15 +186,14 @@ public class PaymentExcelLoadService {
                 }
             }
 
-            logger.info("Loaded {} payments from file {} (skipped without mainId: {}, skipped duplicate mainId in file: {})",
-                    loadedCount, excelFile.getName(), skippedNoMainId, skippedDuplicateMainId);
+            referenceData.flushPending();
+            logger.info("Loaded {} payments from file {} (skipped without mainId: {}, skipped duplicate mainId in file: {}; reference data: {})",
+                    loadedCount, excelFile.getName(), skippedNoMainId, skippedDuplicateMainId, referenceData.describe());
             return loadedCount;
-        } finally {
-            workbook.close();
         }
     }
 
-    private Payment parsePaymentRow(Row row, Integer numberColumnIndex, Integer amountColumnIndex, Integer cfoColumnIndex, Integer commentColumnIndex,
+    private Payment parsePaymentRow(Row row, ImportReferenceData referenceData, Integer numberColumnIndex, Integer amountColumnIndex, Integer cfoColumnIndex, Integer commentColumnIndex,
                                     Integer paymentStatusColumnIndex, Integer requestStatusColumnIndex,
                                     Integer plannedExpenseDateColumnIndex, Integer paymentDateColumnIndex,
                                     Integer counterpartyColumnIndex, Integer innColumnIndex,
@@ -258,13 +225,7 @@ public class PaymentExcelLoadService {
             Cell cell = row.getCell(cfoColumnIndex);
             String cfoStr = getCellValueAsString(cell);
             if (cfoStr != null && !cfoStr.trim().isEmpty()) {
-                String trimmed = cfoStr.trim();
-                Optional<Cfo> cfoOpt = cfoRepository.findByNameIgnoreCase(trimmed);
-                Cfo cfo = cfoOpt.orElseGet(() -> {
-                    Cfo newCfo = new Cfo(trimmed);
-                    return cfoRepository.save(newCfo);
-                });
-                payment.setCfo(cfo);
+                payment.setCfo(referenceData.resolveCfo(cfoStr));
             }
         }
 
@@ -333,7 +294,7 @@ public class PaymentExcelLoadService {
 
         // Связь с контрагентом из справочника: ищем по ИНН, при отсутствии — создаём
         String inn = innColumnIndex != null ? normalizeInn(getCellValueAsString(row.getCell(innColumnIndex))) : null;
-        Supplier supplier = findOrCreateSupplier(inn, counterpartyName);
+        Supplier supplier = findOrCreateSupplier(referenceData, inn, counterpartyName);
         if (supplier != null) {
             payment.setSupplier(supplier);
         }
@@ -342,10 +303,7 @@ public class PaymentExcelLoadService {
             Cell cell = row.getCell(executorColumnIndex);
             String value = getCellValueAsString(cell);
             if (value != null && !value.trim().isEmpty()) {
-                User executor = findOrCreateUser(value.trim());
-                if (executor != null) {
-                    payment.setExecutor(executor);
-                }
+                payment.setExecutor(referenceData.resolveUser(ImportPerson.parse(value.trim())));
             }
         }
 
@@ -353,10 +311,7 @@ public class PaymentExcelLoadService {
             Cell cell = row.getCell(responsibleColumnIndex);
             String value = getCellValueAsString(cell);
             if (value != null && !value.trim().isEmpty()) {
-                User responsible = findOrCreateUser(value.trim());
-                if (responsible != null) {
-                    payment.setResponsible(responsible);
-                }
+                payment.setResponsible(referenceData.resolveUser(ImportPerson.parse(value.trim())));
             }
         }
 
@@ -513,105 +468,32 @@ public class PaymentExcelLoadService {
      *
      * @return найденный или созданный поставщик, либо null, если сопоставить не по чему
      */
-    private Supplier findOrCreateSupplier(String inn, String counterpartyName) {
+    private Supplier findOrCreateSupplier(ImportReferenceData referenceData, String inn, String counterpartyName) {
         if (inn != null) {
-            Optional<Supplier> existingOpt = supplierRepository.findFirstByInn(inn);
-            if (existingOpt.isPresent()) {
-                Supplier existing = existingOpt.get();
-                // Наименование в справочнике может быть пустым — заполняем из выгрузки оплат
-                if ((existing.getName() == null || existing.getName().isBlank())
-                        && counterpartyName != null && !counterpartyName.isBlank()) {
-                    existing.setName(counterpartyName);
-                    return supplierRepository.save(existing);
-                }
-                return existing;
-            }
-            Supplier created = new Supplier();
-            created.setCode(inn);
-            created.setInn(inn);
-            created.setName(counterpartyName);
-            logger.info("Payments: creating supplier from payment row (inn={}, name={})", inn, counterpartyName);
-            return supplierRepository.save(created);
+            return referenceData.resolveSupplier(inn, counterpartyName);
         }
         if (counterpartyName != null && !counterpartyName.isBlank()) {
-            return supplierRepository.findFirstByNameIgnoreCase(counterpartyName).orElse(null);
+            return referenceData.findSupplierByName(counterpartyName).orElse(null);
         }
         return null;
     }
 
     /**
-     * Парсит строку формата "Фамилия Имя (Отдел, Должность)" или "Фамилия Имя",
-     * находит пользователя по surname и name или создаёт нового (как в EntityExcelLoadService.parseAndSaveUser).
-     *
-     * @return User найденный или созданный пользователь, или null при ошибке парсинга
+     * Снимает ссылки на справочные записи, которые не удалось сохранить (id = null),
+     * чтобы оплата сохранилась без них, а не упала на несохранённой связи.
      */
-    private User findOrCreateUser(String executorValue) {
-        try {
-            String surname = null;
-            String name = null;
-            String department = null;
-            String position = null;
-
-            int openBracketIndex = executorValue.indexOf('(');
-            int closeBracketIndex = executorValue.indexOf(')');
-
-            if (openBracketIndex > 0 && closeBracketIndex > openBracketIndex) {
-                String namePart = executorValue.substring(0, openBracketIndex).trim();
-                String departmentPart = executorValue.substring(openBracketIndex + 1, closeBracketIndex).trim();
-                String[] nameParts = namePart.split("\\s+", 2);
-                if (nameParts.length >= 1) surname = nameParts[0].trim();
-                if (nameParts.length >= 2) name = nameParts[1].trim();
-                String[] deptParts = departmentPart.split(",", 2);
-                if (deptParts.length >= 1) department = deptParts[0].trim();
-                if (deptParts.length >= 2) position = deptParts[1].trim();
-            } else {
-                String[] nameParts = executorValue.split("\\s+", 2);
-                if (nameParts.length >= 1) surname = nameParts[0].trim();
-                if (nameParts.length >= 2) name = nameParts[1].trim();
-            }
-
-            String username = (surname != null ? surname : "") + (name != null ? "_" + name : "");
-            if (username.isEmpty() || username.equals("_")) {
-                username = "user_" + System.currentTimeMillis();
-            }
-
-            User existingUser = null;
-            if (surname != null && name != null) {
-                existingUser = userRepository.findBySurnameAndName(surname, name).orElse(null);
-            }
-            if (existingUser == null) {
-                existingUser = userRepository.findByUsername(username).orElse(null);
-            }
-
-            if (existingUser != null) {
-                boolean updated = false;
-                if (department != null && !department.equals(existingUser.getDepartment())) {
-                    existingUser.setDepartment(department);
-                    updated = true;
-                }
-                if (position != null && !position.equals(existingUser.getPosition())) {
-                    existingUser.setPosition(position);
-                    updated = true;
-                }
-                if (updated) {
-                    userRepository.save(existingUser);
-                }
-                return existingUser;
-            }
-
-            User newUser = new User();
-            newUser.setUsername(username);
-            newUser.setPassword("");
-            newUser.setSurname(surname);
-            newUser.setName(name);
-            newUser.setDepartment(department);
-            newUser.setPosition(position);
-            newUser = userRepository.save(newUser);
-            logger.debug("Created user for executor: {} {}", surname, name);
-            return newUser;
-        } catch (Exception e) {
-            logger.warn("Error parsing executor '{}': {}", executorValue, e.getMessage());
-            return null;
+    private static void dropUnsavedReferences(Payment payment) {
+        if (payment.getCfo() != null && payment.getCfo().getId() == null) {
+            payment.setCfo(null);
+        }
+        if (payment.getSupplier() != null && payment.getSupplier().getId() == null) {
+            payment.setSupplier(null);
+        }
+        if (payment.getExecutor() != null && payment.getExecutor().getId() == null) {
+            payment.setExecutor(null);
+        }
+        if (payment.getResponsible() != null && payment.getResponsible().getId() == null) {
+            payment.setResponsible(null);
         }
     }
 
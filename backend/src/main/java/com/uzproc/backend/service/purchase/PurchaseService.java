@@ -1,14 +1,20 @@
 package com.uzproc.backend.service.purchase;
 
+import com.uzproc.backend.dto.common.KeysetPageDto;
 import com.uzproc.backend.dto.purchase.PurchaseDto;
+import com.uzproc.backend.dto.purchase.PurchaseListItemDto;
 import com.uzproc.backend.entity.purchase.Purchase;
 import com.uzproc.backend.entity.purchaserequest.PurchaseRequest;
+import com.uzproc.backend.event.KpiInputsChangedEvent;
 import com.uzproc.backend.entity.purchase.PurchaseApproval;
+import com.uzproc.backend.repository.purchase.PurchaseListRow;
 import com.uzproc.backend.repository.purchase.PurchaseRepository;
 import com.uzproc.backend.repository.purchase.PurchaseApprovalRepository;
+import com.uzproc.backend.service.keyset.KeysetPaginationService;
 import jakarta.persistence.criteria.Predicate;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.context.ApplicationEventPublisher;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.PageRequest;
 import org.springframework.data.domain.Pageable;
@@ -24,6 +30,7 @@ import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 import java.util.stream.Collectors;
 
 @Service
@@ -34,10 +41,15 @@ public class PurchaseService {
     
     private final PurchaseRepository purchaseRepository;
     private final PurchaseApprovalRepository purchaseApprovalRepository;
+    private final KeysetPaginationService keysetPaginationService;
+    private final ApplicationEventPublisher eventPublisher;
 
-    public PurchaseService(PurchaseRepository purchaseRepository, PurchaseApprovalRepository purchaseApprovalRepository) {
+    public PurchaseService(PurchaseRepository purchaseRepository, PurchaseApprovalRepository purchaseApprovalRepository,
+                           KeysetPaginationService keysetPaginationService, ApplicationEventPublisher eventPublisher) {
         this.purchaseRepository = purchaseRepository;
         this.purchaseApprovalRepository = purchaseApprovalRepository;
+        this.keysetPaginationService = keysetPaginationService;
+        this.eventPublisher = eventPublisher;
     }
 
     public Page<PurchaseDto> findAll(
@@ -83,6 +95,67 @@ public class PurchaseService {
         return dtoPage;
     }
 
+    /**
+     * Лёгкий список закупок с keyset-пагинацией по id: те же фильтры, что у {@link #findAll}, но без OFFSET,
+     * COUNT(*) и {@link #toDto}. Строки — плоская проекция колонок; номера связанных договоров — одним запросом на страницу.
+     *
+     * @param cursor  токен из предыдущей страницы (nextCursor); null — первая страница
+     * @param sortDir направление по id для первой страницы (asc/desc, по умолчанию desc — новые сверху)
+     * @throws IllegalArgumentException если токен повреждён
+     */
+    @Transactional(readOnly = true)
+    public KeysetPageDto<PurchaseListItemDto> findKeyset(
+            String cursor,
+            int size,
+            String sortDir,
+            Integer year,
+            Integer month,
+            String innerId,
+            Long purchaseNumber,
+            List<String> cfo,
+            String purchaseInitiator,
+            String name,
+            String costType,
+            String contractType,
+            Long purchaseRequestId,
+            List<String> purchaser,
+            List<String> status,
+            java.math.BigDecimal budgetAmount,
+            String budgetAmountOperator,
+            String purchaseMethod) {
+
+        KeysetPaginationService.Position position = KeysetPaginationService.position(cursor, sortDir);
+        Specification<Purchase> spec = buildSpecification(
+                year, month, innerId, purchaseNumber, cfo, purchaseInitiator, name, costType, contractType, purchaseRequestId, purchaser, status, budgetAmount, budgetAmountOperator, purchaseMethod);
+        KeysetPaginationService.IdPage idPage = keysetPaginationService.findIds(Purchase.class, spec, position, size);
+        if (idPage.ids().isEmpty()) {
+            return new KeysetPageDto<>(List.of(), null);
+        }
+
+        Map<Long, PurchaseListRow> rowsById = new HashMap<>();
+        for (PurchaseListRow row : purchaseRepository.findListRowsByIdIn(idPage.ids())) {
+            rowsById.put(row.getId(), row);
+        }
+        Map<Long, List<String>> contractInnerIdsById = new HashMap<>();
+        for (Object[] row : purchaseRepository.findContractInnerIdsByPurchaseIdIn(idPage.ids())) {
+            contractInnerIdsById.computeIfAbsent(((Number) row[0]).longValue(), k -> new ArrayList<>()).add((String) row[1]);
+        }
+
+        List<PurchaseListItemDto> items = new ArrayList<>(idPage.ids().size());
+        for (Long id : idPage.ids()) {
+            PurchaseListRow r = rowsById.get(id);
+            if (r == null) {
+                continue;
+            }
+            items.add(new PurchaseListItemDto(
+                    r.getId(), r.getPurchaseNumber(), r.getPurchaseCreationDate(), r.getInnerId(), r.getName(),
+                    r.getTitle(), r.getCfo(), r.getPurchaseMethod(), r.getPurchaseInitiator(), r.getBudgetAmount(),
+                    r.getCurrency(), r.getStatus(), r.getSavings(), r.getPurchaseRequestId(),
+                    contractInnerIdsById.getOrDefault(id, List.of())));
+        }
+        return new KeysetPageDto<>(items, KeysetPaginationService.token(idPage.next()));
+    }
+
     public PurchaseDto findById(Long id) {
         Purchase purchase = purchaseRepository.findById(id)
                 .orElse(null);
@@ -106,6 +179,10 @@ public class PurchaseService {
         }
         purchaseRepository.save(purchase);
         logger.info("Updated savingsType for purchase {}: {}", purchase.getInnerId(), savingsTypeStr);
+        if (purchase.getPurchaseRequestId() != null) {
+            // Тип экономии — разрез дашборда экономии «Обзора»
+            eventPublisher.publishEvent(new KpiInputsChangedEvent(Set.of(purchase.getPurchaseRequestId())));
+        }
         return toDto(purchase);
     }
 
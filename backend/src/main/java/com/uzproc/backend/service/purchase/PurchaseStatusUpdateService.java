@@ -3,10 +3,12 @@ package com.uzproc.backend.service.purchase;
 import com.uzproc.backend.entity.purchase.Purchase;
 import com.uzproc.backend.entity.purchase.PurchaseApproval;
 import com.uzproc.backend.entity.purchase.PurchaseStatus;
+import com.uzproc.backend.event.DataChangedEvent;
 import com.uzproc.backend.repository.purchase.PurchaseApprovalRepository;
 import com.uzproc.backend.repository.purchase.PurchaseRepository;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.context.ApplicationEventPublisher;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Propagation;
 import org.springframework.transaction.annotation.Transactional;
@@ -27,15 +29,18 @@ public class PurchaseStatusUpdateService {
 
     private final PurchaseRepository purchaseRepository;
     private final PurchaseApprovalRepository purchaseApprovalRepository;
+    private final ApplicationEventPublisher eventPublisher;
 
     @PersistenceContext
     private EntityManager entityManager;
 
     public PurchaseStatusUpdateService(
             PurchaseRepository purchaseRepository,
-            PurchaseApprovalRepository purchaseApprovalRepository) {
+            PurchaseApprovalRepository purchaseApprovalRepository,
+            ApplicationEventPublisher eventPublisher) {
         this.purchaseRepository = purchaseRepository;
         this.purchaseApprovalRepository = purchaseApprovalRepository;
+        this.eventPublisher = eventPublisher;
     }
 
     /**
@@ -152,9 +157,11 @@ public class PurchaseStatusUpdateService {
      * Массовое обновление статусов для всех закупок
      * Используется после парсинга данных для обновления всех статусов
      * Каждая обработка записи выполняется в отдельной транзакции с явным flush для освобождения соединения
+     *
+     * @return количество записей, обновить которые не удалось
      */
     @Transactional
-    public void updateAllStatuses() {
+    public int updateAllStatuses() {
         logger.info("Starting mass status update for all purchases");
         long startTime = System.currentTimeMillis();
 
@@ -192,6 +199,8 @@ public class PurchaseStatusUpdateService {
         long processingTime = System.currentTimeMillis() - startTime;
         logger.info("Mass purchase status update completed: {} purchases processed, {} updated, {} errors, time: {} ms",
             allPurchases.size(), updatedCount, errorCount, processingTime);
+        eventPublisher.publishEvent(new DataChangedEvent(DataChangedEvent.SOURCE_STATUS_UPDATE, true));
+        return errorCount;
     }
     
     /**
@@ -207,8 +216,9 @@ public class PurchaseStatusUpdateService {
      * Каждая обработка записи выполняется в отдельной транзакции
      *
      * @param purchaseRequestIds список purchaseRequestId закупок для обновления
+     * @return количество записей, обновить которые не удалось
      */
-    public void updateStatuses(List<Long> purchaseRequestIds) {
+    public int updateStatuses(List<Long> purchaseRequestIds) {
         logger.info("Starting status update for {} purchases", purchaseRequestIds.size());
         long startTime = System.currentTimeMillis();
 
@@ -229,6 +239,7 @@ public class PurchaseStatusUpdateService {
         long processingTime = System.currentTimeMillis() - startTime;
         logger.info("Purchase status update completed: {} purchases processed, {} updated, {} errors, time: {} ms",
             purchaseRequestIds.size(), updatedCount, errorCount, processingTime);
+        return errorCount;
     }
 }
 
@@ -5,29 +5,26 @@ import com.uzproc.backend.entity.Company;
 import com.uzproc.backend.entity.user.User;
 import com.uzproc.backend.entity.purchaseplan.PurchasePlanItem;
 import com.uzproc.backend.entity.purchaseplan.PurchasePlanItemStatus;
-import com.uzproc.backend.repository.CfoRepository;
 import com.uzproc.backend.repository.purchaseplan.PurchasePlanItemRepository;
-import com.uzproc.backend.repository.user.UserRepository;
 import com.uzproc.backend.service.calendar.WorkingDayService;
 import com.uzproc.backend.service.excel.FileProcessingStatsService;
-import org.apache.poi.hssf.usermodel.HSSFWorkbook;
+import com.uzproc.backend.service.excel.ImportReferenceData;
+import com.uzproc.backend.service.excel.ImportReferenceDataService;
+import com.uzproc.backend.service.excel.StreamingSheetReader;
 import org.apache.poi.ss.usermodel.*;
 import org.apache.poi.ss.usermodel.DataFormatter;
-import org.apache.poi.xssf.usermodel.XSSFWorkbook;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
 import java.io.File;
-import java.io.FileInputStream;
 import java.io.IOException;
 import java.math.BigDecimal;
 import java.time.LocalDate;
 import java.time.ZoneId;
 import java.util.Date;
 import java.util.HashMap;
-import java.util.Iterator;
 import java.util.List;
 import java.util.ArrayList;
 import java.util.Map;
@@ -73,33 +70,52 @@ public class PurchasePlanExcelLoadService {
     };
 
     private final PurchasePlanItemRepository purchasePlanItemRepository;
-    private final CfoRepository cfoRepository;
-    private final UserRepository userRepository;
+    private final ImportReferenceDataService referenceDataService;
     private final DataFormatter dataFormatter = new DataFormatter();
     private final FileProcessingStatsService statsService;
     private final WorkingDayService workingDayService;
     
-    // Кеш ЦФО для оптимизации (загружается один раз в начале)
-    private Map<String, Cfo> cfoCache = null;
+    // Справочники ЦФО и пользователей текущего импорта (предзагружаются в начале каждой загрузки)
+    private ImportReferenceData referenceData;
     
     // Batch-списки для накопления сущностей перед сохранением
     private final List<PurchasePlanItem> purchasePlanItemBatch = new ArrayList<>();
-    private final List<Cfo> newCfoBatch = new ArrayList<>();
     private static final int BATCH_SIZE = 100; // Размер пакета для batch-операций
 
     public PurchasePlanExcelLoadService(
             PurchasePlanItemRepository purchasePlanItemRepository,
-            CfoRepository cfoRepository,
-            UserRepository userRepository,
+            ImportReferenceDataService referenceDataService,
             FileProcessingStatsService statsService,
             WorkingDayService workingDayService) {
         this.purchasePlanItemRepository = purchasePlanItemRepository;
-        this.cfoRepository = cfoRepository;
-        this.userRepository = userRepository;
+        this.referenceDataService = referenceDataService;
         this.statsService = statsService;
         this.workingDayService = workingDayService;
     }
 
+    /**
+     * Индекс листа "Данные"; если такого листа нет — первый лист
+     */
+    private static int findDataSheetIndex(StreamingSheetReader reader) {
+        // Ищем лист "Данные"
+        int sheetIndex = -1;
+        for (int i = 0; i < reader.getNumberOfSheets(); i++) {
+            String sheetName = reader.getSheetName(i);
+            if ("Данные".equalsIgnoreCase(sheetName.trim())) {
+                sheetIndex = i;
+                logger.info("Found sheet 'Данные' at index {}", i);
+                break;
+            }
+        }
+        
+        // Если не нашли лист "Данные", используем первый лист
+        if (sheetIndex < 0) {
+            logger.warn("Sheet 'Данные' not found, using first sheet");
+            sheetIndex = 0;
+        }
+        return sheetIndex;
+    }
+
     /**
      * Загружает позиции плана закупок из Excel файла
      * 
@@ -108,45 +124,10 @@ public class PurchasePlanExcelLoadService {
      */
     @Transactional
     public int loadPurchasePlanItemsFromExcel(File excelFile) throws IOException {
-        Workbook workbook;
-        try (FileInputStream fis = new FileInputStream(excelFile)) {
-            if (excelFile.getName().endsWith(".xlsx")) {
-                workbook = new XSSFWorkbook(fis);
-            } else {
-                workbook = new HSSFWorkbook(fis);
-            }
-        }
-
-        try {
-            // Ищем лист "Данные"
-            Sheet sheet = null;
-            for (int i = 0; i < workbook.getNumberOfSheets(); i++) {
-                String sheetName = workbook.getSheetName(i);
-                if ("Данные".equalsIgnoreCase(sheetName.trim())) {
-                    sheet = workbook.getSheetAt(i);
-                    logger.info("Found sheet 'Данные' at index {}", i);
-                    break;
-                }
-            }
-            
-            // Если не нашли лист "Данные", используем первый лист
-            if (sheet == null) {
-                logger.warn("Sheet 'Данные' not found, using first sheet");
-                sheet = workbook.getSheetAt(0);
-            }
-            
-            // Ищем заголовки в первых строках (на случай, если структура файла изменилась)
-            Row headerRow = null;
-            int headerRowIndex = -1;
-            Map<String, Integer> columnIndexMap = null;
-            
-            // Пробуем найти заголовки в первых 10 строках
-            for (int i = 0; i < 10 && i <= sheet.getLastRowNum(); i++) {
-                Row row = sheet.getRow(i);
-                if (row == null) {
-                    continue;
-                }
-                
+        try (StreamingSheetReader reader = StreamingSheetReader.open(excelFile);
+             StreamingSheetReader.SheetCursor sheet = reader.openSheet(findDataSheetIndex(reader))) {
+            // Пробуем найти заголовки в первых 10 строках (на случай, если структура файла изменилась)
+            Row headerRow = sheet.findHeaderRow(10, row -> {
                 Map<String, Integer> tempMap = buildColumnIndexMap(row);
                 
                 // Проверяем, есть ли в этой строке хотя бы несколько ожидаемых колонок
@@ -157,28 +138,15 @@ public class PurchasePlanExcelLoadService {
                 if (tempMap.containsKey(PURCHASE_SUBJECT_COLUMN) || findColumnIndex(tempMap, PURCHASE_SUBJECT_COLUMN) != null) foundColumns++;
                 
                 // Если нашли хотя бы 2 из 4 основных колонок, считаем это заголовками
-                if (foundColumns >= 2) {
-                    headerRow = row;
-                    headerRowIndex = i;
-                    columnIndexMap = tempMap;
-                    logger.info("Found header row at index {} (0-based)", i);
-                    break;
-                }
-            }
+                return foundColumns >= 2;
+            });
             
-            if (headerRow == null || columnIndexMap == null) {
+            if (headerRow == null) {
                 logger.error("Could not find header row in first 10 rows of file {}", excelFile.getName());
                 return 0;
             }
-            
-            // Создаем итератор, начиная со строки после заголовков
-            Iterator<Row> rowIterator = sheet.iterator();
-            // Пропускаем строки до заголовков
-            for (int i = 0; i <= headerRowIndex; i++) {
-                if (rowIterator.hasNext()) {
-                    rowIterator.next();
-                }
-            }
+            logger.info("Found header row at index {} (0-based)", headerRow.getRowNum());
+            Map<String, Integer> columnIndexMap = buildColumnIndexMap(headerRow);
             
             // Находим индексы колонок с альтернативными названиями
             Integer yearColumnIndex = findColumnIndex(columnIndexMap, YEAR_COLUMN);
@@ -324,8 +292,8 @@ public class PurchasePlanExcelLoadService {
                     currentContractAmountColumnIndex, currentContractBalanceColumnIndex, currentContractEndDateColumnIndex,
                     autoRenewalColumnIndex, complexityColumnIndex, holdingColumnIndex, categoryColumnIndex);
             
-            // Загружаем кеш ЦФО один раз в начале
-            loadCfoCache();
+            // Загружаем справочники ЦФО и пользователей один раз в начале
+            referenceData = referenceDataService.open();
             
             // Отслеживаем метод обработки
             String fileName = excelFile.getName();
@@ -340,8 +308,8 @@ public class PurchasePlanExcelLoadService {
             long startTime = System.currentTimeMillis();
             
             // Обрабатываем все строки
-            while (rowIterator.hasNext()) {
-                Row row = rowIterator.next();
+            while (sheet.hasNext()) {
+                Row row = sheet.next();
                 
                 if (isRowEmpty(row)) {
                     continue;
@@ -427,9 +395,6 @@ public class PurchasePlanExcelLoadService {
             
             logger.info("Loaded {} purchase plan items from file {}, skipped {}", loadedCount, excelFile.getName(), skippedCount);
             return loadedCount;
-            
-        } finally {
-            workbook.close();
         }
     }
 
@@ -489,25 +454,8 @@ public class PurchasePlanExcelLoadService {
                 Cell cfoCell = row.getCell(cfoColumnIndex);
                 String cfoStr = getCellValueAsString(cfoCell);
                 if (cfoStr != null && !cfoStr.trim().isEmpty()) {
-                    String trimmedCfo = cfoStr.trim();
-                    String cacheKey = trimmedCfo.toLowerCase();
-                    
-                    // Ищем в кеше
-                    Cfo cfo = cfoCache.get(cacheKey);
-                    
-                    // Если не найдено в кеше, создаем новое и добавляем в batch
-                    if (cfo == null) {
-                        cfo = new Cfo(trimmedCfo);
-                        cfoCache.put(cacheKey, cfo); // Добавляем в кеш сразу
-                        newCfoBatch.add(cfo); // Добавляем в batch для сохранения
-                        logger.debug("Queued new Cfo for batch save: {}", trimmedCfo);
-                        
-                        // Сохраняем batch если он заполнен
-                        if (newCfoBatch.size() >= BATCH_SIZE) {
-                            flushCfoBatch();
-                        }
-                    }
-                    
+                    // Из справочника импорта; новое ЦФО записывается пакетом перед сохранением позиций
+                    Cfo cfo = referenceData.resolveCfo(cfoStr);
                     item.setCfo(cfo);
                 }
             }
@@ -582,16 +530,11 @@ public class PurchasePlanExcelLoadService {
                     String[] parts = trimmedPurchaser.split("\\s+");
                     if (parts.length >= 2) {
                         // Есть фамилия и имя - ищем точное совпадение
-                        purchaserUser = userRepository.findBySurnameAndName(parts[0], parts[1]).orElse(null);
+                        purchaserUser = referenceData.findUser(parts[0], parts[1]).orElse(null);
                     }
                     if (purchaserUser == null) {
-                        // Нечёткий поиск по частичному совпадению ФИО — фильтрация в SQL (LIMIT 1),
-                        // вместо загрузки всей таблицы users в память на каждую строку
-                        List<User> users = userRepository.searchByFuzzyName(
-                                trimmedPurchaser, org.springframework.data.domain.PageRequest.of(0, 1));
-                        if (!users.isEmpty()) {
-                            purchaserUser = users.get(0);
-                        }
+                        // Нечёткий поиск по частичному совпадению ФИО — по предзагруженным пользователям
+                        purchaserUser = referenceData.findUserFuzzy(trimmedPurchaser).orElse(null);
                     }
                     
                     if (purchaserUser != null) {
@@ -1437,57 +1380,22 @@ public class PurchasePlanExcelLoadService {
         return workingDayService.addWorkingDaysAfterDate(requestDate, workingDays);
     }
     
-    /**
-     * Загружает все ЦФО в кеш для быстрого доступа
-     */
-    private void loadCfoCache() {
-        if (cfoCache == null) {
-            cfoCache = new HashMap<>();
-            try {
-                List<Cfo> allCfos = cfoRepository.findAll();
-                for (Cfo cfo : allCfos) {
-                    cfoCache.put(cfo.getName().toLowerCase().trim(), cfo);
-                }
-                logger.info("Loaded {} CFOs into cache for purchase plan", cfoCache.size());
-            } catch (Exception e) {
-                logger.warn("Error loading CFO cache: {}", e.getMessage());
-            }
-        }
-    }
-    
     /**
      * Сохраняет все накопленные сущности пакетами
      */
     private void flushAllBatches() {
-        flushCfoBatch();
+        referenceData.flushPending();
         flushPurchasePlanItemBatch();
     }
     
-    /**
-     * Сохраняет накопленные ЦФО пакетом
-     */
-    private void flushCfoBatch() {
-        if (!newCfoBatch.isEmpty()) {
-            try {
-                List<Cfo> saved = cfoRepository.saveAll(newCfoBatch);
-                // Обновляем кеш с сохраненными ЦФО
-                for (Cfo savedCfo : saved) {
-                    cfoCache.put(savedCfo.getName().toLowerCase().trim(), savedCfo);
-                }
-                logger.debug("Flushed {} CFOs to database", saved.size());
-                newCfoBatch.clear();
-            } catch (Exception e) {
-                logger.error("Error flushing CFO batch: {}", e.getMessage(), e);
-            }
-        }
-    }
-    
     /**
      * Сохраняет накопленные позиции плана закупок пакетом
+     * (сначала — новые ЦФО, на которые ссылаются позиции)
      */
     private void flushPurchasePlanItemBatch() {
         if (!purchasePlanItemBatch.isEmpty()) {
             try {
+                referenceData.flushPending();
                 purchasePlanItemRepository.saveAll(purchasePlanItemBatch);
                 logger.debug("Flushed {} purchase plan items to database", purchasePlanItemBatch.size());
                 purchasePlanItemBatch.clear();
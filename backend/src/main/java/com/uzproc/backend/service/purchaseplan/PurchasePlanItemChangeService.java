@@ -3,6 +3,7 @@ package com.uzproc.backend.service.purchaseplan;
 import com.uzproc.backend.dto.purchaseplan.PurchasePlanItemChangeDto;
 import com.uzproc.backend.entity.purchaseplan.PurchasePlanItemChange;
 import com.uzproc.backend.repository.purchaseplan.PurchasePlanItemChangeRepository;
+import com.uzproc.backend.service.changelog.ChangeLogBatchWriter;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.data.domain.Page;
@@ -10,6 +11,7 @@ import org.springframework.data.domain.PageRequest;
 import org.springframework.data.domain.Pageable;
 import org.springframework.data.domain.Sort;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Propagation;
 import org.springframework.transaction.annotation.Transactional;
 
 import java.time.LocalDate;
@@ -25,14 +27,19 @@ public class PurchasePlanItemChangeService {
     private static final Logger logger = LoggerFactory.getLogger(PurchasePlanItemChangeService.class);
     
     private final PurchasePlanItemChangeRepository changeRepository;
+    private final ChangeLogBatchWriter changeLogBatchWriter;
 
-    public PurchasePlanItemChangeService(PurchasePlanItemChangeRepository changeRepository) {
+    public PurchasePlanItemChangeService(PurchasePlanItemChangeRepository changeRepository,
+                                         ChangeLogBatchWriter changeLogBatchWriter) {
         this.changeRepository = changeRepository;
+        this.changeLogBatchWriter = changeLogBatchWriter;
     }
 
     /**
-     * Записывает изменение поля позиции плана закупок
+     * Записывает изменение поля позиции плана закупок.
+     * Запись отложенная и пакетная: фиксируется вместе с транзакцией вызывающего (см. {@link ChangeLogBatchWriter}).
      */
+    @Transactional(propagation = Propagation.SUPPORTS)
     public void logChange(Long purchasePlanItemId, UUID guid, String fieldName, Object valueBefore, Object valueAfter) {
         try {
             String beforeStr = valueBefore != null ? valueBefore.toString() : null;
@@ -44,16 +51,8 @@ public class PurchasePlanItemChangeService {
                 return;
             }
             
-            PurchasePlanItemChange change = new PurchasePlanItemChange(
-                purchasePlanItemId,
-                guid,
-                fieldName,
-                beforeStr,
-                afterStr
-            );
-            change.setChangeDate(LocalDateTime.now());
-            
-            changeRepository.save(change);
+            changeLogBatchWriter.enqueue(ChangeLogBatchWriter.Target.PURCHASE_PLAN_ITEM, new ChangeLogBatchWriter.PendingChange(
+                purchasePlanItemId, guid, fieldName, beforeStr, afterStr, LocalDateTime.now(), null, null));
             logger.debug("Logged change for purchase plan item {}: field={}, before={}, after={}", 
                 purchasePlanItemId, fieldName, beforeStr, afterStr);
         } catch (Exception e) {
@@ -1,7 +1,9 @@
 package com.uzproc.backend.service.purchaseplan;
 
+import com.uzproc.backend.config.CacheConfig;
 import com.uzproc.backend.dto.purchaseplan.UniqueFilterValuesDto;
 import com.uzproc.backend.dto.purchaseplan.PurchasePlanItemDto;
+import com.uzproc.backend.event.PurchaserChangedEvent;
 import com.uzproc.backend.entity.Company;
 import com.uzproc.backend.entity.Cfo;
 import com.uzproc.backend.entity.user.User;
@@ -29,6 +31,9 @@ import org.springframework.data.domain.PageRequest;
 import org.springframework.data.domain.Pageable;
 import org.springframework.data.domain.Sort;
 import org.springframework.data.jpa.domain.Specification;
+import org.springframework.cache.annotation.CacheEvict;
+import org.springframework.cache.annotation.Cacheable;
+import org.springframework.context.ApplicationEventPublisher;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 import jakarta.persistence.EntityManager;
@@ -38,9 +43,11 @@ import java.math.BigDecimal;
 import java.time.LocalDate;
 import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Optional;
+import java.util.Set;
 import java.util.stream.Collectors;
 
 @Service
@@ -56,9 +63,9 @@ public class PurchasePlanItemService {
     private final PurchaseRequestRepository purchaseRequestRepository;
     private final CfoRepository cfoRepository;
     private final UserRepository userRepository;
-    private final PurchasePlanPurchaserSyncService purchaserSyncService;
     private final PurchaseRequestCommentService purchaseRequestCommentService;
     private final WorkingDayService workingDayService;
+    private final ApplicationEventPublisher eventPublisher;
 
     @PersistenceContext
     private EntityManager entityManager;
@@ -71,9 +78,9 @@ public class PurchasePlanItemService {
             PurchaseRequestRepository purchaseRequestRepository,
             CfoRepository cfoRepository,
             UserRepository userRepository,
-            PurchasePlanPurchaserSyncService purchaserSyncService,
             PurchaseRequestCommentService purchaseRequestCommentService,
-            WorkingDayService workingDayService) {
+            WorkingDayService workingDayService,
+            ApplicationEventPublisher eventPublisher) {
         this.purchasePlanItemRepository = purchasePlanItemRepository;
         this.purchasePlanItemCommentRepository = purchasePlanItemCommentRepository;
         this.purchasePlanItemSupplierRepository = purchasePlanItemSupplierRepository;
@@ -81,9 +88,9 @@ public class PurchasePlanItemService {
         this.purchaseRequestRepository = purchaseRequestRepository;
         this.cfoRepository = cfoRepository;
         this.userRepository = userRepository;
-        this.purchaserSyncService = purchaserSyncService;
         this.purchaseRequestCommentService = purchaseRequestCommentService;
         this.workingDayService = workingDayService;
+        this.eventPublisher = eventPublisher;
     }
 
     public Page<PurchasePlanItemDto> findAll(
@@ -121,16 +128,15 @@ public class PurchasePlanItemService {
                 items.getContent().size(), page, size, items.getTotalElements());
         logger.info("=== END FILTER REQUEST ===\n");
         
-        // Собираем все purchaseRequestId для загрузки статусов заявок и закупщиков одним запросом
+        // Собираем все purchaseRequestId для загрузки статусов заявок одним запросом
         List<Long> purchaseRequestIds = items.getContent().stream()
                 .map(PurchasePlanItem::getPurchaseRequestId)
                 .filter(id -> id != null)
                 .distinct()
                 .collect(Collectors.toList());
         
-        // Загружаем статусы заявок и закупщиков одним запросом
+        // Загружаем статусы заявок одним запросом
         Map<Long, String> purchaseRequestStatusMap = new HashMap<>();
-        Map<Long, String> purchaseRequestPurchaserMap = new HashMap<>(); // purchaseRequestId -> purchaser name
         List<PurchaseRequest> purchaseRequestsList = new ArrayList<>();
         if (!purchaseRequestIds.isEmpty()) {
             // Используем Specification для загрузки заявок по idPurchaseRequest
@@ -144,22 +150,17 @@ public class PurchasePlanItemService {
                     if (pr.getStatus() != null) {
                         purchaseRequestStatusMap.put(pr.getIdPurchaseRequest(), pr.getStatus().getGroupDisplayName());
                     }
-                    // Сохраняем закупщика из заявки для последующей синхронизации
-                    if (pr.getPurchaser() != null && !pr.getPurchaser().trim().isEmpty()) {
-                        purchaseRequestPurchaserMap.put(pr.getIdPurchaseRequest(), pr.getPurchaser().trim());
-                    }
                 }
             }
         }
         
-        // Загружаем всех пользователей (закупщиков) одним запросом
-        // Получаем purchaser_id из всех элементов через нативный запрос
+        // Загружаем закупщиков позиций одним запросом (purchaser_id — через нативный запрос, минуя ленивую связь).
+        // Закупщик из заявки переносится в позиции при её изменении (PurchasePlanPurchaserSyncService),
+        // поэтому здесь только чтение.
         List<Long> itemIds = items.getContent().stream()
                 .map(PurchasePlanItem::getId)
                 .collect(Collectors.toList());
-        
-        // Получаем purchaser_id через нативный запрос
-        List<Long> purchaserIds = new ArrayList<>();
+        Map<Long, Long> itemPurchaserMap = new HashMap<>();
         if (!itemIds.isEmpty()) {
             @SuppressWarnings("unchecked")
             List<Object[]> results = entityManager.createNativeQuery(
@@ -169,112 +170,27 @@ public class PurchasePlanItemService {
             .getResultList();
             
             for (Object[] result : results) {
-                Long purchaserId = ((Number) result[1]).longValue();
-                purchaserIds.add(purchaserId);
+                itemPurchaserMap.put(((Number) result[0]).longValue(), ((Number) result[1]).longValue());
             }
         }
         
-        // Загружаем пользователей одним запросом
         Map<Long, User> purchaserMap = new HashMap<>();
-        if (!purchaserIds.isEmpty()) {
-            List<User> purchasers = userRepository.findAllById(purchaserIds);
-            for (User user : purchasers) {
+        if (!itemPurchaserMap.isEmpty()) {
+            for (User user : userRepository.findAllById(new HashSet<>(itemPurchaserMap.values()))) {
                 purchaserMap.put(user.getId(), user);
             }
         }
         
-        // Создаем Map для связи itemId -> purchaserId
-        Map<Long, Long> itemPurchaserMap = new HashMap<>();
-        if (!itemIds.isEmpty()) {
-            @SuppressWarnings("unchecked")
-            List<Object[]> results = entityManager.createNativeQuery(
-                "SELECT id, purchaser_id FROM purchase_plan_items WHERE id IN :ids AND purchaser_id IS NOT NULL"
-            )
-            .setParameter("ids", itemIds)
-            .getResultList();
-            
-            for (Object[] result : results) {
-                Long itemId = ((Number) result[0]).longValue();
-                Long purchaserId = ((Number) result[1]).longValue();
-                itemPurchaserMap.put(itemId, purchaserId);
-            }
-        }
-        
-        // Устанавливаем загруженных пользователей в entity и подтягиваем закупщика из заявки
-        final Map<Long, Long> finalItemPurchaserMap = itemPurchaserMap;
-        final Map<Long, User> finalPurchaserMap = purchaserMap;
-        final Map<Long, String> finalPurchaseRequestPurchaserMap = purchaseRequestPurchaserMap;
-        
-        // Список позиций, которые нужно синхронизировать (закупщик в заявке отличается)
-        List<PurchasePlanPurchaserSyncService.PurchaserSyncRequest> syncRequests = new ArrayList<>();
-        
         items.getContent().forEach(item -> {
-            Long purchaserId = finalItemPurchaserMap.get(item.getId());
+            Long purchaserId = itemPurchaserMap.get(item.getId());
             if (purchaserId != null) {
-                User purchaserUser = finalPurchaserMap.get(purchaserId);
+                User purchaserUser = purchaserMap.get(purchaserId);
                 if (purchaserUser != null) {
                     item.setPurchaser(purchaserUser);
                 }
             }
-            
-            // Если есть связанная заявка - проверяем синхронизацию закупщика
-            if (item.getPurchaseRequestId() != null) {
-                String purchaserFromRequest = finalPurchaseRequestPurchaserMap.get(item.getPurchaseRequestId());
-                User currentPurchaser = item.getPurchaser();
-                
-                if (purchaserFromRequest != null) {
-                    // В заявке есть закупщик - проверяем, нужно ли обновить в позиции плана
-                    String currentPurchaserName = currentPurchaser != null 
-                        ? (currentPurchaser.getSurname() != null && currentPurchaser.getName() != null 
-                            ? currentPurchaser.getSurname() + " " + currentPurchaser.getName() 
-                            : currentPurchaser.getUsername())
-                        : null;
-                    
-                    // Если закупщики отличаются - добавляем в список для синхронизации
-                    if (currentPurchaserName == null || !purchaserFromRequest.equalsIgnoreCase(currentPurchaserName)) {
-                        // Ищем пользователя по имени закупщика из заявки
-                        User purchaserFromRequestUser = findUserByPurchaserName(purchaserFromRequest);
-                        if (purchaserFromRequestUser != null) {
-                            // Устанавливаем для отображения в текущем запросе
-                            item.setPurchaser(purchaserFromRequestUser);
-                            
-                            // Добавляем в список для синхронизации в БД (установка закупщика)
-                            syncRequests.add(new PurchasePlanPurchaserSyncService.PurchaserSyncRequest(
-                                item.getId(), 
-                                purchaserFromRequestUser.getId()
-                            ));
-                            
-                            logger.debug("Queued purchaser sync (SET) for plan item {}: {} (from request {})",
-                                item.getId(), purchaserFromRequest, item.getPurchaseRequestId());
-                        }
-                    }
-                } else if (currentPurchaser != null) {
-                    // В заявке закупщик очищен (null), но в позиции плана ещё есть - очищаем
-                    // Устанавливаем для отображения в текущем запросе
-                    item.setPurchaser(null);
-                    
-                    // Добавляем в список для синхронизации в БД (очистка закупщика)
-                    syncRequests.add(new PurchasePlanPurchaserSyncService.PurchaserSyncRequest(
-                        item.getId(), 
-                        null,
-                        true  // clearPurchaser = true
-                    ));
-                    
-                    logger.debug("Queued purchaser sync (CLEAR) for plan item {} (from request {})",
-                        item.getId(), item.getPurchaseRequestId());
-                }
-            }
         });
         
-        // Синхронизация закупщиков: обновляем БД, если закупщик в заявке изменился
-        // Каждая позиция обновляется в отдельной REQUIRES_NEW транзакции через PurchasePlanPurchaserSyncTxService
-        if (!syncRequests.isEmpty()) {
-            int syncedCount = purchaserSyncService.syncPurchasersInBatch(syncRequests);
-            if (syncedCount > 0) {
-                logger.info("Auto-synced {} purchasers from {} requests during findAll", syncedCount, syncRequests.size());
-            }
-        }
-        
         // Подсчёт комментариев по позициям плана (для колонки «Комментарии»)
         List<Long> planItemIdsForCommentCount = items.getContent().stream().map(PurchasePlanItem::getId).toList();
         Map<Long, Long> commentCountMap = new HashMap<>();
@@ -487,6 +403,7 @@ public class PurchasePlanItemService {
                 .orElse(null);
     }
 
+    @CacheEvict(cacheNames = CacheConfig.FILTER_VALUES, allEntries = true)
     @Transactional
     public PurchasePlanItemDto updateStatus(Long id, PurchasePlanItemStatus status) {
         return purchasePlanItemRepository.findById(id)
@@ -576,6 +493,7 @@ public class PurchasePlanItemService {
                 .orElse(null);
     }
 
+    @CacheEvict(cacheNames = CacheConfig.FILTER_VALUES, allEntries = true)
     @Transactional
     public PurchasePlanItemDto updateCompany(Long id, Company company) {
         return purchasePlanItemRepository.findById(id)
@@ -599,6 +517,7 @@ public class PurchasePlanItemService {
                 .orElse(null);
     }
 
+    @CacheEvict(cacheNames = CacheConfig.FILTER_VALUES, allEntries = true)
     @Transactional
     public PurchasePlanItemDto updatePurchaserCompany(Long id, Company purchaserCompany) {
         return purchasePlanItemRepository.findById(id)
@@ -811,6 +730,7 @@ public class PurchasePlanItemService {
                 .orElse(null);
     }
 
+    @CacheEvict(cacheNames = CacheConfig.FILTER_VALUES, allEntries = true)
     @Transactional
     public PurchasePlanItemDto updatePurchaser(Long id, Long purchaserId) {
         return purchasePlanItemRepository.findById(id)
@@ -854,6 +774,7 @@ public class PurchasePlanItemService {
                 .orElse(null);
     }
 
+    @CacheEvict(cacheNames = CacheConfig.FILTER_VALUES, allEntries = true)
     @Transactional
     public PurchasePlanItemDto create(PurchasePlanItemDto dto) {
         PurchasePlanItem item = new PurchasePlanItem();
@@ -995,6 +916,10 @@ public class PurchasePlanItemService {
         PurchasePlanItem saved = purchasePlanItemRepository.save(item);
         
         logger.info("Created new purchase plan item with id: {}", saved.getId());
+        if (saved.getPurchaseRequestId() != null) {
+            // Закупщик заявки перенесётся в позицию после фиксации транзакции (PurchasePlanPurchaserSyncService)
+            eventPublisher.publishEvent(new PurchaserChangedEvent(Set.of(saved.getPurchaseRequestId())));
+        }
         return toDto(saved);
     }
 
@@ -1659,6 +1584,7 @@ public class PurchasePlanItemService {
      * "Дек (пред. год)" = декабрь selectedYear = декабрь (year - 1)
      * Январь-декабрь = year (selectedYear + 1)
      */
+    @Cacheable(CacheConfig.FILTER_YEARS)
     public List<Integer> findDistinctYears() {
         return purchasePlanItemRepository.findDistinctYears();
     }
@@ -1666,6 +1592,7 @@ public class PurchasePlanItemService {
     /**
      * Уникальные значения для фильтров (выпадающие списки) без загрузки всех записей.
      */
+    @Cacheable(CacheConfig.FILTER_VALUES)
     public UniqueFilterValuesDto getUniqueFilterValues() {
         List<String> companies = purchasePlanItemRepository.findDistinctCompany().stream()
                 .map(Company::getDisplayName)
@@ -1,314 +1,235 @@
 package com.uzproc.backend.service.purchaseplan;
 
-import com.uzproc.backend.entity.purchaseplan.PurchasePlanItem;
-import com.uzproc.backend.entity.purchaserequest.PurchaseRequest;
+import com.uzproc.backend.event.PurchaserChangedEvent;
 import com.uzproc.backend.entity.user.User;
-import com.uzproc.backend.repository.purchaseplan.PurchasePlanItemRepository;
-import com.uzproc.backend.repository.purchaserequest.PurchaseRequestRepository;
 import com.uzproc.backend.repository.user.UserRepository;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.jdbc.core.JdbcTemplate;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.annotation.Propagation;
 import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.event.TransactionalEventListener;
+import org.springframework.transaction.support.TransactionTemplate;
 
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
+import java.util.Set;
+import java.util.UUID;
 
 /**
  * Сервис для синхронизации закупщика между заявками на закупку и позициями плана закупок.
- * 
- * При изменении закупщика в заявке на закупку, этот сервис обновляет закупщика 
- * во всех связанных позициях плана закупок.
+ * <p>
+ * При изменении закупщика в заявке (правка в интерфейсе или импорт Excel) публикуется {@link PurchaserChangedEvent};
+ * по нему закупщик переносится во все связанные позиции плана одним UPDATE по набору заявок.
+ * Чтение позиций плана ничего не пишет: purchaser_id в позиции уже актуален.
+ * {@link #syncAllLinked()} — сверка всех связанных позиций (этап стартового импорта и административная операция).
  */
 @Service
 public class PurchasePlanPurchaserSyncService {
 
     private static final Logger logger = LoggerFactory.getLogger(PurchasePlanPurchaserSyncService.class);
+    /** Размер порции заявок при полной сверке (каждая порция — своя транзакция). */
+    private static final int CHUNK_SIZE = 1000;
+
+    /** Заявки с привязанными позициями плана и их закупщик (строка "Фамилия Имя"). */
+    private static final String LINKED_REQUESTS_SQL =
+        "SELECT pr.id_purchase_request, pr.purchaser FROM purchase_requests pr " +
+        "WHERE pr.id_purchase_request = ANY (?) " +
+        "AND EXISTS (SELECT 1 FROM purchase_plan_items p WHERE p.purchase_request_id = pr.id_purchase_request)";
+
+    /**
+     * Переносит закупщика заявки во все её позиции плана; строки, где закупщик уже совпадает, не трогаются.
+     * Самосоединение с old даёт прежний purchaser_id для истории изменений.
+     */
+    private static final String UPDATE_SQL =
+        "UPDATE purchase_plan_items p SET purchaser_id = s.purchaser_id " +
+        "FROM unnest(?, ?) AS s(purchase_request_id, purchaser_id), purchase_plan_items old " +
+        "WHERE p.purchase_request_id = s.purchase_request_id AND old.id = p.id " +
+        "AND p.purchaser_id IS DISTINCT FROM s.purchaser_id " +
+        "RETURNING p.id, p.guid, old.purchaser_id, p.purchaser_id";
 
-    private final PurchasePlanItemRepository purchasePlanItemRepository;
-    private final PurchaseRequestRepository purchaseRequestRepository;
     private final UserRepository userRepository;
     private final PurchasePlanItemChangeService purchasePlanItemChangeService;
-    private final PurchasePlanPurchaserSyncTxService purchaserSyncTxService;
+    private final JdbcTemplate jdbcTemplate;
+    private final TransactionTemplate transactionTemplate;
 
     public PurchasePlanPurchaserSyncService(
-            PurchasePlanItemRepository purchasePlanItemRepository,
-            PurchaseRequestRepository purchaseRequestRepository,
             UserRepository userRepository,
             PurchasePlanItemChangeService purchasePlanItemChangeService,
-            PurchasePlanPurchaserSyncTxService purchaserSyncTxService) {
-        this.purchasePlanItemRepository = purchasePlanItemRepository;
-        this.purchaseRequestRepository = purchaseRequestRepository;
+            JdbcTemplate jdbcTemplate,
+            PlatformTransactionManager transactionManager) {
         this.userRepository = userRepository;
         this.purchasePlanItemChangeService = purchasePlanItemChangeService;
-        this.purchaserSyncTxService = purchaserSyncTxService;
+        this.jdbcTemplate = jdbcTemplate;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+    }
+
+    /**
+     * Обработчик {@link PurchaserChangedEvent}: выполняется после фиксации транзакции, сохранившей заявки
+     * (без транзакции — сразу), в собственной транзакции.
+     */
+    @TransactionalEventListener(fallbackExecution = true)
+    @Transactional(propagation = Propagation.REQUIRES_NEW)
+    public void onPurchaserChanged(PurchaserChangedEvent event) {
+        syncPurchasersFromRequests(event.purchaseRequestIds());
+    }
+
+    /**
+     * Сверяет закупщика во всех позициях плана, связанных с заявками (по порциям заявок, каждая в своей транзакции).
+     * Догоняет позиции, закупщик которых разошёлся с заявкой до перехода на синхронизацию по событиям.
+     *
+     * @return количество обновленных позиций плана
+     */
+    public int syncAllLinked() {
+        long startTime = System.currentTimeMillis();
+        List<Long> requestIds = jdbcTemplate.queryForList(
+            "SELECT DISTINCT purchase_request_id FROM purchase_plan_items " +
+            "WHERE purchase_request_id IS NOT NULL ORDER BY purchase_request_id", Long.class);
+        int updated = 0;
+        for (int start = 0; start < requestIds.size(); start += CHUNK_SIZE) {
+            List<Long> chunk = requestIds.subList(start, Math.min(start + CHUNK_SIZE, requestIds.size()));
+            Integer count = transactionTemplate.execute(status -> syncPurchasersFromRequests(chunk));
+            updated += count != null ? count : 0;
+        }
+        logger.info("Purchaser reconciliation: {} linked requests, {} plan items updated, time: {} ms",
+            requestIds.size(), updated, System.currentTimeMillis() - startTime);
+        return updated;
     }
 
     /**
-     * Синхронизирует закупщика из заявки на закупку в позиции плана закупок.
-     * Вызывается при изменении закупщика в заявке на закупку.
-     * 
-     * @param idPurchaseRequest номер заявки на закупку (idPurchaseRequest)
-     * @param purchaserName имя закупщика из заявки (строка "Фамилия Имя")
+     * Синхронизирует закупщика из заявок в связанные позиции плана.
+     * Имя закупщика сопоставляется с пользователем один раз на каждое различающееся имя;
+     * пустой закупщик в заявке очищает закупщика позиций, не найденный пользователь оставляет их как есть.
+     *
+     * @param purchaseRequestIds номера заявок на закупку (idPurchaseRequest)
      * @return количество обновленных позиций плана
      */
     @Transactional
-    public int syncPurchaserFromRequest(Long idPurchaseRequest, String purchaserName) {
-        if (idPurchaseRequest == null) {
-            logger.debug("syncPurchaserFromRequest: idPurchaseRequest is null, skipping");
+    public int syncPurchasersFromRequests(Collection<Long> purchaseRequestIds) {
+        if (purchaseRequestIds == null || purchaseRequestIds.isEmpty()) {
             return 0;
         }
 
-        // Находим все позиции плана, связанные с этой заявкой
-        List<PurchasePlanItem> planItems = purchasePlanItemRepository.findByPurchaseRequestId(idPurchaseRequest);
-        
-        if (planItems.isEmpty()) {
-            logger.debug("syncPurchaserFromRequest: No plan items found for purchaseRequestId={}", idPurchaseRequest);
+        Map<Long, String> purchaserByRequest = new HashMap<>();
+        jdbcTemplate.query(con -> {
+            var ps = con.prepareStatement(LINKED_REQUESTS_SQL);
+            ps.setArray(1, con.createArrayOf("bigint", purchaseRequestIds.toArray()));
+            return ps;
+        }, rs -> {
+            purchaserByRequest.put(rs.getLong(1), rs.getString(2));
+        });
+        if (purchaserByRequest.isEmpty()) {
+            logger.debug("syncPurchasersFromRequests: no plan items linked to {} requests", purchaseRequestIds.size());
             return 0;
         }
 
-        // Ищем пользователя по имени закупщика
-        User purchaserUser = findUserByPurchaserName(purchaserName);
-
-        int updatedCount = 0;
-        for (PurchasePlanItem item : planItems) {
-            User oldPurchaser = item.getPurchaser();
-            
-            // Проверяем, нужно ли обновление
-            boolean needsUpdate = false;
-            if (purchaserUser == null && oldPurchaser != null) {
-                needsUpdate = true;
-            } else if (purchaserUser != null && oldPurchaser == null) {
-                needsUpdate = true;
-            } else if (purchaserUser != null && oldPurchaser != null && !purchaserUser.getId().equals(oldPurchaser.getId())) {
-                needsUpdate = true;
-            }
-
-            if (needsUpdate) {
-                // Формируем имена для логирования
-                String oldPurchaserName = oldPurchaser != null 
-                    ? formatUserName(oldPurchaser)
-                    : null;
-                String newPurchaserName = purchaserUser != null 
-                    ? formatUserName(purchaserUser)
-                    : null;
-
-                // Логируем изменение
-                purchasePlanItemChangeService.logChange(
-                    item.getId(),
-                    item.getGuid(),
-                    "purchaser",
-                    oldPurchaserName,
-                    newPurchaserName
-                );
-
-                item.setPurchaser(purchaserUser);
-                purchasePlanItemRepository.save(item);
-                updatedCount++;
-                
-                logger.info("Synced purchaser for plan item {}: {} -> {} (from purchaseRequest {})",
-                    item.getId(), oldPurchaserName, newPurchaserName, idPurchaseRequest);
+        PurchaserResolver resolver = new PurchaserResolver();
+        List<Long> requestIds = new ArrayList<>(purchaserByRequest.size());
+        List<Long> purchaserIds = new ArrayList<>(purchaserByRequest.size());
+        for (Map.Entry<Long, String> entry : purchaserByRequest.entrySet()) {
+            String purchaserName = entry.getValue();
+            Long purchaserId = null;
+            if (purchaserName != null && !purchaserName.trim().isEmpty()) {
+                User user = resolver.resolve(purchaserName.trim());
+                if (user == null) {
+                    logger.debug("Purchaser '{}' of request {} not found among users, plan items left unchanged",
+                        purchaserName, entry.getKey());
+                    continue;
+                }
+                purchaserId = user.getId();
             }
+            requestIds.add(entry.getKey());
+            purchaserIds.add(purchaserId);
         }
-
-        if (updatedCount > 0) {
-            logger.info("Synced purchaser from purchaseRequest {} to {} plan items", idPurchaseRequest, updatedCount);
-        }
-
-        return updatedCount;
-    }
-
-    /**
-     * Получает закупщика из связанной заявки на закупку для позиции плана.
-     * Используется при загрузке позиций плана для отображения актуального закупщика.
-     * 
-     * @param purchaseRequestId номер заявки на закупку (idPurchaseRequest)
-     * @return User объект закупщика или null
-     */
-    public User getPurchaserFromRequest(Long purchaseRequestId) {
-        if (purchaseRequestId == null) {
-            return null;
-        }
-
-        Optional<PurchaseRequest> purchaseRequestOpt = purchaseRequestRepository.findByIdPurchaseRequest(purchaseRequestId);
-        if (purchaseRequestOpt.isEmpty()) {
-            return null;
+        if (requestIds.isEmpty()) {
+            return 0;
         }
 
-        PurchaseRequest purchaseRequest = purchaseRequestOpt.get();
-        String purchaserName = purchaseRequest.getPurchaser();
-        
-        if (purchaserName == null || purchaserName.trim().isEmpty()) {
-            return null;
+        List<UpdatedItem> updated = jdbcTemplate.query(con -> {
+            var ps = con.prepareStatement(UPDATE_SQL);
+            ps.setArray(1, con.createArrayOf("bigint", requestIds.toArray()));
+            ps.setArray(2, con.createArrayOf("bigint", purchaserIds.toArray()));
+            return ps;
+        }, (rs, rowNum) -> new UpdatedItem(
+            rs.getLong(1),
+            rs.getObject(2, UUID.class),
+            rs.getObject(3, Long.class),
+            rs.getObject(4, Long.class)));
+
+        logChanges(updated, resolver);
+        if (!updated.isEmpty()) {
+            logger.info("Synced purchaser from {} purchase requests to {} plan items", requestIds.size(), updated.size());
         }
-
-        return findUserByPurchaserName(purchaserName);
+        return updated.size();
     }
 
     /**
-     * Синхронизирует закупщика из заявки в позицию плана.
-     * Обновляет позицию плана только если закупщик изменился.
-     * 
-     * @param planItem позиция плана закупок
-     * @return true если закупщик был обновлен, false если изменений не было
+     * Пишет историю изменения закупщика по обновленным позициям (имена пользователей — одним запросом).
      */
-    @Transactional
-    public boolean syncPurchaserForPlanItem(PurchasePlanItem planItem) {
-        if (planItem == null || planItem.getPurchaseRequestId() == null) {
-            return false;
+    private void logChanges(List<UpdatedItem> updated, PurchaserResolver resolver) {
+        if (updated.isEmpty()) {
+            return;
         }
-
-        User purchaserFromRequest = getPurchaserFromRequest(planItem.getPurchaseRequestId());
-        User currentPurchaser = planItem.getPurchaser();
-
-        // Проверяем, нужно ли обновление
-        boolean needsUpdate = false;
-        if (purchaserFromRequest == null && currentPurchaser != null) {
-            needsUpdate = true;
-        } else if (purchaserFromRequest != null && currentPurchaser == null) {
-            needsUpdate = true;
-        } else if (purchaserFromRequest != null && currentPurchaser != null 
-                   && !purchaserFromRequest.getId().equals(currentPurchaser.getId())) {
-            needsUpdate = true;
+        Set<Long> userIds = new HashSet<>();
+        for (UpdatedItem item : updated) {
+            if (item.oldPurchaserId() != null) userIds.add(item.oldPurchaserId());
+            if (item.newPurchaserId() != null) userIds.add(item.newPurchaserId());
         }
-
-        if (needsUpdate) {
-            // Формируем имена для логирования
-            String oldPurchaserName = currentPurchaser != null 
-                ? formatUserName(currentPurchaser)
-                : null;
-            String newPurchaserName = purchaserFromRequest != null 
-                ? formatUserName(purchaserFromRequest)
-                : null;
-
-            // Логируем изменение
+        Map<Long, String> names = new HashMap<>();
+        for (User user : resolver.usersById(userIds)) {
+            names.put(user.getId(), formatUserName(user));
+        }
+        for (UpdatedItem item : updated) {
             purchasePlanItemChangeService.logChange(
-                planItem.getId(),
-                planItem.getGuid(),
+                item.id(),
+                item.guid(),
                 "purchaser",
-                oldPurchaserName,
-                newPurchaserName
+                item.oldPurchaserId() != null ? names.get(item.oldPurchaserId()) : null,
+                item.newPurchaserId() != null ? names.get(item.newPurchaserId()) : null
             );
-
-            planItem.setPurchaser(purchaserFromRequest);
-            purchasePlanItemRepository.save(planItem);
-            
-            logger.info("Auto-synced purchaser for plan item {}: {} -> {} (from purchaseRequest {})",
-                planItem.getId(), oldPurchaserName, newPurchaserName, planItem.getPurchaseRequestId());
-            
-            return true;
         }
-
-        return false;
     }
 
-    /**
-     * Синхронизирует закупщика для одной позиции плана в НОВОЙ транзакции.
-     * Используется из read-only транзакции для сохранения изменений в БД.
-     * 
-     * Делегирует выполнение в отдельный Spring Bean (PurchasePlanPurchaserSyncTxService)
-     * для корректной работы @Transactional(propagation = REQUIRES_NEW).
-     * 
-     * @param planItemId ID позиции плана
-     * @param purchaserFromRequestId ID закупщика из заявки (null = очистить, если clearPurchaser == true)
-     * @param clearPurchaser если true и purchaserFromRequestId == null, то очищает закупщика
-     * @return true если закупщик был обновлен или очищен
-     */
-    public boolean syncPurchaserInNewTransaction(Long planItemId, Long purchaserFromRequestId, boolean clearPurchaser) {
-        return purchaserSyncTxService.syncPurchaserInNewTransaction(planItemId, purchaserFromRequestId, clearPurchaser);
+    /** Позиция плана, у которой UPDATE сменил закупщика. */
+    private record UpdatedItem(Long id, UUID guid, Long oldPurchaserId, Long newPurchaserId) {
     }
 
     /**
-     * Упрощенная версия для обратной совместимости.
-     * Устанавливает закупщика, если purchaserFromRequestId != null.
-     * 
-     * @param planItemId ID позиции плана
-     * @param purchaserFromRequestId ID закупщика из заявки
-     * @return true если закупщик был обновлен
+     * Сопоставление имени закупщика с пользователем на время одной синхронизации: результат кэшируется по имени,
+     * список пользователей для частичного совпадения читается не более одного раза.
      */
-    public boolean syncPurchaserInNewTransaction(Long planItemId, Long purchaserFromRequestId) {
-        return purchaserSyncTxService.syncPurchaserInNewTransaction(planItemId, purchaserFromRequestId);
-    }
+    private class PurchaserResolver {
 
-    /**
-     * Синхронизирует закупщиков для списка позиций плана.
-     * Каждая позиция обрабатывается в отдельной транзакции через отдельный Spring Bean.
-     * 
-     * @param syncRequests список пар (planItemId, purchaserFromRequestId, clearPurchaser)
-     * @return количество обновленных позиций
-     */
-    public int syncPurchasersInBatch(List<PurchaserSyncRequest> syncRequests) {
-        if (syncRequests == null || syncRequests.isEmpty()) {
-            return 0;
-        }
+        private final Map<String, Optional<User>> byName = new HashMap<>();
+        private List<User> allUsers;
 
-        int updatedCount = 0;
-        for (PurchaserSyncRequest request : syncRequests) {
-            try {
-                // Делегируем в отдельный Spring Bean для корректной работы REQUIRES_NEW
-                boolean updated = purchaserSyncTxService.syncPurchaserInNewTransaction(
-                        request.getPlanItemId(), 
-                        request.getPurchaserUserId(),
-                        request.isClearPurchaser()
-                );
-                if (updated) {
-                    updatedCount++;
-                }
-            } catch (Exception e) {
-                logger.error("Error syncing purchaser for plan item {}: {}", 
-                    request.getPlanItemId(), e.getMessage());
-            }
+        User resolve(String purchaserName) {
+            return byName.computeIfAbsent(purchaserName, name -> Optional.ofNullable(findUserByPurchaserName(name, this)))
+                .orElse(null);
         }
 
-        if (updatedCount > 0) {
-            logger.info("Batch synced {} purchasers from {} requests", updatedCount, syncRequests.size());
-        }
-
-        return updatedCount;
-    }
-
-    /**
-     * Класс для запроса синхронизации закупщика.
-     * Поддерживает три сценария:
-     * 1. Установка закупщика (purchaserUserId != null)
-     * 2. Очистка закупщика (purchaserUserId == null, clearPurchaser == true)
-     * 3. Пропуск (purchaserUserId == null, clearPurchaser == false)
-     */
-    public static class PurchaserSyncRequest {
-        private final Long planItemId;
-        private final Long purchaserUserId;
-        private final boolean clearPurchaser;
-
-        /**
-         * Конструктор для установки закупщика (purchaserUserId != null) или пропуска (purchaserUserId == null).
-         */
-        public PurchaserSyncRequest(Long planItemId, Long purchaserUserId) {
-            this(planItemId, purchaserUserId, false);
-        }
-
-        /**
-         * Конструктор с поддержкой очистки закупщика.
-         * 
-         * @param planItemId ID позиции плана
-         * @param purchaserUserId ID закупщика (null = очистить, если clearPurchaser == true)
-         * @param clearPurchaser если true и purchaserUserId == null, то очищает закупщика
-         */
-        public PurchaserSyncRequest(Long planItemId, Long purchaserUserId, boolean clearPurchaser) {
-            this.planItemId = planItemId;
-            this.purchaserUserId = purchaserUserId;
-            this.clearPurchaser = clearPurchaser;
-        }
-
-        public Long getPlanItemId() {
-            return planItemId;
-        }
-
-        public Long getPurchaserUserId() {
-            return purchaserUserId;
+        List<User> allUsers() {
+            if (allUsers == null) {
+                allUsers = userRepository.findAll();
+            }
+            return allUsers;
         }
 
-        public boolean isClearPurchaser() {
-            return clearPurchaser;
+        List<User> usersById(Set<Long> ids) {
+            if (ids.isEmpty()) {
+                return List.of();
+            }
+            if (allUsers != null) {
+                return allUsers.stream().filter(user -> ids.contains(user.getId())).toList();
+            }
+            return userRepository.findAllById(ids);
         }
     }
 
@@ -316,19 +237,19 @@ public class PurchasePlanPurchaserSyncService {
      * Ищет пользователя по имени закупщика (строка "Фамилия Имя" или частичное совпадение).
      * Обрабатывает формат "Имя Фамилия (Должность, Отдел)" - извлекает только имя и фамилию.
      */
-    private User findUserByPurchaserName(String purchaserName) {
+    private User findUserByPurchaserName(String purchaserName, PurchaserResolver resolver) {
         if (purchaserName == null || purchaserName.trim().isEmpty()) {
             return null;
         }
 
         String trimmedName = purchaserName.trim();
-        
+
         // Если в строке есть скобка, берём только часть до скобки (это имя и фамилия)
         // Например: "Dinara Fayzraxmanova (Отдел закупок, Менеджер)" -> "Dinara Fayzraxmanova"
         if (trimmedName.contains("(")) {
             trimmedName = trimmedName.substring(0, trimmedName.indexOf("(")).trim();
         }
-        
+
         String[] parts = trimmedName.split("\\s+");
 
         // Сначала пробуем найти по точному совпадению фамилии и имени (первые два слова)
@@ -347,8 +268,7 @@ public class PurchasePlanPurchaserSyncService {
 
         // Если не нашли по точному совпадению, ищем по частичному совпадению
         final String searchName = trimmedName.toLowerCase();
-        List<User> allUsers = userRepository.findAll();
-        for (User user : allUsers) {
+        for (User user : resolver.allUsers()) {
             String fullName = formatUserName(user);
             // Проверяем, содержит ли искомое имя полное имя пользователя или наоборот
             if (fullName != null) {
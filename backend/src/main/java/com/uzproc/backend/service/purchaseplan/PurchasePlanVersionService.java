@@ -2,19 +2,18 @@ package com.uzproc.backend.service.purchaseplan;
 
 import com.uzproc.backend.dto.purchaseplan.PurchasePlanItemDto;
 import com.uzproc.backend.dto.purchaseplan.PurchasePlanVersionDto;
-import com.uzproc.backend.entity.user.User;
-import com.uzproc.backend.entity.purchaseplan.PurchasePlanItem;
 import com.uzproc.backend.entity.purchaseplan.PurchasePlanItemVersion;
 import com.uzproc.backend.entity.purchaseplan.PurchasePlanVersion;
 import com.uzproc.backend.repository.CfoRepository;
-import com.uzproc.backend.repository.purchaseplan.PurchasePlanItemRepository;
-import com.uzproc.backend.repository.purchaseplan.PurchasePlanItemVersionRepository;
 import com.uzproc.backend.repository.purchaseplan.PurchasePlanVersionRepository;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.PersistenceContext;
 
+import java.time.LocalDateTime;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.stream.Collectors;
@@ -25,19 +24,70 @@ public class PurchasePlanVersionService {
 
     private static final Logger logger = LoggerFactory.getLogger(PurchasePlanVersionService.class);
 
+    /** Поля позиции, которые хранит версия; по ним же определяется, изменилась ли позиция. */
+    private static final List<String> SNAPSHOT_COLUMNS = List.of(
+            "guid", "year", "company", "purchaser_company", "cfo_id", "purchase_subject", "budget_amount",
+            "contract_end_date", "request_date", "new_contract_date", "purchaser", "product", "has_contract",
+            "current_ka", "current_amount", "current_contract_amount", "current_contract_balance",
+            "current_contract_end_date", "auto_renewal", "complexity", "holding", "category", "status", "state",
+            "purchase_request_id", "comment");
+
+    /** Полный состав версии :versionNumber года :year (отсортирован по позиции). */
+    private static final String VERSION_ITEMS_SQL = versionStateSql("versionNumber") + " ORDER BY s.item_key";
+
+    /**
+     * Дельта новой версии :versionId к версии :prevVersionNumber (0 — предыдущей версии нет):
+     * строки позиций плана года, которых не было или которые изменились, и надгробия для исчезнувших позиций.
+     * Закупщик сохраняется строкой "Фамилия Имя" (или username). Возвращает число позиций в версии,
+     * число записанных изменённых позиций и число надгробий.
+     */
+    private static final String INSERT_DELTA_SQL = """
+            WITH cur AS (
+                SELECT p.id AS item_key, p.guid, p.year, p.company, p.purchaser_company, p.cfo_id, p.purchase_subject,
+                       p.budget_amount, p.contract_end_date, p.request_date, p.new_contract_date,
+                       CASE WHEN u.surname IS NOT NULL AND u.name IS NOT NULL THEN u.surname || ' ' || u.name
+                            ELSE u.username END AS purchaser,
+                       p.product, p.has_contract, p.current_ka, p.current_amount, p.current_contract_amount,
+                       p.current_contract_balance, p.current_contract_end_date, p.auto_renewal, p.complexity,
+                       p.holding, p.category, p.status, p.state, p.purchase_request_id, p.comment
+                FROM purchase_plan_items p
+                LEFT JOIN users u ON u.id = p.purchaser_id
+                WHERE p.year = :year
+            ),
+            prev AS (%1$s),
+            delta AS (
+                SELECT cur.item_key, %2$s, FALSE AS is_deleted
+                FROM cur
+                LEFT JOIN prev ON prev.item_key = cur.item_key
+                WHERE prev.item_key IS NULL OR (%2$s) IS DISTINCT FROM (%3$s)
+                UNION ALL
+                SELECT prev.item_key, %3$s, TRUE
+                FROM prev
+                WHERE NOT EXISTS (SELECT 1 FROM cur WHERE cur.item_key = prev.item_key)
+            ),
+            inserted AS (
+                INSERT INTO purchase_plan_item_versions (version_id, purchase_plan_item_id, item_key, %4$s, is_deleted)
+                SELECT :versionId, CASE WHEN d.is_deleted THEN NULL ELSE d.item_key END, d.item_key, %5$s, d.is_deleted
+                FROM delta d
+                RETURNING is_deleted
+            )
+            SELECT (SELECT COUNT(*) FROM cur),
+                   (SELECT COUNT(*) FROM inserted WHERE NOT is_deleted),
+                   (SELECT COUNT(*) FROM inserted WHERE is_deleted)
+            """.formatted(
+            versionStateSql("prevVersionNumber"),
+            columns("cur."), columns("prev."), columns(""), columns("d."));
+
     private final PurchasePlanVersionRepository versionRepository;
-    private final PurchasePlanItemRepository itemRepository;
-    private final PurchasePlanItemVersionRepository itemVersionRepository;
     private final CfoRepository cfoRepository;
 
+    @PersistenceContext
+    private EntityManager entityManager;
+
     public PurchasePlanVersionService(
             PurchasePlanVersionRepository versionRepository,
-            PurchasePlanItemRepository itemRepository,
-            PurchasePlanItemVersionRepository itemVersionRepository,
             CfoRepository cfoRepository) {
         this.versionRepository = versionRepository;
-        this.itemRepository = itemRepository;
-        this.itemVersionRepository = itemVersionRepository;
         this.cfoRepository = cfoRepository;
     }
 
@@ -57,93 +107,26 @@ public class PurchasePlanVersionService {
             logger.info("Removed is_current flag from version {} for year {}", v.getVersionNumber(), year);
         });
 
-        // 3. Создать новую версию
+        // 3. Создать новую версию: первая версия года — полный снимок, следующие — дельта к предыдущей
         PurchasePlanVersion version = new PurchasePlanVersion(newVersionNumber, year, description, createdBy);
         version.setIsCurrent(true);
-
-        // 4. Скопировать все текущие строки плана закупок в purchase_plan_item_versions
-        // Загружаем элементы с purchaser (LAZY поле) через JOIN FETCH
-        // Важно: используем актуальные данные из БД, не кэшированные
-        List<PurchasePlanItem> currentItems = itemRepository.findByYearWithPurchaser(year);
-        logger.info("Found {} items to copy for year {}", currentItems.size(), year);
-        
-        // Проверяем, что данные актуальные - логируем примеры purchaser и purchaserCompany
-        if (!currentItems.isEmpty()) {
-            PurchasePlanItem firstItem = currentItems.get(0);
-            String purchaserName = firstItem.getPurchaser() != null 
-                ? (firstItem.getPurchaser().getSurname() != null && firstItem.getPurchaser().getName() != null
-                    ? firstItem.getPurchaser().getSurname() + " " + firstItem.getPurchaser().getName()
-                    : firstItem.getPurchaser().getUsername())
-                : null;
-            String purchaserCompanyName = firstItem.getPurchaserCompany() != null 
-                ? firstItem.getPurchaserCompany().getDisplayName() 
-                : null;
-            logger.debug("Sample item {}: purchaser={}, purchaserCompany={}", 
-                firstItem.getId(), purchaserName, purchaserCompanyName);
-        }
-
-        List<PurchasePlanItemVersion> itemVersions = new ArrayList<>();
-        for (PurchasePlanItem item : currentItems) {
-            PurchasePlanItemVersion itemVersion = copyItemToVersion(item, version);
-            itemVersions.add(itemVersion);
-        }
-
-        version.setItems(itemVersions);
-        PurchasePlanVersion saved = versionRepository.save(version);
-        logger.info("Created version {} for year {} with {} items", newVersionNumber, year, itemVersions.size());
+        version.setIsFullSnapshot(maxVersion == 0);
+        PurchasePlanVersion saved = versionRepository.saveAndFlush(version);
+
+        // 4. Записать в purchase_plan_item_versions строки, изменившиеся с предыдущей версии, одним INSERT ... SELECT
+        Object[] counts = (Object[]) entityManager.createNativeQuery(INSERT_DELTA_SQL)
+                .setParameter("versionId", saved.getId())
+                .setParameter("year", year)
+                .setParameter("prevVersionNumber", maxVersion)
+                .getSingleResult();
+        int itemsCount = ((Number) counts[0]).intValue();
+        saved.setItemsCount(itemsCount);
+        logger.info("Created version {} for year {} with {} items ({} changed, {} removed since version {})",
+                newVersionNumber, year, itemsCount, ((Number) counts[1]).intValue(), ((Number) counts[2]).intValue(), maxVersion);
 
         return toDto(saved);
     }
 
-    private PurchasePlanItemVersion copyItemToVersion(PurchasePlanItem item, PurchasePlanVersion version) {
-        PurchasePlanItemVersion itemVersion = new PurchasePlanItemVersion();
-        itemVersion.setVersion(version);
-        itemVersion.setPurchasePlanItemId(item.getId());
-        itemVersion.setGuid(item.getGuid());
-        itemVersion.setYear(item.getYear());
-        itemVersion.setCompany(item.getCompany());
-        itemVersion.setPurchaserCompany(item.getPurchaserCompany());
-        if (item.getPurchaserCompany() != null) {
-            logger.debug("Copied purchaserCompany for item {}: {}", item.getId(), item.getPurchaserCompany().getDisplayName());
-        } else {
-            logger.debug("Item {} has no purchaserCompany", item.getId());
-        }
-        itemVersion.setCfo(item.getCfo());
-        itemVersion.setPurchaseSubject(item.getPurchaseSubject());
-        itemVersion.setBudgetAmount(item.getBudgetAmount());
-        itemVersion.setContractEndDate(item.getContractEndDate());
-        itemVersion.setRequestDate(item.getRequestDate());
-        itemVersion.setNewContractDate(item.getNewContractDate());
-        // Конвертируем User в строку (фамилия + имя)
-        if (item.getPurchaser() != null) {
-            User purchaser = item.getPurchaser();
-            String purchaserName = purchaser.getSurname() != null && purchaser.getName() != null
-                ? purchaser.getSurname() + " " + purchaser.getName()
-                : purchaser.getUsername();
-            itemVersion.setPurchaser(purchaserName);
-            logger.debug("Copied purchaser for item {}: {}", item.getId(), purchaserName);
-        } else {
-            itemVersion.setPurchaser(null);
-            logger.debug("Item {} has no purchaser", item.getId());
-        }
-        itemVersion.setProduct(item.getProduct());
-        itemVersion.setHasContract(item.getHasContract());
-        itemVersion.setCurrentKa(item.getCurrentKa());
-        itemVersion.setCurrentAmount(item.getCurrentAmount());
-        itemVersion.setCurrentContractAmount(item.getCurrentContractAmount());
-        itemVersion.setCurrentContractBalance(item.getCurrentContractBalance());
-        itemVersion.setCurrentContractEndDate(item.getCurrentContractEndDate());
-        itemVersion.setAutoRenewal(item.getAutoRenewal());
-        itemVersion.setComplexity(item.getComplexity());
-        itemVersion.setHolding(item.getHolding());
-        itemVersion.setCategory(item.getCategory());
-        itemVersion.setStatus(item.getStatus());
-        itemVersion.setState(item.getState());
-        itemVersion.setPurchaseRequestId(item.getPurchaseRequestId());
-        itemVersion.setComment(item.getComment());
-        return itemVersion;
-    }
-
     public List<PurchasePlanVersionDto> getVersionsByYear(Integer year) {
         List<PurchasePlanVersion> versions = versionRepository.findByYearOrderByVersionNumberDesc(year);
         return versions.stream()
@@ -157,32 +140,29 @@ public class PurchasePlanVersionService {
                 .orElse(null);
     }
 
+    /**
+     * Восстанавливает полный состав версии из дельт (см. {@link #versionStateSql}).
+     */
     public List<PurchasePlanItemDto> getVersionItems(Long versionId) {
-        List<PurchasePlanItemVersion> itemVersions = itemVersionRepository.findByVersionId(versionId);
-        logger.info("Loading {} items for version {}", itemVersions.size(), versionId);
-        // Проверяем поле purchaser в первых нескольких элементах
-        int itemsWithPurchaser = 0;
-        int itemsWithoutPurchaser = 0;
-        for (PurchasePlanItemVersion itemVersion : itemVersions) {
-            if (itemVersion.getPurchaser() != null && !itemVersion.getPurchaser().trim().isEmpty()) {
-                itemsWithPurchaser++;
-                if (itemsWithPurchaser <= 3) {
-                    logger.debug("Item {} has purchaser: {}", itemVersion.getPurchasePlanItemId(), itemVersion.getPurchaser());
-                }
-            } else {
-                itemsWithoutPurchaser++;
-                if (itemsWithoutPurchaser <= 3) {
-                    logger.debug("Item {} has no purchaser (null or empty)", itemVersion.getPurchasePlanItemId());
-                }
-            }
+        PurchasePlanVersion version = versionRepository.findById(versionId).orElse(null);
+        if (version == null) {
+            return new ArrayList<>();
         }
-        logger.info("Version {} items: {} with purchaser, {} without purchaser", versionId, itemsWithPurchaser, itemsWithoutPurchaser);
+        // ЦФО — небольшой справочник: загруженные заранее, они подставляются в строки версии без запроса на каждое ЦФО
+        cfoRepository.findAll();
+        @SuppressWarnings("unchecked")
+        List<PurchasePlanItemVersion> itemVersions = entityManager.createNativeQuery(VERSION_ITEMS_SQL, PurchasePlanItemVersion.class)
+                .setParameter("year", version.getYear())
+                .setParameter("versionNumber", version.getVersionNumber())
+                .getResultList();
+        logger.info("Loaded {} items for version {} (year {}, version {})",
+                itemVersions.size(), versionId, version.getYear(), version.getVersionNumber());
         return itemVersions.stream()
-                .map(this::itemVersionToDto)
-                .collect(java.util.stream.Collectors.toList());
+                .map(itemVersion -> itemVersionToDto(itemVersion, version.getCreatedAt()))
+                .collect(Collectors.toList());
     }
 
-    private PurchasePlanItemDto itemVersionToDto(PurchasePlanItemVersion itemVersion) {
+    private PurchasePlanItemDto itemVersionToDto(PurchasePlanItemVersion itemVersion, LocalDateTime versionCreatedAt) {
         PurchasePlanItemDto dto = new PurchasePlanItemDto();
         dto.setId(itemVersion.getPurchasePlanItemId()); // Используем ID оригинальной записи, если есть
         dto.setGuid(itemVersion.getGuid());
@@ -196,11 +176,7 @@ public class PurchasePlanVersionService {
         dto.setRequestDate(itemVersion.getRequestDate());
         dto.setNewContractDate(itemVersion.getNewContractDate());
         // purchaser в itemVersion уже строка, просто используем её
-        String purchaser = itemVersion.getPurchaser();
-        dto.setPurchaser(purchaser);
-        if (purchaser == null || purchaser.trim().isEmpty()) {
-            logger.debug("Item version {} (itemId: {}) has empty purchaser", itemVersion.getId(), itemVersion.getPurchasePlanItemId());
-        }
+        dto.setPurchaser(itemVersion.getPurchaser());
         dto.setProduct(itemVersion.getProduct());
         dto.setHasContract(itemVersion.getHasContract());
         dto.setCurrentKa(itemVersion.getCurrentKa());
@@ -216,11 +192,37 @@ public class PurchasePlanVersionService {
         dto.setState(itemVersion.getState());
         dto.setPurchaseRequestId(itemVersion.getPurchaseRequestId());
         dto.setComment(itemVersion.getComment());
-        dto.setCreatedAt(itemVersion.getCreatedAt());
-        dto.setUpdatedAt(itemVersion.getCreatedAt()); // В версии нет updatedAt, используем createdAt
+        // Неизменённая позиция хранится строкой одной из прошлых версий — даты берём у самой версии
+        dto.setCreatedAt(versionCreatedAt);
+        dto.setUpdatedAt(versionCreatedAt); // В версии нет updatedAt, используем createdAt
         return dto;
     }
 
+    /**
+     * Состояние версии года :year с номером из параметра versionNumberParam. Для каждой позиции (item_key) берётся её последняя строка
+     * среди версий от ближайшего полного снимка до запрошенной включительно; позиции, последняя строка которых —
+     * надгробие, в версию не входят.
+     */
+    private static String versionStateSql(String versionNumberParam) {
+        return """
+                SELECT * FROM (
+                    SELECT DISTINCT ON (iv.item_key) iv.*
+                    FROM purchase_plan_item_versions iv
+                    JOIN purchase_plan_versions v ON v.id = iv.version_id
+                    WHERE v.year = :year
+                      AND v.version_number <= :%1$s
+                      AND v.version_number >= (
+                          SELECT COALESCE(MAX(b.version_number), 0) FROM purchase_plan_versions b
+                          WHERE b.year = :year AND b.version_number <= :%1$s AND b.is_full_snapshot)
+                    ORDER BY iv.item_key, v.version_number DESC
+                ) s
+                WHERE NOT s.is_deleted""".formatted(versionNumberParam);
+    }
+
+    private static String columns(String alias) {
+        return SNAPSHOT_COLUMNS.stream().map(column -> alias + column).collect(Collectors.joining(", "));
+    }
+
     private PurchasePlanVersionDto toDto(PurchasePlanVersion version) {
         PurchasePlanVersionDto dto = new PurchasePlanVersionDto();
         dto.setId(version.getId());
@@ -230,7 +232,7 @@ public class PurchasePlanVersionService {
         dto.setCreatedBy(version.getCreatedBy());
         dto.setIsCurrent(version.getIsCurrent());
         dto.setCreatedAt(version.getCreatedAt());
-        dto.setItemsCount(version.getItems() != null ? version.getItems().size() : 0);
+        dto.setItemsCount(version.getItemsCount() != null ? version.getItemsCount() : 0);
         return dto;
     }
 }
@@ -3,6 +3,7 @@ package com.uzproc.backend.service.purchaserequest;
 import com.uzproc.backend.dto.purchaserequest.PurchaseRequestChangeDto;
 import com.uzproc.backend.entity.purchaserequest.PurchaseRequestChange;
 import com.uzproc.backend.repository.purchaserequest.PurchaseRequestChangeRepository;
+import com.uzproc.backend.service.changelog.ChangeLogBatchWriter;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.data.domain.Page;
@@ -10,6 +11,7 @@ import org.springframework.data.domain.PageRequest;
 import org.springframework.data.domain.Pageable;
 import org.springframework.data.domain.Sort;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Propagation;
 import org.springframework.transaction.annotation.Transactional;
 
 import java.time.LocalDateTime;
@@ -33,14 +35,19 @@ public class PurchaseRequestChangeService {
     public static final String DISPLAY_NAME_PARSING = "Система (парсинг)";
 
     private final PurchaseRequestChangeRepository changeRepository;
+    private final ChangeLogBatchWriter changeLogBatchWriter;
 
-    public PurchaseRequestChangeService(PurchaseRequestChangeRepository changeRepository) {
+    public PurchaseRequestChangeService(PurchaseRequestChangeRepository changeRepository,
+                                        ChangeLogBatchWriter changeLogBatchWriter) {
         this.changeRepository = changeRepository;
+        this.changeLogBatchWriter = changeLogBatchWriter;
     }
 
     /**
      * Записывает изменение поля заявки на закупку (кроме поля updatedAt).
+     * Запись отложенная и пакетная: фиксируется вместе с транзакцией вызывающего (см. {@link ChangeLogBatchWriter}).
      */
+    @Transactional(propagation = Propagation.SUPPORTS)
     public void logChange(Long purchaseRequestId, UUID guid, String fieldName, Object valueBefore, Object valueAfter) {
         if (FIELD_UPDATED_AT.equals(fieldName)) {
             return;
@@ -54,16 +61,8 @@ public class PurchaseRequestChangeService {
                 return;
             }
 
-            PurchaseRequestChange change = new PurchaseRequestChange(
-                    purchaseRequestId,
-                    guid,
-                    fieldName,
-                    beforeStr,
-                    afterStr
-            );
-            change.setChangeDate(LocalDateTime.now());
-
-            changeRepository.save(change);
+            changeLogBatchWriter.enqueue(ChangeLogBatchWriter.Target.PURCHASE_REQUEST, new ChangeLogBatchWriter.PendingChange(
+                    purchaseRequestId, guid, fieldName, beforeStr, afterStr, LocalDateTime.now(), null, null));
             logger.debug("Logged change for purchase request {}: field={}, before={}, after={}",
                     purchaseRequestId, fieldName, beforeStr, afterStr);
         } catch (Exception e) {
@@ -74,6 +73,7 @@ public class PurchaseRequestChangeService {
     /**
      * Записывает изменение с указанием источника и того, кто изменил (для парсинга — "Система (парсинг)", для пользователя — имя).
      */
+    @Transactional(propagation = Propagation.SUPPORTS)
     public void logChange(Long purchaseRequestId, UUID guid, String fieldName, Object valueBefore, Object valueAfter,
                          String changeSource, String changedByDisplayName) {
         if (FIELD_UPDATED_AT.equals(fieldName)) {
@@ -88,18 +88,8 @@ public class PurchaseRequestChangeService {
                 return;
             }
 
-            PurchaseRequestChange change = new PurchaseRequestChange(
-                    purchaseRequestId,
-                    guid,
-                    fieldName,
-                    beforeStr,
-                    afterStr
-            );
-            change.setChangeDate(LocalDateTime.now());
-            change.setChangeSource(changeSource);
-            change.setChangedByDisplayName(changedByDisplayName);
-
-            changeRepository.save(change);
+            changeLogBatchWriter.enqueue(ChangeLogBatchWriter.Target.PURCHASE_REQUEST, new ChangeLogBatchWriter.PendingChange(
+                    purchaseRequestId, guid, fieldName, beforeStr, afterStr, LocalDateTime.now(), changeSource, changedByDisplayName));
             logger.debug("Logged change for purchase request {}: field={}, before={}, after={}, by={}",
                     purchaseRequestId, fieldName, beforeStr, afterStr, changedByDisplayName);
         } catch (Exception e) {
@@ -1,11 +1,17 @@
 package com.uzproc.backend.service.purchaserequest;
 
+import com.uzproc.backend.config.CacheConfig;
+import com.uzproc.backend.dto.common.KeysetPageDto;
 import com.uzproc.backend.dto.contract.ContractDto;
 import com.uzproc.backend.dto.overview.OverviewPurchaseRequestCountsDto;
 import com.uzproc.backend.dto.purchaserequest.PurchaseRequestDto;
+import com.uzproc.backend.dto.purchaserequest.PurchaseRequestListItemDto;
 import com.uzproc.backend.dto.purchaserequest.PurchaseRequestUniqueValuesDto;
 import com.uzproc.backend.dto.purchaserequest.PurchaserStatsDto;
 import com.uzproc.backend.dto.purchaserequest.PurchaserSummaryItemDto;
+import com.uzproc.backend.event.DataChangedEvent;
+import com.uzproc.backend.event.KpiInputsChangedEvent;
+import com.uzproc.backend.event.PurchaserChangedEvent;
 import com.uzproc.backend.entity.contract.Contract;
 import com.uzproc.backend.entity.purchase.Purchase;
 import com.uzproc.backend.entity.purchaserequest.PurchaseRequest;
@@ -16,6 +22,8 @@ import com.uzproc.backend.repository.contract.ContractApprovalRepository;
 import com.uzproc.backend.repository.contract.ContractRepository;
 import com.uzproc.backend.repository.csifeedback.CsiFeedbackRepository;
 import com.uzproc.backend.repository.purchaserequest.PurchaseRequestApprovalRepository;
+import com.uzproc.backend.repository.purchaserequest.PurchaseRequestCommentRepository;
+import com.uzproc.backend.repository.purchaserequest.PurchaseRequestListRow;
 import com.uzproc.backend.repository.purchaserequest.PurchaseRequestRepository;
 import com.uzproc.backend.entity.purchaseplan.PurchasePlanItem;
 import com.uzproc.backend.repository.purchase.PurchaseApprovalRepository;
@@ -24,8 +32,8 @@ import com.uzproc.backend.repository.purchaseplan.PurchasePlanItemRepository;
 import com.uzproc.backend.entity.csifeedback.CsiFeedback;
 import com.uzproc.backend.service.calendar.WorkingDayService;
 import com.uzproc.backend.service.contract.ContractService;
+import com.uzproc.backend.service.keyset.KeysetPaginationService;
 import com.uzproc.backend.service.purchaserequest.PurchaseRequestStatusUpdateService;
-import com.uzproc.backend.service.purchaseplan.PurchasePlanPurchaserSyncService;
 import java.util.stream.Collectors;
 import jakarta.persistence.criteria.Predicate;
 import org.slf4j.Logger;
@@ -36,6 +44,8 @@ import org.springframework.data.domain.Pageable;
 import org.springframework.data.domain.Sort;
 import org.springframework.data.jpa.domain.Specification;
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.cache.annotation.Cacheable;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
@@ -44,6 +54,7 @@ import java.time.Duration;
 import java.time.LocalDate;
 import java.time.LocalDateTime;
 import java.util.ArrayList;
+import java.util.Comparator;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
@@ -64,11 +75,13 @@ public class PurchaseRequestService {
     private final ContractService contractService;
     private final PurchaseRequestStatusUpdateService statusUpdateService;
     private final CsiFeedbackRepository csiFeedbackRepository;
-    private final PurchasePlanPurchaserSyncService purchasePlanPurchaserSyncService;
     private final PurchasePlanItemRepository purchasePlanItemRepository;
     private final PurchaseRequestChangeService purchaseRequestChangeService;
     private final WorkingDayService workingDayService;
     private final ContractApprovalRepository contractApprovalRepository;
+    private final ApplicationEventPublisher eventPublisher;
+    private final KeysetPaginationService keysetPaginationService;
+    private final PurchaseRequestCommentRepository purchaseRequestCommentRepository;
 
     @Value("${app.frontend.base-url:}")
     private String frontendBaseUrl;
@@ -86,11 +99,13 @@ public class PurchaseRequestService {
             ContractService contractService,
             PurchaseRequestStatusUpdateService statusUpdateService,
             CsiFeedbackRepository csiFeedbackRepository,
-            PurchasePlanPurchaserSyncService purchasePlanPurchaserSyncService,
             PurchasePlanItemRepository purchasePlanItemRepository,
             PurchaseRequestChangeService purchaseRequestChangeService,
             WorkingDayService workingDayService,
-            ContractApprovalRepository contractApprovalRepository) {
+            ContractApprovalRepository contractApprovalRepository,
+            ApplicationEventPublisher eventPublisher,
+            KeysetPaginationService keysetPaginationService,
+            PurchaseRequestCommentRepository purchaseRequestCommentRepository) {
         this.purchaseRequestRepository = purchaseRequestRepository;
         this.approvalRepository = approvalRepository;
         this.purchaseApprovalRepository = purchaseApprovalRepository;
@@ -99,11 +114,13 @@ public class PurchaseRequestService {
         this.contractService = contractService;
         this.statusUpdateService = statusUpdateService;
         this.csiFeedbackRepository = csiFeedbackRepository;
-        this.purchasePlanPurchaserSyncService = purchasePlanPurchaserSyncService;
         this.purchasePlanItemRepository = purchasePlanItemRepository;
         this.purchaseRequestChangeService = purchaseRequestChangeService;
         this.workingDayService = workingDayService;
         this.contractApprovalRepository = contractApprovalRepository;
+        this.eventPublisher = eventPublisher;
+        this.keysetPaginationService = keysetPaginationService;
+        this.purchaseRequestCommentRepository = purchaseRequestCommentRepository;
     }
 
     public Page<PurchaseRequestDto> findAll(
@@ -139,6 +156,92 @@ public class PurchaseRequestService {
                 .map(this::toDto);
     }
 
+    /**
+     * Лёгкий список заявок с keyset-пагинацией по id: те же фильтры, что у {@link #findAll}, но без OFFSET,
+     * COUNT(*) и тяжёлого {@link #toDto}. Строки — плоская проекция колонок; дата назначения на утверждение
+     * и число комментариев считаются одним запросом на страницу.
+     *
+     * @param cursor  токен из предыдущей страницы (nextCursor); null — первая страница
+     * @param sortDir направление по id для первой страницы (asc/desc, по умолчанию desc — новые сверху)
+     * @throws IllegalArgumentException если токен повреждён
+     */
+    @Transactional(readOnly = true)
+    public KeysetPageDto<PurchaseRequestListItemDto> findKeyset(
+            String cursor,
+            int size,
+            String sortDir,
+            Integer year,
+            Integer month,
+            Long idPurchaseRequest,
+            List<String> cfo,
+            String purchaseRequestInitiator,
+            List<String> purchaser,
+            String name,
+            String costType,
+            String contractType,
+            Boolean isPlanned,
+            Boolean hasLinkedPlanItem,
+            String complexity,
+            Boolean requiresPurchase,
+            List<String> statusGroup,
+            Boolean excludePendingStatuses,
+            java.math.BigDecimal budgetAmount,
+            String budgetAmountOperator,
+            Boolean excludeFromInWorkParam,
+            Integer approvalAssignmentYear,
+            Integer approvalAssignmentMonth) {
+
+        KeysetPaginationService.Position position = KeysetPaginationService.position(cursor, sortDir);
+        Specification<PurchaseRequest> spec = buildListSpecification(true,
+                year, month, idPurchaseRequest, cfo, purchaseRequestInitiator, purchaser, name, costType, contractType,
+                isPlanned, hasLinkedPlanItem, complexity, requiresPurchase, statusGroup, excludePendingStatuses,
+                budgetAmount, budgetAmountOperator, excludeFromInWorkParam, approvalAssignmentYear, approvalAssignmentMonth);
+        KeysetPaginationService.IdPage idPage = keysetPaginationService.findIds(PurchaseRequest.class, spec, position, size);
+        if (idPage.ids().isEmpty()) {
+            return new KeysetPageDto<>(List.of(), null);
+        }
+
+        Map<Long, PurchaseRequestListRow> rowsById = new HashMap<>();
+        for (PurchaseRequestListRow row : purchaseRequestRepository.findListRowsByIdIn(idPage.ids())) {
+            rowsById.put(row.getId(), row);
+        }
+        List<Long> idPurchaseRequests = rowsById.values().stream()
+                .map(PurchaseRequestListRow::getIdPurchaseRequest)
+                .filter(java.util.Objects::nonNull)
+                .collect(Collectors.toList());
+        Map<Long, LocalDateTime> assignmentDates = new HashMap<>();
+        if (!idPurchaseRequests.isEmpty()) {
+            for (Object[] row : approvalRepository.findMinApprovalAssignmentDatesByPrIds(idPurchaseRequests)) {
+                LocalDateTime date = toLocalDateTime(row[1]);
+                if (row[0] != null && date != null) {
+                    assignmentDates.put(((Number) row[0]).longValue(), date);
+                }
+            }
+        }
+        Map<Long, Long> commentCounts = new HashMap<>();
+        for (Object[] row : purchaseRequestCommentRepository.countByPurchaseRequestIdIn(idPage.ids())) {
+            commentCounts.put(((Number) row[0]).longValue(), ((Number) row[1]).longValue());
+        }
+
+        List<PurchaseRequestListItemDto> items = new ArrayList<>(idPage.ids().size());
+        for (Long id : idPage.ids()) {
+            PurchaseRequestListRow r = rowsById.get(id);
+            if (r == null) {
+                continue;
+            }
+            items.add(new PurchaseRequestListItemDto(
+                    r.getId(), r.getIdPurchaseRequest(), r.getPurchaseRequestCreationDate(), r.getInnerId(),
+                    r.getName(), r.getTitle(), r.getCfo(), r.getPurchaseRequestInitiator(), r.getPurchaser(),
+                    r.getBudgetAmount(), r.getCurrency(), r.getCostType(), r.getContractType(), r.getIsPlanned(),
+                    r.getRequiresPurchase(), r.getStatus(),
+                    r.getStatus() != null ? r.getStatus().getGroupDisplayName() : PurchaseRequestStatusGroup.NOT_SET.getDisplayName(),
+                    r.getComplexity(), r.getExcludeFromInWork(),
+                    r.getIdPurchaseRequest() != null ? assignmentDates.get(r.getIdPurchaseRequest()) : null,
+                    commentCounts.getOrDefault(id, 0L)));
+        }
+        return new KeysetPageDto<>(items, KeysetPaginationService.token(idPage.next()));
+    }
+
     /**
      * Возвращает СУЩНОСТИ заявок по тем же фильтрам, что и {@link #findAll}, но БЕЗ конвертации
      * в тяжёлый PurchaseRequestDto (toDto делает ~8 запросов на строку — N+1). Дашборды/агрегаты,
@@ -171,6 +274,81 @@ public class PurchaseRequestService {
             Integer approvalAssignmentYear,
             Integer approvalAssignmentMonth) {
 
+        // Если size > 1000, это запрос сводной таблицы - не включаем NULL статусы; иначе включаем
+        Specification<PurchaseRequest> spec = buildListSpecification(size <= 1000,
+                year, month, idPurchaseRequest, cfo, purchaseRequestInitiator, purchaser, name, costType, contractType,
+                isPlanned, hasLinkedPlanItem, complexity, requiresPurchase, statusGroup, excludePendingStatuses,
+                budgetAmount, budgetAmountOperator, excludeFromInWorkParam, approvalAssignmentYear, approvalAssignmentMonth);
+
+        Sort sort = buildSort(sortBy, sortDir);
+        Pageable pageable = PageRequest.of(page, size, sort);
+
+        return purchaseRequestRepository.findAll(spec, pageable);
+    }
+
+    /**
+     * Порция сущностей заявок и позиция следующей (null — порция последняя).
+     */
+    public record EntityChunk(List<PurchaseRequest> entities, KeysetPaginationService.Position next) {
+    }
+
+    /**
+     * Порция СУЩНОСТЕЙ заявок для потоковых выгрузок: keyset по id вместо OFFSET, поэтому время порции
+     * не зависит от её глубины. Фильтры — как у сводных выборок {@link #findEntities} (заявки без статуса
+     * не включаются); сущности возвращаются в порядке id.
+     *
+     * @param position позиция после предыдущей порции (lastId = null — первая порция)
+     * @param size     размер порции (не больше {@link KeysetPaginationService#MAX_PAGE_SIZE})
+     */
+    @Transactional(readOnly = true)
+    public EntityChunk findEntitiesChunk(
+            KeysetPaginationService.Position position,
+            int size,
+            List<String> cfo,
+            Boolean requiresPurchase,
+            Boolean excludePendingStatuses) {
+        Specification<PurchaseRequest> spec = buildListSpecification(false,
+                null, null, null, cfo, null, null, null, null, null,
+                null, null, null, requiresPurchase, null, excludePendingStatuses,
+                null, null, null, null, null);
+        KeysetPaginationService.IdPage idPage = keysetPaginationService.findIds(PurchaseRequest.class, spec, position, size);
+        if (idPage.ids().isEmpty()) {
+            return new EntityChunk(List.of(), null);
+        }
+        List<PurchaseRequest> entities = new ArrayList<>(purchaseRequestRepository.findAllById(idPage.ids()));
+        entities.sort(Comparator.comparing(PurchaseRequest::getId, position.ascending()
+                ? Comparator.<Long>naturalOrder() : Comparator.<Long>reverseOrder()));
+        return new EntityChunk(entities, idPage.next());
+    }
+
+    /**
+     * Фильтры списка заявок (общие для постраничного и keyset-списка): разбор excludeFromInWork и buildSpecification.
+     *
+     * @param includeNullStatuses включать заявки без статуса (списки — да, сводные выборки — нет)
+     */
+    private Specification<PurchaseRequest> buildListSpecification(
+            boolean includeNullStatuses,
+            Integer year,
+            Integer month,
+            Long idPurchaseRequest,
+            List<String> cfo,
+            String purchaseRequestInitiator,
+            List<String> purchaser,
+            String name,
+            String costType,
+            String contractType,
+            Boolean isPlanned,
+            Boolean hasLinkedPlanItem,
+            String complexity,
+            Boolean requiresPurchase,
+            List<String> statusGroup,
+            Boolean excludePendingStatuses,
+            java.math.BigDecimal budgetAmount,
+            String budgetAmountOperator,
+            Boolean excludeFromInWorkParam,
+            Integer approvalAssignmentYear,
+            Integer approvalAssignmentMonth) {
+
         // Определяем логику фильтрации по excludeFromInWork:
         // 1. Если excludeFromInWorkParam = true передается как параметр запроса, то фильтруем по excludeFromInWork = true (показываем только скрытые)
         // 2. Если excludeFromInWorkParam = false передается как параметр запроса, то исключаем записи с excludeFromInWork = true (показываем только не скрытые)
@@ -197,16 +375,8 @@ public class PurchaseRequestService {
             }
         }
 
-        // Если size > 1000, это запрос сводной таблицы - не включаем NULL статусы; иначе включаем
-        boolean includeNullStatuses = size <= 1000;
-
-        Specification<PurchaseRequest> spec = buildSpecification(
+        return buildSpecification(
                 year, month, approvalAssignmentYear, approvalAssignmentMonth, idPurchaseRequest, cfo, purchaseRequestInitiator, purchaser, name, costType, contractType, isPlanned, hasLinkedPlanItem, complexity, requiresPurchase, statusGroup, excludePendingStatuses, budgetAmount, budgetAmountOperator, excludeFromInWork, excludeFromInWorkFilter, includeNullStatuses, null, null, null);
-
-        Sort sort = buildSort(sortBy, sortDir);
-        Pageable pageable = PageRequest.of(page, size, sort);
-
-        return purchaseRequestRepository.findAll(spec, pageable);
     }
 
     /**
@@ -1536,6 +1706,7 @@ public class PurchaseRequestService {
         purchaseRequest.setExcludeFromInWork(excludeFromInWork);
         PurchaseRequest saved = purchaseRequestRepository.save(purchaseRequest);
         logger.info("Updated excludeFromInWork for purchase request {}: {}", idPurchaseRequest, excludeFromInWork);
+        eventPublisher.publishEvent(new KpiInputsChangedEvent(Set.of(idPurchaseRequest)));
         return toDto(saved);
     }
 
@@ -1567,11 +1738,8 @@ public class PurchaseRequestService {
         PurchaseRequest saved = purchaseRequestRepository.save(purchaseRequest);
         logger.info("Updated purchaser for purchase request {}: {}", idPurchaseRequest, purchaserValue);
         
-        // Синхронизируем закупщика в связанные позиции плана закупок
-        int syncedCount = purchasePlanPurchaserSyncService.syncPurchaserFromRequest(idPurchaseRequest, purchaserValue);
-        if (syncedCount > 0) {
-            logger.info("Synced purchaser to {} plan items for purchase request {}", syncedCount, idPurchaseRequest);
-        }
+        // Закупщик связанных позиций плана обновится после фиксации транзакции (PurchasePlanPurchaserSyncService)
+        eventPublisher.publishEvent(new PurchaserChangedEvent(Set.of(idPurchaseRequest)));
         
         return toDto(saved);
     }
@@ -1609,6 +1777,7 @@ public class PurchaseRequestService {
         purchaseRequest.setPlannedSlaDays(plannedSlaDays);
         PurchaseRequest saved = purchaseRequestRepository.save(purchaseRequest);
         logger.info("Updated plannedSlaDays for purchase request {} (complexity 4): {}", idPurchaseRequest, plannedSlaDays);
+        eventPublisher.publishEvent(new KpiInputsChangedEvent(Set.of(idPurchaseRequest)));
         return toDto(saved);
     }
 
@@ -1731,6 +1900,7 @@ public class PurchaseRequestService {
      * Используется для фильтра «Дата создания» на фронтенде.
      * Реализация через getYearlyStats() — без нативного запроса, стабильно работает во всех БД.
      */
+    @Cacheable(CacheConfig.FILTER_YEARS)
     public List<Integer> getCreationDateYears() {
         Map<String, Object> stats = getYearlyStats();
         @SuppressWarnings("unchecked")
@@ -1742,6 +1912,7 @@ public class PurchaseRequestService {
      * Список годов по дате назначения на утверждение (assignment_date в этапе «Утверждение заявки на ЗП»).
      * Используется для фильтра «Дата назначения на закупщика» на фронтенде.
      */
+    @Cacheable(CacheConfig.FILTER_YEARS)
     public List<Integer> getApprovalAssignmentDateYears() {
         List<String> stages = List.of("Утверждение заявки на ЗП", "Утверждение заявки на ЗП (НЕ требуется ЗП)");
         List<PurchaseRequestApproval> approvals = approvalRepository.findByStageInAndAssignmentDateIsNotNull(stages);
@@ -1756,6 +1927,7 @@ public class PurchaseRequestService {
      * Уникальные значения полей заявок для фильтров (лёгкий эндпоинт без загрузки полных записей).
      * ЦФО загружаются отдельно из /api/cfos/names.
      */
+    @Cacheable(CacheConfig.FILTER_VALUES)
     public PurchaseRequestUniqueValuesDto getUniqueFilterValues() {
         List<String> initiators = purchaseRequestRepository.findDistinctPurchaseRequestInitiator().stream()
                 .map(s -> s == null ? null : s.trim())
@@ -2280,6 +2452,8 @@ public class PurchaseRequestService {
         pr.setExcludeFromKpi(exclude);
         pr.setExcludeFromKpiComment(exclude ? comment : null);
         purchaseRequestRepository.save(pr);
+        eventPublisher.publishEvent(new DataChangedEvent(DataChangedEvent.SOURCE_KPI_EXCLUSION));
+        eventPublisher.publishEvent(new KpiInputsChangedEvent(Set.of(idPurchaseRequest)));
     }
 }
 
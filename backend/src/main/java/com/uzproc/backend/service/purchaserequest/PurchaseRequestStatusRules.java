@@ -0,0 +1,221 @@
+package com.uzproc.backend.service.purchaserequest;
+
+import com.uzproc.backend.entity.contract.ContractStatus;
+import com.uzproc.backend.entity.purchase.PurchaseStatus;
+import com.uzproc.backend.entity.purchaserequest.PurchaseRequestStatus;
+import com.uzproc.backend.service.calendar.WorkingDayService;
+
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.List;
+
+/**
+ * Правила расчёта статуса заявки на закупку по уже загруженным данным (без обращений к БД).
+ * Общие для пересчёта одной заявки ({@link PurchaseRequestStatusUpdateService#updateStatus(Long)})
+ * и пакетного пересчёта ({@link PurchaseRequestStatusUpdateService#updateAllStatuses()}).
+ * <p>
+ * Приоритет (по убыванию): подписанная спецификация, подписанные договоры, договор на регистрации,
+ * не согласованная / на согласовании / архивная (проект старше 60 рабочих дней) спецификация заказа,
+ * спецификация заказа, договор создан, закупка не согласована, все закупки завершены, закупка создана,
+ * не утверждена, не согласована, утверждена, на утверждении, на согласовании.
+ */
+final class PurchaseRequestStatusRules {
+
+    static final String SPECIFICATION_FORM = "Спецификация";
+    static final int ARCHIVE_WORKING_DAYS = 60;
+
+    private PurchaseRequestStatusRules() {
+    }
+
+    /** Согласование заявки (purchase_request_approvals). */
+    record ApprovalFacts(String stage, String completionResult, LocalDateTime assignmentDate, LocalDateTime completionDate) {
+    }
+
+    /** Спецификация заявки (contracts с document_form = «Спецификация», не исключённая из расчёта). */
+    record SpecificationFacts(ContractStatus status, LocalDateTime contractCreationDate) {
+    }
+
+    /** Договор заявки — прямой или через закупку. */
+    record ContractFacts(String documentForm, ContractStatus status, Boolean excludedFromStatusCalculation) {
+    }
+
+    /**
+     * Данные для расчёта статуса одной заявки.
+     *
+     * @param purchaseStatuses статусы всех закупок заявки (учитываются только для requiresPurchase = true)
+     * @param contracts        договоры заявки (прямые и через purchase_contracts); null — договоры не удалось
+     *                         определить (например, неоднозначный внутренний номер), признаки договоров не ставятся
+     */
+    record StatusInputs(
+            Long idPurchaseRequest,
+            Boolean requiresPurchase,
+            LocalDateTime purchaseRequestCreationDate,
+            List<ApprovalFacts> approvals,
+            List<SpecificationFacts> specifications,
+            List<PurchaseStatus> purchaseStatuses,
+            List<ContractFacts> contracts) {
+    }
+
+    /**
+     * Новый статус заявки или null, если ни одно правило не сработало (статус не меняется).
+     */
+    static PurchaseRequestStatus resolve(StatusInputs in, WorkingDayService workingDayService, LocalDate today) {
+        boolean isOrder = in.requiresPurchase() != null && !in.requiresPurchase();
+        boolean isPurchase = in.requiresPurchase() != null && in.requiresPurchase();
+
+        // Согласования
+        boolean hasNotApproved = false;
+        boolean hasNotCoordinated = false;
+        boolean hasActiveApproval = false;
+        boolean hasActiveFinalApproval = false;
+        boolean hasCompletedFinalApproval = false;
+        for (ApprovalFacts approval : in.approvals()) {
+            String completionResult = approval.completionResult();
+            String resultLower = completionResult != null && !completionResult.trim().isEmpty()
+                ? completionResult.toLowerCase().trim() : null;
+            if (resultLower != null) {
+                if (resultLower.contains("не утвержден") ||
+                    resultLower.contains("не утверждено") ||
+                    resultLower.contains("не утверждена")) {
+                    hasNotApproved = true;
+                }
+                if (resultLower.contains("не согласован") ||
+                    resultLower.contains("не согласована") ||
+                    resultLower.contains("отклонен") ||
+                    resultLower.contains("отклонена")) {
+                    hasNotCoordinated = true;
+                }
+            }
+            String stage = approval.stage();
+            boolean isFinalApproval = stage != null && (stage.equals("Утверждение заявки на ЗП") ||
+                stage.equals("Утверждение заявки на ЗП (НЕ требуется ЗП)"));
+            if (isFinalApproval && approval.completionDate() != null) {
+                // Пустой результат при заполненной дате завершения считаем утверждением
+                if (resultLower == null ||
+                    resultLower.contains("согласован") || resultLower.contains("согласовано") ||
+                    resultLower.contains("утвержден") || resultLower.contains("утверждено")) {
+                    hasCompletedFinalApproval = true;
+                }
+            }
+            if (approval.assignmentDate() != null && approval.completionDate() == null) {
+                if (isFinalApproval) {
+                    hasActiveFinalApproval = true;
+                } else {
+                    hasActiveApproval = true;
+                }
+            }
+        }
+
+        // Спецификации
+        List<SpecificationFacts> specifications = in.specifications();
+        boolean hasSpecification = !specifications.isEmpty();
+        boolean hasSignedSpecification = hasSpecification && anySpecification(specifications, ContractStatus.SIGNED);
+        boolean hasOnCoordinationSpecification = false;
+        boolean hasNotCoordinatedSpecification = false;
+        boolean hasArchivedSpecification = false;
+        if (hasSpecification && !hasSignedSpecification && isOrder) {
+            if (anySpecification(specifications, ContractStatus.ON_COORDINATION)) {
+                hasOnCoordinationSpecification = true;
+            } else if (anySpecification(specifications, ContractStatus.NOT_COORDINATED)) {
+                hasNotCoordinatedSpecification = true;
+            } else if (anySpecification(specifications, ContractStatus.PROJECT)) {
+                // Дата создания заявки, иначе самая ранняя дата создания проектной спецификации
+                LocalDateTime creationDate = in.purchaseRequestCreationDate();
+                if (creationDate == null) {
+                    creationDate = specifications.stream()
+                        .filter(s -> s.status() == ContractStatus.PROJECT && s.contractCreationDate() != null)
+                        .map(SpecificationFacts::contractCreationDate)
+                        .min(LocalDateTime::compareTo)
+                        .orElse(null);
+                }
+                if (creationDate != null
+                        && workingDayService.countWorkingDaysInclusive(creationDate.toLocalDate(), today) > ARCHIVE_WORKING_DAYS) {
+                    hasArchivedSpecification = true;
+                }
+            }
+        }
+
+        // Закупки (только для заявок с типом «Закупка»)
+        boolean hasPurchase = false;
+        boolean hasNotCoordinatedPurchase = false;
+        boolean allPurchasesCompleted = false;
+        if (isPurchase && !in.purchaseStatuses().isEmpty()) {
+            hasPurchase = true;
+            boolean anyWithStatus = false;
+            boolean allCompleted = true;
+            for (PurchaseStatus status : in.purchaseStatuses()) {
+                if (status == PurchaseStatus.NOT_COORDINATED) {
+                    hasNotCoordinatedPurchase = true;
+                }
+                if (status != null) {
+                    anyWithStatus = true;
+                    allCompleted &= status == PurchaseStatus.COMPLETED;
+                }
+            }
+            allPurchasesCompleted = anyWithStatus && allCompleted;
+        }
+
+        // Договоры (без спецификаций и исключённых из расчёта)
+        boolean hasContracts = false;
+        boolean allContractsSigned = true;
+        boolean hasContractsOnRegistration = false;
+        if (in.contracts() != null) {
+            for (ContractFacts contract : in.contracts()) {
+                if (SPECIFICATION_FORM.equals(contract.documentForm())
+                        || Boolean.TRUE.equals(contract.excludedFromStatusCalculation())) {
+                    continue;
+                }
+                hasContracts = true;
+                allContractsSigned &= contract.status() == ContractStatus.SIGNED;
+                hasContractsOnRegistration |= contract.status() == ContractStatus.ON_REGISTRATION;
+            }
+        }
+        allContractsSigned &= hasContracts;
+
+        if (hasSignedSpecification && isOrder) {
+            return PurchaseRequestStatus.SPECIFICATION_SIGNED;
+        } else if (hasSignedSpecification && isPurchase) {
+            return PurchaseRequestStatus.CONTRACT_SIGNED;
+        } else if (allContractsSigned) {
+            return PurchaseRequestStatus.CONTRACT_SIGNED;
+        } else if (hasContracts && hasContractsOnRegistration) {
+            return PurchaseRequestStatus.CONTRACT_ON_REGISTRATION;
+        } else if (hasNotCoordinatedSpecification) {
+            return PurchaseRequestStatus.SPECIFICATION_NOT_COORDINATED;
+        } else if (hasOnCoordinationSpecification) {
+            return PurchaseRequestStatus.SPECIFICATION_ON_COORDINATION;
+        } else if (hasArchivedSpecification) {
+            return PurchaseRequestStatus.SPECIFICATION_CREATED_ARCHIVE;
+        } else if (hasSpecification && isOrder) {
+            return PurchaseRequestStatus.SPECIFICATION_CREATED;
+        } else if (hasContracts) {
+            return PurchaseRequestStatus.CONTRACT_CREATED;
+        } else if (hasNotCoordinatedPurchase) {
+            return PurchaseRequestStatus.PURCHASE_NOT_COORDINATED;
+        } else if (allPurchasesCompleted) {
+            return PurchaseRequestStatus.PURCHASE_COMPLETED;
+        } else if (hasPurchase) {
+            return PurchaseRequestStatus.PURCHASE_CREATED;
+        } else if (hasNotApproved) {
+            return PurchaseRequestStatus.NOT_APPROVED;
+        } else if (hasNotCoordinated) {
+            return PurchaseRequestStatus.NOT_COORDINATED;
+        } else if (hasCompletedFinalApproval) {
+            return PurchaseRequestStatus.APPROVED;
+        } else if (hasActiveFinalApproval) {
+            return PurchaseRequestStatus.ON_APPROVAL_FINAL;
+        } else if (hasActiveApproval) {
+            return PurchaseRequestStatus.ON_APPROVAL;
+        }
+        return null;
+    }
+
+    private static boolean anySpecification(List<SpecificationFacts> specifications, ContractStatus status) {
+        for (SpecificationFacts specification : specifications) {
+            if (specification.status() == status) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
@@ -4,9 +4,9 @@ import com.uzproc.backend.entity.contract.Contract;
 import com.uzproc.backend.entity.contract.ContractStatus;
 import com.uzproc.backend.entity.purchase.Purchase;
 import com.uzproc.backend.entity.purchaserequest.PurchaseRequest;
-import com.uzproc.backend.entity.purchaserequest.PurchaseRequestApproval;
 import com.uzproc.backend.entity.purchaserequest.PurchaseRequestStatus;
 import com.uzproc.backend.entity.purchase.PurchaseStatus;
+import com.uzproc.backend.event.DataChangedEvent;
 import com.uzproc.backend.repository.contract.ContractRepository;
 import com.uzproc.backend.repository.purchaserequest.PurchaseRequestApprovalRepository;
 import com.uzproc.backend.repository.purchaserequest.PurchaseRequestRepository;
@@ -14,18 +14,21 @@ import com.uzproc.backend.repository.purchase.PurchaseRepository;
 import com.uzproc.backend.service.calendar.WorkingDayService;
 import jakarta.persistence.EntityManager;
 import jakarta.persistence.PersistenceContext;
-import jakarta.persistence.Query;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.context.ApplicationEventPublisher;
 import org.springframework.stereotype.Service;
-import org.springframework.transaction.annotation.Propagation;
 import org.springframework.transaction.annotation.Transactional;
 
 import java.time.LocalDate;
 import java.time.LocalDateTime;
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Objects;
 import java.util.Set;
 
 /**
@@ -36,6 +39,11 @@ import java.util.Set;
 public class PurchaseRequestStatusUpdateService {
 
     private static final Logger logger = LoggerFactory.getLogger(PurchaseRequestStatusUpdateService.class);
+    /** Размер пакета заявок при массовом пересчёте (и списков IN в запросах предзагрузки). */
+    private static final int BULK_CHUNK_SIZE = 1000;
+    /** Условие: не исключён из расчёта статуса заявки. */
+    private static final String NOT_EXCLUDED_CONDITION =
+        " AND (excluded_from_status_calculation IS NULL OR excluded_from_status_calculation = false)";
     
     @PersistenceContext
     private EntityManager entityManager;
@@ -46,6 +54,7 @@ public class PurchaseRequestStatusUpdateService {
     private final PurchaseRepository purchaseRepository;
     private final PurchaseRequestStatusUpdater statusUpdater;
     private final WorkingDayService workingDayService;
+    private final ApplicationEventPublisher eventPublisher;
 
     public PurchaseRequestStatusUpdateService(
             PurchaseRequestRepository purchaseRequestRepository,
@@ -53,18 +62,30 @@ public class PurchaseRequestStatusUpdateService {
             ContractRepository contractRepository,
             PurchaseRepository purchaseRepository,
             PurchaseRequestStatusUpdater statusUpdater,
-            WorkingDayService workingDayService) {
+            WorkingDayService workingDayService,
+            ApplicationEventPublisher eventPublisher) {
         this.purchaseRequestRepository = purchaseRequestRepository;
         this.approvalRepository = approvalRepository;
         this.contractRepository = contractRepository;
         this.purchaseRepository = purchaseRepository;
         this.statusUpdater = statusUpdater;
         this.workingDayService = workingDayService;
+        this.eventPublisher = eventPublisher;
+    }
+
+    /**
+     * Итог массового пересчёта статусов.
+     *
+     * @param processed заявок рассмотрено
+     * @param changed   заявок, у которых статус изменился (записан в БД)
+     * @param errors    заявок, пересчёт которых завершился ошибкой (статус не менялся)
+     */
+    public record BulkUpdateResult(int processed, int changed, int errors, long timeMs) {
     }
 
     /**
      * Обновляет статус заявки на закупку на основе согласований, спецификаций и закупок
-     * Логика (приоритет по убыванию):
+     * Логика (приоритет по убыванию) — см. {@link PurchaseRequestStatusRules}:
      * - Если есть спецификация → статус "Спецификация создана"
      * - Если заявка с типом "Закупка" (requiresPurchase !== false) и есть связанная закупка → статус "Закупка создана"
      * - Если хотя бы одно согласование не утверждено → статус "Не утверждена"
@@ -86,396 +107,67 @@ public class PurchaseRequestStatusUpdateService {
             return;
         }
         
-        // Получаем все согласования для заявки
-        List<PurchaseRequestApproval> approvals = approvalRepository.findByIdPurchaseRequest(idPurchaseRequest);
-        
-        boolean hasNotApproved = false;
-        boolean hasNotCoordinated = false;
-        boolean hasActiveApproval = false;
-        boolean hasActiveFinalApproval = false;
-        boolean hasCompletedFinalApproval = false;
-        
-        // Проверяем каждое согласование
-        if (!approvals.isEmpty()) {
-            for (PurchaseRequestApproval approval : approvals) {
-                // Проверяем, не согласовано ли согласование
-                String completionResult = approval.getCompletionResult();
-                if (completionResult != null && !completionResult.trim().isEmpty()) {
-                    String resultLower = completionResult.toLowerCase().trim();
-                    // Проверяем различные варианты "не утверждено"
-                    if (resultLower.contains("не утвержден") || 
-                        resultLower.contains("не утверждено") ||
-                        resultLower.contains("не утверждена")) {
-                        hasNotApproved = true;
-                        logger.debug("Found not approved approval for request {}: {}", 
-                            idPurchaseRequest, completionResult);
-                    }
-                    // Проверяем различные варианты "не согласован"
-                    if (resultLower.contains("не согласован") || 
-                        resultLower.contains("не согласована") ||
-                        resultLower.contains("отклонен") ||
-                        resultLower.contains("отклонена")) {
-                        hasNotCoordinated = true;
-                        logger.debug("Found not coordinated approval for request {}: {}", 
-                            idPurchaseRequest, completionResult);
-                    }
-                }
-                
-                String stage = approval.getStage();
-                // Проверяем, является ли это утверждением
-                boolean isFinalApproval = stage != null && (stage.equals("Утверждение заявки на ЗП") || 
-                    stage.equals("Утверждение заявки на ЗП (НЕ требуется ЗП)"));
-                
-                // Проверяем, завершено ли утверждение
-                if (isFinalApproval && approval.getCompletionDate() != null) {
-                    // Проверяем, что результат положительный (согласовано)
-                    if (completionResult != null && !completionResult.trim().isEmpty()) {
-                        String resultLower = completionResult.toLowerCase().trim();
-                        if (resultLower.contains("согласован") || resultLower.contains("согласовано") ||
-                            resultLower.contains("утвержден") || resultLower.contains("утверждено")) {
-                            hasCompletedFinalApproval = true;
-                            logger.debug("Found completed final approval for request {}: stage={}, role={}, result={}", 
-                                idPurchaseRequest, stage, approval.getRole(), completionResult);
-                        }
-                    } else {
-                        // Если completionDate есть, но completionResult пустой, считаем утвержденным
-                        hasCompletedFinalApproval = true;
-                        logger.debug("Found completed final approval for request {}: stage={}, role={} (no result specified)", 
-                            idPurchaseRequest, stage, approval.getRole());
-                    }
-                }
-                
-                // Проверяем, активно ли согласование (назначено, но не завершено)
-                if (approval.getAssignmentDate() != null && approval.getCompletionDate() == null) {
-                    if (isFinalApproval) {
-                        hasActiveFinalApproval = true;
-                        logger.debug("Found active final approval for request {}: stage={}, role={}", 
-                            idPurchaseRequest, stage, approval.getRole());
-                    } else {
-                        hasActiveApproval = true;
-                        logger.debug("Found active approval for request {}: stage={}, role={}", 
-                            idPurchaseRequest, stage, approval.getRole());
-                    }
-                }
-            }
-        }
-        
-        // Проверяем наличие спецификации у заявки
+        List<PurchaseRequestStatusRules.ApprovalFacts> approvals = approvalRepository.findByIdPurchaseRequest(idPurchaseRequest).stream()
+            .map(a -> new PurchaseRequestStatusRules.ApprovalFacts(a.getStage(), a.getCompletionResult(), a.getAssignmentDate(), a.getCompletionDate()))
+            .toList();
+
         // Спецификации хранятся в таблице contracts с document_form = 'Спецификация'
         // и связаны с заявкой через purchase_request_id
-        boolean hasSpecification = false;
-        boolean hasSignedSpecification = false;
-        boolean hasOnCoordinationSpecification = false;
-        boolean hasNotCoordinatedSpecification = false;
-        boolean hasArchivedSpecification = false;
+        List<PurchaseRequestStatusRules.SpecificationFacts> specifications = List.of();
         try {
-            // Условие: не исключён из расчёта статуса заявки
-            String notExcludedCondition = " AND (excluded_from_status_calculation IS NULL OR excluded_from_status_calculation = false)";
-            // Проверяем наличие спецификации через нативный SQL запрос к таблице contracts
-            Query query = entityManager.createNativeQuery(
-                "SELECT COUNT(*) FROM contracts WHERE purchase_request_id = ? AND document_form = ?" + notExcludedCondition
-            );
-            query.setParameter(1, idPurchaseRequest);
-            query.setParameter(2, "Спецификация");
-            Long count = ((Number) query.getSingleResult()).longValue();
-            if (count > 0) {
-                hasSpecification = true;
-                logger.debug("Found {} specification(s) for purchase request {}", count, idPurchaseRequest);
-                
-                // Проверяем, есть ли подписанная спецификация (для заказов и закупок)
-                // В базе данных статус хранится как имя enum константы (SIGNED), а не displayName (Подписан)
-                Query signedQuery = entityManager.createNativeQuery(
-                    "SELECT COUNT(*) FROM contracts WHERE purchase_request_id = ? AND document_form = ? AND status = ?" + notExcludedCondition
-                );
-                signedQuery.setParameter(1, idPurchaseRequest);
-                signedQuery.setParameter(2, "Спецификация");
-                signedQuery.setParameter(3, "SIGNED"); // Используем имя enum константы, так как используется @Enumerated(EnumType.STRING)
-                Long signedCount = ((Number) signedQuery.getSingleResult()).longValue();
-                if (signedCount > 0) {
-                    hasSignedSpecification = true;
-                    boolean isOrder = purchaseRequest.getRequiresPurchase() != null && purchaseRequest.getRequiresPurchase() == false;
-                    logger.info("Found {} signed specification(s) for purchase request {} ({})", signedCount, idPurchaseRequest, isOrder ? "order type" : "purchase type");
-                } else {
-                    // Проверяем спецификации для заказов (когда requiresPurchase === false)
-                    if (purchaseRequest.getRequiresPurchase() != null && purchaseRequest.getRequiresPurchase() == false) {
-                        logger.debug("No signed specifications found for purchase request {} (order type)", idPurchaseRequest);
-                        
-                        // Проверяем, есть ли спецификация со статусом "На согласовании"
-                        Query onCoordinationSpecQuery = entityManager.createNativeQuery(
-                            "SELECT COUNT(*) FROM contracts WHERE purchase_request_id = ? AND document_form = ? AND status = ?" + notExcludedCondition
-                        );
-                        onCoordinationSpecQuery.setParameter(1, idPurchaseRequest);
-                        onCoordinationSpecQuery.setParameter(2, "Спецификация");
-                        onCoordinationSpecQuery.setParameter(3, "ON_COORDINATION"); // Используем имя enum константы
-                        Long onCoordinationSpecCount = ((Number) onCoordinationSpecQuery.getSingleResult()).longValue();
-                        if (onCoordinationSpecCount > 0) {
-                            hasOnCoordinationSpecification = true;
-                            logger.info("Found {} on coordination specification(s) for purchase request {} (order type)", onCoordinationSpecCount, idPurchaseRequest);
-                        } else {
-                            logger.debug("No on coordination specifications found for purchase request {} (order type)", idPurchaseRequest);
-                            
-                            // Проверяем, есть ли спецификация со статусом "Не согласован"
-                            Query notCoordinatedSpecQuery = entityManager.createNativeQuery(
-                                "SELECT COUNT(*) FROM contracts WHERE purchase_request_id = ? AND document_form = ? AND status = ?" + notExcludedCondition
-                            );
-                            notCoordinatedSpecQuery.setParameter(1, idPurchaseRequest);
-                            notCoordinatedSpecQuery.setParameter(2, "Спецификация");
-                            notCoordinatedSpecQuery.setParameter(3, "NOT_COORDINATED"); // Используем имя enum константы
-                            Long notCoordinatedSpecCount = ((Number) notCoordinatedSpecQuery.getSingleResult()).longValue();
-                            if (notCoordinatedSpecCount > 0) {
-                                hasNotCoordinatedSpecification = true;
-                                logger.info("Found {} not coordinated specification(s) for purchase request {} (order type)", notCoordinatedSpecCount, idPurchaseRequest);
-                            } else {
-                                logger.debug("No not coordinated specifications found for purchase request {} (order type)", idPurchaseRequest);
-                                
-                                // Проверяем, есть ли спецификация со статусом "Проект"
-                                Query projectQuery = entityManager.createNativeQuery(
-                                    "SELECT COUNT(*) FROM contracts WHERE purchase_request_id = ? AND document_form = ? AND status = ?" + notExcludedCondition
-                                );
-                                projectQuery.setParameter(1, idPurchaseRequest);
-                                projectQuery.setParameter(2, "Спецификация");
-                                projectQuery.setParameter(3, "PROJECT"); // Используем имя enum константы
-                                Long projectCount = ((Number) projectQuery.getSingleResult()).longValue();
-                            if (projectCount > 0) {
-                                // Проверяем, прошло ли более 60 рабочих дней с даты создания заявки
-                                // Используем purchaseRequestCreationDate, если есть, иначе используем дату создания спецификации
-                                LocalDateTime creationDate = purchaseRequest.getPurchaseRequestCreationDate();
-                                if (creationDate == null) {
-                                    // Если дата создания заявки отсутствует, используем дату создания спецификации как fallback
-                                    Query specDateQuery = entityManager.createNativeQuery(
-                                        "SELECT MIN(contract_creation_date) FROM contracts WHERE purchase_request_id = ? AND document_form = ? AND status = ?" + notExcludedCondition
-                                    );
-                                    specDateQuery.setParameter(1, idPurchaseRequest);
-                                    specDateQuery.setParameter(2, "Спецификация");
-                                    specDateQuery.setParameter(3, "PROJECT");
-                                    Object specDateObj = specDateQuery.getSingleResult();
-                                    if (specDateObj != null) {
-                                        if (specDateObj instanceof java.sql.Timestamp) {
-                                            creationDate = ((java.sql.Timestamp) specDateObj).toLocalDateTime();
-                                        } else if (specDateObj instanceof java.time.LocalDateTime) {
-                                            creationDate = (LocalDateTime) specDateObj;
-                                        }
-                                        logger.debug("Using specification creation date as fallback for purchase request {}: {}", idPurchaseRequest, creationDate);
-                                    }
-                                }
-                                
-                                if (creationDate != null) {
-                                    long workingDays = workingDayService.countWorkingDaysInclusive(
-                                            creationDate.toLocalDate(), LocalDate.now());
-                                    if (workingDays > 60) {
-                                        hasArchivedSpecification = true;
-                                        logger.info("Found {} project specification(s) for purchase request {} (order type) and {} working days passed (>60), marking as archive", 
-                                            projectCount, idPurchaseRequest, workingDays);
-                                    } else {
-                                        logger.debug("Found {} project specification(s) for purchase request {} (order type) but only {} working days passed (<=60)", 
-                                            projectCount, idPurchaseRequest, workingDays);
-                                    }
-                                } else {
-                                    logger.debug("Purchase request {} has no creation date (neither purchaseRequestCreationDate nor specification creation date), cannot check archive condition", idPurchaseRequest);
-                                }
-                            }
-                            }
-                        }
-                    }
-                }
-            } else {
-                logger.debug("No specifications found for purchase request {}", idPurchaseRequest);
-            }
+            @SuppressWarnings("unchecked")
+            List<Object[]> rows = entityManager.createNativeQuery(
+                "SELECT status, contract_creation_date FROM contracts WHERE purchase_request_id = ? AND document_form = ?" + NOT_EXCLUDED_CONDITION)
+                .setParameter(1, idPurchaseRequest)
+                .setParameter(2, PurchaseRequestStatusRules.SPECIFICATION_FORM)
+                .getResultList();
+            specifications = rows.stream()
+                .map(r -> new PurchaseRequestStatusRules.SpecificationFacts(contractStatus(r[0]), toLocalDateTime(r[1])))
+                .toList();
         } catch (Exception e) {
             logger.warn("Error checking specification for purchase request {}: {}", idPurchaseRequest, e.getMessage());
         }
-        
-        // Проверяем наличие связанной закупки для заявок с типом "Закупка" (requiresPurchase !== false)
-        boolean hasPurchase = false;
-        boolean hasNotCoordinatedPurchase = false;
-        boolean allPurchasesCompleted = false;
-        if (purchaseRequest.getRequiresPurchase() != null && purchaseRequest.getRequiresPurchase() != false) {
-            try {
-                // Получаем все связанные закупки через репозиторий
-                List<Purchase> purchases = purchaseRepository.findByPurchaseRequestId(idPurchaseRequest);
-                if (!purchases.isEmpty()) {
-                    hasPurchase = true;
-                    logger.info("Found {} purchase(s) for purchase request {} (requiresPurchase={})", 
-                        purchases.size(), idPurchaseRequest, purchaseRequest.getRequiresPurchase());
-                    
-                    // Проверяем, есть ли закупка со статусом "Не согласовано"
-                    boolean hasNotCoordinatedPurchaseStatus = purchases.stream()
-                        .anyMatch(p -> p.getStatus() != null && p.getStatus() == PurchaseStatus.NOT_COORDINATED);
-                    if (hasNotCoordinatedPurchaseStatus) {
-                        hasNotCoordinatedPurchase = true;
-                        logger.info("Found not coordinated purchase(s) for purchase request {}", idPurchaseRequest);
-                    } else {
-                        logger.debug("No not coordinated purchases found for purchase request {}", idPurchaseRequest);
-                    }
-                    
-                    // Проверяем, все ли закупки завершены
-                    // Считаем только закупки с непустым статусом (исключаем null)
-                    List<Purchase> purchasesWithStatus = purchases.stream()
-                        .filter(p -> p.getStatus() != null)
-                        .toList();
-                    
-                    if (!purchasesWithStatus.isEmpty()) {
-                        // Проверяем, что все закупки с непустым статусом имеют статус COMPLETED
-                        allPurchasesCompleted = purchasesWithStatus.stream()
-                            .allMatch(p -> p.getStatus() == PurchaseStatus.COMPLETED);
-                        
-                        if (allPurchasesCompleted) {
-                            logger.info("All {} purchase(s) for purchase request {} are completed", 
-                                purchasesWithStatus.size(), idPurchaseRequest);
-                        } else {
-                            logger.debug("Not all purchases are completed for purchase request {} ({} with status, {} completed)", 
-                                idPurchaseRequest, purchasesWithStatus.size(),
-                                purchasesWithStatus.stream().filter(p -> p.getStatus() == PurchaseStatus.COMPLETED).count());
-                        }
-                    } else {
-                        logger.debug("No purchases with status found for purchase request {}", idPurchaseRequest);
-                    }
-                } else {
-                    logger.debug("No purchases found for purchase request {} (requiresPurchase={})", 
-                        idPurchaseRequest, purchaseRequest.getRequiresPurchase());
-                }
-            } catch (Exception e) {
-                logger.error("Error checking purchase for purchase request {}: {}", idPurchaseRequest, e.getMessage(), e);
-            }
-        } else {
-            logger.debug("Purchase request {} does not require purchase (requiresPurchase={}), skipping purchase check", 
-                idPurchaseRequest, purchaseRequest.getRequiresPurchase());
+
+        List<Purchase> purchases = List.of();
+        List<PurchaseStatus> purchaseStatuses = List.of();
+        try {
+            purchases = purchaseRepository.findByPurchaseRequestId(idPurchaseRequest);
+            purchaseStatuses = purchases.stream().map(Purchase::getStatus).toList();
+        } catch (Exception e) {
+            logger.error("Error checking purchase for purchase request {}: {}", idPurchaseRequest, e.getMessage(), e);
         }
-        
-        // Проверяем статус всех связанных договоров
+
         // Договоры могут быть связаны:
         // 1. Напрямую через purchase_request_id
         // 2. Через закупки по contractInnerIds
-        boolean allContractsSigned = false;
-        boolean hasContracts = false;
-        boolean hasContractsOnRegistration = false;
+        List<PurchaseRequestStatusRules.ContractFacts> contracts = null;
         try {
-            List<Contract> allContracts = new ArrayList<>();
-            
-            // 1. Получаем договоры напрямую связанные с заявкой
-            List<Contract> directContracts = contractRepository.findByPurchaseRequestId(idPurchaseRequest);
-            allContracts.addAll(directContracts);
-            
-            // 2. Получаем договоры через закупки
-            List<Purchase> purchases = purchaseRepository.findByPurchaseRequestId(idPurchaseRequest);
+            List<Contract> allContracts = new ArrayList<>(contractRepository.findByPurchaseRequestId(idPurchaseRequest));
             Set<Long> contractIds = new HashSet<>();
             for (Purchase purchase : purchases) {
-                if (purchase.getContractInnerIds() != null && !purchase.getContractInnerIds().isEmpty()) {
-                    for (String contractInnerId : purchase.getContractInnerIds()) {
-                        if (contractInnerId != null && !contractInnerId.trim().isEmpty()) {
-                            contractRepository.findByInnerId(contractInnerId.trim()).ifPresent(contract -> {
-                                if (!contractIds.contains(contract.getId())) {
-                                    allContracts.add(contract);
-                                    contractIds.add(contract.getId());
-                                }
-                            });
-                        }
+                for (String contractInnerId : purchase.getContractInnerIds()) {
+                    if (contractInnerId != null && !contractInnerId.trim().isEmpty()) {
+                        contractRepository.findByInnerId(contractInnerId.trim()).ifPresent(contract -> {
+                            if (contractIds.add(contract.getId())) {
+                                allContracts.add(contract);
+                            }
+                        });
                     }
                 }
             }
-            
-            // Исключаем спецификации из проверки (они обрабатываются отдельно)
-            allContracts.removeIf(contract -> {
-                String documentForm = contract.getDocumentForm();
-                return documentForm != null && documentForm.equals("Спецификация");
-            });
-            // Исключаем договоры/спецификации, помеченные как исключённые из расчёта статуса заявки
-            allContracts.removeIf(contract -> Boolean.TRUE.equals(contract.getExcludedFromStatusCalculation()));
-            
-            if (!allContracts.isEmpty()) {
-                hasContracts = true;
-                // Проверяем, все ли договоры имеют статус "Подписан"
-                allContractsSigned = allContracts.stream()
-                    .allMatch(contract -> contract.getStatus() == ContractStatus.SIGNED);
-                // Проверяем, есть ли хотя бы один договор со статусом "На регистрации"
-                hasContractsOnRegistration = allContracts.stream()
-                    .anyMatch(contract -> contract.getStatus() == ContractStatus.ON_REGISTRATION);
-                
-                logger.debug("Found {} contracts for purchase request {} (excluding specifications), all signed: {}, has on registration: {}", 
-                    allContracts.size(), idPurchaseRequest, allContractsSigned, hasContractsOnRegistration);
-            } else {
-                logger.debug("No contracts found for purchase request {} (excluding specifications)", idPurchaseRequest);
-            }
+            contracts = allContracts.stream()
+                .map(c -> new PurchaseRequestStatusRules.ContractFacts(c.getDocumentForm(), c.getStatus(), c.getExcludedFromStatusCalculation()))
+                .toList();
         } catch (Exception e) {
             logger.warn("Error checking contracts for purchase request {}: {}", idPurchaseRequest, e.getMessage());
         }
-        
-        // Сохраняем текущий статус для сравнения
+
         PurchaseRequestStatus currentStatus = purchaseRequest.getStatus();
-        
-        // Определяем новый статус
-        PurchaseRequestStatus newStatus = null;
-        
-        // Приоритет: сначала проверяем подписанную спецификацию (для заказов, самый высокий приоритет),
-        // потом не согласованную спецификацию (для заказов, высокий приоритет),
-        // потом спецификацию на согласовании (для заказов, высокий приоритет),
-        // потом архивную спецификацию (для заказов с проектной спецификацией старше 60 рабочих дней),
-        // потом наличие спецификации (высокий приоритет), 
-        // потом проверяем подписанные договоры (для заказов и закупок) - если все договоры подписаны, то "Договор подписан"
-        // потом проверяем наличие договоров (для заказов и закупок) - если есть договор, то "Договор создан"
-        // потом проверяем статус закупки (для заявок с requiresPurchase !== false) - если закупка не согласована, то "Закупка не согласована"
-        // потом проверяем завершенность всех закупок (для заявок с requiresPurchase !== false) - если все закупки завершены, то "Закупка завершена"
-        // потом наличие закупки (для заявок с requiresPurchase !== false) - даже если заявка утверждена,
-        // потом на не утверждено, потом на не согласованные, 
-        // потом на завершенное утверждение, потом на активное утверждение, потом на согласование
-        if (hasSignedSpecification && purchaseRequest.getRequiresPurchase() != null && purchaseRequest.getRequiresPurchase() == false) {
-            // Для заказов (requiresPurchase === false) с подписанной спецификацией
-            newStatus = PurchaseRequestStatus.SPECIFICATION_SIGNED;
-        } else if (hasSignedSpecification && purchaseRequest.getRequiresPurchase() != null && purchaseRequest.getRequiresPurchase() != false) {
-            // Для закупок (requiresPurchase !== false) с подписанной спецификацией - статус "Договор подписан"
-            newStatus = PurchaseRequestStatus.CONTRACT_SIGNED;
-            logger.info("Found signed specification for purchase request {} (purchase type), setting status to CONTRACT_SIGNED", idPurchaseRequest);
-        } else if (hasContracts && allContractsSigned) {
-            // Если есть договоры и все они подписаны (для заказов и закупок), устанавливаем статус "Договор подписан"
-            newStatus = PurchaseRequestStatus.CONTRACT_SIGNED;
-            logger.info("All contracts signed for purchase request {} (requiresPurchase={}), setting status to CONTRACT_SIGNED", 
-                idPurchaseRequest, purchaseRequest.getRequiresPurchase());
-        } else if (hasContracts && hasContractsOnRegistration) {
-            // Если есть договоры и хотя бы один на регистрации (оба этапа согласованы, регистрация в процессе)
-            newStatus = PurchaseRequestStatus.CONTRACT_ON_REGISTRATION;
-            logger.info("Found contract(s) on registration for purchase request {} (requiresPurchase={}), setting status to CONTRACT_ON_REGISTRATION",
-                idPurchaseRequest, purchaseRequest.getRequiresPurchase());
-        } else if (hasNotCoordinatedSpecification) {
-            // Для заказов (requiresPurchase === false) с не согласованной спецификацией
-            newStatus = PurchaseRequestStatus.SPECIFICATION_NOT_COORDINATED;
-        } else if (hasOnCoordinationSpecification) {
-            // Для заказов (requiresPurchase === false) со спецификацией на согласовании
-            newStatus = PurchaseRequestStatus.SPECIFICATION_ON_COORDINATION;
-            logger.info("Found on coordination specification for purchase request {} (order type), setting status to SPECIFICATION_ON_COORDINATION", idPurchaseRequest);
-        } else if (hasArchivedSpecification) {
-            // Для заказов (requiresPurchase === false) с проектной спецификацией старше 60 рабочих дней
-            newStatus = PurchaseRequestStatus.SPECIFICATION_CREATED_ARCHIVE;
-        } else if (hasSpecification && purchaseRequest.getRequiresPurchase() != null && purchaseRequest.getRequiresPurchase() == false) {
-            // Статус "Спецификация создана" только для заказов (requiresPurchase === false)
-            newStatus = PurchaseRequestStatus.SPECIFICATION_CREATED;
-        } else if (hasContracts) {
-            // Если есть договор (для заказов и закупок), устанавливаем статус "Договор создан"
-            newStatus = PurchaseRequestStatus.CONTRACT_CREATED;
-            logger.info("Found contracts for purchase request {} (requiresPurchase={}), setting status to CONTRACT_CREATED", 
-                idPurchaseRequest, purchaseRequest.getRequiresPurchase());
-        } else if (hasNotCoordinatedPurchase) {
-            // Если связанная закупка имеет статус "Не согласовано", устанавливаем статус "Закупка не согласована"
-            newStatus = PurchaseRequestStatus.PURCHASE_NOT_COORDINATED;
-        } else if (allPurchasesCompleted && purchaseRequest.getRequiresPurchase() != null && purchaseRequest.getRequiresPurchase() != false) {
-            // Если все связанные закупки завершены, устанавливаем статус "Закупка завершена"
-            newStatus = PurchaseRequestStatus.PURCHASE_COMPLETED;
-            logger.info("All purchases completed for purchase request {} (requiresPurchase={}), setting status to PURCHASE_COMPLETED", 
-                idPurchaseRequest, purchaseRequest.getRequiresPurchase());
-        } else if (hasPurchase) {
-            // Если есть закупка, устанавливаем статус "Закупка создана" даже если заявка утверждена
-            newStatus = PurchaseRequestStatus.PURCHASE_CREATED;
-        } else if (hasNotApproved) {
-            newStatus = PurchaseRequestStatus.NOT_APPROVED;
-        } else if (hasNotCoordinated) {
-            newStatus = PurchaseRequestStatus.NOT_COORDINATED;
-        } else if (hasCompletedFinalApproval) {
-            newStatus = PurchaseRequestStatus.APPROVED;
-        } else if (hasActiveFinalApproval) {
-            newStatus = PurchaseRequestStatus.ON_APPROVAL_FINAL;
-        } else if (hasActiveApproval) {
-            newStatus = PurchaseRequestStatus.ON_APPROVAL;
-        }
-        
+        PurchaseRequestStatus newStatus = PurchaseRequestStatusRules.resolve(
+            new PurchaseRequestStatusRules.StatusInputs(idPurchaseRequest, purchaseRequest.getRequiresPurchase(),
+                purchaseRequest.getPurchaseRequestCreationDate(), approvals, specifications, purchaseStatuses, contracts),
+            workingDayService, LocalDate.now());
+
         // Обновляем статус только если он изменился
         if (newStatus != null && currentStatus != newStatus) {
             // Используем отдельный сервис для обновления в новой транзакции
@@ -495,89 +187,265 @@ public class PurchaseRequestStatusUpdateService {
 
     /**
      * Массовое обновление статусов для всех заявок на закупку
-     * Используется после парсинга данных для обновления всех статусов
-     * Каждая обработка записи выполняется в отдельной транзакции с явным flush для освобождения соединения
+     * Используется после парсинга данных для обновления всех статусов.
+     * Заявки обрабатываются пакетами по {@value #BULK_CHUNK_SIZE}: согласования, спецификации, закупки и договоры
+     * пакета читаются несколькими запросами, правила ({@link PurchaseRequestStatusRules}) применяются в памяти,
+     * в БД одним batch UPDATE (в своей транзакции) пишутся только изменившиеся статусы.
      */
-    @Transactional
-    public void updateAllStatuses() {
+    public BulkUpdateResult updateAllStatuses() {
         logger.info("Starting mass status update for all purchase requests");
-        long startTime = System.currentTimeMillis();
-        
-        // Получаем все заявки на закупку (read-only транзакция)
-        List<PurchaseRequest> allRequests = purchaseRequestRepository.findAll();
-        logger.info("Found {} purchase requests to update", allRequests.size());
-        
-        int updatedCount = 0;
-        int errorCount = 0;
-        
-        for (PurchaseRequest request : allRequests) {
-            Long idPurchaseRequest = request.getIdPurchaseRequest();
-            try {
-                PurchaseRequestStatus oldStatus = request.getStatus();
-                // Обновляем статус
-                updateStatus(idPurchaseRequest);
-
-                // Проверяем, изменился ли статус
-                PurchaseRequest reloaded = purchaseRequestRepository.findByIdPurchaseRequest(idPurchaseRequest)
-                    .orElse(null);
-                if (reloaded != null && reloaded.getStatus() != oldStatus) {
-                    updatedCount++;
-                }
-            } catch (Exception e) {
-                errorCount++;
-                logger.error("Error updating status for purchase request {}: {}",
-                    idPurchaseRequest, e.getMessage(), e);
-            } finally {
-                // Очищаем persistence-context после каждой заявки, чтобы сессия Hibernate
-                // не разрасталась: updateStatus выполняет множество native-запросов, перед каждым
-                // из которых Hibernate авто-flush'ит ВСЮ сессию (dirty-checking). Без clear() это
-                // деградирует до O(n²) на тысячах заявок (запись статуса идёт через REQUIRES_NEW,
-                // поэтому в основной сессии только чтения — терять нечего).
-                entityManager.clear();
-            }
-        }
-        
-        long processingTime = System.currentTimeMillis() - startTime;
+        @SuppressWarnings("unchecked")
+        List<Object[]> rows = entityManager.createNativeQuery(
+            "SELECT id_purchase_request, status, requires_purchase, purchase_request_creation_date " +
+            "FROM purchase_requests ORDER BY id_purchase_request")
+            .getResultList();
+        BulkUpdateResult result = recomputeStatuses(rows);
         logger.info("Mass status update completed: {} requests processed, {} updated, {} errors, time: {} ms", 
-            allRequests.size(), updatedCount, errorCount, processingTime);
-    }
-    
-    /**
-     * Обновляет статус в новой транзакции (для массовых обновлений)
-     */
-    @Transactional(propagation = Propagation.REQUIRES_NEW)
-    private void updateStatusInNewTransaction(Long idPurchaseRequest) {
-        updateStatus(idPurchaseRequest);
+            result.processed(), result.changed(), result.errors(), result.timeMs());
+        eventPublisher.publishEvent(new DataChangedEvent(DataChangedEvent.SOURCE_STATUS_UPDATE, true));
+        return result;
     }
 
     /**
-     * Обновление статусов для заявок с указанными ID
-     * Каждая обработка записи выполняется в отдельной транзакции
+     * Обновление статусов для заявок с указанными ID (тот же пакетный пересчёт, что и {@link #updateAllStatuses()}).
      * 
      * @param idPurchaseRequests список ID заявок для обновления
      */
-    public void updateStatuses(List<Long> idPurchaseRequests) {
+    public BulkUpdateResult updateStatuses(List<Long> idPurchaseRequests) {
         logger.info("Starting status update for {} purchase requests", idPurchaseRequests.size());
+        List<Object[]> rows = new ArrayList<>();
+        List<Long> ids = idPurchaseRequests.stream().filter(Objects::nonNull).distinct().toList();
+        for (int from = 0; from < ids.size(); from += BULK_CHUNK_SIZE) {
+            @SuppressWarnings("unchecked")
+            List<Object[]> chunk = entityManager.createNativeQuery(
+                "SELECT id_purchase_request, status, requires_purchase, purchase_request_creation_date " +
+                "FROM purchase_requests WHERE id_purchase_request IN (:ids) ORDER BY id_purchase_request")
+                .setParameter("ids", ids.subList(from, Math.min(from + BULK_CHUNK_SIZE, ids.size())))
+                .getResultList();
+            rows.addAll(chunk);
+        }
+        BulkUpdateResult result = recomputeStatuses(rows);
+        logger.info("Status update completed: {} requests processed, {} updated, {} errors, time: {} ms", 
+            result.processed(), result.changed(), result.errors(), result.timeMs());
+        return result;
+    }
+
+    /**
+     * Пакетный пересчёт по строкам (id_purchase_request, status, requires_purchase, purchase_request_creation_date),
+     * отсортированным по id. Заявки с повторяющимся номером считаются ошибкой, как и при поштучном пересчёте.
+     */
+    private BulkUpdateResult recomputeStatuses(List<Object[]> rows) {
         long startTime = System.currentTimeMillis();
-        
-        int updatedCount = 0;
-        int errorCount = 0;
-        
-        for (Long idPurchaseRequest : idPurchaseRequests) {
+        LocalDate today = LocalDate.now();
+        Map<Long, Object[]> byId = new LinkedHashMap<>();
+        Map<Long, Integer> occurrences = new HashMap<>();
+        for (Object[] row : rows) {
+            Long id = toLong(row[0]);
+            if (id != null) {
+                byId.putIfAbsent(id, row);
+                occurrences.merge(id, 1, Integer::sum);
+            }
+        }
+        int changed = 0;
+        int errors = 0;
+        Map<Long, Object[]> chunk = new LinkedHashMap<>();
+        for (Map.Entry<Long, Object[]> entry : byId.entrySet()) {
+            int count = occurrences.get(entry.getKey());
+            if (count > 1) {
+                // Поштучный пересчёт падал на неоднозначном поиске заявки — каждая строка-дубль считается ошибкой
+                errors += count;
+                logger.error("Error updating status for purchase request {}: {} rows share this number",
+                    entry.getKey(), count);
+                continue;
+            }
+            chunk.put(entry.getKey(), entry.getValue());
+            if (chunk.size() >= BULK_CHUNK_SIZE) {
+                int[] counts = recomputeChunk(chunk, today);
+                changed += counts[0];
+                errors += counts[1];
+                chunk.clear();
+            }
+        }
+        if (!chunk.isEmpty()) {
+            int[] counts = recomputeChunk(chunk, today);
+            changed += counts[0];
+            errors += counts[1];
+        }
+        return new BulkUpdateResult(rows.size(), changed, errors, System.currentTimeMillis() - startTime);
+    }
+
+    /**
+     * Пересчитывает пакет заявок; возвращает {изменено, ошибок}.
+     */
+    private int[] recomputeChunk(Map<Long, Object[]> requests, LocalDate today) {
+        List<Long> ids = new ArrayList<>(requests.keySet());
+        Map<Long, List<PurchaseRequestStatusRules.ApprovalFacts>> approvals;
+        Map<Long, List<PurchaseRequestStatusRules.SpecificationFacts>> specifications = new HashMap<>();
+        Map<Long, List<PurchaseRequestStatusRules.ContractFacts>> contracts = new HashMap<>();
+        Map<Long, Map<Long, PurchaseStatus>> purchaseStatuses = new HashMap<>();
+        Map<Long, Set<String>> contractInnerIds = new HashMap<>();
+        Map<String, List<PurchaseRequestStatusRules.ContractFacts>> contractsByInnerId = new HashMap<>();
+        try {
+            approvals = loadApprovals(ids);
+            loadContracts(ids, specifications, contracts);
+            loadPurchases(ids, purchaseStatuses, contractInnerIds);
+            Set<String> innerIds = new HashSet<>();
+            contractInnerIds.values().forEach(innerIds::addAll);
+            loadContractsByInnerId(innerIds, contractsByInnerId);
+        } catch (Exception e) {
+            logger.error("Error loading data for status update of {} purchase requests ({}..{}): {}",
+                ids.size(), ids.get(0), ids.get(ids.size() - 1), e.getMessage(), e);
+            return new int[] { 0, ids.size() };
+        }
+
+        Map<Long, PurchaseRequestStatus> changes = new LinkedHashMap<>();
+        int errors = 0;
+        for (Long id : ids) {
+            Object[] row = requests.get(id);
             try {
-                updateStatus(idPurchaseRequest);
-                updatedCount++;
+                List<PurchaseRequestStatusRules.ContractFacts> requestContracts =
+                    new ArrayList<>(contracts.getOrDefault(id, List.of()));
+                for (String innerId : contractInnerIds.getOrDefault(id, Set.of())) {
+                    List<PurchaseRequestStatusRules.ContractFacts> byInnerId = contractsByInnerId.get(innerId);
+                    if (byInnerId == null) {
+                        continue;
+                    }
+                    if (byInnerId.size() > 1) {
+                        // Неоднозначный внутренний номер: поштучный поиск падал, признаки договоров не ставились
+                        requestContracts = null;
+                        break;
+                    }
+                    requestContracts.add(byInnerId.get(0));
+                }
+                Map<Long, PurchaseStatus> purchases = purchaseStatuses.getOrDefault(id, Map.of());
+                PurchaseRequestStatus currentStatus = requestStatus(row[1]);
+                PurchaseRequestStatus newStatus = PurchaseRequestStatusRules.resolve(
+                    new PurchaseRequestStatusRules.StatusInputs(id, toBoolean(row[2]), toLocalDateTime(row[3]),
+                        approvals.getOrDefault(id, List.of()), specifications.getOrDefault(id, List.of()),
+                        new ArrayList<>(purchases.values()), requestContracts),
+                    workingDayService, today);
+                if (newStatus != null && newStatus != currentStatus) {
+                    changes.put(id, newStatus);
+                    logger.debug("Status for purchase request {}: {} -> {}", id,
+                        currentStatus != null ? currentStatus.getDisplayName() : "null", newStatus.getDisplayName());
+                }
             } catch (Exception e) {
-                errorCount++;
-                logger.error("Error updating status for purchase request {}: {}", 
-                    idPurchaseRequest, e.getMessage(), e);
+                errors++;
+                logger.error("Error updating status for purchase request {}: {}", id, e.getMessage(), e);
             }
         }
-        
-        long processingTime = System.currentTimeMillis() - startTime;
-        logger.info("Status update completed: {} requests processed, {} updated, {} errors, time: {} ms", 
-            idPurchaseRequests.size(), updatedCount, errorCount, processingTime);
+        if (changes.isEmpty()) {
+            return new int[] { 0, errors };
+        }
+        try {
+            return new int[] { statusUpdater.updateStatusesInNewTransaction(changes), errors };
+        } catch (Exception e) {
+            logger.error("Error writing {} status changes for purchase requests {}..{}: {}",
+                changes.size(), ids.get(0), ids.get(ids.size() - 1), e.getMessage(), e);
+            return new int[] { 0, errors + changes.size() };
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private Map<Long, List<PurchaseRequestStatusRules.ApprovalFacts>> loadApprovals(List<Long> ids) {
+        List<Object[]> rows = entityManager.createNativeQuery(
+            "SELECT id_purchase_request, stage, completion_result, assignment_date, completion_date " +
+            "FROM purchase_request_approvals WHERE id_purchase_request IN (:ids)")
+            .setParameter("ids", ids)
+            .getResultList();
+        Map<Long, List<PurchaseRequestStatusRules.ApprovalFacts>> result = new HashMap<>();
+        for (Object[] r : rows) {
+            result.computeIfAbsent(toLong(r[0]), k -> new ArrayList<>()).add(new PurchaseRequestStatusRules.ApprovalFacts(
+                (String) r[1], (String) r[2], toLocalDateTime(r[3]), toLocalDateTime(r[4])));
+        }
+        return result;
+    }
+
+    /** Договоры, связанные с заявками напрямую; не исключённые спецификации — отдельно. */
+    @SuppressWarnings("unchecked")
+    private void loadContracts(List<Long> ids,
+                               Map<Long, List<PurchaseRequestStatusRules.SpecificationFacts>> specifications,
+                               Map<Long, List<PurchaseRequestStatusRules.ContractFacts>> contracts) {
+        List<Object[]> rows = entityManager.createNativeQuery(
+            "SELECT purchase_request_id, document_form, status, excluded_from_status_calculation, contract_creation_date " +
+            "FROM contracts WHERE purchase_request_id IN (:ids)")
+            .setParameter("ids", ids)
+            .getResultList();
+        for (Object[] r : rows) {
+            Long id = toLong(r[0]);
+            String documentForm = (String) r[1];
+            ContractStatus status = contractStatus(r[2]);
+            Boolean excluded = toBoolean(r[3]);
+            contracts.computeIfAbsent(id, k -> new ArrayList<>())
+                .add(new PurchaseRequestStatusRules.ContractFacts(documentForm, status, excluded));
+            if (PurchaseRequestStatusRules.SPECIFICATION_FORM.equals(documentForm) && !Boolean.TRUE.equals(excluded)) {
+                specifications.computeIfAbsent(id, k -> new ArrayList<>())
+                    .add(new PurchaseRequestStatusRules.SpecificationFacts(status, toLocalDateTime(r[4])));
+            }
+        }
+    }
+
+    /** Статусы закупок заявок (по id закупки) и внутренние номера их договоров (purchase_contracts). */
+    @SuppressWarnings("unchecked")
+    private void loadPurchases(List<Long> ids, Map<Long, Map<Long, PurchaseStatus>> purchaseStatuses,
+                               Map<Long, Set<String>> contractInnerIds) {
+        List<Object[]> rows = entityManager.createNativeQuery(
+            "SELECT p.purchase_request_id, p.id, p.status, pc.contract_inner_id " +
+            "FROM purchases p LEFT JOIN purchase_contracts pc ON pc.purchase_id = p.id " +
+            "WHERE p.purchase_request_id IN (:ids)")
+            .setParameter("ids", ids)
+            .getResultList();
+        for (Object[] r : rows) {
+            Long id = toLong(r[0]);
+            purchaseStatuses.computeIfAbsent(id, k -> new HashMap<>())
+                .put(toLong(r[1]), r[2] != null ? PurchaseStatus.valueOf((String) r[2]) : null);
+            String innerId = (String) r[3];
+            if (innerId != null && !innerId.trim().isEmpty()) {
+                contractInnerIds.computeIfAbsent(id, k -> new HashSet<>()).add(innerId.trim());
+            }
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private void loadContractsByInnerId(Set<String> innerIds,
+                                        Map<String, List<PurchaseRequestStatusRules.ContractFacts>> contractsByInnerId) {
+        List<String> all = new ArrayList<>(innerIds);
+        for (int from = 0; from < all.size(); from += BULK_CHUNK_SIZE) {
+            List<Object[]> rows = entityManager.createNativeQuery(
+                "SELECT inner_id, document_form, status, excluded_from_status_calculation " +
+                "FROM contracts WHERE inner_id IN (:innerIds)")
+                .setParameter("innerIds", all.subList(from, Math.min(from + BULK_CHUNK_SIZE, all.size())))
+                .getResultList();
+            for (Object[] r : rows) {
+                contractsByInnerId.computeIfAbsent((String) r[0], k -> new ArrayList<>())
+                    .add(new PurchaseRequestStatusRules.ContractFacts((String) r[1], contractStatus(r[2]), toBoolean(r[3])));
+            }
+        }
+    }
+
+    private static Long toLong(Object value) {
+        return value != null ? ((Number) value).longValue() : null;
+    }
+
+    private static Boolean toBoolean(Object value) {
+        return value != null ? (Boolean) value : null;
     }
-    
-}
 
+    private static LocalDateTime toLocalDateTime(Object value) {
+        if (value instanceof java.sql.Timestamp timestamp) {
+            return timestamp.toLocalDateTime();
+        }
+        if (value instanceof LocalDateTime localDateTime) {
+            return localDateTime;
+        }
+        return null;
+    }
+
+    private static ContractStatus contractStatus(Object value) {
+        return value != null ? ContractStatus.valueOf((String) value) : null;
+    }
+
+    private static PurchaseRequestStatus requestStatus(Object value) {
+        return value != null ? PurchaseRequestStatus.valueOf((String) value) : null;
+    }
+}
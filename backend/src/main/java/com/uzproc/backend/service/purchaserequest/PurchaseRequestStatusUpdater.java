@@ -1,6 +1,7 @@
 package com.uzproc.backend.service.purchaserequest;
 
 import com.uzproc.backend.entity.purchaserequest.PurchaseRequestStatus;
+import org.springframework.jdbc.core.JdbcTemplate;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Propagation;
 import org.springframework.transaction.annotation.Transactional;
@@ -8,6 +9,10 @@ import org.springframework.transaction.annotation.Transactional;
 import jakarta.persistence.EntityManager;
 import jakarta.persistence.PersistenceContext;
 
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
 /**
  * Вспомогательный сервис для обновления статусов в отдельных транзакциях
  * Необходим для того, чтобы Spring AOP мог создать proxy и выполнить @Transactional
@@ -18,6 +23,12 @@ public class PurchaseRequestStatusUpdater {
     @PersistenceContext
     private EntityManager entityManager;
 
+    private final JdbcTemplate jdbcTemplate;
+
+    public PurchaseRequestStatusUpdater(JdbcTemplate jdbcTemplate) {
+        this.jdbcTemplate = jdbcTemplate;
+    }
+
     /**
      * Обновляет статус заявки в новой транзакции
      * Каждый вызов этого метода выполняется в отдельной транзакции и немедленно коммитится
@@ -35,4 +46,23 @@ public class PurchaseRequestStatusUpdater {
 
         return updated;
     }
+
+    /**
+     * Записывает пакет новых статусов одним JDBC batch в новой транзакции.
+     *
+     * @return число обновлённых строк
+     */
+    @Transactional(propagation = Propagation.REQUIRES_NEW)
+    public int updateStatusesInNewTransaction(Map<Long, PurchaseRequestStatus> statuses) {
+        List<Object[]> args = new ArrayList<>(statuses.size());
+        statuses.forEach((id, status) -> args.add(new Object[] { status.name(), id }));
+        int[] counts = jdbcTemplate.batchUpdate(
+            "UPDATE purchase_requests SET status = ? WHERE id_purchase_request = ?", args);
+        int updated = 0;
+        for (int count : counts) {
+            // SUCCESS_NO_INFO (-2): драйвер не сообщил число строк — строка с таким номером есть, считаем обновлённой
+            updated += count == java.sql.Statement.SUCCESS_NO_INFO ? 1 : count;
+        }
+        return updated;
+    }
 }
@@ -0,0 +1,114 @@
+package com.uzproc.backend.service.search;
+
+import com.uzproc.backend.entity.contract.ContractStatus;
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.PersistenceContext;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Ранжированный подстрочный поиск по текстовым полям.
+ * <p>
+ * Условия имеют вид {@code lower(колонка) LIKE '%запрос%'} — ровно то выражение, по которому построены
+ * триграммные GIN-индексы (pg_trgm, см. V155), поэтому поиск не сканирует таблицу целиком и его время
+ * почти не зависит от её размера. Порядок: точное совпадение номера, затем близость запроса к словам
+ * полей (word_similarity), затем более новые записи. Спецсимволы LIKE в запросе экранируются.
+ */
+@Service
+public class TextSearchService {
+
+    @PersistenceContext
+    private EntityManager entityManager;
+
+    /**
+     * Номера заявок (id_purchase_request) для трекера: по номеру, предмету, наименованию или ФИО инициатора.
+     */
+    @Transactional(readOnly = true)
+    public List<Long> searchPurchaseRequestIds(String query, int limit) {
+        String q = normalize(query);
+        if (q == null) {
+            return Collections.emptyList();
+        }
+        @SuppressWarnings("unchecked")
+        List<Number> rows = entityManager.createNativeQuery(
+            "SELECT pr.id_purchase_request FROM purchase_requests pr " +
+            "WHERE lower(pr.purchase_request_subject) LIKE :pattern " +
+            "   OR lower(pr.name) LIKE :pattern " +
+            "   OR lower(pr.purchase_request_initiator) LIKE :pattern " +
+            "   OR CAST(pr.id_purchase_request AS text) LIKE :pattern " +
+            "ORDER BY (CAST(pr.id_purchase_request AS text) = :q) DESC, " +
+            "   GREATEST(word_similarity(:q, lower(COALESCE(pr.purchase_request_subject, ''))), " +
+            "            word_similarity(:q, lower(COALESCE(pr.name, ''))), " +
+            "            word_similarity(:q, lower(COALESCE(pr.purchase_request_initiator, '')))) DESC, " +
+            "   pr.id_purchase_request DESC " +
+            "LIMIT :limit")
+            .setParameter("pattern", containsPattern(q))
+            .setParameter("q", q)
+            .setParameter("limit", limit)
+            .getResultList();
+        return toLongs(rows);
+    }
+
+    /**
+     * ID подписанных договоров, подготовленных договорником: по внутреннему номеру, наименованию или заголовку.
+     */
+    @Transactional(readOnly = true)
+    public List<Long> searchSignedContractorContractIds(String query, int limit) {
+        String q = normalize(query);
+        if (q == null) {
+            return Collections.emptyList();
+        }
+        @SuppressWarnings("unchecked")
+        List<Number> rows = entityManager.createNativeQuery(
+            "SELECT c.id FROM contracts c " +
+            "JOIN users u ON u.id = c.prepared_by_id " +
+            "WHERE c.status = :status AND u.is_contractor = true " +
+            "  AND (lower(c.inner_id) LIKE :pattern OR lower(c.name) LIKE :pattern OR lower(c.title) LIKE :pattern) " +
+            "ORDER BY (lower(c.inner_id) = :q) DESC, " +
+            "   GREATEST(word_similarity(:q, lower(COALESCE(c.inner_id, ''))), " +
+            "            word_similarity(:q, lower(COALESCE(c.name, ''))), " +
+            "            word_similarity(:q, lower(COALESCE(c.title, '')))) DESC, " +
+            "   c.contract_creation_date DESC NULLS LAST " +
+            "LIMIT :limit")
+            .setParameter("status", ContractStatus.SIGNED.name())
+            .setParameter("pattern", containsPattern(q))
+            .setParameter("q", q)
+            .setParameter("limit", limit)
+            .getResultList();
+        return toLongs(rows);
+    }
+
+    /**
+     * Шаблон LIKE «содержит» для уже приведённого к нижнему регистру значения: %, _ и \ экранируются.
+     */
+    public static String containsPattern(String lowerValue) {
+        StringBuilder pattern = new StringBuilder(lowerValue.length() + 2).append('%');
+        for (int i = 0; i < lowerValue.length(); i++) {
+            char c = lowerValue.charAt(i);
+            if (c == '%' || c == '_' || c == '\\') {
+                pattern.append('\\');
+            }
+            pattern.append(c);
+        }
+        return pattern.append('%').toString();
+    }
+
+    private static String normalize(String query) {
+        if (query == null || query.trim().isEmpty()) {
+            return null;
+        }
+        return query.trim().toLowerCase();
+    }
+
+    private static List<Long> toLongs(List<Number> rows) {
+        List<Long> result = new ArrayList<>(rows.size());
+        for (Number row : rows) {
+            result.add(row.longValue());
+        }
+        return result;
+    }
+}
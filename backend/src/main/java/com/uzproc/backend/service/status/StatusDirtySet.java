@@ -0,0 +1,128 @@
+package com.uzproc.backend.service.status;
+
+import com.uzproc.backend.event.EntityIdsChangedEvent;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.event.TransactionPhase;
+import org.springframework.transaction.event.TransactionalEventListener;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Накопитель ключей заявок/закупок/договоров, сохранённых загрузчиками с момента последнего пересчёта статусов.
+ * Наполняется событиями {@link EntityIdsChangedEvent}, читается {@link StatusRecalculationService}.
+ * <p>
+ * Ключи хранятся в таблице status_dirty_keys: пишутся в той же транзакции, что и сами данные (перед её фиксацией),
+ * и удаляются только после успешного пересчёта ({@link #acknowledge}). Перезапуск или падение процесса до пересчёта
+ * их не теряет — стартовый пересчёт ({@link com.uzproc.backend.config.StatusUpdateRunner}) подхватывает оставшиеся,
+ * даже если файлы импорта не изменились и повторно не разбираются.
+ * Удаляются ровно прочитанные пары (ключ, mark_seq): ключ, отмеченный повторно во время пересчёта, получает новый
+ * mark_seq и остаётся до следующего пересчёта, как и ключ, чья транзакция зафиксировалась уже после чтения снимка
+ * (mark_seq выдаётся до фиксации, поэтому сравнение «не больше прочитанного максимума» такие ключи бы потеряло).
+ */
+@Component
+public class StatusDirtySet {
+
+    /**
+     * Ключи, забранные для пересчёта (каждый список отсортирован).
+     *
+     * @param purchaseRequestIds id_purchase_request заявок
+     * @param purchaseKeys       purchase_request_id закупок
+     * @param contractIds        id договоров
+     * @param marks              прочитанные строки status_dirty_keys — их удаляет {@link #acknowledge}
+     */
+    public record Snapshot(List<Long> purchaseRequestIds, List<Long> purchaseKeys, List<Long> contractIds, List<Mark> marks) {
+        public boolean isEmpty() {
+            return purchaseRequestIds.isEmpty() && purchaseKeys.isEmpty() && contractIds.isEmpty();
+        }
+    }
+
+    /** Строка status_dirty_keys в том виде, в каком её прочитал снимок. */
+    public record Mark(String entityType, long entityKey, long markSeq) {
+    }
+
+    private static final String MARK_SQL =
+        "INSERT INTO status_dirty_keys (entity_type, entity_key, mark_seq) " +
+        "SELECT ?, k, nextval('status_dirty_keys_mark_seq') FROM unnest(?) AS k " +
+        "ON CONFLICT (entity_type, entity_key) DO UPDATE SET mark_seq = EXCLUDED.mark_seq";
+
+    /** Удаляет только прочитанные снимком строки: строка, перезаписанная после чтения, не совпадёт по mark_seq. */
+    private static final String ACKNOWLEDGE_SQL =
+        "DELETE FROM status_dirty_keys d " +
+        "USING unnest(?, ?, ?) AS s(entity_type, entity_key, mark_seq) " +
+        "WHERE d.entity_type = s.entity_type AND d.entity_key = s.entity_key AND d.mark_seq = s.mark_seq";
+
+    private final JdbcTemplate jdbcTemplate;
+
+    public StatusDirtySet(JdbcTemplate jdbcTemplate) {
+        this.jdbcTemplate = jdbcTemplate;
+    }
+
+    /**
+     * Записывает ключи перед фиксацией транзакции, сохранившей данные (атомарно с ними);
+     * событие вне транзакции записывается сразу.
+     */
+    @TransactionalEventListener(phase = TransactionPhase.BEFORE_COMMIT, fallbackExecution = true)
+    public void onEntityIdsChanged(EntityIdsChangedEvent event) {
+        Long[] ids = event.ids().stream().filter(id -> id != null).toArray(Long[]::new);
+        if (ids.length == 0) {
+            return;
+        }
+        jdbcTemplate.update(con -> {
+            var ps = con.prepareStatement(MARK_SQL);
+            ps.setString(1, event.type().name());
+            ps.setArray(2, con.createArrayOf("bigint", ids));
+            return ps;
+        });
+    }
+
+    /**
+     * Читает накопленные ключи, не удаляя их: удаляет {@link #acknowledge} после пересчёта.
+     */
+    public Snapshot snapshot() {
+        List<Long> purchaseRequestIds = new ArrayList<>();
+        List<Long> purchaseKeys = new ArrayList<>();
+        List<Long> contractIds = new ArrayList<>();
+        List<Mark> marks = new ArrayList<>();
+        jdbcTemplate.query("SELECT entity_type, entity_key, mark_seq FROM status_dirty_keys", rs -> {
+            Mark mark = new Mark(rs.getString(1), rs.getLong(2), rs.getLong(3));
+            List<Long> target = switch (EntityIdsChangedEvent.EntityType.valueOf(mark.entityType())) {
+                case PURCHASE_REQUEST -> purchaseRequestIds;
+                case PURCHASE -> purchaseKeys;
+                case CONTRACT -> contractIds;
+            };
+            target.add(mark.entityKey());
+            marks.add(mark);
+        });
+        Collections.sort(purchaseRequestIds);
+        Collections.sort(purchaseKeys);
+        Collections.sort(contractIds);
+        return new Snapshot(purchaseRequestIds, purchaseKeys, contractIds, marks);
+    }
+
+    /**
+     * Удаляет ключи снимка после успешного пересчёта; ключи, отмеченные заново или впервые после чтения снимка, остаются.
+     */
+    public void acknowledge(Snapshot snapshot) {
+        if (snapshot.marks().isEmpty()) {
+            return;
+        }
+        String[] types = snapshot.marks().stream().map(Mark::entityType).toArray(String[]::new);
+        Long[] keys = snapshot.marks().stream().map(Mark::entityKey).toArray(Long[]::new);
+        Long[] seqs = snapshot.marks().stream().map(Mark::markSeq).toArray(Long[]::new);
+        jdbcTemplate.update(con -> {
+            var ps = con.prepareStatement(ACKNOWLEDGE_SQL);
+            ps.setArray(1, con.createArrayOf("varchar", types));
+            ps.setArray(2, con.createArrayOf("bigint", keys));
+            ps.setArray(3, con.createArrayOf("bigint", seqs));
+            return ps;
+        });
+    }
+
+    public int size() {
+        Integer count = jdbcTemplate.queryForObject("SELECT COUNT(*) FROM status_dirty_keys", Integer.class);
+        return count != null ? count : 0;
+    }
+}
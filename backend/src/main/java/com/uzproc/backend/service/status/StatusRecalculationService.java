@@ -0,0 +1,305 @@
+package com.uzproc.backend.service.status;
+
+import com.uzproc.backend.entity.purchaserequest.PurchaseRequestStatus;
+import com.uzproc.backend.repository.contract.ContractRepository;
+import com.uzproc.backend.service.contract.ContractSlaFactService;
+import com.uzproc.backend.service.contract.ContractStatusUpdateService;
+import com.uzproc.backend.service.overview.OverviewFactService;
+import com.uzproc.backend.service.purchase.PurchaseStatusUpdateService;
+import com.uzproc.backend.service.purchaserequest.PurchaseRequestStatusUpdateService;
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.PersistenceContext;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.stereotype.Service;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.TreeSet;
+
+/**
+ * Пересчёт статусов после импортов.
+ * <p>
+ * Инкрементальный ({@link #recalculateDirty()}): берёт из {@link StatusDirtySet} ключи, сохранённые загрузчиками
+ * (ключи удаляются из набора только после пересчёта без ошибок),
+ * и идёт по графу зависимостей закупка → договор → заявка только для них:
+ * <ol>
+ *   <li>статусы затронутых закупок;</li>
+ *   <li>статусы и дата регистрации затронутых договоров; строки витрины SLA договоров
+ *       ({@link ContractSlaFactService}) для них и для договоров затронутых заявок и закупок
+ *       (пустая витрина строится целиком);</li>
+ *   <li>статусы заявок: затронутых напрямую, заявок затронутых закупок (ключ закупки — номер заявки),
+ *       заявок затронутых договоров (прямая ссылка или через purchase_contracts) и заявок-заказов
+ *       в статусе «Спецификация создана» — для них статус зависит от даты (архив через 60 рабочих дней);</li>
+ *   <li>строки витрины дашбордов «Обзора» ({@link OverviewFactService}) для тех же заявок и их закупок
+ *       (пустая витрина строится целиком).</li>
+ * </ol>
+ * Полный проход по всей базе ({@link #recalculateAll()}, включая перестроение витрин SLA договоров и «Обзора») —
+ * явная административная операция.
+ * Оба метода выполняются по одному: параллельные этапы стартового импорта не пересчитывают одни и те же заявки.
+ */
+@Service
+public class StatusRecalculationService {
+
+    private static final Logger logger = LoggerFactory.getLogger(StatusRecalculationService.class);
+    /** Размер списков IN в запросах по затронутым договорам. */
+    private static final int CHUNK_SIZE = 1000;
+
+    @PersistenceContext
+    private EntityManager entityManager;
+
+    private final StatusDirtySet dirtySet;
+    private final PurchaseStatusUpdateService purchaseStatusUpdateService;
+    private final ContractStatusUpdateService contractStatusUpdateService;
+    private final PurchaseRequestStatusUpdateService purchaseRequestStatusUpdateService;
+    private final ContractRepository contractRepository;
+    private final ContractSlaFactService contractSlaFactService;
+    private final OverviewFactService overviewFactService;
+
+    public StatusRecalculationService(
+            StatusDirtySet dirtySet,
+            PurchaseStatusUpdateService purchaseStatusUpdateService,
+            ContractStatusUpdateService contractStatusUpdateService,
+            PurchaseRequestStatusUpdateService purchaseRequestStatusUpdateService,
+            ContractRepository contractRepository,
+            ContractSlaFactService contractSlaFactService,
+            OverviewFactService overviewFactService) {
+        this.dirtySet = dirtySet;
+        this.purchaseStatusUpdateService = purchaseStatusUpdateService;
+        this.contractStatusUpdateService = contractStatusUpdateService;
+        this.purchaseRequestStatusUpdateService = purchaseRequestStatusUpdateService;
+        this.contractRepository = contractRepository;
+        this.contractSlaFactService = contractSlaFactService;
+        this.overviewFactService = overviewFactService;
+    }
+
+    /**
+     * Итог инкрементального пересчёта.
+     *
+     * @param purchases        закупок пересчитано
+     * @param contracts        договоров пересчитано
+     * @param purchaseRequests заявок рассмотрено (включая зависящие от даты)
+     * @param requestsChanged  заявок, у которых статус изменился
+     */
+    public record RecalculationResult(int purchases, int contracts, int purchaseRequests, int requestsChanged, long timeMs) {
+    }
+
+    /**
+     * Пересчитывает статусы сущностей, сохранённых загрузчиками с прошлого пересчёта, и зависящих от них заявок.
+     */
+    public synchronized RecalculationResult recalculateDirty() {
+        long startTime = System.currentTimeMillis();
+        StatusDirtySet.Snapshot dirty = dirtySet.snapshot();
+        logger.info("Incremental status update: {} purchase requests, {} purchases, {} contracts marked by imports",
+            dirty.purchaseRequestIds().size(), dirty.purchaseKeys().size(), dirty.contractIds().size());
+        // Ключи снимка удаляются, только если все этапы прошли без ошибок; иначе их повторит следующий пересчёт
+        boolean succeeded = true;
+
+        // 1. Закупки
+        if (!dirty.purchaseKeys().isEmpty()) {
+            try {
+                succeeded &= purchaseStatusUpdateService.updateStatuses(dirty.purchaseKeys()) == 0;
+            } catch (Exception e) {
+                succeeded = false;
+                logger.error("Error during incremental purchase status update: {}", e.getMessage(), e);
+            }
+        }
+
+        // 2. Договоры
+        if (!dirty.contractIds().isEmpty()) {
+            try {
+                succeeded &= contractStatusUpdateService.updateStatuses(dirty.contractIds()) == 0;
+            } catch (Exception e) {
+                succeeded = false;
+                logger.error("Error during incremental contract status update: {}", e.getMessage(), e);
+            }
+            try {
+                int affected = 0;
+                for (List<Long> chunk : chunks(dirty.contractIds())) {
+                    affected += contractRepository.recomputeRegistrationDates(chunk);
+                }
+                logger.info("Recomputed registration_date for {} contracts", affected);
+            } catch (Exception e) {
+                succeeded = false;
+                logger.error("Error recomputing registration dates: {}", e.getMessage(), e);
+            }
+        }
+        try {
+            if (contractSlaFactService.isEmpty()) {
+                contractSlaFactService.rebuildAll();
+            } else {
+                // Строка витрины зависит и от заявки/закупки договора (сложность, даты) — берём и связанные договоры
+                TreeSet<Long> slaContractIds = new TreeSet<>(dirty.contractIds());
+                TreeSet<Long> requestKeys = new TreeSet<>(dirty.purchaseRequestIds());
+                requestKeys.addAll(dirty.purchaseKeys());
+                slaContractIds.addAll(findContractsOfRequests(new ArrayList<>(requestKeys)));
+                if (!slaContractIds.isEmpty()) {
+                    int written = contractSlaFactService.refresh(slaContractIds);
+                    logger.info("Refreshed contract SLA facts: {} rows for {} contracts ({} via requests and purchases)",
+                        written, slaContractIds.size(), slaContractIds.size() - dirty.contractIds().size());
+                }
+            }
+        } catch (Exception e) {
+            succeeded = false;
+            logger.error("Error refreshing contract SLA facts: {}", e.getMessage(), e);
+        }
+
+        // 3. Заявки: затронутые напрямую, через закупки, через договоры и зависящие от даты
+        TreeSet<Long> requestIds = new TreeSet<>(dirty.purchaseRequestIds());
+        requestIds.addAll(dirty.purchaseKeys());
+        requestIds.addAll(findRequestsOfContracts(dirty.contractIds()));
+        int marked = requestIds.size();
+        requestIds.addAll(findTimeDependentRequests());
+
+        PurchaseRequestStatusUpdateService.BulkUpdateResult requestResult =
+            purchaseRequestStatusUpdateService.updateStatuses(new ArrayList<>(requestIds));
+
+        // 4. Витрина «Обзора»: строки заявок зависят от их статуса, поэтому обновляются после него
+        try {
+            if (overviewFactService.isEmpty()) {
+                overviewFactService.rebuildAll();
+            } else {
+                int written = overviewFactService.refresh(requestIds);
+                logger.info("Refreshed overview facts: {} rows for {} purchase requests", written, requestIds.size());
+            }
+        } catch (Exception e) {
+            succeeded = false;
+            logger.error("Error refreshing overview facts: {}", e.getMessage(), e);
+        }
+
+        long processingTime = System.currentTimeMillis() - startTime;
+        logger.info("Incremental status update completed: {} purchases, {} contracts, {} purchase requests " +
+                "({} via dependencies, {} time-dependent), {} requests changed, time: {} ms",
+            dirty.purchaseKeys().size(), dirty.contractIds().size(), requestResult.processed(),
+            marked, requestIds.size() - marked, requestResult.changed(), processingTime);
+        if (succeeded && requestResult.errors() == 0) {
+            dirtySet.acknowledge(dirty);
+        } else {
+            logger.warn("Incremental status update had errors: {} marked keys kept for the next run", dirty.marks().size());
+        }
+        return new RecalculationResult(dirty.purchaseKeys().size(), dirty.contractIds().size(),
+            requestResult.processed(), requestResult.changed(), processingTime);
+    }
+
+    /**
+     * Полный пересчёт статусов всех закупок, договоров и заявок (в этом порядке).
+     * Накопленные ключи удаляются после прохода без ошибок: он их покрывает.
+     */
+    public synchronized void recalculateAll() {
+        logger.info("=== Starting full status update for all purchases, contracts and purchase requests ===");
+        long startTime = System.currentTimeMillis();
+        StatusDirtySet.Snapshot dirty = dirtySet.snapshot();
+        boolean succeeded = true;
+        try {
+            succeeded &= purchaseStatusUpdateService.updateAllStatuses() == 0;
+        } catch (Exception e) {
+            succeeded = false;
+            logger.error("Error during full purchase status update: {}", e.getMessage(), e);
+        }
+        try {
+            succeeded &= contractStatusUpdateService.updateAllStatuses() == 0;
+        } catch (Exception e) {
+            succeeded = false;
+            logger.error("Error during full contract status update: {}", e.getMessage(), e);
+        }
+        try {
+            contractSlaFactService.rebuildAll();
+        } catch (Exception e) {
+            succeeded = false;
+            logger.error("Error rebuilding contract SLA facts: {}", e.getMessage(), e);
+        }
+        try {
+            succeeded &= purchaseRequestStatusUpdateService.updateAllStatuses().errors() == 0;
+        } catch (Exception e) {
+            succeeded = false;
+            logger.error("Error during full purchase request status update: {}", e.getMessage(), e);
+        }
+        try {
+            overviewFactService.rebuildAll();
+        } catch (Exception e) {
+            succeeded = false;
+            logger.error("Error rebuilding overview facts: {}", e.getMessage(), e);
+        }
+        if (succeeded) {
+            dirtySet.acknowledge(dirty);
+        } else {
+            logger.warn("Full status update had errors: {} marked keys kept for the next run", dirty.marks().size());
+        }
+        logger.info("=== Full status update completed in {} ms ===", System.currentTimeMillis() - startTime);
+    }
+
+    /**
+     * Заявки, статус которых зависит от договоров: прямая ссылка договора на заявку
+     * или закупка заявки, связанная с договором через purchase_contracts.
+     */
+    private List<Long> findRequestsOfContracts(List<Long> contractIds) {
+        List<Long> result = new ArrayList<>();
+        for (List<Long> chunk : chunks(contractIds)) {
+            @SuppressWarnings("unchecked")
+            List<Number> rows = entityManager.createNativeQuery(
+                "SELECT c.purchase_request_id FROM contracts c " +
+                "WHERE c.id IN (:ids) AND c.purchase_request_id IS NOT NULL " +
+                "UNION " +
+                "SELECT p.purchase_request_id FROM contracts c " +
+                "JOIN purchase_contracts pc ON pc.contract_inner_id = c.inner_id " +
+                "JOIN purchases p ON p.id = pc.purchase_id " +
+                "WHERE c.id IN (:ids) AND p.purchase_request_id IS NOT NULL")
+                .setParameter("ids", chunk)
+                .getResultList();
+            for (Number row : rows) {
+                result.add(row.longValue());
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Договоры, зависящие от заявок и закупок (обратное к {@link #findRequestsOfContracts}):
+     * прямая ссылка договора на заявку или закупка, связанная с договором через purchase_contracts.
+     * Ключ закупки — номер заявки, поэтому ключи заявок и закупок передаются одним списком.
+     */
+    private List<Long> findContractsOfRequests(List<Long> requestKeys) {
+        List<Long> result = new ArrayList<>();
+        for (List<Long> chunk : chunks(requestKeys)) {
+            @SuppressWarnings("unchecked")
+            List<Number> rows = entityManager.createNativeQuery(
+                "SELECT c.id FROM contracts c WHERE c.purchase_request_id IN (:ids) " +
+                "UNION " +
+                "SELECT c.id FROM purchases p " +
+                "JOIN purchase_contracts pc ON pc.purchase_id = p.id " +
+                "JOIN contracts c ON c.inner_id = pc.contract_inner_id " +
+                "WHERE p.purchase_request_id IN (:ids)")
+                .setParameter("ids", chunk)
+                .getResultList();
+            for (Number row : rows) {
+                result.add(row.longValue());
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Заявки-заказы в статусе «Спецификация создана»: переходят в архив по прошествии времени, без изменения данных.
+     */
+    private List<Long> findTimeDependentRequests() {
+        @SuppressWarnings("unchecked")
+        List<Number> rows = entityManager.createNativeQuery(
+            "SELECT id_purchase_request FROM purchase_requests " +
+            "WHERE requires_purchase = false AND status = :status")
+            .setParameter("status", PurchaseRequestStatus.SPECIFICATION_CREATED.name())
+            .getResultList();
+        List<Long> result = new ArrayList<>(rows.size());
+        for (Number row : rows) {
+            result.add(row.longValue());
+        }
+        return result;
+    }
+
+    private static List<List<Long>> chunks(List<Long> ids) {
+        List<List<Long>> result = new ArrayList<>();
+        for (int from = 0; from < ids.size(); from += CHUNK_SIZE) {
+            result.add(ids.subList(from, Math.min(from + CHUNK_SIZE, ids.size())));
+        }
+        return result;
+    }
+}
@@ -2,19 +2,18 @@ package com.uzproc.backend.service.supplier;
 
 import com.uzproc.backend.entity.supplier.Supplier;
 import com.uzproc.backend.repository.supplier.SupplierRepository;
-import org.apache.poi.hssf.usermodel.HSSFWorkbook;
+import com.uzproc.backend.service.excel.ImportReferenceData;
+import com.uzproc.backend.service.excel.ImportReferenceDataService;
+import com.uzproc.backend.service.excel.StreamingSheetReader;
 import org.apache.poi.ss.usermodel.*;
-import org.apache.poi.xssf.usermodel.XSSFWorkbook;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
 import java.io.File;
-import java.io.FileInputStream;
 import java.io.IOException;
 import java.util.HashMap;
-import java.util.Iterator;
 import java.util.Map;
 import java.util.Optional;
 
@@ -35,10 +34,13 @@ public class SupplierExcelLoadService {
     private static final String NAME_COLUMN = "Наименование";
 
     private final SupplierRepository supplierRepository;
+    private final ImportReferenceDataService referenceDataService;
     private final DataFormatter dataFormatter = new DataFormatter();
 
-    public SupplierExcelLoadService(SupplierRepository supplierRepository) {
+    public SupplierExcelLoadService(SupplierRepository supplierRepository,
+                                    ImportReferenceDataService referenceDataService) {
         this.supplierRepository = supplierRepository;
+        this.referenceDataService = referenceDataService;
     }
 
     /**
@@ -47,38 +49,18 @@ public class SupplierExcelLoadService {
      */
     @Transactional
     public int loadSuppliersFromExcel(File excelFile) throws IOException {
-        Workbook workbook;
-        try (FileInputStream fis = new FileInputStream(excelFile)) {
-            if (excelFile.getName().endsWith(".xlsx")) {
-                workbook = new XSSFWorkbook(fis);
-            } else {
-                workbook = new HSSFWorkbook(fis);
-            }
-        }
-
-        try {
-            Sheet sheet = workbook.getSheetAt(0);
-            Row headerRow = null;
-            int headerRowIndex = -1;
-            Map<String, Integer> columnIndexMap = null;
-
-            for (int i = 0; i < Math.min(10, sheet.getLastRowNum() + 1); i++) {
-                Row row = sheet.getRow(i);
-                if (row == null) continue;
+        try (StreamingSheetReader reader = StreamingSheetReader.open(excelFile);
+             StreamingSheetReader.SheetCursor sheet = reader.openSheet(0)) {
+            Row headerRow = sheet.findHeaderRow(10, row -> {
                 Map<String, Integer> tempMap = buildColumnIndexMap(row);
-                Integer codeIdx = findColumnIndex(tempMap, CODE_COLUMN);
-                if (codeIdx != null) {
-                    headerRow = row;
-                    headerRowIndex = i;
-                    columnIndexMap = tempMap;
-                    break;
-                }
-            }
+                return findColumnIndex(tempMap, CODE_COLUMN) != null;
+            });
 
-            if (columnIndexMap == null) {
+            if (headerRow == null) {
                 logger.warn("Suppliers: header row with column 'Код' not found in file {} (checked first 10 rows)", excelFile.getName());
                 return 0;
             }
+            Map<String, Integer> columnIndexMap = buildColumnIndexMap(headerRow);
 
             Integer typeColumnIndex = findColumnIndex(columnIndexMap, TYPE_COLUMN);
             Integer kppColumnIndex = findColumnIndex(columnIndexMap, KPP_COLUMN);
@@ -94,14 +76,11 @@ public class SupplierExcelLoadService {
             logger.info("Suppliers: file {} columns -> Вид={}, КПП={}, ИНН={}, Код={}, Наименование={}",
                 excelFile.getName(), typeColumnIndex, kppColumnIndex, innColumnIndex, codeColumnIndex, nameColumnIndex);
 
-            Iterator<Row> rowIterator = sheet.iterator();
-            for (int i = 0; i <= headerRowIndex && rowIterator.hasNext(); i++) {
-                rowIterator.next();
-            }
-
+            // Существующие поставщики по коду — из предзагруженного справочника, без SELECT на строку
+            ImportReferenceData referenceData = referenceDataService.open();
             int loadedCount = 0;
-            while (rowIterator.hasNext()) {
-                Row row = rowIterator.next();
+            while (sheet.hasNext()) {
+                Row row = sheet.next();
                 if (isRowEmpty(row)) continue;
                 try {
                     Supplier supplier = parseSupplierRow(row, typeColumnIndex, kppColumnIndex, innColumnIndex, codeColumnIndex, nameColumnIndex);
@@ -109,16 +88,26 @@ public class SupplierExcelLoadService {
                         continue;
                     }
                     String code = supplier.getCode().trim();
-                    Optional<Supplier> existingOpt = supplierRepository.findByCode(code);
+                    Optional<Supplier> existingOpt = referenceData.findSupplierByCode(code);
+                    if (existingOpt.isEmpty() && supplier.getInn() != null) {
+                        // Поставщик, созданный импортом по ИНН (code = ИНН) до загрузки справочника, получает код из справочника
+                        existingOpt = referenceData.findSupplierByCode(supplier.getInn())
+                            .filter(s -> s.getCode() != null && s.getCode().equals(s.getInn()));
+                    }
                     if (existingOpt.isPresent()) {
                         Supplier existing = existingOpt.get();
-                        if (updateSupplierFields(existing, supplier)) {
-                            supplierRepository.save(existing);
+                        boolean codeChanged = !code.equals(existing.getCode());
+                        if (codeChanged) {
+                            logger.info("Suppliers: supplier created by INN {} gets dictionary code {}", existing.getInn(), code);
+                            existing.setCode(code);
+                        }
+                        if (updateSupplierFields(existing, supplier) || codeChanged) {
+                            referenceData.registerSupplier(supplierRepository.save(existing));
                             loadedCount++;
                         }
                     } else {
                         supplier.setCode(code);
-                        supplierRepository.save(supplier);
+                        referenceData.registerSupplier(supplierRepository.save(supplier));
                         loadedCount++;
                     }
                 } catch (Exception e) {
@@ -128,8 +117,6 @@ public class SupplierExcelLoadService {
 
             logger.info("Suppliers: loaded {} records from file {}", loadedCount, excelFile.getName());
             return loadedCount;
-        } finally {
-            workbook.close();
         }
     }
 
@@ -21,7 +21,7 @@ import com.uzproc.backend.repository.purchase.PurchaseRepository;
 import com.uzproc.backend.repository.purchaserequest.PurchaseRequestApprovalRepository;
 import com.uzproc.backend.repository.purchaserequest.PurchaseRequestRepository;
 import com.uzproc.backend.service.calendar.WorkingDayService;
-import org.springframework.data.domain.PageRequest;
+import com.uzproc.backend.service.search.TextSearchService;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
@@ -105,6 +105,7 @@ public class ProcurementTrackerService {
     private final ContractRepository contractRepository;
     private final ContractApprovalRepository contractApprovalRepository;
     private final WorkingDayService workingDayService;
+    private final TextSearchService textSearchService;
 
     public ProcurementTrackerService(
             PurchaseRequestRepository requestRepository,
@@ -113,7 +114,8 @@ public class ProcurementTrackerService {
             PurchaseApprovalRepository purchaseApprovalRepository,
             ContractRepository contractRepository,
             ContractApprovalRepository contractApprovalRepository,
-            WorkingDayService workingDayService) {
+            WorkingDayService workingDayService,
+            TextSearchService textSearchService) {
         this.requestRepository = requestRepository;
         this.requestApprovalRepository = requestApprovalRepository;
         this.purchaseRepository = purchaseRepository;
@@ -121,20 +123,20 @@ public class ProcurementTrackerService {
         this.contractRepository = contractRepository;
         this.contractApprovalRepository = contractApprovalRepository;
         this.workingDayService = workingDayService;
+        this.textSearchService = textSearchService;
     }
 
     /**
      * Поиск закупок по номеру/предмету/инициатору. Пустой запрос → пустой результат (страница публичная).
-     * Связанные сущности грузятся batch-запросами (без N+1 на каждую заявку).
+     * Номера подбираются ранжированным поиском по триграммным индексам ({@link TextSearchService}),
+     * связанные сущности грузятся batch-запросами (без N+1 на каждую заявку).
      */
     @Transactional(readOnly = true)
     public List<ProcurementTrackerDto> search(String query) {
         if (query == null || query.trim().isEmpty()) {
             return Collections.emptyList();
         }
-        List<PurchaseRequest> requests = requestRepository.searchForTracker(
-                query.trim(), PageRequest.of(0, SEARCH_LIMIT));
-        return assembleAll(requests);
+        return getByIdPurchaseRequestIn(textSearchService.searchPurchaseRequestIds(query, SEARCH_LIMIT));
     }
 
     /**
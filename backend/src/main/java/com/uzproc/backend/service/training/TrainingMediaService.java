@@ -5,8 +5,6 @@ import com.uzproc.backend.repository.training.TrainingMediaRepository;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Value;
-import org.springframework.core.io.Resource;
-import org.springframework.core.io.UrlResource;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 import org.springframework.web.multipart.MultipartFile;
@@ -83,16 +81,15 @@ public class TrainingMediaService {
         return repository.save(media);
     }
 
-    public Resource getFile(Integer slideId, String type) throws IOException {
+    public Path getFile(Integer slideId, String type) {
         TrainingMedia media = repository.findBySlideIdAndType(slideId, type)
                 .orElseThrow(() -> new IllegalArgumentException("Файл не найден: slideId=" + slideId + ", type=" + type));
 
         Path file = Paths.get(storagePath).resolve(media.getFilename());
-        Resource resource = new UrlResource(file.toUri());
-        if (!resource.exists()) {
+        if (!Files.isRegularFile(file)) {
             throw new IllegalArgumentException("Файл не найден на диске: " + media.getFilename());
         }
-        return resource;
+        return file;
     }
 
     public Optional<TrainingMedia> findBySlideAndType(Integer slideId, String type) {
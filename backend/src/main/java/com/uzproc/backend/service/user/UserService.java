@@ -1,11 +1,13 @@
 package com.uzproc.backend.service.user;
 
+import com.uzproc.backend.event.ContractorFlagChangedEvent;
 import com.uzproc.backend.entity.user.User;
 import com.uzproc.backend.entity.user.UserRole;
 import com.uzproc.backend.repository.user.UserRepository;
 import jakarta.persistence.criteria.Predicate;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.context.ApplicationEventPublisher;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.PageRequest;
 import org.springframework.data.domain.Pageable;
@@ -33,10 +35,13 @@ public class UserService {
 
     private final UserRepository userRepository;
     private final PasswordEncoder passwordEncoder;
+    private final ApplicationEventPublisher eventPublisher;
 
-    public UserService(UserRepository userRepository, PasswordEncoder passwordEncoder) {
+    public UserService(UserRepository userRepository, PasswordEncoder passwordEncoder,
+                       ApplicationEventPublisher eventPublisher) {
         this.userRepository = userRepository;
         this.passwordEncoder = passwordEncoder;
+        this.eventPublisher = eventPublisher;
     }
 
     public Page<User> findAll(
@@ -243,8 +248,10 @@ public class UserService {
             user.setIsPurchaser(isPurchaser);
         }
 
-        if (isContractor != null) {
+        if (isContractor != null && !isContractor.equals(user.getIsContractor())) {
             user.setIsContractor(isContractor);
+            // Витрина SLA договоров пересчитается для документов пользователя после фиксации транзакции
+            eventPublisher.publishEvent(new ContractorFlagChangedEvent(user.getId()));
         }
 
         return userRepository.save(user);
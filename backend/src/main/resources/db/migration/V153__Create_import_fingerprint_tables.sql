@@ -0,0 +1,34 @@
+-- Инкрементальный реимпорт Excel: отпечатки файлов и хэши строк.
+-- Неизменившийся файл (размер, mtime или SHA-256 содержимого) пропускается целиком,
+-- неизменившаяся строка — без загрузки сущности, сравнения полей и журнала изменений.
+CREATE TABLE import_file_fingerprints (
+    id BIGSERIAL PRIMARY KEY,
+    source VARCHAR(50) NOT NULL,
+    file_name VARCHAR(500) NOT NULL,
+    file_size BIGINT NOT NULL,
+    last_modified BIGINT NOT NULL,
+    content_hash VARCHAR(64) NOT NULL,
+    format_version INTEGER NOT NULL,
+    imported_at TIMESTAMP NOT NULL DEFAULT CURRENT_TIMESTAMP
+);
+
+CREATE UNIQUE INDEX idx_import_file_fingerprints_source_file ON import_file_fingerprints (source, file_name);
+
+COMMENT ON TABLE import_file_fingerprints IS 'Отпечатки последних успешно загруженных Excel-файлов';
+COMMENT ON COLUMN import_file_fingerprints.source IS 'Источник файла (alldocuments, upload, ...)';
+COMMENT ON COLUMN import_file_fingerprints.last_modified IS 'mtime файла в миллисекундах';
+COMMENT ON COLUMN import_file_fingerprints.content_hash IS 'SHA-256 содержимого файла (hex)';
+COMMENT ON COLUMN import_file_fingerprints.format_version IS 'Версия логики разбора: при её смене файл загружается заново';
+
+CREATE TABLE import_row_hashes (
+    entity_type VARCHAR(32) NOT NULL,
+    business_key VARCHAR(255) NOT NULL,
+    row_hash BIGINT NOT NULL,
+    updated_at TIMESTAMP NOT NULL DEFAULT CURRENT_TIMESTAMP,
+    PRIMARY KEY (entity_type, business_key)
+);
+
+COMMENT ON TABLE import_row_hashes IS 'Хэши последних загруженных строк alldocuments по бизнес-ключу';
+COMMENT ON COLUMN import_row_hashes.entity_type IS 'Тип сущности: purchase_request, purchase, contract';
+COMMENT ON COLUMN import_row_hashes.business_key IS 'id_purchase_request для заявок, inner_id для закупок и договоров';
+COMMENT ON COLUMN import_row_hashes.row_hash IS '64-битный хэш заголовка и значений строки (с версией логики разбора)';
@@ -0,0 +1,16 @@
+-- Витрина предрасчитанных агрегатов вкладки «Обзор» (SLA, экономия, KPI, ЕК)
+CREATE TABLE overview_kpi_snapshots (
+    kind VARCHAR(40) NOT NULL,
+    snapshot_key VARCHAR(300) NOT NULL,
+    payload TEXT NOT NULL,
+    computed_at TIMESTAMP NOT NULL,
+    compute_ms BIGINT,
+    last_read_at TIMESTAMP NOT NULL DEFAULT CURRENT_TIMESTAMP,
+    PRIMARY KEY (kind, snapshot_key)
+);
+
+COMMENT ON TABLE overview_kpi_snapshots IS 'Предрасчитанные ответы дашбордов «Обзора»; пересчитываются в фоне после импорта и обновления статусов';
+COMMENT ON COLUMN overview_kpi_snapshots.kind IS 'Вид агрегата: SLA, SAVINGS, KPI_SAVINGS, KPI_SLA, KPI_CSI, EK_CHART';
+COMMENT ON COLUMN overview_kpi_snapshots.snapshot_key IS 'Параметры периода: год, диапазон месяцев, закупщик (через |)';
+COMMENT ON COLUMN overview_kpi_snapshots.payload IS 'JSON ответа эндпоинта';
+COMMENT ON COLUMN overview_kpi_snapshots.last_read_at IS 'Последнее чтение: давно не читаемые срезы удаляются, а не пересчитываются';
@@ -0,0 +1,32 @@
+-- Триграммные GIN-индексы для подстрочного поиска (LIKE '%...%') без последовательного сканирования:
+-- публичный трекер закупок, выбор договора при создании поставки, текстовые фильтры списков.
+-- Индексы построены по lower(колонка) — в том же виде, в каком колонки сравниваются в запросах.
+CREATE EXTENSION IF NOT EXISTS pg_trgm;
+
+-- Заявки: трекер (номер, предмет, наименование, инициатор) и фильтры списка (наименование, инициатор)
+CREATE INDEX IF NOT EXISTS idx_purchase_requests_subject_trgm
+    ON purchase_requests USING gin (lower(purchase_request_subject) gin_trgm_ops);
+CREATE INDEX IF NOT EXISTS idx_purchase_requests_name_trgm
+    ON purchase_requests USING gin (lower(name) gin_trgm_ops);
+CREATE INDEX IF NOT EXISTS idx_purchase_requests_initiator_trgm
+    ON purchase_requests USING gin (lower(purchase_request_initiator) gin_trgm_ops);
+CREATE INDEX IF NOT EXISTS idx_purchase_requests_id_text_trgm
+    ON purchase_requests USING gin ((CAST(id_purchase_request AS text)) gin_trgm_ops);
+
+-- Договоры: выбор договора для поставки (внутренний номер, наименование, заголовок) и фильтры списка
+CREATE INDEX IF NOT EXISTS idx_contracts_inner_id_trgm
+    ON contracts USING gin (lower(inner_id) gin_trgm_ops);
+CREATE INDEX IF NOT EXISTS idx_contracts_name_trgm
+    ON contracts USING gin (lower(name) gin_trgm_ops);
+CREATE INDEX IF NOT EXISTS idx_contracts_title_trgm
+    ON contracts USING gin (lower(title) gin_trgm_ops);
+CREATE INDEX IF NOT EXISTS idx_contracts_document_form_trgm
+    ON contracts USING gin (lower(document_form) gin_trgm_ops);
+
+-- Контрагенты: фильтры списка (наименование, ИНН, код)
+CREATE INDEX IF NOT EXISTS idx_suppliers_name_trgm
+    ON suppliers USING gin (lower(name) gin_trgm_ops);
+CREATE INDEX IF NOT EXISTS idx_suppliers_inn_trgm
+    ON suppliers USING gin (lower(inn) gin_trgm_ops);
+CREATE INDEX IF NOT EXISTS idx_suppliers_code_trgm
+    ON suppliers USING gin (lower(code) gin_trgm_ops);
@@ -0,0 +1,42 @@
+-- Витрина дашборда «SLA договоров»: по строке на подписанный документ, подготовленный договорником.
+-- Поддерживается инкрементально при пересчёте статусов (договоры, затронутые импортом согласований и alldocuments),
+-- полностью перестраивается при полном пересчёте статусов или если пуста.
+CREATE TABLE contract_sla_facts (
+    contract_id BIGINT PRIMARY KEY REFERENCES contracts(id) ON DELETE CASCADE,
+    inner_id VARCHAR(255),
+    name TEXT,
+    document_form VARCHAR(255),
+    is_typical_form BOOLEAN,
+    cfo VARCHAR(255),
+    prepared_by VARCHAR(255),
+    preparer_key VARCHAR(255) NOT NULL,
+    customer_organization VARCHAR(50),
+    purchase_request_system_id BIGINT,
+    purchase_request_inner_id BIGINT,
+    signing_date TIMESTAMP NOT NULL,
+    signing_year INTEGER NOT NULL,
+    signing_month INTEGER NOT NULL,
+    approvals_signed_at TIMESTAMP,
+    preparation_working_days INTEGER,
+    planned_preparation_sla_days INTEGER,
+    preparation_sla_delta INTEGER,
+    approval_working_days INTEGER,
+    planned_approval_sla_days INTEGER,
+    approval_sla_delta INTEGER,
+    signing_working_days INTEGER,
+    planned_signing_sla_days INTEGER,
+    signing_sla_delta INTEGER,
+    total_working_days INTEGER,
+    total_planned_sla_days INTEGER,
+    sla_violated BOOLEAN NOT NULL,
+    updated_at TIMESTAMP NOT NULL DEFAULT CURRENT_TIMESTAMP
+);
+
+CREATE INDEX idx_contract_sla_facts_year_month ON contract_sla_facts (signing_year, signing_month);
+CREATE INDEX idx_contract_sla_facts_year_preparer ON contract_sla_facts (signing_year, preparer_key);
+
+COMMENT ON TABLE contract_sla_facts IS 'Подписанные документы с фактом, планом и отклонением SLA по этапам (дашборд «SLA договоров»)';
+COMMENT ON COLUMN contract_sla_facts.preparer_key IS 'ФИО подготовившего для группировки и фильтра; «Не назначен», если пусто';
+COMMENT ON COLUMN contract_sla_facts.signing_date IS 'Дата регистрации (для спецификаций — синхронизации)';
+COMMENT ON COLUMN contract_sla_facts.approvals_signed_at IS 'MAX(completion_date) этапов «регистрация%»/«синхронизация%» — год отбора документов';
+COMMENT ON COLUMN contract_sla_facts.sla_violated IS 'true — просрочен хотя бы один этап с заданным плановым сроком';
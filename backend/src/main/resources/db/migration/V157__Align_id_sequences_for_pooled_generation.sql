@@ -0,0 +1,25 @@
+-- Таблицы массового импорта переходят с IDENTITY на пуловую генерацию id из последовательностей
+-- (@SequenceGenerator allocationSize = 50): Hibernate берёт один nextval на 50 строк и может отправлять
+-- INSERT JDBC-батчами (hibernate.jdbc.batch_size), что с IDENTITY невозможно.
+-- Оптимизатор pooled считает значение последовательности верхней границей блока (hi - 49 .. hi), поэтому
+-- шаг последовательности должен совпадать с allocationSize. Текущее значение выравнивается по MAX(id):
+-- следующий блок начинается строго после всех уже выданных id. Вставки с DEFAULT nextval (SQL-миграции,
+-- нативные INSERT) остаются корректными — они забирают верхнее значение собственного блока.
+DO $$
+DECLARE
+    t TEXT;
+    seq TEXT;
+    max_id BIGINT;
+    last_id BIGINT;
+BEGIN
+    FOREACH t IN ARRAY ARRAY[
+        'purchase_requests', 'purchases', 'contracts', 'contract_approvals', 'purchase_request_approvals',
+        'payments', 'arrivals', 'purchase_request_changes', 'purchase_plan_item_versions']
+    LOOP
+        seq := pg_get_serial_sequence(t, 'id');
+        EXECUTE format('SELECT COALESCE(MAX(id), 0) FROM %I', t) INTO max_id;
+        EXECUTE format('SELECT last_value FROM %s', seq) INTO last_id;
+        EXECUTE format('ALTER SEQUENCE %s INCREMENT BY 50', seq);
+        PERFORM setval(seq, GREATEST(max_id, last_id, 1), true);
+    END LOOP;
+END $$;
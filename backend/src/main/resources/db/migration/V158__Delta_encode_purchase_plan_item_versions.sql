@@ -0,0 +1,19 @@
+-- Версии плана закупок хранятся дельтами: новая версия содержит только строки, изменившиеся с предыдущей
+-- версии того же года, и строки-надгробия (is_deleted) для позиций, удалённых из плана.
+-- Полная версия восстанавливается как последняя строка каждой позиции (item_key) среди версий
+-- от ближайшего полного снимка (is_full_snapshot) до запрошенной включительно.
+
+ALTER TABLE purchase_plan_versions ADD COLUMN is_full_snapshot BOOLEAN NOT NULL DEFAULT FALSE;
+ALTER TABLE purchase_plan_versions ADD COLUMN items_count INTEGER NOT NULL DEFAULT 0;
+
+-- Все существующие версии — полные копии плана
+UPDATE purchase_plan_versions SET is_full_snapshot = TRUE;
+UPDATE purchase_plan_versions v
+SET items_count = (SELECT COUNT(*) FROM purchase_plan_item_versions iv WHERE iv.version_id = v.id);
+
+-- item_key сопоставляет строки позиции в разных версиях: purchase_plan_item_id обнуляется (ON DELETE SET NULL)
+-- при удалении позиции. Строкам, у которых id позиции уже потерян, даётся уникальный отрицательный ключ.
+ALTER TABLE purchase_plan_item_versions ADD COLUMN item_key BIGINT;
+ALTER TABLE purchase_plan_item_versions ADD COLUMN is_deleted BOOLEAN NOT NULL DEFAULT FALSE;
+UPDATE purchase_plan_item_versions SET item_key = COALESCE(purchase_plan_item_id, -id);
+ALTER TABLE purchase_plan_item_versions ALTER COLUMN item_key SET NOT NULL;
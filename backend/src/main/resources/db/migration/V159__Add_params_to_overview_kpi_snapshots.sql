@@ -0,0 +1,7 @@
+-- Аргументы пересчёта среза хранятся отдельно (JSON-массив строк), а не восстанавливаются разбором snapshot_key:
+-- значение закупщика может содержать разделитель «|».
+-- Витрина — кэш: существующие срезы удаляются и пересчитываются при первом чтении.
+DELETE FROM overview_kpi_snapshots;
+ALTER TABLE overview_kpi_snapshots ADD COLUMN params TEXT NOT NULL;
+
+COMMENT ON COLUMN overview_kpi_snapshots.params IS 'Параметры среза (JSON-массив строк) — аргументы фонового пересчёта';
@@ -0,0 +1,15 @@
+-- Ключи заявок/закупок/договоров, сохранённых импортом и ещё не прошедших пересчёт статусов.
+-- Пишутся в транзакции импорта, удаляются после завершения пересчёта: перезапуск процесса до пересчёта их не теряет.
+CREATE SEQUENCE status_dirty_keys_mark_seq;
+
+CREATE TABLE status_dirty_keys (
+    entity_type VARCHAR(30) NOT NULL,
+    entity_key BIGINT NOT NULL,
+    mark_seq BIGINT NOT NULL,
+    PRIMARY KEY (entity_type, entity_key)
+);
+
+COMMENT ON TABLE status_dirty_keys IS 'Ключи сущностей, ожидающих пересчёта статусов после импорта';
+COMMENT ON COLUMN status_dirty_keys.entity_type IS 'Тип сущности: PURCHASE_REQUEST, PURCHASE, CONTRACT';
+COMMENT ON COLUMN status_dirty_keys.entity_key IS 'Ключ: id_purchase_request заявки, purchase_request_id закупки или id договора';
+COMMENT ON COLUMN status_dirty_keys.mark_seq IS 'Номер последней отметки: пересчёт удаляет только ключи, отмеченные до его начала';
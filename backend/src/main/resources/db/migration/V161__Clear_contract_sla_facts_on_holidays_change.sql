@@ -0,0 +1,17 @@
+-- Рабочие дни в витрине SLA договоров (contract_sla_facts) считаются с учётом праздников.
+-- Любое изменение таблицы holidays (миграцией или вручную) очищает витрину: пустая витрина строится заново
+-- при следующем пересчёте статусов (в том числе стартовом — после перезапуска backend, сбрасывающего кэш праздников).
+
+CREATE OR REPLACE FUNCTION trigger_clear_contract_sla_facts()
+RETURNS trigger AS $$
+BEGIN
+  DELETE FROM contract_sla_facts;
+  RETURN NULL;
+END;
+$$ LANGUAGE plpgsql;
+
+DROP TRIGGER IF EXISTS trg_holidays_clear_contract_sla_facts ON holidays;
+CREATE TRIGGER trg_holidays_clear_contract_sla_facts
+  AFTER INSERT OR UPDATE OR DELETE OR TRUNCATE ON holidays
+  FOR EACH STATEMENT
+  EXECUTE PROCEDURE trigger_clear_contract_sla_facts();
@@ -0,0 +1,101 @@
+-- Витрина дашбордов «Обзора» (SLA, экономия, KPI экономии и SLA, ЕК): строки по заявкам и закупкам,
+-- из которых эндпоинты собирают ответ запросами по году/месяцу. Поддерживается инкрементально при пересчёте
+-- статусов (заявки, затронутые импортом, и их закупки) и по правкам в интерфейсе, полностью перестраивается
+-- при полном пересчёте статусов или если пуста. Заменяет кэш готовых JSON-ответов overview_kpi_snapshots.
+DROP TABLE IF EXISTS overview_kpi_snapshots;
+
+-- Заявка в блоке SLA за год назначения на утверждение (по строке на каждый год, в котором есть назначение
+-- этапа «Утверждение заявки на ЗП»)
+CREATE TABLE overview_sla_facts (
+    purchase_request_id BIGINT NOT NULL REFERENCES purchase_requests(id) ON DELETE CASCADE,
+    sla_year INTEGER NOT NULL,
+    id_purchase_request BIGINT NOT NULL,
+    status_group VARCHAR(100) NOT NULL,
+    name TEXT,
+    budget_amount NUMERIC(15, 2),
+    purchaser VARCHAR(255),
+    purchaser_key VARCHAR(255) NOT NULL,
+    complexity VARCHAR(255),
+    planned_sla_days INTEGER,
+    status VARCHAR(255),
+    approval_assignment_date TIMESTAMP,
+    purchase_completion_date TIMESTAMP,
+    purchase_general_days INTEGER,
+    purchase_result_days INTEGER,
+    sla_month INTEGER,
+    met_sla BOOLEAN NOT NULL DEFAULT false,
+    updated_at TIMESTAMP NOT NULL DEFAULT CURRENT_TIMESTAMP,
+    PRIMARY KEY (purchase_request_id, sla_year)
+);
+
+CREATE INDEX idx_overview_sla_facts_year_group ON overview_sla_facts (sla_year, status_group, purchase_request_id);
+CREATE INDEX idx_overview_sla_facts_year_month ON overview_sla_facts (sla_year, sla_month);
+CREATE INDEX idx_overview_sla_facts_key ON overview_sla_facts (id_purchase_request);
+
+COMMENT ON TABLE overview_sla_facts IS 'Заявки SLA-блоков «Обзора» по году назначения на утверждение (вкладка SLA, KPI SLA)';
+COMMENT ON COLUMN overview_sla_facts.purchaser_key IS 'Закупщик для группировки: trim, «Не назначен», если пусто';
+COMMENT ON COLUMN overview_sla_facts.sla_month IS 'Месяц завершения закупки, если она учитывается в проценте SLA за sla_year (завершена в этом году, назначение не ранее 01.01.2026); иначе NULL';
+COMMENT ON COLUMN overview_sla_facts.met_sla IS 'Фактические рабочие дни не больше планового срока (явного или по сложности)';
+
+-- Заявка в диаграмме ЕК: по строке на год назначения на утверждение (year_basis = assignment)
+-- и на год создания (creation) — второй используется, если за год назначения данных нет
+CREATE TABLE overview_ek_facts (
+    purchase_request_id BIGINT NOT NULL REFERENCES purchase_requests(id) ON DELETE CASCADE,
+    year_basis VARCHAR(20) NOT NULL,
+    year INTEGER NOT NULL,
+    id_purchase_request BIGINT NOT NULL,
+    cfo VARCHAR(255) NOT NULL,
+    currency VARCHAR(10),
+    budget_amount NUMERIC(15, 2),
+    single_source BOOLEAN NOT NULL,
+    updated_at TIMESTAMP NOT NULL DEFAULT CURRENT_TIMESTAMP,
+    PRIMARY KEY (purchase_request_id, year_basis, year)
+);
+
+CREATE INDEX idx_overview_ek_facts_year ON overview_ek_facts (year_basis, year);
+CREATE INDEX idx_overview_ek_facts_key ON overview_ek_facts (id_purchase_request);
+
+COMMENT ON TABLE overview_ek_facts IS 'Заявки диаграммы ЕК «Обзора» по году назначения на утверждение и году создания';
+COMMENT ON COLUMN overview_ek_facts.cfo IS 'Наименование ЦФО (trim), «(без ЦФО)», если пусто';
+COMMENT ON COLUMN overview_ek_facts.single_source IS 'У заявки есть закупка со способом «у единственного источника»';
+
+-- Завершённая закупка (кроме закупок у единственного источника) с датой завершения «Закупочной комиссии»
+CREATE TABLE overview_savings_facts (
+    purchase_id BIGINT PRIMARY KEY REFERENCES purchases(id) ON DELETE CASCADE,
+    purchase_request_id BIGINT NOT NULL,
+    completion_year INTEGER NOT NULL,
+    completion_month INTEGER NOT NULL,
+    cfo VARCHAR(255) NOT NULL,
+    purchaser_key VARCHAR(255) NOT NULL,
+    budget_amount NUMERIC(15, 2),
+    savings NUMERIC(15, 2),
+    savings_type VARCHAR(50),
+    excluded_from_kpi BOOLEAN NOT NULL,
+    updated_at TIMESTAMP NOT NULL DEFAULT CURRENT_TIMESTAMP
+);
+
+CREATE INDEX idx_overview_savings_facts_year_month ON overview_savings_facts (completion_year, completion_month);
+CREATE INDEX idx_overview_savings_facts_key ON overview_savings_facts (purchase_request_id);
+
+COMMENT ON TABLE overview_savings_facts IS 'Завершённые закупки для экономии и KPI экономии «Обзора» по месяцу завершения закупочной комиссии';
+COMMENT ON COLUMN overview_savings_facts.purchase_request_id IS 'Номер заявки (ключ закупки в пересчёте статусов)';
+COMMENT ON COLUMN overview_savings_facts.purchaser_key IS 'Закупщик заявки, «Не указан», если пусто';
+COMMENT ON COLUMN overview_savings_facts.excluded_from_kpi IS 'Заявка исключена из KPI вручную или скрыта из работы';
+
+-- Рабочие дни в overview_sla_facts считаются с учётом праздников: изменение holidays очищает витрину целиком,
+-- и она строится заново при следующем пересчёте статусов (как contract_sla_facts, V161)
+CREATE OR REPLACE FUNCTION trigger_clear_overview_facts()
+RETURNS trigger AS $$
+BEGIN
+  DELETE FROM overview_sla_facts;
+  DELETE FROM overview_ek_facts;
+  DELETE FROM overview_savings_facts;
+  RETURN NULL;
+END;
+$$ LANGUAGE plpgsql;
+
+DROP TRIGGER IF EXISTS trg_holidays_clear_overview_facts ON holidays;
+CREATE TRIGGER trg_holidays_clear_overview_facts
+  AFTER INSERT OR UPDATE OR DELETE OR TRUNCATE ON holidays
+  FOR EACH STATEMENT
+  EXECUTE PROCEDURE trigger_clear_overview_facts();
@@ -23,6 +23,7 @@ export default function UploadCSV() {
   const [converting, setConverting] = useState(false);
   const [uploadingAlldocuments, setUploadingAlldocuments] = useState(false);
   const [uploadProgress, setUploadProgress] = useState(0);
+  const [importStatusText, setImportStatusText] = useState<string | null>(null);
   const [result, setResult] = useState<UploadResult | null>(null);
   const [alldocumentsResult, setAlldocumentsResult] = useState<UploadResult | null>(null);
   const [excelFiles, setExcelFiles] = useState<Array<{filename: string, size: number}>>([]);
@@ -212,6 +213,7 @@ export default function UploadCSV() {
     setUploadingAlldocuments(true);
     setAlldocumentsResult(null);
     setUploadProgress(0);
+    setImportStatusText(null);
 
     try {
       const formData = new FormData();
@@ -260,9 +262,29 @@ export default function UploadCSV() {
         xhr.send(formData);
       });
 
+      // Файл принят: разбор идёт на сервере асинхронно, опрашиваем статус задачи
+      let job = data;
+      setUploadProgress(0);
+      while (job.status === 'QUEUED' || job.status === 'RUNNING') {
+        await new Promise((resolve) => setTimeout(resolve, 2000));
+        const statusResponse = await fetch(`${url}/jobs/${job.jobId}`, { credentials: 'include' });
+        if (!statusResponse.ok) {
+          throw new Error(`HTTP ${statusResponse.status}: ${await statusResponse.text()}`);
+        }
+        job = await statusResponse.json();
+        setUploadProgress(job.percent ?? 0);
+        setImportStatusText(job.status === 'QUEUED'
+          ? 'В очереди...'
+          : `Обработано строк: ${job.rowsProcessed} из ${job.rowsTotal}, создано ${job.created}, обновлено ${job.updated}, ошибок ${job.errors}`
+            + (job.etaSeconds != null ? `, осталось ~${job.etaSeconds} с` : ''));
+      }
+      if (job.status === 'FAILED') {
+        throw new Error(job.result?.message || 'Ошибка при обработке файла');
+      }
+
       setAlldocumentsResult({
         success: true,
-        message: data.message || 'Файл успешно загружен и данные обновлены в БД'
+        message: job.result?.message || 'Файл успешно загружен и данные обновлены в БД'
       });
       setUploadProgress(100);
       setAlldocumentsFile(null);
@@ -290,6 +312,7 @@ export default function UploadCSV() {
       setUploadProgress(0);
     } finally {
       setUploadingAlldocuments(false);
+      setImportStatusText(null);
     }
   };
 
@@ -547,6 +570,10 @@ export default function UploadCSV() {
             </div>
           )}
 
+          {uploadingAlldocuments && importStatusText && (
+            <p className="text-sm text-gray-600">{importStatusText}</p>
+          )}
+
           {/* Результат загрузки */}
           {alldocumentsResult && (
             <div className={`rounded-lg p-4 ${